@@ -13,21 +13,37 @@
 
 package org.rapla.mobile.android;
 
+import java.util.Collections;
+import java.util.Map;
+
+import org.rapla.entities.Entity;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.facade.ClientFacade;
+import org.rapla.framework.RaplaException;
+import org.rapla.mobile.android.os.OutboxNotifier;
 import org.rapla.mobile.android.utility.Encrypter;
+import org.rapla.mobile.android.utility.RaplaConnection;
+import org.rapla.mobile.android.utility.RuntimeSnapshot;
+import org.rapla.mobile.android.utility.factory.RaplaContextFactory;
+import org.rapla.mobile.android.utility.store.LocalStore;
 
 import android.app.Application;
+import android.content.ComponentCallbacks2;
 
 /**
  * RaplaMobileApplication
  * 
  * This class is the enhances the standard android application functionality by
- * providing an application-wide storage mechanism.
+ * providing an application-wide storage mechanism. The storage sheds caches
+ * on memory pressure, and its connection and selected reservation are
+ * restored after the process has been killed in the background.
  * 
  * @author Maximilian Lenkeit <dev@lenki.com>
  */
 public class RaplaMobileApplication extends Application {
 
 	protected RuntimeStorage storage;
+	private RuntimeSnapshot savedSnapshot;
 
 	/**
 	 * This constant should only be used during development. It allows for using
@@ -44,8 +60,11 @@ public class RaplaMobileApplication extends Application {
 		this.storage = RuntimeStorage.getInstance();
 
 		// Initialize preferences handler
-		PreferencesHandler.getInstance(this.getApplicationContext(),
-				new Encrypter());
+		PreferencesHandler preferences = PreferencesHandler.getInstance(
+				this.getApplicationContext(), new Encrypter());
+
+		// Set up the container for the last used server in the background
+		RaplaContextFactory.getInstance().prewarm(preferences.getHost());
 	}
 
 	@Override
@@ -53,6 +72,135 @@ public class RaplaMobileApplication extends Application {
 		super.onTerminate();
 	}
 
+	@Override
+	public void onLowMemory() {
+		super.onLowMemory();
+		this.storage.trim(true);
+	}
+
+	@Override
+	public void onTrimMemory(int level) {
+		super.onTrimMemory(level);
+
+		// Leaving the app alone is no memory pressure, the caches are kept
+		// until the system runs low while the app is shown or until it is
+		// in the background
+		boolean runningLow = level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+				&& level <= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+		if (runningLow
+				|| level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+			this.storage
+					.trim(level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+							|| level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+		}
+	}
+
+	/**
+	 * Record the open connection and the reservation being edited, so that
+	 * they can be restored if the process gets killed. The file is only
+	 * written if the snapshot has changed.
+	 */
+	public synchronized void saveSnapshot() {
+		RaplaConnection conn = this.storage.retrieve(
+				RaplaConnection.IDENTIFIER, RaplaConnection.class);
+		if (conn == null) {
+			if (this.savedSnapshot != null) {
+				RuntimeSnapshot.clear(this);
+				this.savedSnapshot = null;
+			}
+			return;
+		}
+
+		Reservation original = this.storage.retrieve(
+				RuntimeStorage.IDENTIFIER_SELECTED_RESERVATION_ORIGINAL,
+				Reservation.class);
+		RuntimeSnapshot snapshot = new RuntimeSnapshot(conn.getHost(),
+				conn.getUsername(), original != null ? String.valueOf(original
+						.getId()) : null);
+		if (!snapshot.equals(this.savedSnapshot)) {
+			snapshot.save(this);
+			this.savedSnapshot = snapshot;
+		}
+	}
+
+	/**
+	 * Log in again with the stored credentials and select the reservation
+	 * of the last snapshot. Call on a worker thread, as network access isn't
+	 * allowed on the UI thread.
+	 * 
+	 * @see org.rapla.mobile.android.activity.RestoreActivity
+	 * @return True if a connection is available afterwards
+	 */
+	public synchronized boolean restore() {
+		if (this.storage.has(RaplaConnection.IDENTIFIER)) {
+			return true;
+		}
+		final RuntimeSnapshot snapshot = RuntimeSnapshot.load(this);
+		final PreferencesHandler preferences = PreferencesHandler
+				.getInstance();
+		if (snapshot == null
+				|| !preferences.hasConnectionPreferences()
+				|| !snapshot.belongsTo(preferences.getHost(),
+						preferences.getUsername())) {
+			return false;
+		}
+
+		this.restore(snapshot, preferences);
+		return this.storage.has(RaplaConnection.IDENTIFIER);
+	}
+
+	private void restore(RuntimeSnapshot snapshot,
+			PreferencesHandler preferences) {
+		try {
+			RaplaConnection conn = new RaplaConnection(preferences);
+			if (!conn.login()) {
+				return;
+			}
+			this.setConnection(conn);
+			conn.prefetch();
+			conn.getOutbox().setListener(new OutboxNotifier(this));
+			conn.attachLocalStore(LocalStore.getInstance(this));
+
+			// Select a new working copy of the reservation being edited
+			String id = snapshot.getReservationId();
+			if (id != null) {
+				ClientFacade facade = conn.getFacade();
+				Map<String, Entity> entities = facade.getOperator().getFromId(
+						Collections.singleton(id), false);
+				Reservation reservation = (Reservation) entities.get(id);
+				if (reservation != null) {
+					this.storage.store(
+							RuntimeStorage.IDENTIFIER_SELECTED_RESERVATION,
+							facade.edit(reservation));
+					this.storage.store(
+							RuntimeStorage.IDENTIFIER_SELECTED_RESERVATION_MODIFIED,
+							Boolean.FALSE);
+					this.storage.store(
+							RuntimeStorage.IDENTIFIER_SELECTED_RESERVATION_ORIGINAL,
+							reservation);
+				}
+			}
+		} catch (RaplaMobileException e) {
+			// Fall back to the regular login
+		} catch (RaplaException e) {
+			// The connection is restored, only the reservation is missing
+		}
+	}
+
+	/**
+	 * Store the connection, a previously stored connection is closed
+	 * 
+	 * @param conn
+	 *            Logged in connection
+	 */
+	public void setConnection(RaplaConnection conn) {
+		Object previous = this.storageGet(RaplaConnection.IDENTIFIER);
+		if (previous != null && previous != conn) {
+			((RaplaConnection) previous).close();
+		}
+		this.storageSet(RaplaConnection.IDENTIFIER, conn);
+	}
+
 	public void storageSet(String key, Object value) {
 		this.storage.store(key, value);
 	}
@@ -14,7 +14,9 @@
 package org.rapla.mobile.android;
 
 /**
- * Exception for login failure.
+ * Exception for login failure. The reason tells whether the server rejected
+ * the credentials or couldn't be reached, in which case the credentials may
+ * still be valid.
  * 
  * @author Maximilian Lenkeit <dev@lenki.com>
  * 
@@ -23,7 +25,38 @@ public class RaplaMobileLoginException extends RaplaMobileException {
 
 	private static final long serialVersionUID = -7989857539227677534L;
 
+	/**
+	 * The server couldn't be reached or failed to answer
+	 */
+	public static final int REASON_SERVER_UNREACHABLE = 0;
+
+	/**
+	 * The server rejected username or password
+	 */
+	public static final int REASON_CREDENTIALS_REJECTED = 1;
+
+	private int reason = REASON_SERVER_UNREACHABLE;
+
 	public RaplaMobileLoginException(Exception cause) {
 		super(cause);
 	}
+
+	public RaplaMobileLoginException(String name, int reason) {
+		super(name);
+		this.reason = reason;
+	}
+
+	/**
+	 * @return One of the <code>REASON_</code> constants
+	 */
+	public int getReason() {
+		return this.reason;
+	}
+
+	/**
+	 * @return True if the server rejected the credentials
+	 */
+	public boolean isCredentialsRejected() {
+		return this.reason == REASON_CREDENTIALS_REJECTED;
+	}
 }
@@ -13,39 +13,117 @@
 
 package org.rapla.mobile.android;
 
-import java.util.HashMap;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * This singleton manages objects across the application runtime.
+ * This singleton manages objects across the application runtime. It is
+ * written from background tasks and read from the UI thread, so all entries
+ * live in concurrent maps.
+ * 
+ * Entries stored with <code>store</code> are kept until they are replaced.
+ * Entries stored with <code>storeSoft</code> can be rebuilt by their owners
+ * and are dropped on memory pressure. Kept entries implementing
+ * <code>Trimmable</code> are asked to shed their caches instead.
  * 
  * @author Maximilian Lenkeit <dev@lenki.com>
  */
 public class RuntimeStorage {
 
 	private static RuntimeStorage instance;
-	private HashMap<String, Object> storage;
+	private ConcurrentHashMap<String, Object> storage;
+	private ConcurrentHashMap<String, SoftReference<Object>> softStorage;
 	public static final String IDENTIFIER_SELECTED_RESERVATION = "selected-reservation";
+	public static final String IDENTIFIER_SELECTED_RESERVATION_MODIFIED = "selected-reservation-modified";
+	public static final String IDENTIFIER_SELECTED_RESERVATION_ORIGINAL = "selected-reservation-original";
 	
 	protected RuntimeStorage() {
-		this.storage = new HashMap<String, Object>();
+		this.storage = new ConcurrentHashMap<String, Object>();
+		this.softStorage = new ConcurrentHashMap<String, SoftReference<Object>>();
 	}
 	
-	public static RuntimeStorage getInstance() {
+	public static synchronized RuntimeStorage getInstance() {
 		if(instance == null) {
 			instance = new RuntimeStorage();
 		}
 		return instance;
 	}
 	
+	/**
+	 * Keep value until it is replaced, null removes the entry
+	 */
 	public void store(String key, Object value) {
-		this.storage.put(key, value);
+		this.softStorage.remove(key);
+		if (value == null) {
+			this.storage.remove(key);
+		} else {
+			this.storage.put(key, value);
+		}
+	}
+
+	/**
+	 * Keep value as long as memory allows, null removes the entry
+	 */
+	public void storeSoft(String key, Object value) {
+		this.storage.remove(key);
+		if (value == null) {
+			this.softStorage.remove(key);
+		} else {
+			this.softStorage.put(key, new SoftReference<Object>(value));
+		}
 	}
 	
 	public Object retrieve(String key) {
-		return this.storage.get(key);
+		Object value = this.storage.get(key);
+		if (value == null) {
+			SoftReference<Object> reference = this.softStorage.get(key);
+			if (reference != null) {
+				value = reference.get();
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @return Value of the given type, null if there is none or it has another
+	 *         type
+	 */
+	public <T> T retrieve(String key, Class<T> type) {
+		Object value = this.retrieve(key);
+		return type.isInstance(value) ? type.cast(value) : null;
 	}
 	
 	public boolean has(String key) {
-		return this.storage.containsKey(key);
+		return this.retrieve(key) != null;
+	}
+
+	/**
+	 * Respond to memory pressure. Soft entries are dropped, kept entries
+	 * implementing <code>Trimmable</code> shed their caches.
+	 * 
+	 * @param critical
+	 *            True if the process is likely to be killed otherwise
+	 */
+	public void trim(boolean critical) {
+		this.softStorage.clear();
+		for (Object value : this.storage.values()) {
+			if (value instanceof Trimmable) {
+				((Trimmable) value).trimMemory(critical);
+			}
+		}
+	}
+
+	/**
+	 * Implemented by stored objects holding caches that can be rebuilt
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	public interface Trimmable {
+
+		/**
+		 * @param critical
+		 *            True if as much memory as possible should be released
+		 */
+		public void trimMemory(boolean critical);
 	}
 }
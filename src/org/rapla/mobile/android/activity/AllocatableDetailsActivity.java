@@ -15,25 +15,31 @@ package org.rapla.mobile.android.activity;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.List;
+import java.util.Locale;
 
-import org.rapla.entities.User;
 import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.internal.ReservationImpl;
-import org.rapla.entities.dynamictype.ClassificationFilter;
-import org.rapla.entities.dynamictype.DynamicType;
-import org.rapla.facade.ClientFacade;
 import org.rapla.framework.RaplaException;
 import org.rapla.mobile.android.R;
+import org.rapla.mobile.android.os.TaskScheduler;
+import org.rapla.mobile.android.utility.RaplaConnection;
+import org.rapla.mobile.android.utility.cache.AllocatableCatalog.SortedAllocatables;
+import org.rapla.mobile.android.utility.conflict.ConflictDetector;
+import org.rapla.mobile.android.utility.factory.ExceptionDialogFactory;
 import org.rapla.mobile.android.widget.adapter.AllocatableAdapter;
+import org.rapla.mobile.android.widget.adapter.AppointmentChoiceAdapter;
 
+import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.ContextMenu;
 import android.view.ContextMenu.ContextMenuInfo;
 import android.view.Menu;
@@ -44,6 +50,7 @@ import android.widget.AdapterView.OnItemClickListener;
 import android.widget.CheckBox;
 import android.widget.CompoundButton;
 import android.widget.CompoundButton.OnCheckedChangeListener;
+import android.widget.EditText;
 import android.widget.ListView;
 import android.widget.Toast;
 
@@ -59,9 +66,26 @@ public class AllocatableDetailsActivity extends BaseActivity {
 	private ListView allocatableListView;
 	private static final int DIALOG_CONFIRM_UNDO_BOOKING = 1;
 	private static final int DIALOG_ASSIGN_APPOINTMENTS = 2;
-	private AsyncTask<?, ?, ?> runningTask;
+	private TaskScheduler.Task<?> runningTask;
+	private TaskScheduler.Task<?> loadingTask;
 	public static final String INTENT_STRING_ALLOCATABLE_CATEGORY_ELEMENT_KEY = "element_key";
 	private SelectedAllocatableActionHandler selectedAllocatableActionHandler = new SelectedAllocatableActionHandler();
+	private ConflictDetector conflictDetector;
+	private AllocatableListItemCheckboxListener checkboxListener = new AllocatableListItemCheckboxListener();
+
+	/**
+	 * Delay in milliseconds after the last key stroke before searching
+	 */
+	public static final long SEARCH_DELAY = 250;
+
+	private EditText searchField;
+	private SortedAllocatables sortedAllocatables;
+	private Handler searchHandler = new Handler();
+	private Runnable searchRunnable = new Runnable() {
+		public void run() {
+			search();
+		}
+	};
 
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
@@ -76,6 +100,8 @@ public class AllocatableDetailsActivity extends BaseActivity {
 		this.allocatableListView.setEmptyView(findViewById(android.R.id.empty));
 		this.allocatableListView
 				.setOnItemClickListener(new AllocatableListItemClickedListener());
+		this.searchField = (EditText) findViewById(R.id.allocatable_details_search);
+		this.searchField.addTextChangedListener(new SearchTextWatcher());
 
 		// Register list view and list items for context menu
 		this.registerForContextMenu(this.allocatableListView);
@@ -83,12 +109,7 @@ public class AllocatableDetailsActivity extends BaseActivity {
 
 	public void onDestroy() {
 		super.onDestroy();
-
-		// Stop running background task if available. This is e.g. necessary to
-		// avoid short dump when rotating device.
-		if (this.runningTask != null) {
-			this.runningTask.cancel(true);
-		}
+		this.searchHandler.removeCallbacks(this.searchRunnable);
 	}
 
 	@Override
@@ -164,6 +185,20 @@ public class AllocatableDetailsActivity extends BaseActivity {
 		Appointment[] allAppointments = this.getSelectedReservation()
 				.getAppointments();
 
+		// Disable the appointments the user may not allocate the allocatable
+		// for
+		boolean[] allowed = new boolean[allAppointments.length];
+		try {
+			allowed = this.getPermissionEvaluator().canAllocate(
+					this.selectedAllocatableActionHandler.currentAllocatable,
+					allAppointments);
+		} catch (RaplaException e) {
+			// Leave it to the server to reject the allocation
+			Arrays.fill(allowed, true);
+		}
+		list.setAdapter(new AppointmentChoiceAdapter(this, this
+				.getAppointmentSummaries(allAppointments), allowed));
+
 		// Initialize array with appointments that are already assigned to the
 		// selected allocatable
 		Appointment[] assignedAppointments = new Appointment[0];
@@ -202,6 +237,16 @@ public class AllocatableDetailsActivity extends BaseActivity {
 
 		// Refresh list view
 		this.refreshListView();
+
+		// Load conflict detector in the background, the list is flagged as
+		// soon as it is available
+		if (this.runningTask != null) {
+			this.runningTask.cancel();
+		}
+		this.runningTask = this.schedule(new LoadConflictDetectorTask(this
+				.getConnection(), this.getIntent().getStringExtra(
+				INTENT_STRING_ALLOCATABLE_CATEGORY_ELEMENT_KEY), this
+				.getSelectedReservation().getAppointments()));
 	}
 
 	/**
@@ -230,13 +275,8 @@ public class AllocatableDetailsActivity extends BaseActivity {
 	public AlertDialog createDialogAssignAppointments(
 			AlertDialog.Builder builder) {
 
-		Appointment[] appointments = this.getSelectedReservation()
-				.getAppointments();
-
-		CharSequence[] items = new CharSequence[appointments.length];
-		for (int i = 0; i < appointments.length; i++) {
-		    items[i] =  this.getAppointmentFormater().getSummary(appointments[i]);
-		}
+		CharSequence[] items = this.getAppointmentSummaries(this
+				.getSelectedReservation().getAppointments());
 
 		builder.setTitle(R.string.allocatable_assign_appointments_dialog_title)
 				.setPositiveButton(R.string.apply,
@@ -245,24 +285,79 @@ public class AllocatableDetailsActivity extends BaseActivity {
 		return builder.create();
 	}
 
+	/**
+	 * @param appointments
+	 *            Appointments to be summarized
+	 * @return Summaries of the appointments, in the same order
+	 */
+	private CharSequence[] getAppointmentSummaries(Appointment[] appointments) {
+		CharSequence[] items = new CharSequence[appointments.length];
+		for (int i = 0; i < appointments.length; i++) {
+			items[i] = this.getAppointmentFormater().getSummary(
+					appointments[i]);
+		}
+		return items;
+	}
+
 	/**
 	 * Refresh list view by retrieving the latest data from the selected
-	 * reservation
+	 * reservation. The allocatables are sorted in the background, as this
+	 * takes a while for types with many entries.
 	 */
 	public void refreshListView() {
-        String stringExtra = this.getIntent().getStringExtra(   INTENT_STRING_ALLOCATABLE_CATEGORY_ELEMENT_KEY);
-        ClientFacade facade = getFacade();
-        try {
-            DynamicType dynamicType;
-            dynamicType = facade.getDynamicType( stringExtra);
-            ClassificationFilter[] array = dynamicType.newClassificationFilter().toArray();
-            Allocatable[] allocatables = facade.getAllocatables( array );
-            AllocatableAdapter adapter = new AllocatableAdapter(this, this.getSelectedReservation(), allocatables);
-            this.allocatableListView.setAdapter(adapter);
-        } catch (RaplaException e) {
-            e.printStackTrace();
-        }
-        
+		if (this.loadingTask != null) {
+			this.loadingTask.cancel();
+		}
+		String elementKey = this.getIntent().getStringExtra(
+				INTENT_STRING_ALLOCATABLE_CATEGORY_ELEMENT_KEY);
+		this.loadingTask = this.schedule(new LoadAllocatablesTask(this
+				.getConnection(), elementKey));
+	}
+
+	/**
+	 * Show sorted allocatables in the list view
+	 * 
+	 * @param sorted
+	 *            Allocatables of the selected type
+	 */
+	public void showAllocatables(final SortedAllocatables sorted) {
+		AllocatableAdapter adapter = new AllocatableAdapter(this,
+				this.getSelectedReservation(), sorted.getAllocatables(),
+				sorted.getNames());
+		adapter.setConflictDetector(this.conflictDetector);
+		this.allocatableListView.setAdapter(adapter);
+
+		if (sorted != this.sortedAllocatables) {
+			// Build the search index in the background before the user
+			// starts typing
+			TaskScheduler.getInstance().execute(
+					TaskScheduler.PRIORITY_PREFETCH, "AllocatableSearchIndex",
+					new Runnable() {
+						public void run() {
+							sorted.getSearchIndex();
+						}
+					});
+		}
+		this.sortedAllocatables = sorted;
+
+		// Keep the current search when coming back
+		this.search();
+	}
+
+	/**
+	 * Only show the allocatables matching the text of the search field
+	 */
+	public void search() {
+		if (this.sortedAllocatables == null || this.getListAdapter() == null) {
+			return;
+		}
+		String query = this.searchField.getText().toString();
+		if (query.trim().length() == 0) {
+			this.getListAdapter().setVisiblePositions(null);
+		} else {
+			this.getListAdapter().setVisiblePositions(
+					this.sortedAllocatables.getSearchIndex().search(query));
+		}
 	}
 
 	/**
@@ -277,9 +372,11 @@ public class AllocatableDetailsActivity extends BaseActivity {
 		return (AllocatableAdapter) this.allocatableListView.getAdapter();
 	}
 
-	public AllocatableListItemCheckboxListener createAllocatableListItemCheckboxListener(
-			int listItemIndex) {
-		return new AllocatableListItemCheckboxListener(listItemIndex);
+	/**
+	 * @return Check box listener shared by all list items
+	 */
+	public AllocatableListItemCheckboxListener getAllocatableListItemCheckboxListener() {
+		return this.checkboxListener;
 	}
 
 	/**
@@ -341,13 +438,15 @@ public class AllocatableDetailsActivity extends BaseActivity {
 
 		public void book() {
 			getSelectedReservation().addAllocatable(this.currentAllocatable);
-			// refreshListView();
+			setSelectedReservationModified();
+			getListAdapter().update(this.currentAllocatable);
 		}
 
 		public void undoBooking() {
 			this.uncheckCheckbox();
 			getSelectedReservation().removeAllocatable(this.currentAllocatable);
-			refreshListView();
+			setSelectedReservationModified();
+			getListAdapter().update(this.currentAllocatable);
 		}
 
 		private void uncheckCheckbox() {
@@ -362,7 +461,8 @@ public class AllocatableDetailsActivity extends BaseActivity {
 
 		private CheckBox getCheckbox() {
 			View listItemView = allocatableListView
-					.getChildAt(this.listItemIndex);
+					.getChildAt(this.listItemIndex
+							- allocatableListView.getFirstVisiblePosition());
 			CheckBox checkbox = (CheckBox) listItemView
 					.findViewById(R.id.allocatable_details_list_item_checkbox);
 			return checkbox;
@@ -372,7 +472,9 @@ public class AllocatableDetailsActivity extends BaseActivity {
 	/**
 	 * AllocatableListItemCheckboxListener
 	 * 
-	 * This class handles the checkbox logic of a list item
+	 * This class handles the checkbox logic of the list items. A single
+	 * instance is shared by all list items, the list item is determined from
+	 * the position of the check box.
 	 * 
 	 * @author Maximilian Lenkeit <dev@lenki.com>
 	 * 
@@ -380,24 +482,22 @@ public class AllocatableDetailsActivity extends BaseActivity {
 	public class AllocatableListItemCheckboxListener implements
 			OnCheckedChangeListener {
 
-		private int listItemIndex;
-
-		public AllocatableListItemCheckboxListener(int listItemIndex) {
-			this.listItemIndex = listItemIndex;
-		}
-
 		public void onCheckedChanged(CompoundButton buttonView,
 				boolean isChecked) {
 
 			if (isChecked) {
+				int listItemIndex = allocatableListView
+						.getPositionForView(buttonView);
+				if (listItemIndex == AdapterView.INVALID_POSITION) {
+					return;
+				}
 
 				// Disable checkbox if being checked as unchecking it should
 				// only be possible by using the context menu on the list item
 				buttonView.setEnabled(false);
 
 				// Book allocatable to reservation
-				selectedAllocatableActionHandler
-						.handleListItem(this.listItemIndex);
+				selectedAllocatableActionHandler.handleListItem(listItemIndex);
 				selectedAllocatableActionHandler.book();
 
 				// Go directly to dialog for assigning appointments to
@@ -464,23 +564,28 @@ public class AllocatableDetailsActivity extends BaseActivity {
 			ArrayList<Appointment> restrictedAppointments = new ArrayList<Appointment>();
 			ArrayList<Appointment> rejectedAppointments = new ArrayList<Appointment>();
 
+			// Check the permissions of all appointments at once, the results
+			// of the dialog preparation are reused
+			Allocatable currentAllocatable = selectedAllocatableActionHandler.currentAllocatable;
+			boolean[] allowed;
+			try {
+				allowed = getPermissionEvaluator().canAllocate(
+						currentAllocatable, allAppointments);
+			} catch (RaplaException e) {
+				ExceptionDialogFactory.getInstance()
+						.create(AllocatableDetailsActivity.this,
+								R.string.exception_rapla_data_retrieval).show();
+				return;
+			}
+
 			// Loop at all appointments of the reservation and check whether the
 			// current appointment is checked
-			Allocatable currentAllocatable = selectedAllocatableActionHandler.currentAllocatable;
-            for (int i = 0; i < allAppointments.length; i++) {
+			for (int i = 0; i < allAppointments.length; i++) {
 				if (list.isItemChecked(i)) {
 					// If item is checked, check whether the user is allowed to
 					// allocate the resource
 					Appointment appointment = allAppointments[i];
-                    Date today = getFacade().today();
-                    User user;
-                    try {
-                        user = getFacade().getUser();
-                    } catch (RaplaException e) {
-                        throw new RuntimeException(e.getMessage(), e);
-                    }
-                    if (currentAllocatable.canAllocate(user, appointment.getStart(), appointment.getMaxEnd(),today))
-                    {
+					if (allowed[i]) {
 						// User is allowed to allocate resource
 						restrictedAppointments.add(appointment);
 					} else {
@@ -506,6 +611,15 @@ public class AllocatableDetailsActivity extends BaseActivity {
 						currentAllocatable,
 						null);
 			}
+			setSelectedReservationModified();
+
+			// Check double bookings, the server decides whether they are
+			// allowed, so only warn the user
+			List<Appointment> conflicts = null;
+			if (conflictDetector != null) {
+				conflicts = conflictDetector.getConflicts(currentAllocatable,
+						restrictedAppointmentArray, reservation);
+			}
 
 			// Check missing permission
 			if (rejectedAppointments.size() == allAppointments.length) {
@@ -520,10 +634,121 @@ public class AllocatableDetailsActivity extends BaseActivity {
 								rejectedAppointments.size(),
 								allAppointments.length), Toast.LENGTH_LONG)
 						.show();
+			} else if (conflicts != null && conflicts.size() > 0) {
+				Toast.makeText(
+						AllocatableDetailsActivity.this,
+						String.format(
+								getString(R.string.allocatable_conflicts_with_x_of_y_appointments),
+								currentAllocatable.getName(Locale.getDefault()),
+								conflicts.size(),
+								restrictedAppointmentArray.length),
+						Toast.LENGTH_LONG).show();
 			}
 
-			// ... and refresh list view
-			refreshListView();
+			// ... and refresh the list item of the allocatable
+			getListAdapter().update(currentAllocatable);
+		}
+	}
+
+	/**
+	 * SearchTextWatcher
+	 * 
+	 * This class searches as soon as the user stops typing for a moment
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private class SearchTextWatcher implements TextWatcher {
+
+		public void afterTextChanged(Editable s) {
+			searchHandler.removeCallbacks(searchRunnable);
+			searchHandler.postDelayed(searchRunnable, SEARCH_DELAY);
+		}
+
+		public void beforeTextChanged(CharSequence s, int start, int count,
+				int after) {
+		}
+
+		public void onTextChanged(CharSequence s, int start, int before,
+				int count) {
+		}
+	}
+
+	/**
+	 * This class sorts the allocatables of a type in the background. The
+	 * catalog keeps the sorted order, so this is fast unless the allocatables
+	 * have changed.
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class LoadAllocatablesTask extends
+			TaskScheduler.Task<SortedAllocatables> {
+
+		private RaplaConnection connection;
+		private String elementKey;
+
+		public LoadAllocatablesTask(RaplaConnection connection,
+				String elementKey) {
+			super(TaskScheduler.PRIORITY_USER, "LoadAllocatables");
+			this.connection = connection;
+			this.elementKey = elementKey;
+		}
+
+		@Override
+		protected SortedAllocatables doInBackground() throws RaplaException {
+			return this.connection.getAllocatableCatalog()
+					.getSortedAllocatables(this.elementKey,
+							Locale.getDefault());
+		}
+
+		@Override
+		protected void onSucceeded(Activity activity, SortedAllocatables result) {
+			((AllocatableDetailsActivity) activity).showAllocatables(result);
+		}
+
+		@Override
+		protected void onFailed(Activity activity, Exception e) {
+			ExceptionDialogFactory.getInstance()
+					.create(activity, R.string.exception_rapla_data_retrieval)
+					.show();
+		}
+	}
+
+	/**
+	 * This class loads the conflict detector in the background and hands it
+	 * to the list adapter. If loading fails, the list is shown without
+	 * conflicts and the server still rejects double bookings on save.
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class LoadConflictDetectorTask extends
+			TaskScheduler.Task<ConflictDetector> {
+
+		private RaplaConnection connection;
+		private String elementKey;
+		private Appointment[] appointments;
+
+		public LoadConflictDetectorTask(RaplaConnection connection,
+				String elementKey, Appointment[] appointments) {
+			super(TaskScheduler.PRIORITY_USER, "LoadConflictDetector");
+			this.connection = connection;
+			this.elementKey = elementKey;
+			this.appointments = appointments;
+		}
+
+		@Override
+		protected ConflictDetector doInBackground() throws RaplaException {
+			return this.connection.getConflictDetector(this.elementKey,
+					this.appointments);
+		}
+
+		@Override
+		protected void onSucceeded(Activity activity, ConflictDetector result) {
+			AllocatableDetailsActivity details = (AllocatableDetailsActivity) activity;
+			details.conflictDetector = result;
+			AllocatableAdapter adapter = details.getListAdapter();
+			if (adapter != null) {
+				adapter.setConflictDetector(result);
+			}
 		}
 	}
 
@@ -13,15 +13,21 @@
 
 package org.rapla.mobile.android.activity;
 
+import java.util.Map;
+
 import org.rapla.entities.domain.Allocatable;
-import org.rapla.entities.dynamictype.ClassificationFilter;
 import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
 import org.rapla.framework.RaplaException;
 import org.rapla.mobile.android.R;
+import org.rapla.mobile.android.os.TaskScheduler;
+import org.rapla.mobile.android.utility.RaplaConnection;
+import org.rapla.mobile.android.utility.cache.AllocatableCatalog;
+import org.rapla.mobile.android.utility.cache.Query;
 import org.rapla.mobile.android.utility.factory.ExceptionDialogFactory;
 import org.rapla.mobile.android.widget.adapter.AllocatableCategoryAdapter;
 
+import android.app.Activity;
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
@@ -40,6 +46,7 @@ public class AllocatableListActivity extends BaseActivity {
 
 	private ListView allocationListView;
 	private AllocatableCategoryAdapter adapter;
+	private TaskScheduler.Task<?> loadingTask;
 
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -65,70 +72,88 @@ public class AllocatableListActivity extends BaseActivity {
 
 	/**
 	 * This method refreshes the list view by retrieving the latest data from
-	 * the selected reservation
+	 * the selected reservation. The list items are built in the background.
 	 */
 	public void refreshListView() {
-		try {
-			AllocatableCategoryAdapter.AllocatableCategoryListItem[] listItems = null;
-
-			// get resources
-			DynamicType[] resources = getSelectedAllocatableCategory(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESOURCE);
-			DynamicType[] persons = getSelectedAllocatableCategory(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_PERSON);
-
-			// Initialize list item array
-			listItems = new AllocatableCategoryAdapter.AllocatableCategoryListItem[resources.length
-					+ persons.length];
-
-			// Buffer selected allocatables
-			Allocatable[] selectedAllocatables = this.getSelectedReservation()
-					.getAllocatables();
-
-			// Fill list item array initially
-			int offset = 0;
-			int numSelectedAllocatables = 0;
-			int numAllocatables = 0;
-			DynamicType dt;
-			AllocatableCategoryAdapter.AllocatableCategoryListItem listItem;
-			for (int j = 0; j < listItems.length; j++) {
-				// Get dyanmic type
-				if (j < resources.length) {
-					dt = resources[j];
-				} else {
-					offset = resources.length;
-					dt = persons[j - offset];
-				}
-
-				// Get number of allocatables
-				numAllocatables = this.getFacade().getAllocatables(
-						new ClassificationFilter[] { dt
-								.newClassificationFilter() }).length;
-
-				// Get number of selected allocatables
-				numSelectedAllocatables = 0;
-				for (int k = 0; k < selectedAllocatables.length; k++) {
-					if (selectedAllocatables[k].getClassification().getType()
-							.isIdentical(dt))
-						numSelectedAllocatables++;
-				}
-
-				// Create list item
-				listItem = new AllocatableCategoryAdapter.AllocatableCategoryListItem(
-						dt);
-				listItem.setNumAllocatables(numAllocatables);
-				listItem.setNumSelectedAllocatables(numSelectedAllocatables);
-				listItems[j] = listItem;
-			}
+		if (this.loadingTask != null) {
+			this.loadingTask.cancel();
+		}
+		this.loadingTask = this.schedule(new LoadListItemsTask(this
+				.getConnection(), this.getSelectedReservation()
+				.getAllocatables()));
+	}
 
-			// Set list adapter
-			this.adapter = new AllocatableCategoryAdapter(this, listItems);
-			this.allocationListView.setAdapter(this.adapter);
+	/**
+	 * Show list items in the list view
+	 * 
+	 * @param listItems
+	 *            One list item per allocatable category
+	 */
+	public void showListItems(
+			AllocatableCategoryAdapter.AllocatableCategoryListItem[] listItems) {
+		this.adapter = new AllocatableCategoryAdapter(this, listItems);
+		this.allocationListView.setAdapter(this.adapter);
+	}
 
-		} catch (RaplaException e) {
-			ExceptionDialogFactory.getInstance().create(this,
-					R.string.exception_internal_error);
-			finish();
-		}
+	/**
+	 * Build one list item per allocatable category
+	 * 
+	 * @param connection
+	 *            Connection to retrieve the categories from
+	 * @param selected
+	 *            Allocatables of the selected reservation
+	 * @return AllocatableCategoryListItem[]
+	 * @throws RaplaException
+	 */
+	public static AllocatableCategoryAdapter.AllocatableCategoryListItem[] createListItems(
+			RaplaConnection connection, Allocatable[] selected)
+			throws RaplaException {
+		AllocatableCategoryAdapter.AllocatableCategoryListItem[] listItems = null;
+
+		// get resources
+		DynamicType[] resources = connection.getQueryCache().get(
+				Query.dynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESOURCE));
+		DynamicType[] persons = connection.getQueryCache().get(
+				Query.dynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_PERSON));
+
+		// Initialize list item array
+		listItems = new AllocatableCategoryAdapter.AllocatableCategoryListItem[resources.length
+				+ persons.length];
+
+		// Count selected allocatables per type
+		Map<String, Integer> selectedCounts = AllocatableCatalog
+				.countByType(selected);
+
+		// All allocatables grouped by type
+		AllocatableCatalog catalog = connection.getAllocatableCatalog();
+
+		// Fill list item array initially
+		int offset = 0;
+		Integer numSelectedAllocatables;
+		DynamicType dt;
+		AllocatableCategoryAdapter.AllocatableCategoryListItem listItem;
+		for (int j = 0; j < listItems.length; j++) {
+			// Get dyanmic type
+			if (j < resources.length) {
+				dt = resources[j];
+			} else {
+				offset = resources.length;
+				dt = persons[j - offset];
+			}
 
+			// Get number of selected allocatables
+			numSelectedAllocatables = selectedCounts.get(dt
+					.getElementKey());
+
+			// Create list item
+			listItem = new AllocatableCategoryAdapter.AllocatableCategoryListItem(
+					dt);
+			listItem.setNumAllocatables(catalog.getCount(dt.getElementKey()));
+			listItem.setNumSelectedAllocatables(numSelectedAllocatables == null ? 0
+					: numSelectedAllocatables);
+			listItems[j] = listItem;
+		}
+		return listItems;
 	}
 
 	/**
@@ -142,7 +167,7 @@ public class AllocatableListActivity extends BaseActivity {
 	 */
 	public DynamicType[] getSelectedAllocatableCategory(String type)
 			throws RaplaException {
-		return this.getFacade().getDynamicTypes(type);
+		return this.getQueryCache().get(Query.dynamicTypes(type));
 	}
 
 	/**
@@ -173,4 +198,45 @@ public class AllocatableListActivity extends BaseActivity {
 
 	}
 
+	/**
+	 * LoadListItemsTask
+	 * 
+	 * This class builds the list items in the background, as counting the
+	 * allocatables may require loading them first.
+	 * 
+	 */
+	private static class LoadListItemsTask
+			extends
+			TaskScheduler.Task<AllocatableCategoryAdapter.AllocatableCategoryListItem[]> {
+
+		private RaplaConnection connection;
+		private Allocatable[] selected;
+
+		public LoadListItemsTask(RaplaConnection connection,
+				Allocatable[] selected) {
+			super(TaskScheduler.PRIORITY_USER, "LoadAllocatableCategories");
+			this.connection = connection;
+			this.selected = selected;
+		}
+
+		@Override
+		protected AllocatableCategoryAdapter.AllocatableCategoryListItem[] doInBackground()
+				throws RaplaException {
+			return createListItems(this.connection, this.selected);
+		}
+
+		@Override
+		protected void onSucceeded(Activity activity,
+				AllocatableCategoryAdapter.AllocatableCategoryListItem[] result) {
+			((AllocatableListActivity) activity).showListItems(result);
+		}
+
+		@Override
+		protected void onFailed(Activity activity, Exception e) {
+			ExceptionDialogFactory.getInstance().create(activity,
+					R.string.exception_internal_error);
+			activity.finish();
+		}
+	}
+
 }
@@ -20,9 +20,10 @@ import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.Repeating;
 import org.rapla.entities.domain.RepeatingType;
 import org.rapla.entities.domain.internal.AppointmentImpl;
-import org.rapla.framework.RaplaException;
 import org.rapla.framework.RaplaLocale;
 import org.rapla.mobile.android.R;
+import org.rapla.mobile.android.utility.occurrence.OccurrenceEngine;
+import org.rapla.mobile.android.utility.occurrence.Occurrences;
 import org.rapla.mobile.android.widget.adapter.MySpinnerAdapter;
 
 import android.app.DatePickerDialog;
@@ -81,6 +82,9 @@ public class AppointmentDetailsActivity extends BaseActivity {
 
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
+		if (this.isFinishing()) {
+			return;
+		}
 
 		// Set content and custom title
 		this.setContentView(R.layout.appointment_details);
@@ -94,14 +98,10 @@ public class AppointmentDetailsActivity extends BaseActivity {
 		ALLDAY = new Time();
 		ALLDAY.set(0, 0, 0, 0, 0, 0);
 
+		// New appointments are created and added by the appointment list
 		int id = getIntent().getExtras().getInt(INTENT_INT_APPOINTMENT_ID);
-		if (id == -1) {
-			appointment = (AppointmentImpl) createAppointment();
-			this.getSelectedReservation().addAppointment( appointment);
-		} else {
-			Appointment[] app = this.getSelectedReservation().getAppointments();
-			appointment = (AppointmentImpl) app[id];
-		}
+		Appointment[] app = this.getSelectedReservation().getAppointments();
+		appointment = (AppointmentImpl) app[id];
 
 		getSummary(appointment);
 
@@ -114,23 +114,13 @@ public class AppointmentDetailsActivity extends BaseActivity {
 		displayView();
 	}
 
-	public Appointment createAppointment() {
-		Appointment emptyAppointment = null;
-		try {
-			emptyAppointment = getFacade().newAppointment(appointmentDate,
-					endRepeatingDate);
-			emptyAppointment.setRepeatingEnabled(false);
-		} catch (RaplaException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		return emptyAppointment;
-
-	}
-
 	private void storeAppointmentData() {
 		// TODO implement function to store changes that have been made to
 		// appointment
+		// Keep the occurrences before the change to find out whether the
+		// series has changed at all
+		Occurrences before = OccurrenceEngine.getInstance().get(appointment);
+
 		if (repeatingType == 0) {
 			appointment.setRepeatingEnabled(false);
 		} else {
@@ -159,6 +149,12 @@ public class AppointmentDetailsActivity extends BaseActivity {
 		appointment.getEnd().setTime(appointmentDate.getTime());
 		appointment.getEnd().setMinutes(endTime.minute);
 		appointment.getEnd().setHours(endTime.hour);
+
+		// Series has changed, drop its occurrences
+		OccurrenceEngine.getInstance().invalidate(appointment);
+		if (!before.matches(appointment)) {
+			this.setSelectedReservationModified();
+		}
 //
 //		try {
 //			getFacade().store(appointment);
@@ -13,12 +13,19 @@
 
 package org.rapla.mobile.android.activity;
 
+import java.util.Arrays;
+import java.util.Date;
+
 import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.AppointmentFormater;
+import org.rapla.framework.RaplaException;
 import org.rapla.mobile.android.R;
+import org.rapla.mobile.android.os.TaskScheduler;
+import org.rapla.mobile.android.utility.RaplaConnection;
 import org.rapla.mobile.android.utility.factory.ExceptionDialogFactory;
 import org.rapla.mobile.android.widget.adapter.AppointmentAdapter;
 
+import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.DialogInterface;
@@ -146,9 +153,8 @@ public class AppointmentListActivity extends BaseActivity {
 	public boolean onOptionsItemSelected(MenuItem item) {
 		switch (item.getItemId()) {
 		case R.id.appointment_new:
-			Intent action = new Intent(this, AppointmentDetailsActivity.class);
-			action.putExtra(AppointmentDetailsActivity.INTENT_INT_APPOINTMENT_ID, -1);
-			this.startActivity(action);
+			// Creating the appointment may need the server for its id
+			this.schedule(new CreateAppointmentTask(this.getConnection()));
 			break;
 		default:
 			// Unknown command, return false as it can't be handled by this
@@ -188,6 +194,25 @@ public class AppointmentListActivity extends BaseActivity {
 
 	}
 
+	/**
+	 * Add a new appointment to the selected reservation and show it for
+	 * editing
+	 * 
+	 * @param appointment
+	 *            New appointment
+	 */
+	public void addAppointment(Appointment appointment) {
+		this.getSelectedReservation().addAppointment(appointment);
+		this.setSelectedReservationModified();
+		this.refreshListView();
+
+		Intent action = new Intent(this, AppointmentDetailsActivity.class);
+		action.putExtra(AppointmentDetailsActivity.INTENT_INT_APPOINTMENT_ID,
+				Arrays.asList(this.getSelectedReservation().getAppointments())
+						.indexOf(appointment));
+		this.startActivity(action);
+	}
+
 	/**
 	 * The list adapter cannot be kept as an instance attribute as for some
 	 * reason, as soon as passing the reference to the async task for loading
@@ -275,6 +300,7 @@ public class AppointmentListActivity extends BaseActivity {
 			// Remove appointment from current reservation
 			AppointmentListActivity.this.getSelectedReservation()
 					.removeAppointment(this.currentAppointment);
+			setSelectedReservationModified();
 
 			refreshListView();
 
@@ -284,4 +310,42 @@ public class AppointmentListActivity extends BaseActivity {
 					Toast.LENGTH_LONG).show();
 		}
 	}
+
+	/**
+	 * This class creates a new appointment without repeating in the
+	 * background, as creating entities may ask the server for ids.
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class CreateAppointmentTask extends
+			TaskScheduler.Task<Appointment> {
+
+		private RaplaConnection connection;
+
+		public CreateAppointmentTask(RaplaConnection connection) {
+			super(TaskScheduler.PRIORITY_USER, "CreateAppointment");
+			this.connection = connection;
+		}
+
+		@Override
+		protected Appointment doInBackground() throws RaplaException {
+			Date now = new Date();
+			Appointment appointment = this.connection.getFacade()
+					.newAppointment(now, now);
+			appointment.setRepeatingEnabled(false);
+			return appointment;
+		}
+
+		@Override
+		protected void onSucceeded(Activity activity, Appointment result) {
+			((AppointmentListActivity) activity).addAppointment(result);
+		}
+
+		@Override
+		protected void onFailed(Activity activity, Exception e) {
+			ExceptionDialogFactory.getInstance()
+					.create(activity, R.string.exception_internal_error)
+					.show();
+		}
+	}
 }
@@ -13,17 +13,31 @@
 
 package org.rapla.mobile.android.activity;
 
+import java.util.UUID;
+
+import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.AppointmentFormater;
+import org.rapla.entities.domain.Reservation;
 import org.rapla.entities.domain.internal.ReservationImpl;
 import org.rapla.facade.ClientFacade;
+import org.rapla.framework.RaplaException;
 import org.rapla.framework.RaplaLocale;
 import org.rapla.mobile.android.RaplaMobileApplication;
 import org.rapla.mobile.android.RuntimeStorage;
+import org.rapla.mobile.android.os.TaskScheduler;
 import org.rapla.mobile.android.utility.RaplaConnection;
+import org.rapla.mobile.android.utility.cache.AllocatableCatalog;
+import org.rapla.mobile.android.utility.cache.QueryCache;
+import org.rapla.mobile.android.utility.conflict.ConflictDetector;
+import org.rapla.mobile.android.utility.permission.PermissionEvaluator;
+import org.rapla.mobile.android.utility.sync.Outbox;
+import org.rapla.mobile.android.utility.sync.SyncEngine;
 
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.os.Bundle;
 import android.view.View;
 import android.view.Window;
@@ -37,17 +51,100 @@ import android.widget.TextView;
  * 
  * @author Maximilian Lenkeit <dev@lenki.com>
  */
-public abstract class BaseActivity extends Activity {
+public abstract class BaseActivity extends Activity implements
+		TaskScheduler.Owner {
+
+	private static final String STATE_TASK_OWNER_KEY = "task_owner_key";
+
+	private SyncEngine syncEngine;
+	private String taskOwnerKey;
 
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 
+		// Take over the tasks of the instance this one replaces
+		if (savedInstanceState != null) {
+			this.taskOwnerKey = savedInstanceState
+					.getString(STATE_TASK_OWNER_KEY);
+		}
+		if (this.taskOwnerKey == null) {
+			this.taskOwnerKey = this.getClass().getName() + ":"
+					+ UUID.randomUUID();
+		}
+
+		// An activity recreated without connection outlived its process, so
+		// let the connection be restored before continuing with it. Check
+		// isFinishing() in onCreate() of subclasses before using the
+		// connection.
+		if (savedInstanceState != null
+				&& this.requiresConnection()
+				&& !this.getCustomApplication().storageHas(
+						RaplaConnection.IDENTIFIER)) {
+			Intent intent = new Intent(this, RestoreActivity.class);
+			intent.putExtra(RestoreActivity.INTENT_PARCELABLE_TARGET,
+					this.getIntent());
+			this.startActivity(intent);
+			this.finish();
+		}
+
 		// Request window feature to enable custom title bar
 		this.requestWindowFeature(Window.FEATURE_CUSTOM_TITLE);
 
 	}
 
+	@Override
+	protected void onResume() {
+		super.onResume();
+
+		// Keep data up to date while the app is in the foreground
+		RaplaConnection conn = (RaplaConnection) this.getCustomApplication()
+				.storageGet(RaplaConnection.IDENTIFIER);
+		if (conn != null) {
+			this.syncEngine = conn.getSyncEngine();
+			this.syncEngine.resume();
+		}
+
+		// Receive the results of tasks queued by a previous instance
+		TaskScheduler.getInstance().attach(this);
+	}
+
+	@Override
+	protected void onPause() {
+		super.onPause();
+		TaskScheduler.getInstance().detach(this);
+
+		// The process may be killed from now on
+		this.getCustomApplication().saveSnapshot();
+
+		// Pause the engine resumed by this activity, even if the connection
+		// has been replaced in the meantime
+		if (this.syncEngine != null) {
+			this.syncEngine.pause();
+			this.syncEngine = null;
+		}
+	}
+
+	@Override
+	protected void onSaveInstanceState(Bundle outState) {
+		super.onSaveInstanceState(outState);
+		outState.putString(STATE_TASK_OWNER_KEY, this.taskOwnerKey);
+	}
+
+	/**
+	 * @return Key of this activity's tasks, kept while it is recreated
+	 */
+	public String getTaskOwnerKey() {
+		return this.taskOwnerKey;
+	}
+
+	/**
+	 * @return True if the activity can't be shown without connection
+	 */
+	protected boolean requiresConnection() {
+		return true;
+	}
+
 	/**
 	 * Set title in title bar (prefix by 'Rapla')
 	 * 
@@ -102,7 +199,72 @@ public abstract class BaseActivity extends Activity {
 		return getConnection().getFacade();
 	}
 
-    private RaplaConnection getConnection() {
+	/**
+	 * Get query cache
+	 * 
+	 * @return Cache for query results shared across activities
+	 */
+	public QueryCache getQueryCache() {
+		return getConnection().getQueryCache();
+	}
+
+	/**
+	 * Get allocatable catalog
+	 * 
+	 * @return All allocatables grouped by dynamic type
+	 * @throws RaplaException
+	 */
+	public AllocatableCatalog getAllocatableCatalog() throws RaplaException {
+		return getConnection().getAllocatableCatalog();
+	}
+
+	/**
+	 * Get conflict detector
+	 * 
+	 * @param elementKey
+	 *            Element key of the dynamic type of the allocatables
+	 * @param appointments
+	 *            Appointments to be checked
+	 * @return Conflict detector for the allocatables within the time range
+	 *         of the appointments
+	 * @throws RaplaException
+	 */
+	public ConflictDetector getConflictDetector(String elementKey,
+			Appointment[] appointments) throws RaplaException {
+		return getConnection().getConflictDetector(elementKey, appointments);
+	}
+
+	/**
+	 * Get permission evaluator
+	 * 
+	 * @return Evaluator of the allocation permissions of the logged in user
+	 */
+	public PermissionEvaluator getPermissionEvaluator() {
+		return getConnection().getPermissionEvaluator();
+	}
+
+	/**
+	 * Get outbox
+	 * 
+	 * @return Outbox submitting store and remove operations in the background
+	 */
+	public Outbox getOutbox() {
+		return getConnection().getOutbox();
+	}
+
+	/**
+	 * Queue task owned by this activity. Its result is delivered to the
+	 * resumed instance of this activity.
+	 * 
+	 * @param task
+	 *            Task to be run
+	 * @return The given task
+	 */
+	protected <T> TaskScheduler.Task<T> schedule(TaskScheduler.Task<T> task) {
+		return TaskScheduler.getInstance().execute(this, task);
+	}
+
+    protected RaplaConnection getConnection() {
         RaplaConnection storageGet = (RaplaConnection) this.getCustomApplication().storageGet(
 				RaplaConnection.IDENTIFIER);
         if ( storageGet == null)
@@ -124,6 +286,19 @@ public abstract class BaseActivity extends Activity {
 	}
 	
 
+	/**
+	 * This method checks if an Internet connection is available
+	 * 
+	 * @return True if there's an active network, false otherwise
+	 */
+	protected boolean isNetworkAvailable() {
+		ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+
+		NetworkInfo activeNetworkInfo = connectivityManager
+				.getActiveNetworkInfo();
+		return activeNetworkInfo != null;
+	}
+
 	/**
 	 * Get the selected reservation that all other activities work with
 	 * 
@@ -143,6 +318,65 @@ public abstract class BaseActivity extends Activity {
 	public void setSelectedReservation(ReservationImpl reservation) {
 		this.getCustomApplication().storageSet(
 				RuntimeStorage.IDENTIFIER_SELECTED_RESERVATION, reservation);
+		this.getCustomApplication().storageSet(
+				RuntimeStorage.IDENTIFIER_SELECTED_RESERVATION_MODIFIED,
+				Boolean.FALSE);
+		this.getCustomApplication().storageSet(
+				RuntimeStorage.IDENTIFIER_SELECTED_RESERVATION_ORIGINAL, null);
+	}
+
+	/**
+	 * Select a working copy of a stored reservation for editing. The stored
+	 * reservation is kept as snapshot for discarding the changes.
+	 * 
+	 * @param reservation
+	 *            Stored reservation
+	 * @throws RaplaException
+	 */
+	public void editReservation(Reservation reservation) throws RaplaException {
+		this.setSelectedReservation((ReservationImpl) this.getFacade().edit(
+				reservation));
+		this.getCustomApplication().storageSet(
+				RuntimeStorage.IDENTIFIER_SELECTED_RESERVATION_ORIGINAL,
+				reservation);
+	}
+
+	/**
+	 * Throw away all changes to the selected reservation. Changes are only
+	 * made to the working copy, so a new copy of the stored reservation
+	 * replaces it, which needs neither the server nor a refresh of other
+	 * data. A new reservation is dropped.
+	 * 
+	 * @throws RaplaException
+	 */
+	public void discardSelectedReservationChanges() throws RaplaException {
+		Reservation original = (Reservation) this.getCustomApplication()
+				.storageGet(
+						RuntimeStorage.IDENTIFIER_SELECTED_RESERVATION_ORIGINAL);
+		if (original != null) {
+			this.editReservation(original);
+		} else {
+			this.setSelectedReservation(null);
+		}
+	}
+
+	/**
+	 * Mark the selected reservation as modified, so that it is stored when
+	 * the user saves
+	 */
+	public void setSelectedReservationModified() {
+		this.getCustomApplication().storageSet(
+				RuntimeStorage.IDENTIFIER_SELECTED_RESERVATION_MODIFIED,
+				Boolean.TRUE);
+	}
+
+	/**
+	 * @return True if the selected reservation has been modified since it
+	 *         was selected
+	 */
+	public boolean isSelectedReservationModified() {
+		return Boolean.TRUE.equals(this.getCustomApplication().storageGet(
+				RuntimeStorage.IDENTIFIER_SELECTED_RESERVATION_MODIFIED));
 	}
 
 	/**
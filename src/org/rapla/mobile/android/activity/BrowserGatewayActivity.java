@@ -21,8 +21,10 @@ import org.rapla.mobile.android.RaplaMobileException;
 import org.rapla.mobile.android.RaplaMobileLoginException;
 import org.rapla.mobile.android.browser.integration.BrowserIntentHandler;
 import org.rapla.mobile.android.browser.integration.ReservationEditIntentHandler;
+import org.rapla.mobile.android.os.OutboxNotifier;
 import org.rapla.mobile.android.utility.RaplaConnection;
 import org.rapla.mobile.android.utility.factory.ExceptionDialogFactory;
+import org.rapla.mobile.android.utility.store.LocalStore;
 
 import android.content.Intent;
 import android.net.Uri;
@@ -135,9 +137,13 @@ public class BrowserGatewayActivity extends BaseActivity {
 					PreferencesHandler.getInstance());
 			conn.login();
 
-			// Store connection instance in runtime storage
-			this.getCustomApplication().storageSet(RaplaConnection.IDENTIFIER,
-					conn);
+			// Store connection instance in runtime storage, the previous
+			// connection is closed before this one starts reading
+			this.getCustomApplication().setConnection(conn);
+			conn.prefetch();
+			conn.getOutbox().setListener(
+					new OutboxNotifier(this.getApplicationContext()));
+			conn.attachLocalStore(LocalStore.getInstance(this));
 
 		} catch (RaplaMobileLoginException e) {
 
@@ -22,14 +22,18 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import org.rapla.components.util.DateTools;
 import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.Reservation;
-import org.rapla.entities.domain.internal.ReservationImpl;
 import org.rapla.framework.RaplaException;
 import org.rapla.mobile.android.R;
 import org.rapla.mobile.android.RaplaMobileApplication;
+import org.rapla.mobile.android.os.TaskScheduler;
 import org.rapla.mobile.android.utility.RaplaConnection;
+import org.rapla.mobile.android.utility.cache.Query;
+import org.rapla.mobile.android.utility.factory.ExceptionDialogFactory;
 
+import android.app.Activity;
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.ContextMenu;
@@ -42,7 +46,6 @@ import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
 import android.widget.ListView;
 import android.widget.SimpleAdapter;
-import android.widget.Toast;
 
 /**
  * This screen allows the user to show all reservations assigned to him.
@@ -91,31 +94,33 @@ public class DummyHomeActivity extends BaseActivity {
 			startActivity(i);
 
 		} else {
-			fillListViewWithDemoData();
+			// Read the reservations in the background
+			this.schedule(new LoadReservationsTask(this.getConnection()));
 		}
 
 	}
 
-	private void fillListViewWithDemoData() {
+	/**
+	 * Show the reservations of the user in the list view
+	 * 
+	 * @param reservations
+	 *            Upcoming reservations of the user
+	 */
+	public void fillListViewWithDemoData(Reservation[] reservations) {
 		list = new LinkedList<Map<String, ?>>();
 		SimpleDateFormat sdf = new SimpleDateFormat("dd.M.yyyy");
-		try {
-			res = getFacade().getReservations(getFacade().getUser(),
-					new Date(), null, null);
-			for (Reservation r : res) {
-				Appointment[] app = r.getAppointments();
-				List<Date> dateList = new ArrayList<Date>();
-				for (Appointment a : app) {
-					dateList.add(a.getStart());
-				}
-
-				Collections.sort(dateList);
-
-				list.add(createItem(r.getName(null).toString(),
-						sdf.format(dateList.get(0))));
+		res = reservations;
+		for (Reservation r : res) {
+			Appointment[] app = r.getAppointments();
+			List<Date> dateList = new ArrayList<Date>();
+			for (Appointment a : app) {
+				dateList.add(a.getStart());
 			}
-		} catch (RaplaException e) {
-			e.printStackTrace();
+
+			Collections.sort(dateList);
+
+			list.add(createItem(r.getName(null).toString(),
+					sdf.format(dateList.get(0))));
 		}
 
 		String[] from = { ITEM_TITLE, ITEM_DETAILS };
@@ -211,15 +216,7 @@ public class DummyHomeActivity extends BaseActivity {
 		switch (item.getItemId()) {
 		// User wants to delete the reservation
 		case 1:
-			try {
-				getFacade().remove(res[info.position]);
-			} catch (RaplaException e) {
-				Toast.makeText(
-						getBaseContext(),
-						res[info.position].getName(null) + " "
-								+ getString(R.string.remove_reservation_fail),
-						Toast.LENGTH_LONG).show();
-			}
+			getOutbox().remove(res[info.position]);
 			break;
 		}
 		return true;
@@ -250,8 +247,7 @@ public class DummyHomeActivity extends BaseActivity {
 		public void onItemClick(AdapterView<?> arg0, View arg1, int arg2,
 				long arg3) {
 			try {
-				setSelectedReservation((ReservationImpl) getFacade().edit(
-						res[arg2]));
+				editReservation(res[arg2]);
 			} catch (RaplaException e) {
 				e.printStackTrace();
 			}
@@ -261,4 +257,42 @@ public class DummyHomeActivity extends BaseActivity {
 
 	}
 
+	/**
+	 * This class reads the upcoming reservations of the user in the
+	 * background. The reservations from today on are read, so that the
+	 * result is shared through the query cache until it expires or a
+	 * reservation changes.
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class LoadReservationsTask extends
+			TaskScheduler.Task<Reservation[]> {
+
+		private RaplaConnection connection;
+
+		public LoadReservationsTask(RaplaConnection connection) {
+			super(TaskScheduler.PRIORITY_USER, "LoadReservations");
+			this.connection = connection;
+		}
+
+		@Override
+		protected Reservation[] doInBackground() throws RaplaException {
+			return this.connection.getQueryCache().get(
+					Query.reservations(this.connection.getFacade().getUser(),
+							DateTools.cutDate(new Date())));
+		}
+
+		@Override
+		protected void onSucceeded(Activity activity, Reservation[] result) {
+			((DummyHomeActivity) activity).fillListViewWithDemoData(result);
+		}
+
+		@Override
+		protected void onFailed(Activity activity, Exception e) {
+			ExceptionDialogFactory.getInstance()
+					.create(activity, R.string.exception_rapla_data_retrieval)
+					.show();
+		}
+	}
+
 }
@@ -20,17 +20,22 @@ import org.rapla.components.util.DateTools;
 import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.internal.ReservationImpl;
+import org.rapla.facade.ClientFacade;
 import org.rapla.entities.dynamictype.Attribute;
 import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
-import org.rapla.facade.ClientFacade;
 import org.rapla.framework.RaplaException;
 import org.rapla.mobile.android.R;
 import org.rapla.mobile.android.RaplaMobileApplication;
+import org.rapla.mobile.android.os.TaskScheduler;
+import org.rapla.mobile.android.utility.RaplaConnection;
+import org.rapla.mobile.android.utility.cache.Query;
 import org.rapla.mobile.android.utility.factory.ExceptionDialogFactory;
-import org.rapla.mobile.android.utility.factory.RaplaAttributeWidgetFactory;
+import org.rapla.mobile.android.utility.sync.Outbox;
 import org.rapla.mobile.android.widget.DynamicListItem;
 import org.rapla.mobile.android.widget.DynamicListItemViewWrapper;
+import org.rapla.mobile.android.widget.RaplaAttribute;
+import org.rapla.mobile.android.widget.RaplaAttributeWidgetPool;
 import org.rapla.mobile.android.widget.RaplaReservationAttribute;
 import org.rapla.mobile.android.widget.adapter.DynamicListItemAdapter;
 import org.rapla.mobile.android.widget.adapter.RaplaDynamicTypeAdapter;
@@ -77,9 +82,17 @@ public class EventDetailsActivity extends BaseActivity {
 	private DynamicType[] eventTypes = null;
 	private ListView dynamicAttributesListView;
 	private RaplaDynamicTypeAdapter eventTypesAdapter;
+	private RaplaAttributeWidgetPool attributeWidgetPool = new RaplaAttributeWidgetPool(
+			this);
+	private DynamicListItem allocationsItem;
+	private DynamicListItem appointmentsItem;
+	private TaskScheduler.Task<?> creatingTask;
 
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
+		if (this.isFinishing()) {
+			return;
+		}
 
 		// Set content and custom title
 		this.setContentView(R.layout.eventdetails);
@@ -109,6 +122,11 @@ public class EventDetailsActivity extends BaseActivity {
 		appointmentsText = appointments.getText().toString();
 		this.appointments.setOnClickListener(listener);
 
+		// Wrap buttons once for the list of dynamic attributes
+		this.allocationsItem = new DynamicListItemViewWrapper(this.allocations);
+		this.appointmentsItem = new DynamicListItemViewWrapper(
+				this.appointments);
+
 		eventtype = (Spinner) findViewById(R.id.eventtype);
 
 		// Get reference of list view for dynamic attributes
@@ -124,43 +142,36 @@ public class EventDetailsActivity extends BaseActivity {
 
 		reservation = this.getSelectedReservation();
 
-		// check if a new reservation is created
+		// check if a new reservation is created, which may need the server
+		// for its id and is therefore created in the background
 		if (reservation == null) {
-			try {
-				reservation = (ReservationImpl) getFacade().newReservation();
-				Date startDate = getFacade().today();
-                Date endDate = new Date( startDate.getTime() + DateTools.MILLISECONDS_PER_HOUR);
-                Appointment appointment = getFacade().newAppointment( startDate, endDate);
-                reservation.addAppointment( appointment);
-				this.setSelectedReservation(reservation);
-
-			} catch (RaplaException e) {
-				// Error! Referenced object [] not found in store. It was
-				// probably recently removed.
-				// ReferenceNotFoundExcpetion
-				ExceptionDialogFactory
-						.getInstance()
-						.create(this, R.string.exception_creation_event_failed,
-								UserCalendarListActivity.class).show();
+			if (this.creatingTask == null) {
+				this.creatingTask = this.schedule(new CreateReservationTask(
+						this.getConnection()));
 			}
+		} else {
+			this.showReservation();
 		}
+	}
 
-		if (this.reservation != null) {
-			// Update list view with dynamic attributes according to event type
-			this.refreshDynamicAttributes(reservation.getClassification()
-					.getType());
+	/**
+	 * Show the selected reservation in the form
+	 */
+	public void showReservation() {
+		// Update list view with dynamic attributes according to event type
+		this.refreshDynamicAttributes(reservation.getClassification()
+				.getType());
 
-			// get the current event type name and preselect it on the spinner
-			// ui
-			// (drop-down element for event types)
-			setSelectedEventType(reservation.getClassification().getType());
+		// get the current event type name and preselect it on the spinner
+		// ui
+		// (drop-down element for event types)
+		setSelectedEventType(reservation.getClassification().getType());
 
-			// Update allocations button with hint
-			countMarkedAllocations(allocations);
+		// Update allocations button with hint
+		countMarkedAllocations(allocations);
 
-			// Update appointment button with hint
-			countMarkedReservations(appointments);
-		}
+		// Update appointment button with hint
+		countMarkedReservations(appointments);
 	}
 
 	@Override
@@ -209,21 +220,20 @@ public class EventDetailsActivity extends BaseActivity {
 		// additional items (buttons)
 		DynamicListItem[] listItems = new DynamicListItem[lenListItems];
 
-		// Create view using factory based on attributes
+		// Get widgets from the pool, the widgets of a recently shown type
+		// are reused with their views
+		RaplaAttribute<?>[] widgets = this.attributeWidgetPool.obtain(dt);
 		for (int i = 0; i < lenDynamicAttributes; i++) {
-			listItems[i] = RaplaAttributeWidgetFactory.getInstance().create(
-					this, attributes[i]);
+			listItems[i] = widgets[i];
 			((RaplaReservationAttribute) listItems[i])
 					.bindReservation(this.reservation);
 		}
 
 		// Add allocation button
-		listItems[indexAllocationButton] = new DynamicListItemViewWrapper(
-				this.allocations);
+		listItems[indexAllocationButton] = this.allocationsItem;
 
 		// Add appointment button
-		listItems[indexAppointmentButton] = new DynamicListItemViewWrapper(
-				this.appointments);
+		listItems[indexAppointmentButton] = this.appointmentsItem;
 
 		// Fill fields with value from reservation if available
 		if (this.reservation != null) {
@@ -241,10 +251,15 @@ public class EventDetailsActivity extends BaseActivity {
 	}
 
 	public boolean onKeyDown(int keyCode, KeyEvent event) {
-		if (keyCode == KeyEvent.KEYCODE_BACK && event.getRepeatCount() == 0) {
+		if (keyCode == KeyEvent.KEYCODE_BACK && event.getRepeatCount() == 0
+				&& this.isLoaded()) {
 
-			// show dialog
-			onCreateDialog(DIALOG_CONFIRM_DISCARD).show();
+			// Only ask if there is anything to discard
+			this.storeValuesTemporarily();
+			if (this.isSelectedReservationModified()) {
+				showDialog(DIALOG_CONFIRM_DISCARD);
+				return true;
+			}
 		}
 
 		return super.onKeyDown(keyCode, event);
@@ -252,44 +267,53 @@ public class EventDetailsActivity extends BaseActivity {
 
 	/**
 	 * This method initializes the spinner ui (drop-down element for event
-	 * types). Therefore it reads all existing event type names from the facade
-	 * and adds every one to the spinner adapter.
+	 * types). Therefore it reads all existing event type names in the
+	 * background and adds every one to the spinner adapter.
 	 * 
 	 * @param eventtype
 	 *            stands for the spinner object
 	 */
 	public void initEventTypes(Spinner eventtype) {
-		// get all existing event types
-		try {
-			eventTypes = this.getFacade().getDynamicTypes(
-					DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION);
-
-			// Initialize adapter
-			this.eventTypesAdapter = new RaplaDynamicTypeAdapter(this,
-					android.R.layout.simple_spinner_item, android.R.id.text1,
-					eventTypes);
-			this.eventTypesAdapter
-					.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-
-			// Set adapter
-			this.eventtype.setAdapter(this.eventTypesAdapter);
-
-			// Register item selected listener, so that the list of dynamic
-			// attributes can be refreshed based on the dynamic type
-			this.eventtype
-					.setOnItemSelectedListener(new EventTypeItemSelectedListener(
-							this, this.eventTypesAdapter));
-
-		} catch (RaplaException e) {
+		this.schedule(new LoadEventTypesTask(this.getConnection()));
+	}
 
-			ExceptionDialogFactory
-					.getInstance()
-					.create(this,
-							R.string.exception_internal_error,
-							(RaplaMobileApplication.USE_DEMO_HOME ? DummyHomeActivity.class
-									: UserCalendarListActivity.class)).show();
+	/**
+	 * Show the event types in the spinner ui
+	 * 
+	 * @param types
+	 *            All existing event types
+	 */
+	public void showEventTypes(DynamicType[] types) {
+		eventTypes = types;
+
+		// Initialize adapter
+		this.eventTypesAdapter = new RaplaDynamicTypeAdapter(this,
+				android.R.layout.simple_spinner_item, android.R.id.text1,
+				eventTypes);
+		this.eventTypesAdapter
+				.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+
+		// Set adapter
+		this.eventtype.setAdapter(this.eventTypesAdapter);
+
+		// Register item selected listener, so that the list of dynamic
+		// attributes can be refreshed based on the dynamic type
+		this.eventtype
+				.setOnItemSelectedListener(new EventTypeItemSelectedListener(
+						this, this.eventTypesAdapter));
+
+		// Preselect the type of the reservation if already shown
+		if (this.reservation != null) {
+			setSelectedEventType(reservation.getClassification().getType());
 		}
+	}
 
+	/**
+	 * @return True once both the reservation and the event types are
+	 *         available
+	 */
+	private boolean isLoaded() {
+		return this.reservation != null && this.eventTypesAdapter != null;
 	}
 
 	/**
@@ -351,7 +375,9 @@ public class EventDetailsActivity extends BaseActivity {
 	}
 
 	/**
-	 * This method saves the changes on the reservation object temporarily
+	 * This method saves the changes on the reservation object temporarily.
+	 * The classification is only replaced if the event type has changed, and
+	 * only modified attributes are written.
 	 */
 	public void storeValuesTemporarily() {
 
@@ -359,11 +385,16 @@ public class EventDetailsActivity extends BaseActivity {
 		DynamicType dt = this.eventTypesAdapter.getItem(this.eventtype
 				.getSelectedItemPosition());
 
-		// Set reservation classification based on dynamic type
-		this.reservation.setClassification(dt.newClassification());
+		// Set reservation classification based on dynamic type, if changed
+		boolean typeChanged = !dt.equals(this.reservation.getClassification()
+				.getType());
+		if (typeChanged) {
+			this.reservation.setClassification(dt.newClassification());
+		}
 
-		// Walk the dynamic attributes in the list and push values to
-		// reservation
+		// Walk the dynamic attributes in the list and push modified values
+		// to reservation
+		boolean modified = typeChanged;
 		DynamicListItemAdapter adapter = (DynamicListItemAdapter) this.dynamicAttributesListView
 				.getAdapter();
 		int listItemsButtonOffset = 2;
@@ -371,8 +402,14 @@ public class EventDetailsActivity extends BaseActivity {
 		for (int i = 0; i < lenDynamicAttributes; i++) {
 			RaplaReservationAttribute attribute = (RaplaReservationAttribute) adapter
 					.getItem(i);
-			this.reservation = attribute
-					.putValueToReservation(this.reservation);
+			if (typeChanged || attribute.isModified()) {
+				this.reservation = attribute
+						.putValueToReservation(this.reservation);
+				modified = true;
+			}
+		}
+		if (modified) {
+			this.setSelectedReservationModified();
 		}
 	}
 
@@ -387,6 +424,14 @@ public class EventDetailsActivity extends BaseActivity {
 
 		public void onClick(View v) {
 
+			// Nothing to save while still loading
+			if (!isLoaded()) {
+				if (v.getId() == R.id.cancel) {
+					EventDetailsActivity.this.finish();
+				}
+				return;
+			}
+
 			// save the values temporarily before calling a new Activity
 			EventDetailsActivity.this.storeValuesTemporarily();
 
@@ -394,33 +439,35 @@ public class EventDetailsActivity extends BaseActivity {
 
 			case R.id.save:
 
-				// save reservation object permanently
-				try {
-					EventDetailsActivity.this.getFacade().store(reservation);
+				// Unchanged reservations need not be stored
+				if (!isSelectedReservationModified()) {
+					EventDetailsActivity.this.finish();
+					break;
+				}
 
-					// show success message
-					int duration = Toast.LENGTH_LONG;
-					CharSequence text = EventDetailsActivity.this
-							.getString(R.string.saveSuccessfully);
-					Toast toast = Toast.makeText(
-							EventDetailsActivity.this.getApplicationContext(),
-							text, duration);
-					toast.show();
+				// queue reservation object to be saved permanently
+				EventDetailsActivity.this.getOutbox().store(reservation);
 
-					// jump to HomeScreen
-					EventDetailsActivity.this.finish();
+				// show queued message, the outbox reports the outcome
+				int duration = Toast.LENGTH_LONG;
+				CharSequence text = EventDetailsActivity.this
+						.getString(R.string.save_queued);
+				Toast toast = Toast.makeText(
+						EventDetailsActivity.this.getApplicationContext(),
+						text, duration);
+				toast.show();
 
-				} catch (RaplaException e) {
-					ExceptionDialogFactory
-							.getInstance()
-							.create(EventDetailsActivity.this,
-									R.string.exception_internal_error).show();
-				}
+				// jump to HomeScreen
+				EventDetailsActivity.this.finish();
 				break;
 
 			case R.id.cancel:
 
-				// show dialog
+				// show dialog, unless there is nothing to discard
+				if (!isSelectedReservationModified()) {
+					EventDetailsActivity.this.finish();
+					break;
+				}
 				showDialog(DIALOG_CONFIRM_DISCARD);
 
 				break;
@@ -446,15 +493,17 @@ public class EventDetailsActivity extends BaseActivity {
 
 	/**
 	 * This method discards all temporarily changes on the reservation object.
+	 * Only the working copy of the reservation is replaced, so this works
+	 * offline and leaves all other data untouched.
 	 */
 	private void discardChanges() {
 		try {
-			EventDetailsActivity.this.getFacade().refresh();
+			this.discardSelectedReservationChanges();
 			finish();
 		} catch (RaplaException e) {
-			ExceptionDialogFactory.getInstance().create(
-					EventDetailsActivity.this,
-					R.string.exception_internal_error);
+			ExceptionDialogFactory.getInstance()
+					.create(EventDetailsActivity.this,
+							R.string.exception_internal_error).show();
 		}
 	}
 
@@ -500,9 +549,8 @@ public class EventDetailsActivity extends BaseActivity {
 		builder.setMessage(R.string.confirm_delete_reservation)
 				.setPositiveButton(
 						R.string.yes,
-						new DialogConfirmDeleteListener(this, this.getFacade(),
-								this.getSelectedReservation(), this,
-								ExceptionDialogFactory.getInstance()))
+						new DialogConfirmDeleteListener(this, this.getOutbox(),
+								this.getSelectedReservation(), this))
 				.setNegativeButton(R.string.cancel, null);
 		return builder.create();
 	}
@@ -575,6 +623,11 @@ public class EventDetailsActivity extends BaseActivity {
 		public void onItemSelected(AdapterView<?> arg0, View arg1,
 				int position, long arg3) {
 
+			// The form is filled once the reservation is available
+			if (this.activity.reservation == null) {
+				return;
+			}
+
 			// Get selected dynamic type
 			DynamicType dt = this.adapter.getItem(position);
 
@@ -598,53 +651,140 @@ public class EventDetailsActivity extends BaseActivity {
 			Dialog.OnClickListener {
 
 		private Context context;
-		private ClientFacade facade;
+		private Outbox outbox;
 		private ReservationImpl reservation;
 		private Activity activity;
-		private ExceptionDialogFactory exceptionDialogFactory;
 
 		/**
 		 * @param context
 		 *            Current context
-		 * @param facade
-		 *            Rapla client facade
+		 * @param outbox
+		 *            Outbox of the connection
 		 * @param reservation
 		 *            Reservation to be deleted
 		 * @param activity
 		 *            Activity to be finished
-		 * @param exceptionDialogFactory
 		 */
-		public DialogConfirmDeleteListener(Context context,
-				ClientFacade facade, ReservationImpl reservation,
-				Activity activity, ExceptionDialogFactory exceptionDialogFactory) {
+		public DialogConfirmDeleteListener(Context context, Outbox outbox,
+				ReservationImpl reservation, Activity activity) {
 			this.context = context;
-			this.facade = facade;
+			this.outbox = outbox;
 			this.reservation = reservation;
 			this.activity = activity;
-			this.exceptionDialogFactory = exceptionDialogFactory;
 		}
 
 		public void onClick(DialogInterface dialog, int button) {
 			// If confirmed
 			if (button == DialogInterface.BUTTON_POSITIVE) {
-				try {
-					// Try to delete reservation
-					this.facade.remove(this.reservation);
-					Toast.makeText(
-							this.context,
-							String.format(
-									this.context
-											.getString(R.string.remove_reservation_succeed),
-									this.reservation.getName(Locale
-											.getDefault())), Toast.LENGTH_LONG)
-							.show();
-					this.activity.finish();
-				} catch (RaplaException e) {
-					this.exceptionDialogFactory.create(this.context,
-							R.string.remove_reservation_fail).show();
-				}
+				// Queue reservation to be deleted, the outbox reports the
+				// outcome
+				this.outbox.remove(this.reservation);
+				Toast.makeText(
+						this.context,
+						String.format(
+								this.context
+										.getString(R.string.remove_reservation_queued),
+								this.reservation.getName(Locale.getDefault())),
+						Toast.LENGTH_LONG).show();
+				this.activity.finish();
 			}
 
 		}
 	}
+
+	/**
+	 * This class reads all existing event types in the background.
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class LoadEventTypesTask extends
+			TaskScheduler.Task<DynamicType[]> {
+
+		private RaplaConnection connection;
+
+		public LoadEventTypesTask(RaplaConnection connection) {
+			super(TaskScheduler.PRIORITY_USER, "LoadEventTypes");
+			this.connection = connection;
+		}
+
+		@Override
+		protected DynamicType[] doInBackground() throws RaplaException {
+			return this.connection
+					.getQueryCache()
+					.get(Query
+							.dynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION));
+		}
+
+		@Override
+		protected void onSucceeded(Activity activity, DynamicType[] result) {
+			((EventDetailsActivity) activity).showEventTypes(result);
+		}
+
+		@Override
+		protected void onFailed(Activity activity, Exception e) {
+			ExceptionDialogFactory
+					.getInstance()
+					.create(activity,
+							R.string.exception_internal_error,
+							(RaplaMobileApplication.USE_DEMO_HOME ? DummyHomeActivity.class
+									: UserCalendarListActivity.class)).show();
+		}
+	}
+
+	/**
+	 * This class creates a new reservation with one appointment of an hour
+	 * in the background, as creating entities may ask the server for ids.
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class CreateReservationTask extends
+			TaskScheduler.Task<ReservationImpl> {
+
+		private RaplaConnection connection;
+
+		public CreateReservationTask(RaplaConnection connection) {
+			super(TaskScheduler.PRIORITY_USER, "CreateReservation");
+			this.connection = connection;
+		}
+
+		@Override
+		protected ReservationImpl doInBackground() throws RaplaException {
+			ClientFacade facade = this.connection.getFacade();
+			ReservationImpl reservation = (ReservationImpl) facade
+					.newReservation();
+			Date startDate = facade.today();
+			Date endDate = new Date(startDate.getTime()
+					+ DateTools.MILLISECONDS_PER_HOUR);
+			reservation.addAppointment(facade.newAppointment(startDate,
+					endDate));
+			return reservation;
+		}
+
+		@Override
+		protected void onSucceeded(Activity activity, ReservationImpl result) {
+			EventDetailsActivity details = (EventDetailsActivity) activity;
+			details.creatingTask = null;
+
+			// A previous instance may have selected one already
+			if (details.getSelectedReservation() == null) {
+				details.setSelectedReservation(result);
+
+				// A new reservation is stored even if left unchanged
+				details.setSelectedReservationModified();
+			}
+			details.reservation = details.getSelectedReservation();
+			details.showReservation();
+		}
+
+		@Override
+		protected void onFailed(Activity activity, Exception e) {
+			// Error! Referenced object [] not found in store. It was
+			// probably recently removed.
+			// ReferenceNotFoundExcpetion
+			ExceptionDialogFactory
+					.getInstance()
+					.create(activity, R.string.exception_creation_event_failed,
+							UserCalendarListActivity.class).show();
+		}
+	}
 }
@@ -23,10 +23,7 @@ import org.rapla.mobile.android.utility.factory.LoadDataProgressDialogFactory;
 
 import android.app.AlertDialog;
 import android.app.Dialog;
-import android.content.Context;
 import android.content.DialogInterface;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.View;
@@ -192,18 +189,6 @@ public class LoginActivity extends BaseActivity {
 		toast.show();
 	}
 
-	/**
-	 * This method checks if an Internet connection is available
-	 * 
-	 */
-	private boolean isNetworkAvailable() {
-		ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-
-		NetworkInfo activeNetworkInfo = connectivityManager
-				.getActiveNetworkInfo();
-		return activeNetworkInfo != null;
-	}
-
 	/**
 	 * This method calls an asyn task to login to the Rapla Server
 	 * 
@@ -0,0 +1,121 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.activity;
+
+import org.rapla.mobile.android.R;
+import org.rapla.mobile.android.RaplaMobileApplication;
+import org.rapla.mobile.android.app.LoadDataProgressDialog;
+import org.rapla.mobile.android.os.TaskScheduler;
+import org.rapla.mobile.android.utility.factory.LoadDataProgressDialogFactory;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Bundle;
+
+/**
+ * This activity restores the connection of the last snapshot after the
+ * process has been killed in the background. The login runs on the task
+ * scheduler while a progress dialog is shown. Afterwards the activity shown
+ * before continues, or the user starts over at home if the connection can't
+ * be restored.
+ * 
+ * @see org.rapla.mobile.android.RaplaMobileApplication#restore()
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class RestoreActivity extends BaseActivity {
+
+	/**
+	 * Intent of the activity to continue with
+	 */
+	public static final String INTENT_PARCELABLE_TARGET = "target";
+
+	private LoadDataProgressDialog progressDialog;
+
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+
+		// Set content and custom title
+		this.setContentView(R.layout.main);
+		this.setTitle(R.string.titlebar_title_restore);
+
+		this.progressDialog = LoadDataProgressDialogFactory.getInstance()
+				.create(this);
+		this.progressDialog.show();
+
+		// A recreated instance receives the result of the running restore
+		if (savedInstanceState == null) {
+			this.schedule(new RestoreTask(this.getCustomApplication()));
+		}
+	}
+
+	@Override
+	protected void onDestroy() {
+		this.progressDialog.dismiss();
+		super.onDestroy();
+	}
+
+	@Override
+	protected boolean requiresConnection() {
+		return false;
+	}
+
+	/**
+	 * Continue with the activity shown before or start over at home
+	 * 
+	 * @param restored
+	 *            True if the connection has been restored
+	 */
+	private void proceed(boolean restored) {
+		Intent intent = restored ? (Intent) this.getIntent()
+				.getParcelableExtra(INTENT_PARCELABLE_TARGET) : null;
+		if (intent == null) {
+			intent = new Intent(this,
+					RaplaMobileApplication.USE_DEMO_HOME ? DummyHomeActivity.class
+							: UserCalendarListActivity.class);
+		}
+		this.startActivity(intent);
+		this.finish();
+	}
+
+	/**
+	 * This class logs in with the stored credentials in the background
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class RestoreTask extends TaskScheduler.Task<Boolean> {
+
+		private RaplaMobileApplication application;
+
+		public RestoreTask(RaplaMobileApplication application) {
+			super(TaskScheduler.PRIORITY_USER, "Restore");
+			this.application = application;
+		}
+
+		@Override
+		protected Boolean doInBackground() {
+			return this.application.restore();
+		}
+
+		@Override
+		protected void onSucceeded(Activity activity, Boolean result) {
+			((RestoreActivity) activity).proceed(result.booleanValue());
+		}
+
+		@Override
+		protected void onFailed(Activity activity, Exception e) {
+			((RestoreActivity) activity).proceed(false);
+		}
+	}
+}
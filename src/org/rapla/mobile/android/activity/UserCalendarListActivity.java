@@ -18,15 +18,22 @@ import java.util.List;
 
 import org.rapla.entities.configuration.CalendarModelConfiguration;
 import org.rapla.entities.configuration.RaplaMap;
-import org.rapla.facade.QueryModule;
 import org.rapla.mobile.android.PreferencesHandler;
 import org.rapla.mobile.android.R;
+import org.rapla.mobile.android.RaplaMobileException;
+import org.rapla.mobile.android.RaplaMobileLoginException;
+import org.rapla.mobile.android.os.ConnectToServerAsyncTask;
+import org.rapla.mobile.android.os.TaskScheduler;
 import org.rapla.mobile.android.utility.MobileCalendarUrlBuilder;
 import org.rapla.mobile.android.utility.RaplaConnection;
+import org.rapla.mobile.android.utility.SessionSnapshot;
+import org.rapla.mobile.android.utility.SessionSnapshotStore;
+import org.rapla.mobile.android.utility.cache.Query;
 import org.rapla.mobile.android.utility.factory.ExceptionDialogFactory;
 import org.rapla.mobile.android.widget.adapter.UserCalendarAdapter;
 import org.rapla.plugin.autoexport.AutoExportPlugin;
 
+import android.app.Activity;
 import android.content.Intent;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -38,6 +45,7 @@ import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
 import android.widget.ListAdapter;
 import android.widget.ListView;
+import android.widget.Toast;
 
 /**
  * This activity displays all calendars assigned to the currelty logged in user.
@@ -50,6 +58,8 @@ public class UserCalendarListActivity extends BaseActivity {
 
 	private ListView listView;
 	private AsyncTask<?, ?, ?> runningTask;
+	private SessionSnapshotStore snapshotStore;
+	private TaskScheduler.Task<?> loadingTask;
 
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -64,6 +74,7 @@ public class UserCalendarListActivity extends BaseActivity {
 		listView.setOnItemClickListener(new CalendarItemClickListener(
 				PreferencesHandler.getInstance()));
 
+		this.snapshotStore = new SessionSnapshotStore(this);
 	}
 
 	public void onResume() {
@@ -72,9 +83,12 @@ public class UserCalendarListActivity extends BaseActivity {
 		// login to Rapla Backend or call Login Activity
 		if (!this.getCustomApplication().storageHas(RaplaConnection.IDENTIFIER)) {
 
-			// call LoginActivity if no data exist
-			Intent i = new Intent(this, LoginActivity.class);
-			startActivity(i);
+			// Show the calendars of the last session at once and log in
+			// in the background, otherwise call LoginActivity
+			if (this.runningTask == null && !this.showSnapshot()) {
+				Intent i = new Intent(this, LoginActivity.class);
+				startActivity(i);
+			}
 
 		} else {
 			refreshListView();
@@ -139,27 +153,158 @@ public class UserCalendarListActivity extends BaseActivity {
 	 * Refresh list view by starting asynchronous background task
 	 */
 	public void refreshListView() {
+		if (this.loadingTask != null) {
+			this.loadingTask.cancel();
+		}
+		this.loadingTask = this.schedule(new LoadCalendarsTask(this
+				.getConnection(), this.snapshotStore));
+	}
+
+	/**
+	 * Show calendars in the list view
+	 * 
+	 * @param calendarNames
+	 *            Names of the calendars of the user
+	 */
+	public void showCalendars(List<String> calendarNames) {
+		ListAdapter adapter = new UserCalendarAdapter(this,
+				R.layout.calendar_list_item, calendarNames);
+		this.listView.setAdapter(adapter);
+	}
+
+	/**
+	 * Show the calendars of the last session and revalidate them by logging
+	 * in in the background
+	 * 
+	 * @return True if a snapshot of the last session has been shown, false
+	 *         if the user needs to log in first
+	 */
+	private boolean showSnapshot() {
+		PreferencesHandler preferences = PreferencesHandler.getInstance();
+		if (!preferences.hasConnectionPreferences()) {
+			return false;
+		}
+		SessionSnapshot snapshot = this.snapshotStore.load(
+				preferences.getHost(), preferences.getUsername());
+		if (snapshot == null) {
+			return false;
+		}
+
+		// Show cached calendars, they don't require a connection to be opened
+		this.listView.setAdapter(new UserCalendarAdapter(this,
+				R.layout.calendar_list_item, snapshot.getCalendarNames()));
+
+		// Without network, keep the cached calendars until the next resume
+		if (!this.isNetworkAvailable()) {
+			this.showOfflineHint();
+			return true;
+		}
+
 		try {
-		    List<String> result = new ArrayList<String>();
-		    QueryModule facade = getFacade();
-            // Get map with calendars
-            RaplaMap<CalendarModelConfiguration> exportMap =  facade.getPreferences().getEntry( AutoExportPlugin.PLUGIN_ENTRY);
-           // result.add(this.defaultCalendarName);
-            if (exportMap != null) {
-                // Initialize string array and set first element to 'default'
-                // +1 as 'default' calendar needs to be added
-
-                // Add values from map to string array
-                for ( String key: exportMap.keySet())
-                {
-                    result.add( key );
-                }
-            }
-            ListAdapter adapter = new UserCalendarAdapter(this, R.layout.calendar_list_item,   result);
-            this.listView.setAdapter(adapter);
-		} catch (Exception e) {
+			ConnectToServerAsyncTask task = new ConnectToServerAsyncTask(this,
+					this.getCustomApplication(), new RaplaConnection(
+							preferences), null, null, null, null);
+			task.setOnConnectListener(new RevalidateOnConnectListener());
+			this.runningTask = task.execute();
+			return true;
+		} catch (RaplaMobileException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Tell the user that the calendars shown are those of the last session
+	 */
+	private void showOfflineHint() {
+		Toast.makeText(this, R.string.calendar_list_offline, Toast.LENGTH_LONG)
+				.show();
+	}
+
+	/**
+	 * RevalidateOnConnectListener
+	 * 
+	 * This class replaces the calendars of the last session with the current
+	 * ones as soon as the background login has completed.
+	 * 
+	 * @author Saqib Razaq <dev@razaq.de>
+	 */
+	private class RevalidateOnConnectListener implements
+			ConnectToServerAsyncTask.OnConnectListener {
+
+		public void onConnectSucceeded(RaplaConnection connection) {
+			runningTask = null;
+			refreshListView();
+		}
+
+		public void onConnectFailed(RaplaMobileLoginException e) {
+			runningTask = null;
+			if (!e.isCredentialsRejected()) {
+				// Server not reachable, keep the cached calendars and try
+				// again on the next resume
+				showOfflineHint();
+				return;
+			}
+
+			// Credentials are not valid anymore, let the user check them
+			snapshotStore.clear();
+			Intent i = new Intent(UserCalendarListActivity.this,
+					LoginActivity.class);
+			startActivity(i);
+		}
+
+	}
+
+	/**
+	 * LoadCalendarsTask
+	 * 
+	 * This class retrieves the calendar names in the background and
+	 * remembers them for the next cold start.
+	 * 
+	 * @author Saqib Razaq <dev@razaq.de>
+	 */
+	private static class LoadCalendarsTask extends
+			TaskScheduler.Task<List<String>> {
+
+		private RaplaConnection connection;
+		private SessionSnapshotStore snapshotStore;
+
+		public LoadCalendarsTask(RaplaConnection connection,
+				SessionSnapshotStore snapshotStore) {
+			super(TaskScheduler.PRIORITY_USER, "LoadCalendars");
+			this.connection = connection;
+			this.snapshotStore = snapshotStore;
+		}
+
+		@Override
+		protected List<String> doInBackground() throws Exception {
+			List<String> result = new ArrayList<String>();
+			// Get map with calendars, usually prefetched during login
+			RaplaMap<CalendarModelConfiguration> exportMap = this.connection
+					.getQueryCache().get(Query.preferences())
+					.getEntry(AutoExportPlugin.PLUGIN_ENTRY);
+			if (exportMap != null) {
+				// Add values from map to string array
+				for (String key : exportMap.keySet()) {
+					result.add(key);
+				}
+			}
+
+			// Remember calendars for the next cold start
+			PreferencesHandler preferences = PreferencesHandler.getInstance();
+			this.snapshotStore.save(new SessionSnapshot(preferences.getHost(),
+					preferences.getUsername(), result));
+			return result;
+		}
+
+		@Override
+		protected void onSucceeded(Activity activity, List<String> result) {
+			((UserCalendarListActivity) activity).showCalendars(result);
+		}
+
+		@Override
+		protected void onFailed(Activity activity, Exception e) {
 			ExceptionDialogFactory.getInstance()
-					.create(this, R.string.exception_rapla_context_lookup)
+					.create(activity, R.string.exception_rapla_context_lookup)
 					.show();
 		}
 	}
@@ -13,18 +13,21 @@
 
 package org.rapla.mobile.android.app;
 
-import java.util.Locale;
-
 import org.rapla.entities.Category;
 import org.rapla.mobile.android.R;
 import org.rapla.mobile.android.utility.CompoundButtonGroup;
+import org.rapla.mobile.android.utility.cache.CategoryIndex;
 import org.rapla.mobile.android.widget.adapter.RaplaCategoryAdapter;
 
 import android.app.Dialog;
 import android.content.Context;
+import android.os.Handler;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 import android.widget.Button;
 import android.widget.CompoundButton;
+import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.ListAdapter;
 import android.widget.ListView;
@@ -34,23 +37,38 @@ import android.widget.TextView;
  * The dialog allows for selecting a category (either the root category or one
  * of its child categories) by displaying a list view with check boxes. Clicking
  * a category drills down into its sub-categories whereas a click on the icon in
- * the dialog title bar navigates one level up.
+ * the dialog title bar navigates one level up. Navigation works on positions
+ * of the category index, the list adapter and button group are reused for
+ * all levels. Typing into the search field lists the matching categories of
+ * the whole tree below the root category instead of the current level.
  * 
  * @author Maximilian Lenkeit <dev@lenki.com>
  * 
  */
 public class RaplaCategoryChoiceDialog extends Dialog {
 
-	private Category root;
-	private Category selected;
-	private Category parent;
-	private Context context;
+	/**
+	 * Delay in milliseconds after the last key stroke before searching
+	 */
+	public static final long SEARCH_DELAY = 250;
+
+	private CategoryIndex index;
+	private int root;
+	private int selected;
+	private int parent;
 	private RaplaCategoryAdapter adapter;
 	private CompoundButtonGroup buttonGroup;
 	private TextView title;
 	private ImageView upIcon;
 	private Button buttonSave;
 	private Button buttonCancel;
+	private EditText searchField;
+	private Handler searchHandler = new Handler();
+	private Runnable searchRunnable = new Runnable() {
+		public void run() {
+			search();
+		}
+	};
 
 	public RaplaCategoryChoiceDialog(Context context, Category root,
 			Category selected) {
@@ -65,20 +83,43 @@ public class RaplaCategoryChoiceDialog extends Dialog {
 		this.upIcon.setOnClickListener(new IconAscendOnClickListener(this));
 		this.buttonSave = (Button) this.findViewById(android.R.id.button1);
 		this.buttonCancel = (Button) this.findViewById(android.R.id.button3);
+		this.searchField = (EditText) this.findViewById(R.id.category_search);
+		this.searchField.addTextChangedListener(new SearchTextWatcher());
 
-		// Prepare null variables
-		if (selected == null) {
-			selected = root;
+		// Set instance variables
+		this.index = CategoryIndex.getInstance(root);
+		this.root = this.index.indexOf(root);
+		this.selected = this.index.indexOf(selected);
+
+		// Prepare null variables, a selection outside the root category can't
+		// be chosen
+		if (this.selected < 0
+				|| !this.index.isAncestorOrSelf(this.root, this.selected)) {
+			this.selected = this.root;
 		}
 
-		// Set instance variables
-		this.context = context;
-		this.root = root;
-		this.selected = selected;
-		this.parent = this.selected.getParent();
+		// Initiate compound button group so that only one button of the
+		// displayed list item can be checked at a time. Radio buttons would be
+		// much nicer and more natural but for some reason, the custom compound
+		// button group class didn't work for them.
+		this.buttonGroup = new CompoundButtonGroup();
+
+		// Create adapter and assign it to list view
+		this.adapter = new RaplaCategoryAdapter(context,
+				R.layout.rapla_category_drill_down_list_item, this.index,
+				this.buttonGroup,
+				RaplaCategoryOnClickListenerFactory.getInstance(), this);
+		this.setAdapter(this.adapter);
+
+		// Register on click listener on category name for drilling into the
+		// selected category
+		this.getListView().setFocusable(false);
+		this.getListView().setClickable(true);
+		this.getListView().setSelector(R.drawable.window_background);
 
 		// Initiate the dialog with the parent of the selected category
-		this.reload(this.parent);
+		int selectedParent = this.index.getParent(this.selected);
+		this.reload(selectedParent >= 0 ? selectedParent : this.selected);
 	}
 
 	/**
@@ -103,10 +144,10 @@ public class RaplaCategoryChoiceDialog extends Dialog {
 	 */
 	public String createTitle() {
 		// Check whether parent category is super category (has no parent)
-		if (this.parent.getParent() == null) {
+		if (this.index.getParent(this.parent) < 0) {
 			return this.getContext().getString(R.string.root_category);
 		} else {
-			return this.parent.getName(Locale.getDefault());
+			return this.index.getName(this.parent);
 		}
 	}
 
@@ -126,9 +167,11 @@ public class RaplaCategoryChoiceDialog extends Dialog {
 	 */
 	public boolean canAscend() {
 		// parent should become a child and be selectable
-		Category topMostParent = this.root.getParent();
-		Category tagetParent = this.parent.getParent();
-		return !topMostParent.isIdentical(tagetParent);
+		int topMostParent = this.index.getParent(this.root);
+		if (topMostParent < 0) {
+			topMostParent = this.root;
+		}
+		return this.parent != topMostParent;
 	}
 
 	/**
@@ -137,7 +180,17 @@ public class RaplaCategoryChoiceDialog extends Dialog {
 	 * @return True if the given category has child categories.
 	 */
 	public boolean canDescendOn(Category category) {
-		return category.getCategories().length > 0;
+		int position = this.index.indexOf(category);
+		return position >= 0 && this.canDescendOn(position);
+	}
+
+	/**
+	 * @param position
+	 *            Index position of the category to navigate to
+	 * @return True if the category has child categories.
+	 */
+	public boolean canDescendOn(int position) {
+		return this.index.getChildCount(position) > 0;
 	}
 
 	/**
@@ -145,14 +198,14 @@ public class RaplaCategoryChoiceDialog extends Dialog {
 	 */
 	public void ascend() {
 		// Check whether level up navigation is possible
-		if (!this.canAscend()) {
+		if (!this.canAscend() || this.isSearching()) {
 			return;
 		}
 
 		// Store currently selected value in selected
 		this.pullSelected();
 
-		this.reload(this.parent.getParent());
+		this.reload(this.index.getParent(this.parent));
 	}
 
 	/**
@@ -162,15 +215,75 @@ public class RaplaCategoryChoiceDialog extends Dialog {
 	 *            Category to navigate to
 	 */
 	public void descendOn(Category category) {
+		int position = this.index.indexOf(category);
+		if (position >= 0) {
+			this.descendOn(position);
+		}
+	}
+
+	/**
+	 * Drill down on the given category if possible
+	 * 
+	 * @param position
+	 *            Index position of the category to navigate to
+	 */
+	public void descendOn(int position) {
 		// Check whether level down navigation is possible
-		if (!this.canDescendOn(category)) {
+		if (!this.canDescendOn(position)) {
 			return;
 		}
 
 		// Store currently selected value in selected
 		this.pullSelected();
 
-		this.reload(category);
+		this.reload(position);
+	}
+
+	/**
+	 * @return True if search results are displayed instead of a level
+	 */
+	public boolean isSearching() {
+		return this.adapter.isShowingResults();
+	}
+
+	/**
+	 * Show the categories matching the text of the search field, or the
+	 * current level again if the search field is empty
+	 */
+	public void search() {
+		String query = this.searchField.getText().toString();
+
+		// Keep the category checked so far
+		this.pullSelected();
+
+		if (query.trim().length() == 0) {
+			this.reload(this.parent);
+		} else {
+			this.buttonGroup.clear();
+			this.adapter.setResults(this.index.search(this.root, query),
+					this.root, this.selected);
+		}
+	}
+
+	/**
+	 * Leave the search and show the level of the given category with the
+	 * category selected
+	 * 
+	 * @param position
+	 *            Index position of the category to show
+	 */
+	public void showCategory(int position) {
+		this.searchField.setText("");
+		this.searchHandler.removeCallbacks(this.searchRunnable);
+		this.selected = position;
+		int level = this.index.getParent(position);
+		this.reload(level >= 0 ? level : position);
+	}
+
+	@Override
+	protected void onStop() {
+		super.onStop();
+		this.searchHandler.removeCallbacks(this.searchRunnable);
 	}
 
 	/**
@@ -183,10 +296,10 @@ public class RaplaCategoryChoiceDialog extends Dialog {
 		// is null, if no check box has been selected on the currently shown
 		// list.
 		if (button != null) {
-			this.selected = (Category) this.buttonGroup
-					.getAttachmentOfCheckedButton();
+			this.selected = this.index.indexOf((Category) this.buttonGroup
+					.getAttachmentOfCheckedButton());
 		} else {
-			this.selected = null;
+			this.selected = -1;
 		}
 	}
 
@@ -195,56 +308,27 @@ public class RaplaCategoryChoiceDialog extends Dialog {
 	 * display all associated sub categories
 	 * 
 	 * @param newParent
-	 *            Category to become parent
+	 *            Index position of the category to become parent
 	 */
-	protected void reload(Category newParent) {
+	protected void reload(int newParent) {
 		// Set parent
 		this.parent = newParent;
 
 		// Set title
 		this.setTitle(this.createTitle());
 
-		// Initiate compound button group so that only one button of the
-		// displayed list item can be checked at a time. Radio buttons would be
-		// much nicer and more natural but for some reason, the custom compound
-		// button group class didn't work for them.
-		this.buttonGroup = new CompoundButtonGroup();
+		// Forget the buttons of the previous level
+		this.buttonGroup.clear();
 
-		// Load child categories and instantiate adapter (redundance for better
-		// readability
-		Category[] categories;
-		if (this.parent.getParent() == null
-				&& !this.root.isIdentical(this.parent)) {
-			// If parent is super category (no parent) and the top most category
-			// allowed is not the parent (super) category, display only the root
-			// category
-			categories = new Category[] { this.root };
-		} else if (this.parent.getParent() == null
-				&& this.root.isIdentical(this.parent)) {
-			// If parent is super category (no parent) and the top most category
-			// allowed is the parent (super) category, display all sub
-			// categories of parent
-			categories = this.parent.getCategories();
+		if (this.parent == this.index.getParent(this.root)) {
+			// If parent is the parent of the top most category allowed,
+			// display only the root category
+			this.adapter.setRange(this.root, 1, this.selected);
 		} else {
-			categories = this.parent.getCategories();
+			// Otherwise display all sub categories of parent
+			this.adapter.setRange(this.index.getFirstChild(this.parent),
+					this.index.getChildCount(this.parent), this.selected);
 		}
-
-		// Create adapter
-		this.adapter = new RaplaCategoryAdapter(this.context,
-				R.layout.rapla_category_drill_down_list_item, categories,
-				this.selected, this.buttonGroup,
-				RaplaCategoryOnClickListenerFactory.getInstance(), this);
-
-		// Assign adapter to list view
-		this.setAdapter(this.adapter);
-
-		// this.buttonGroup.getButtonForAttachment(this.selected).setChecked(true);
-
-		// Register on click listener on category name for drilling into the
-		// selected category
-		this.getListView().setFocusable(false);
-		this.getListView().setClickable(true);
-		this.getListView().setSelector(R.drawable.window_background);
 	}
 
 	/**
@@ -274,7 +358,8 @@ public class RaplaCategoryChoiceDialog extends Dialog {
 	 */
 	public Category getSelected() {
 		this.pullSelected();
-		return this.selected;
+		return this.selected >= 0 ? this.index.getCategory(this.selected)
+				: null;
 	}
 
 	/**
@@ -307,12 +392,23 @@ public class RaplaCategoryChoiceDialog extends Dialog {
 			this.index = index;
 		}
 
-		public void onClick(View v) {
-			// Get selected category object
-			Category selected = this.dialog.adapter.getItem(this.index);
+		/**
+		 * @param index
+		 *            Corresponding list item index
+		 */
+		public void setIndex(int index) {
+			this.index = index;
+		}
 
-			// Drill down on selected category
-			this.dialog.descendOn(selected);
+		public void onClick(View v) {
+			int position = this.dialog.adapter.getIndexPosition(this.index);
+			if (this.dialog.isSearching()) {
+				// Show search result within its level
+				this.dialog.showCategory(position);
+			} else {
+				// Drill down on selected category
+				this.dialog.descendOn(position);
+			}
 		}
 
 	}
@@ -389,4 +485,27 @@ public class RaplaCategoryChoiceDialog extends Dialog {
 
 	}
 
+	/**
+	 * SearchTextWatcher
+	 * 
+	 * This class searches as soon as the user stops typing for a moment
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private class SearchTextWatcher implements TextWatcher {
+
+		public void afterTextChanged(Editable s) {
+			searchHandler.removeCallbacks(searchRunnable);
+			searchHandler.postDelayed(searchRunnable, SEARCH_DELAY);
+		}
+
+		public void beforeTextChanged(CharSequence s, int start, int count,
+				int after) {
+		}
+
+		public void onTextChanged(CharSequence s, int start, int before,
+				int count) {
+		}
+	}
+
 }
\ No newline at end of file
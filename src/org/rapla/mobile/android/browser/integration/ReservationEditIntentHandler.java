@@ -81,9 +81,16 @@ public class ReservationEditIntentHandler implements BrowserIntentHandler {
         Reservation reservation = (Reservation) fromId.get( reservationId);
 		Reservation editableReservation = facade.edit(reservation);
 
-		// Put reservation into runtime storage
+		// Put reservation into runtime storage, along with the stored
+		// reservation as snapshot for discarding changes
 		application.storageSet(RuntimeStorage.IDENTIFIER_SELECTED_RESERVATION,
 				editableReservation);
+		application.storageSet(
+				RuntimeStorage.IDENTIFIER_SELECTED_RESERVATION_MODIFIED,
+				Boolean.FALSE);
+		application.storageSet(
+				RuntimeStorage.IDENTIFIER_SELECTED_RESERVATION_ORIGINAL,
+				reservation);
 
 		// Create intent and start activity
 		Intent i = new Intent(context, EventDetailsActivity.class);
@@ -15,24 +15,35 @@ package org.rapla.mobile.android.os;
 
 import org.rapla.mobile.android.R;
 import org.rapla.mobile.android.RaplaMobileApplication;
+import org.rapla.mobile.android.RaplaMobileLoginException;
 import org.rapla.mobile.android.utility.RaplaConnection;
 import org.rapla.mobile.android.utility.factory.ExceptionDialogFactory;
 import org.rapla.mobile.android.utility.factory.LoadDataProgressDialogFactory;
+import org.rapla.mobile.android.utility.store.LocalStore;
 import android.app.Activity;
 import android.app.Dialog;
 import android.app.ProgressDialog;
 import android.content.Context;
 import android.os.AsyncTask;
+import android.os.Handler;
 
 /**
- * This class asyncronously connects to the Rapla server by using another
- * AsyncTask.
- * 
+ * This class asyncronously connects to the Rapla server. The connection is
+ * handed over to the UI as soon as the login returns. If the login takes
+ * longer than <code>WAIT_DIALOG_DELAY</code> milliseconds, the user is asked
+ * whether to keep waiting.
+ *
  * @author Patrick Zorn <dev@patrickzorn.de>
- * 
+ *
  */
 public class ConnectToServerAsyncTask extends
-		AsyncTask<Void, Integer, RaplaConnection> {
+		AsyncTask<Void, Void, RaplaConnection> {
+
+	/**
+	 * Delay in milliseconds before the wait dialog is shown (and shown again
+	 * after being dismissed while the login is still running)
+	 */
+	public static final long WAIT_DIALOG_DELAY = 60000;
 
 	private Context context;
 	private RaplaMobileApplication application;
@@ -42,10 +53,10 @@ public class ConnectToServerAsyncTask extends
 	private Activity onSuccessFinish;
 	private Dialog waitdialog;
 	private ProgressDialog progressDialog;
-	private AsyncTask<?, ?, ?> asyncTask;
-	private String status = "";
-	private boolean error = false;
-	private static final String SUCCESS = "SUCCESS";
+	private Handler handler;
+	private Runnable showWaitDialog;
+	private OnConnectListener onConnectListener;
+	private RaplaMobileLoginException failure;
 
 	/**
 	 * @param context
@@ -55,11 +66,13 @@ public class ConnectToServerAsyncTask extends
 	 * @param conn
 	 *            Current Rapla Connection
 	 * @param exceptionDialogFactory
-	 *            Factory class for exception dialog
+	 *            Factory class for exception dialog, null for no error message
 	 * @param waitdialog
-	 *            Wait Dialog which aks the user if he wants to wait or not
+	 *            Wait Dialog which aks the user if he wants to wait or not,
+	 *            null for not asking
 	 * @param progressDialogFactory
-	 *            Factory class for progress dialog
+	 *            Factory class for progress dialog, null for logging in
+	 *            without progress dialog
 	 * @param onSuccessFinish
 	 *            Activity to be shut down
 	 */
@@ -77,115 +90,173 @@ public class ConnectToServerAsyncTask extends
 		this.onSuccessFinish = onSuccessFinish;
 	}
 
+	/**
+	 * Set listener to be notified as soon as the login has completed
+	 *
+	 * @param listener
+	 *            Listener to be notified on the UI thread
+	 */
+	public void setOnConnectListener(OnConnectListener listener) {
+		this.onConnectListener = listener;
+	}
+
 	protected void onPreExecute() {
-		// Initialize progress dialog
-		this.progressDialog = this.progressDialogFactory.create(this.context);
-		this.progressDialog.show();
+		// Initialize progress dialog, without factory the task runs silently
+		if (this.progressDialogFactory != null) {
+			this.progressDialog = this.progressDialogFactory
+					.create(this.context);
+			this.progressDialog.show();
+		}
+
+		// Schedule the wait dialog instead of polling for the login status
+		if (this.waitdialog != null) {
+			this.handler = new Handler();
+			this.showWaitDialog = new ShowWaitDialogRunnable();
+			this.handler.postDelayed(this.showWaitDialog, WAIT_DIALOG_DELAY);
+		}
 	}
 
 	@Override
+	/**
+	 * This method tries to login to the Rapla Backend Server and stores the
+	 * connection when login was possible
+	 *
+	 * @return The connection if the login succeeded, null otherwise
+	 */
 	protected RaplaConnection doInBackground(Void... notUsed) {
-		int i = 1;
 		try {
-
-			while (!status.equals(SUCCESS)) {
-				// if the asynTask was canceled, stop working
-				if (this.isCancelled()) {
-					break;
-				}
-				// call the method to show a dialog after a specific time if the
-				// user wants to wait
-				this.publishProgress(i);
-				i++;
-				// wait a second
-				Thread.sleep(1000);
+			if (!conn.login()) {
+				this.failure = new RaplaMobileLoginException(
+						"Credentials rejected",
+						RaplaMobileLoginException.REASON_CREDENTIALS_REJECTED);
+				return null;
 			}
+		} catch (RaplaMobileLoginException e) {
+			// The server couldn't be reached, the credentials may still be
+			// valid
+			this.failure = e;
+			return null;
+		}
 
-		} catch (InterruptedException e) {
-			// an error occurred, close asyncTask
-			error = true;
-			this.cancel(true);
+		// Do not publish the connection if the user stopped waiting
+		if (this.isCancelled()) {
+			return null;
 		}
 
-		return conn;
+		// save the Rapla Connection Data, the previous connection is closed
+		// before this one starts reading
+		this.application.setConnection(conn);
 
+		// Read the data of the first screens in parallel while the UI moves on
+		conn.prefetch();
+
+		// Journal queued operations in the local store
+		conn.getOutbox().setListener(new OutboxNotifier(this.application));
+		conn.attachLocalStore(LocalStore.getInstance(this.application));
+		return conn;
 	}
 
 	/**
-	 * This method calls the next activity
-	 * 
-	 * @param RaplaConncetion
-	 *            conn
+	 * This method hands the connection over to the UI and closes the calling
+	 * activity
+	 *
+	 * @param connection
+	 *            The connection or null if the login failed
 	 */
 	protected void onPostExecute(RaplaConnection connection) {
-		if (this.asyncTask != null) {
-			this.asyncTask.cancel(true); // TODO verify necessity
-		}
+		this.stopWaiting();
 
-		if (status.equals(SUCCESS)) {
-
-			// Close progress dialog
-			this.progressDialog.dismiss();
-
-			if (this.onSuccessFinish != null) {
-				// start Activity
-				onSuccessFinish.finish();
+		if (connection == null) {
+			// Login failed, show an error message
+			this.showError();
+			if (this.onConnectListener != null) {
+				this.onConnectListener.onConnectFailed(this.failure);
 			}
+			return;
+		}
+
+		if (this.onConnectListener != null) {
+			this.onConnectListener.onConnectSucceeded(connection);
+		}
 
+		if (this.onSuccessFinish != null) {
+			// start Activity
+			onSuccessFinish.finish();
 		}
+	}
 
+	protected void onCancelled() {
+		// The user stopped waiting, no error message necessary
+		this.stopWaiting();
 	}
 
-	protected void onProgressUpdate(Integer... i) {
+	/**
+	 * Remove the scheduled wait dialog and close all dialogs of this task
+	 */
+	private void stopWaiting() {
+		if (this.handler != null) {
+			this.handler.removeCallbacks(this.showWaitDialog);
+		}
+		if (this.waitdialog != null && this.waitdialog.isShowing()) {
+			this.waitdialog.dismiss();
+		}
 
-		// how long has the user to wait before the waitDialog will be shown
-		int waitTime = 60;
-		// start login asynTask in background
-		if (asyncTask == null) {
-			asyncTask = new ConnectToServerBackgroundAsyncTask(application,
-					conn).execute();
+		// Close progress dialog
+		if (this.progressDialog != null) {
+			this.progressDialog.dismiss();
 		}
+	}
 
-		// check the status of the background task
-		if (asyncTask.getStatus().equals(AsyncTask.Status.FINISHED)
-				&& !asyncTask.isCancelled()) {
-			// task was successfully executed
-			status = SUCCESS;
+	private void showError() {
+		if (this.exceptionDialogFactory == null) {
+			return;
+		}
+		CharSequence text = (CharSequence) this.context
+				.getString(R.string.loginDataError);
+		this.exceptionDialogFactory.create(this.context, text.toString())
+				.show();
+	}
 
-		} else if (asyncTask.getStatus().equals(AsyncTask.Status.FINISHED)
-				&& asyncTask.isCancelled()) {
-			// task was not successfully executed
-			error = true;
-			this.cancel(true);
+	/**
+	 * Shows the wait dialog and schedules itself again, so that the user is
+	 * asked periodically as long as the login is running.
+	 */
+	private class ShowWaitDialogRunnable implements Runnable {
 
-		} else if (!this.isCancelled() && i[0] % waitTime == 0) {
+		public void run() {
+			if (getStatus() == AsyncTask.Status.FINISHED || isCancelled()) {
+				return;
+			}
 
-			// show only the waitDialog, if the AsynTask is running now and no
-			// waitDialog is visible in the UI
-			if (!waitdialog.isShowing()
-					&& !asyncTask.getStatus().equals(AsyncTask.Status.FINISHED)) {
+			// show only the waitDialog, if no waitDialog is visible in the UI
+			if (!waitdialog.isShowing()) {
 				waitdialog.show();
 			}
+			handler.postDelayed(this, WAIT_DIALOG_DELAY);
 		}
-
 	}
 
-	protected void onCancelled() {
-
-		if (asyncTask != null) {
-			asyncTask.cancel(true);
-		}
+	/**
+	 * Callback interface for being notified about the login result. Both
+	 * methods are called on the UI thread.
+	 *
+	 * @author Patrick Zorn <dev@patrickzorn.de>
+	 */
+	public interface OnConnectListener {
 
-		// Close progress dialog
-		this.progressDialog.dismiss();
-
-		// Login failed, show an error message
-		if (error) {
-			CharSequence text = (CharSequence) this.context
-					.getString(R.string.loginDataError);
-			this.exceptionDialogFactory.create(this.context, text.toString())
-					.show();
-		}
+		/**
+		 * @param connection
+		 *            The logged in and stored connection
+		 */
+		public void onConnectSucceeded(RaplaConnection connection);
 
+		/**
+		 * Called if the login was rejected or failed
+		 * 
+		 * @param e
+		 *            Reason of the failure, see
+		 *            <code>isCredentialsRejected()</code>
+		 */
+		public void onConnectFailed(RaplaMobileLoginException e);
 	}
 }
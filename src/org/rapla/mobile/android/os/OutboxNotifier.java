@@ -0,0 +1,77 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.os;
+
+import java.util.List;
+
+import org.rapla.framework.RaplaException;
+import org.rapla.mobile.android.R;
+import org.rapla.mobile.android.utility.sync.Outbox;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.widget.Toast;
+
+/**
+ * Shows the outcome of submits reported by the outbox as toast messages. The
+ * user has only been told that the changes are queued when saving them.
+ * 
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ * 
+ */
+public class OutboxNotifier implements Outbox.Listener {
+
+	private Context context;
+	private Handler handler;
+
+	/**
+	 * @param context
+	 *            Application context, outlives the activities
+	 */
+	public OutboxNotifier(Context context) {
+		this.context = context;
+		this.handler = new Handler(Looper.getMainLooper());
+	}
+
+	public void onSubmitted(int count) {
+		this.show(this.context.getString(R.string.outbox_submitted, count));
+	}
+
+	public void onRejected(String name, RaplaException e) {
+		this.show(this.context.getString(R.string.outbox_rejected, name));
+	}
+
+	public void onFailed(int count, RaplaException e) {
+		this.show(this.context.getString(R.string.outbox_failed, count));
+	}
+
+	public void onLost(List<String> names) {
+		this.show(this.context.getString(R.string.outbox_lost,
+				TextUtils.join(", ", names)));
+	}
+
+	/**
+	 * Show message on the main thread
+	 */
+	private void show(final String text) {
+		this.handler.post(new Runnable() {
+			public void run() {
+				Toast.makeText(OutboxNotifier.this.context, text,
+						Toast.LENGTH_LONG).show();
+			}
+		});
+	}
+}
@@ -0,0 +1,546 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.os;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * The task scheduler runs all background work of the application on one
+ * pool of worker threads. Queued tasks are started by priority, so that
+ * loading what the user is waiting for goes before prefetching, and
+ * prefetching goes before syncing. Tasks of the same priority are started in
+ * the order they have been queued.
+ * 
+ * Tasks can be owned by an activity. Their results are delivered on the UI
+ * thread to the instance of the activity that is resumed at that time, so a
+ * result survives the activity being recreated on rotation. Results arriving
+ * while no instance is resumed are kept until one is. When the activity
+ * finishes, its tasks are cancelled.
+ * 
+ * Owners are told apart by their key. Activities implementing {@link Owner}
+ * keep their key in the saved instance state, so that a recreated instance
+ * takes over the tasks of the previous one, while another instance of the
+ * same activity class has tasks of its own. Other activities are keyed by
+ * instance and lose their results when recreated.
+ * 
+ * Tasks share the client facade through the facade lock. Regular tasks run
+ * under its read lock, so they run side by side. Exclusive tasks, such as
+ * syncs refreshing the facade, run under its write lock, so they wait for
+ * running tasks to finish and hold off tasks started later until they are
+ * done. Work touching the facade outside the scheduler takes the read lock
+ * as well.
+ * 
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class TaskScheduler {
+
+	/**
+	 * Work the user is waiting for
+	 */
+	public static final int PRIORITY_USER = 0;
+
+	/**
+	 * Work the user will probably need soon
+	 */
+	public static final int PRIORITY_PREFETCH = 1;
+
+	/**
+	 * Keeping data up to date in the background
+	 */
+	public static final int PRIORITY_SYNC = 2;
+
+	/**
+	 * Number of worker threads
+	 */
+	public static final int THREADS = 3;
+
+	protected static TaskScheduler instance;
+	private ThreadPoolExecutor executor;
+	private Handler handler;
+	private AtomicLong sequence = new AtomicLong();
+	private Map<String, Activity> hosts = new HashMap<String, Activity>();
+	private Map<String, List<Task<?>>> ownedTasks = new HashMap<String, List<Task<?>>>();
+	private Map<String, List<Task<?>>> undelivered = new HashMap<String, List<Task<?>>>();
+	private List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+	private ReadWriteLock facadeLock = new ReentrantReadWriteLock();
+
+	protected TaskScheduler() {
+		this.executor = new ThreadPoolExecutor(THREADS, THREADS, 0,
+				TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "TaskScheduler");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		// Idle workers take every task from the queue, so that no task
+		// bypasses the ordering by priority
+		this.executor.prestartAllCoreThreads();
+		this.handler = new Handler(Looper.getMainLooper());
+	}
+
+	/**
+	 * @return Singleton instance
+	 */
+	public static synchronized TaskScheduler getInstance() {
+		if (instance == null) {
+			instance = new TaskScheduler();
+		}
+		return instance;
+	}
+
+	/**
+	 * @return Lock shared by all work touching the client facade, exclusive
+	 *         tasks hold its write lock
+	 */
+	public ReadWriteLock getFacadeLock() {
+		return this.facadeLock;
+	}
+
+	/**
+	 * Queue task without owner, its callbacks receive no activity
+	 * 
+	 * @param task
+	 *            Task to be run
+	 * @return The given task
+	 */
+	public <T> Task<T> execute(Task<T> task) {
+		return this.execute(null, task);
+	}
+
+	/**
+	 * Queue task owned by the given activity
+	 * 
+	 * @param owner
+	 *            Activity the result is delivered to, null for none
+	 * @param task
+	 *            Task to be run
+	 * @return The given task
+	 */
+	public <T> Task<T> execute(Activity owner, Task<T> task) {
+		task.scheduler = this;
+		task.sequence = this.sequence.getAndIncrement();
+		task.queuedAt = System.currentTimeMillis();
+		if (owner != null) {
+			task.ownerKey = getKey(owner);
+			synchronized (this) {
+				List<Task<?>> tasks = this.ownedTasks.get(task.ownerKey);
+				if (tasks == null) {
+					tasks = new ArrayList<Task<?>>();
+					this.ownedTasks.put(task.ownerKey, tasks);
+				}
+				tasks.add(task);
+			}
+		}
+		for (Listener listener : this.listeners) {
+			listener.onQueued(task);
+		}
+		this.executor.execute(task);
+		return task;
+	}
+
+	/**
+	 * Queue a plain runnable without owner
+	 * 
+	 * @param priority
+	 *            Priority of the work
+	 * @param name
+	 *            Name of the work, shown to listeners
+	 * @param runnable
+	 *            Work to be run
+	 * @return Task running the work
+	 */
+	public Task<Void> execute(int priority, String name,
+			final Runnable runnable) {
+		return this.execute(new Task<Void>(priority, name) {
+			protected Void doInBackground() {
+				runnable.run();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Make the activity the receiver of the results of its tasks. Call when
+	 * the activity is resumed.
+	 * 
+	 * @param activity
+	 *            Resumed activity
+	 */
+	public void attach(Activity activity) {
+		String key = getKey(activity);
+		List<Task<?>> tasks;
+		synchronized (this) {
+			this.hosts.put(key, activity);
+			tasks = this.undelivered.remove(key);
+		}
+		if (tasks != null) {
+			for (Task<?> task : tasks) {
+				this.deliver(task);
+			}
+		}
+	}
+
+	/**
+	 * Stop delivering results to the activity. Call when the activity is
+	 * paused. If the activity is finishing, its tasks are cancelled.
+	 * 
+	 * @param activity
+	 *            Paused activity
+	 */
+	public void detach(Activity activity) {
+		String key = getKey(activity);
+		List<Task<?>> tasks = null;
+		synchronized (this) {
+			if (this.hosts.get(key) == activity) {
+				this.hosts.remove(key);
+			}
+			if (activity.isFinishing()) {
+				tasks = this.ownedTasks.remove(key);
+				this.undelivered.remove(key);
+			}
+		}
+		if (tasks != null) {
+			for (Task<?> task : tasks) {
+				task.cancel();
+			}
+		}
+	}
+
+	/**
+	 * @param listener
+	 *            Listener to be notified about every task
+	 */
+	public void addListener(Listener listener) {
+		this.listeners.add(listener);
+	}
+
+	/**
+	 * @param listener
+	 *            Listener to be removed
+	 */
+	public void removeListener(Listener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * @return Number of tasks waiting for a worker thread
+	 */
+	public int getQueueLength() {
+		return this.executor.getQueue().size();
+	}
+
+	/**
+	 * @return Number of tasks being run at the moment
+	 */
+	public int getActiveCount() {
+		return this.executor.getActiveCount();
+	}
+
+	private static String getKey(Activity activity) {
+		if (activity instanceof Owner) {
+			return ((Owner) activity).getTaskOwnerKey();
+		}
+		return activity.getClass().getName() + "@"
+				+ System.identityHashCode(activity);
+	}
+
+	/**
+	 * Hand the result of a finished task to its owner on the UI thread
+	 */
+	private void post(final Task<?> task) {
+		this.handler.post(new Runnable() {
+			public void run() {
+				deliver(task);
+			}
+		});
+	}
+
+	private void deliver(Task<?> task) {
+		Activity host = null;
+		if (task.ownerKey != null) {
+			synchronized (this) {
+				if (task.isCancelled()) {
+					this.forget(task);
+					return;
+				}
+				host = this.hosts.get(task.ownerKey);
+				if (host == null) {
+					// Keep result until the owner is resumed again
+					List<Task<?>> tasks = this.undelivered.get(task.ownerKey);
+					if (tasks == null) {
+						tasks = new ArrayList<Task<?>>();
+						this.undelivered.put(task.ownerKey, tasks);
+					}
+					tasks.add(task);
+					return;
+				}
+				this.forget(task);
+			}
+		} else if (task.isCancelled()) {
+			return;
+		}
+		task.complete(host);
+	}
+
+	private synchronized void forget(Task<?> task) {
+		List<Task<?>> owned = this.ownedTasks.get(task.ownerKey);
+		if (owned != null) {
+			owned.remove(task);
+			if (owned.isEmpty()) {
+				this.ownedTasks.remove(task.ownerKey);
+			}
+		}
+	}
+
+	private void onStarted(Task<?> task) {
+		for (Listener listener : this.listeners) {
+			listener.onStarted(task);
+		}
+	}
+
+	private void onFinished(Task<?> task) {
+		for (Listener listener : this.listeners) {
+			listener.onFinished(task);
+		}
+		this.post(task);
+	}
+
+	/**
+	 * An activity owning tasks across being recreated
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	public interface Owner {
+
+		/**
+		 * @return Key unique to the activity, kept while it is recreated
+		 */
+		public String getTaskOwnerKey();
+	}
+
+	/**
+	 * A task runs in the background and hands its result to its owner on the
+	 * UI thread. The callbacks receive the owner's current instance, so they
+	 * should not refer to the activity that queued the task.
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	public static abstract class Task<T> implements Runnable,
+			Comparable<Task<?>> {
+
+		private int priority;
+		private String name;
+		private TaskScheduler scheduler;
+		private String ownerKey;
+		private long sequence;
+		private volatile boolean cancelled = false;
+		private volatile Thread thread;
+		private volatile long queuedAt;
+		private volatile long startedAt;
+		private volatile long finishedAt;
+		private T result;
+		private Exception exception;
+
+		/**
+		 * @param priority
+		 *            One of the <code>PRIORITY_</code> constants
+		 * @param name
+		 *            Name of the task, shown to listeners
+		 */
+		public Task(int priority, String name) {
+			this.priority = priority;
+			this.name = name;
+		}
+
+		/**
+		 * Do the work, called on a worker thread
+		 * 
+		 * @return Result handed to <code>onSucceeded</code>
+		 * @throws Exception
+		 */
+		protected abstract T doInBackground() throws Exception;
+
+		/**
+		 * @return True if no other task may run while this one does, e.g.
+		 *         because it refreshes the client facade
+		 */
+		protected boolean isExclusive() {
+			return false;
+		}
+
+		/**
+		 * Called on the UI thread if the work has succeeded
+		 * 
+		 * @param activity
+		 *            Current instance of the owner, null for tasks without
+		 *            owner
+		 * @param result
+		 *            Result of the work
+		 */
+		protected void onSucceeded(Activity activity, T result) {
+		}
+
+		/**
+		 * Called on the UI thread if the work has failed
+		 * 
+		 * @param activity
+		 *            Current instance of the owner, null for tasks without
+		 *            owner
+		 * @param e
+		 *            Reason of the failure
+		 */
+		protected void onFailed(Activity activity, Exception e) {
+		}
+
+		public void run() {
+			if (this.cancelled) {
+				return;
+			}
+			this.thread = Thread.currentThread();
+			this.startedAt = System.currentTimeMillis();
+			this.scheduler.onStarted(this);
+			Lock lock = this.isExclusive() ? this.scheduler.facadeLock
+					.writeLock() : this.scheduler.facadeLock.readLock();
+			lock.lock();
+			try {
+				this.result = this.doInBackground();
+			} catch (Exception e) {
+				this.exception = e;
+			} finally {
+				lock.unlock();
+				this.thread = null;
+				// Don't pass an interrupt meant for this task on to the next
+				Thread.interrupted();
+			}
+			this.finishedAt = System.currentTimeMillis();
+			this.scheduler.onFinished(this);
+		}
+
+		private void complete(Activity host) {
+			if (this.exception != null) {
+				this.onFailed(host, this.exception);
+			} else {
+				this.onSucceeded(host, this.result);
+			}
+		}
+
+		/**
+		 * Cancel the task. A queued task won't be started, a running task is
+		 * interrupted. The callbacks won't be called anymore.
+		 */
+		public void cancel() {
+			this.cancelled = true;
+			if (this.scheduler != null) {
+				this.scheduler.executor.remove(this);
+			}
+			Thread thread = this.thread;
+			if (thread != null) {
+				thread.interrupt();
+			}
+		}
+
+		public boolean isCancelled() {
+			return this.cancelled;
+		}
+
+		/**
+		 * @return True if a worker thread has picked up the task
+		 */
+		public boolean isStarted() {
+			return this.startedAt > 0;
+		}
+
+		/**
+		 * @return True if the work has been done, successfully or not
+		 */
+		public boolean isFinished() {
+			return this.finishedAt > 0;
+		}
+
+		public int getPriority() {
+			return this.priority;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * @return Time in milliseconds the task has waited for a worker
+		 *         thread so far
+		 */
+		public long getWaitTime() {
+			long end = this.startedAt > 0 ? this.startedAt : System
+					.currentTimeMillis();
+			return end - this.queuedAt;
+		}
+
+		/**
+		 * @return Time in milliseconds the work has taken so far, 0 if not
+		 *         started
+		 */
+		public long getRunTime() {
+			if (this.startedAt == 0) {
+				return 0;
+			}
+			long end = this.finishedAt > 0 ? this.finishedAt : System
+					.currentTimeMillis();
+			return end - this.startedAt;
+		}
+
+		public int compareTo(Task<?> other) {
+			if (this.priority != other.priority) {
+				return this.priority < other.priority ? -1 : 1;
+			}
+			return this.sequence < other.sequence ? -1
+					: (this.sequence == other.sequence ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Callback interface for observing the queue. The methods are called on
+	 * the thread queueing or running the task.
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	public interface Listener {
+
+		public void onQueued(Task<?> task);
+
+		public void onStarted(Task<?> task);
+
+		/**
+		 * Called before the result is delivered, timing is complete
+		 */
+		public void onFinished(Task<?> task);
+	}
+}
@@ -115,6 +115,15 @@ public class CompoundButtonGroup implements RadioButton.OnCheckedChangeListener
 		}
 	}
 
+	/**
+	 * Remove all compound buttons, e.g. before the buttons are reused for
+	 * other items
+	 */
+	public void clear() {
+		this.checkedButton = null;
+		this.attachments.clear();
+	}
+
 	/**
 	 * @return Reference to the currently checked button
 	 */
@@ -0,0 +1,113 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.rapla.entities.Named;
+
+/**
+ * Sorts entities by their display names according to the rules of a locale,
+ * e.g. umlauts next to their base letters in German. Each name is read and
+ * turned into a collation key only once, so sorting costs a single name
+ * lookup per entity.
+ *
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class NameSorter {
+
+	/**
+	 * Read the display names of the given entities
+	 *
+	 * @param items
+	 *            Named entities
+	 * @param locale
+	 *            Locale of the names
+	 * @return Names in the order of the entities, empty for entities whose
+	 *         name can't be read
+	 */
+	public static String[] getNames(Named[] items, Locale locale) {
+		String[] names = new String[items.length];
+		for (int i = 0; i < items.length; i++) {
+			try {
+				names[i] = items[i].getName(locale);
+			} catch (RuntimeException e) {
+				// Incomplete classification, sort to the top
+			}
+			if (names[i] == null) {
+				names[i] = "";
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Sort the items and their names by name, both arrays are sorted in place
+	 *
+	 * @param items
+	 *            Items to be sorted
+	 * @param names
+	 *            Names of the items, in the same order
+	 * @param locale
+	 *            Locale whose collation rules apply
+	 */
+	public static void sort(Object[] items, String[] names, Locale locale) {
+		Collator collator = Collator.getInstance(locale);
+		Entry[] entries = new Entry[items.length];
+		for (int i = 0; i < items.length; i++) {
+			entries[i] = new Entry(items[i], names[i],
+					collator.getCollationKey(names[i]));
+		}
+		Arrays.sort(entries);
+		for (int i = 0; i < entries.length; i++) {
+			items[i] = entries[i].item;
+			names[i] = entries[i].name;
+		}
+	}
+
+	/**
+	 * Sort named entities in place
+	 *
+	 * @param items
+	 *            Named entities
+	 * @param locale
+	 *            Locale of the names and collation rules
+	 * @return Names of the entities in sorted order
+	 */
+	public static String[] sort(Named[] items, Locale locale) {
+		String[] names = getNames(items, locale);
+		sort(items, names, locale);
+		return names;
+	}
+
+	private static class Entry implements Comparable<Entry> {
+
+		private Object item;
+		private String name;
+		private CollationKey key;
+
+		public Entry(Object item, String name, CollationKey key) {
+			this.item = item;
+			this.name = name;
+			this.key = key;
+		}
+
+		public int compareTo(Entry another) {
+			return this.key.compareTo(another.key);
+		}
+	}
+}
@@ -13,8 +13,16 @@
 
 package org.rapla.mobile.android.utility;
 
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.rapla.components.util.DateTools;
 import org.rapla.components.xmlbundle.I18nBundle;
+import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.AppointmentFormater;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
 import org.rapla.facade.ClientFacade;
 import org.rapla.facade.RaplaComponent;
 import org.rapla.framework.RaplaContext;
@@ -24,29 +32,48 @@ import org.rapla.framework.RaplaLocale;
 import org.rapla.mobile.android.PreferencesHandler;
 import org.rapla.mobile.android.RaplaMobileException;
 import org.rapla.mobile.android.RaplaMobileLoginException;
+import org.rapla.mobile.android.RuntimeStorage;
+import org.rapla.mobile.android.utility.cache.AllocatableCatalog;
+import org.rapla.mobile.android.utility.cache.Query;
+import org.rapla.mobile.android.utility.cache.QueryCache;
+import org.rapla.mobile.android.utility.conflict.Booking;
+import org.rapla.mobile.android.utility.conflict.ConflictDetector;
+import org.rapla.mobile.android.utility.permission.PermissionEvaluator;
+import org.rapla.mobile.android.utility.store.LocalStore;
+import org.rapla.mobile.android.utility.sync.Outbox;
+import org.rapla.mobile.android.utility.sync.SyncEngine;
 import org.rapla.mobile.android.utility.factory.RaplaContextFactory;
 
 /**
- * Manages the connection to a rapla server.
+ * Manages the connection to a rapla server. On memory pressure the caches
+ * derived from the facade are dropped, they are rebuilt on next access.
  * 
  * @author Maximilian Lenkeit <dev@lenki.com>
  * 
  */
-public class RaplaConnection {
+public class RaplaConnection implements RuntimeStorage.Trimmable {
 
 	public static final String IDENTIFIER = "RaplaConnection";
 	private RaplaContext context;
 	private ClientFacade facade;
+	private String host;
 	private String username;
 	private String password;
     private RaplaLocale raplaLocale;
     private AppointmentFormater appointmentFormater;
+	private QueryCache queryCache;
+	private AllocatableCatalog allocatableCatalog;
+	private SyncEngine syncEngine;
+	private Outbox outbox;
+	private ConflictDetector conflictDetector;
+	private PermissionEvaluator permissionEvaluator;
+	private LocalStore localStore;
 
 	public RaplaConnection(String username, String password, String host	) throws RaplaMobileException {
 
 		RaplaContextFactory instance = RaplaContextFactory.getInstance();
 		
-        this.context = instance.createInstance(host);
+        this.context = instance.getContext(host);
 		try {
             this.facade = context.lookup( ClientFacade.class);
             this.raplaLocale = context.lookup( RaplaLocale.class);
@@ -54,6 +81,7 @@ public class RaplaConnection {
         } catch (RaplaContextException e) {
             throw new RaplaMobileException( e.getMessage(), e);
         }
+		this.host = host;
 		this.username = username;
 		this.password = password;
 	}
@@ -66,6 +94,11 @@ public class RaplaConnection {
 
 	public boolean login() throws RaplaMobileLoginException {
 		try {
+			// The facade is shared by all connections to the same host, so
+			// end the session of a previous connection first
+			if (this.facade.isSessionActive()) {
+				this.facade.logout();
+			}
 			return this.facade
 					.login(this.username, this.password.toCharArray());
 		} catch (RaplaException ex) {
@@ -73,7 +106,198 @@ public class RaplaConnection {
 		}
 	}
 
-	
+	/**
+	 * Start reading the data needed by the first screens in the background.
+	 * Call after a successful login.
+	 */
+	public void prefetch() {
+		this.getQueryCache().prefetch(
+				Query.preferences(),
+				Query.dynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION),
+				Query.dynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESOURCE),
+				Query.dynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_PERSON),
+				Query.allocatables());
+	}
+
+	/**
+	 * @return Cache for query results of this connection
+	 */
+	public synchronized QueryCache getQueryCache() {
+		if (this.queryCache == null) {
+			this.queryCache = new QueryCache(this.getFacade());
+			this.getFacade().addModificationListener(this.queryCache);
+		}
+		return this.queryCache;
+	}
+
+	/**
+	 * Get the catalog of all allocatables. It is built from the allocatables
+	 * query on first access and kept up to date by listening to modifications
+	 * afterwards.
+	 * 
+	 * @return Allocatable catalog of this connection
+	 * @throws RaplaException
+	 */
+	public synchronized AllocatableCatalog getAllocatableCatalog()
+			throws RaplaException {
+		if (this.allocatableCatalog == null) {
+			this.allocatableCatalog = new AllocatableCatalog(this
+					.getQueryCache().get(Query.allocatables()));
+			this.getFacade().addModificationListener(this.allocatableCatalog);
+		}
+		return this.allocatableCatalog;
+	}
+
+	/**
+	 * Get conflict detector for the allocatables of a dynamic type. Only the
+	 * reservations booking these allocatables within the days covered by the
+	 * appointments are read, so the detector is reused as long as the
+	 * appointments stay within these days. It is rebuilt whenever the cached
+	 * reservations have changed or expired.
+	 * 
+	 * The bookings read are kept in the local store. If the reservations
+	 * can't be read, e.g. because the server is unreachable, the detector is
+	 * built from the stored bookings as long as they cover these days.
+	 * 
+	 * @param elementKey
+	 *            Element key of the dynamic type of the allocatables
+	 * @param appointments
+	 *            Appointments to be checked
+	 * @return Conflict detector
+	 * @throws RaplaException
+	 */
+	public synchronized ConflictDetector getConflictDetector(
+			String elementKey, Appointment[] appointments)
+			throws RaplaException {
+		if (appointments.length == 0) {
+			return new ConflictDetector(new Reservation[0]);
+		}
+		long[] span = ConflictDetector.getSpan(appointments);
+		Date from = DateTools.cutDate(new Date(span[0]));
+		Date to = DateTools.addDays(DateTools.cutDate(new Date(span[1])), 1);
+		Reservation[] reservations;
+		try {
+			reservations = this.getQueryCache().get(
+					Query.reservations(elementKey, this.getAllocatableCatalog()
+							.getAllocatables(elementKey), from, to));
+		} catch (RaplaException e) {
+			// Check against the bookings read before, if there are any
+			Map<String, List<Booking>> bookings = null;
+			if (this.localStore != null) {
+				bookings = this.localStore.getBookings(elementKey,
+						from.getTime(), to.getTime());
+			}
+			if (bookings == null) {
+				throw e;
+			}
+			return new ConflictDetector(bookings);
+		}
+		if (this.conflictDetector == null
+				|| !this.conflictDetector.isBuiltFrom(reservations)) {
+			this.conflictDetector = new ConflictDetector(reservations);
+			if (this.localStore != null) {
+				this.localStore.putBookings(elementKey, from.getTime(),
+						to.getTime(), this.conflictDetector.getBookings());
+			}
+		}
+		return this.conflictDetector;
+	}
+
+	/**
+	 * @return Evaluator of the allocation permissions of the logged in user,
+	 *         kept up to date by listening to modifications
+	 */
+	public synchronized PermissionEvaluator getPermissionEvaluator() {
+		if (this.permissionEvaluator == null) {
+			this.permissionEvaluator = new PermissionEvaluator(this.getFacade());
+			this.getFacade().addModificationListener(this.permissionEvaluator);
+		}
+		return this.permissionEvaluator;
+	}
+
+	/**
+	 * Keep the journal of the outbox and the bookings read for conflict
+	 * detection in the local store. Call after a successful login.
+	 * 
+	 * @param store
+	 *            Local store of the application
+	 */
+	public void attachLocalStore(LocalStore store) {
+		store.open(this.host, this.username);
+		this.getOutbox().setJournal(store);
+		synchronized (this) {
+			this.localStore = store;
+		}
+	}
+
+	/**
+	 * Stop the caches of this connection from listening to the facade, which
+	 * is shared with later connections to the same host, and stop syncing.
+	 * Call when the connection is replaced.
+	 */
+	public synchronized void close() {
+		ClientFacade facade = this.getFacade();
+		if (this.queryCache != null) {
+			facade.removeModificationListener(this.queryCache);
+		}
+		if (this.allocatableCatalog != null) {
+			facade.removeModificationListener(this.allocatableCatalog);
+		}
+		if (this.permissionEvaluator != null) {
+			facade.removeModificationListener(this.permissionEvaluator);
+		}
+		if (this.syncEngine != null) {
+			this.syncEngine.pause();
+		}
+	}
+
+	/**
+	 * @return Engine pulling changes from the server for this connection
+	 */
+	public synchronized SyncEngine getSyncEngine() {
+		if (this.syncEngine == null) {
+			this.syncEngine = new SyncEngine(this.getFacade());
+		}
+		return this.syncEngine;
+	}
+
+	/**
+	 * @return Outbox submitting store and remove operations of this
+	 *         connection
+	 */
+	public synchronized Outbox getOutbox() {
+		if (this.outbox == null) {
+			this.outbox = new Outbox(this.getFacade());
+		}
+		return this.outbox;
+	}
+
+	/**
+	 * Drop derived caches. Permissions and conflicts are always dropped, the
+	 * query results only if memory is critical, as reading them again needs
+	 * the server.
+	 * 
+	 * @param critical
+	 *            True if as much memory as possible should be released
+	 */
+	public synchronized void trimMemory(boolean critical) {
+		if (this.permissionEvaluator != null) {
+			this.permissionEvaluator.clear();
+		}
+		this.conflictDetector = null;
+		if (critical && this.queryCache != null) {
+			this.queryCache.clear();
+		}
+	}
+
+	public String getHost() {
+		return this.host;
+	}
+
+	public String getUsername() {
+		return this.username;
+	}
+
 	public AppointmentFormater getAppointmentFormater() 
 	{
         return appointmentFormater;
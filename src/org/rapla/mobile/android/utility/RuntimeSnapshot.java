@@ -0,0 +1,203 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import android.content.Context;
+
+/**
+ * A runtime snapshot records which connection was open and which reservation
+ * was being edited, so that both can be restored after the process has been
+ * killed in the background. It holds ids only, unsaved changes of the
+ * reservation are not part of it. It is written in the same compact,
+ * versioned binary format as the session snapshot.
+ *
+ * @see org.rapla.mobile.android.utility.SessionSnapshot
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class RuntimeSnapshot {
+
+	/**
+	 * Format version, increase whenever the binary layout changes
+	 */
+	public static final int VERSION = 1;
+
+	public static final String FILENAME = "runtime.snapshot";
+
+	private String host;
+	private String username;
+	private String reservationId;
+
+	/**
+	 * @param host
+	 *            Rapla server of the open connection
+	 * @param username
+	 *            User of the open connection
+	 * @param reservationId
+	 *            Id of the stored reservation being edited, null for none
+	 */
+	public RuntimeSnapshot(String host, String username, String reservationId) {
+		this.host = host;
+		this.username = username;
+		this.reservationId = reservationId;
+	}
+
+	public String getHost() {
+		return this.host;
+	}
+
+	public String getUsername() {
+		return this.username;
+	}
+
+	/**
+	 * @return Id of the reservation being edited, null for none
+	 */
+	public String getReservationId() {
+		return this.reservationId;
+	}
+
+	/**
+	 * @return True if the snapshot has been taken for the given server and
+	 *         user
+	 */
+	public boolean belongsTo(String host, String username) {
+		return this.host.equals(host) && this.username.equals(username);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof RuntimeSnapshot)) {
+			return false;
+		}
+		RuntimeSnapshot other = (RuntimeSnapshot) o;
+		return this.belongsTo(other.host, other.username)
+				&& (this.reservationId == null ? other.reservationId == null
+						: this.reservationId.equals(other.reservationId));
+	}
+
+	@Override
+	public int hashCode() {
+		return this.host.hashCode() * 31 + this.username.hashCode();
+	}
+
+	/**
+	 * Write snapshot to stream
+	 *
+	 * @param out
+	 *            Stream to write to
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(VERSION);
+		out.writeUTF(this.host);
+		out.writeUTF(this.username);
+		out.writeBoolean(this.reservationId != null);
+		if (this.reservationId != null) {
+			out.writeUTF(this.reservationId);
+		}
+	}
+
+	/**
+	 * Read snapshot from stream
+	 *
+	 * @param in
+	 *            Stream to read from
+	 * @return Snapshot or null if the stream has been written in another
+	 *         format version
+	 * @throws IOException
+	 */
+	public static RuntimeSnapshot readFrom(DataInputStream in)
+			throws IOException {
+		if (in.readInt() != VERSION) {
+			return null;
+		}
+		String host = in.readUTF();
+		String username = in.readUTF();
+		String reservationId = in.readBoolean() ? in.readUTF() : null;
+		return new RuntimeSnapshot(host, username, reservationId);
+	}
+
+	/**
+	 * Load the snapshot from the application's private storage
+	 *
+	 * @param context
+	 *            The current context
+	 * @return Snapshot or null if none is available
+	 */
+	public static RuntimeSnapshot load(Context context) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					context.openFileInput(FILENAME)));
+			return readFrom(in);
+		} catch (FileNotFoundException e) {
+			// No connection open when the process ended
+			return null;
+		} catch (IOException e) {
+			// Corrupt snapshot, it will be overwritten with the next save
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Save the snapshot to the application's private storage
+	 *
+	 * @param context
+	 *            The current context
+	 */
+	public void save(Context context) {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					context.openFileOutput(FILENAME, Context.MODE_PRIVATE)));
+			this.writeTo(out);
+			out.flush();
+		} catch (IOException e) {
+			// Without snapshot the user has to log in again, nothing more
+			clear(context);
+		} finally {
+			close(out);
+		}
+	}
+
+	/**
+	 * Delete the snapshot
+	 *
+	 * @param context
+	 *            The current context
+	 */
+	public static void clear(Context context) {
+		context.deleteFile(FILENAME);
+	}
+
+	private static void close(Closeable c) {
+		if (c != null) {
+			try {
+				c.close();
+			} catch (IOException e) {
+				// Nothing left to do
+			}
+		}
+	}
+}
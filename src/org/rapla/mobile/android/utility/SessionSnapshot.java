@@ -0,0 +1,131 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A session snapshot captures the data the start screen needs from the last
+ * session, so that it can be shown before the login has completed. It is
+ * written in a compact, versioned binary format.
+ *
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class SessionSnapshot {
+
+	/**
+	 * Format version, increase whenever the binary layout changes
+	 */
+	public static final int VERSION = 1;
+
+	private String host;
+	private String username;
+	private long createdAt;
+	private List<String> calendarNames;
+
+	/**
+	 * @param host
+	 *            Rapla server the data was loaded from
+	 * @param username
+	 *            User the data was loaded for
+	 * @param calendarNames
+	 *            Names of the calendars exported for the user
+	 */
+	public SessionSnapshot(String host, String username,
+			List<String> calendarNames) {
+		this(host, username, System.currentTimeMillis(), calendarNames);
+	}
+
+	protected SessionSnapshot(String host, String username, long createdAt,
+			List<String> calendarNames) {
+		this.host = host;
+		this.username = username;
+		this.createdAt = createdAt;
+		this.calendarNames = new ArrayList<String>(calendarNames);
+	}
+
+	public String getHost() {
+		return this.host;
+	}
+
+	public String getUsername() {
+		return this.username;
+	}
+
+	/**
+	 * @return Time in milliseconds the snapshot has been taken
+	 */
+	public long getCreatedAt() {
+		return this.createdAt;
+	}
+
+	public List<String> getCalendarNames() {
+		return this.calendarNames;
+	}
+
+	/**
+	 * @return True if the snapshot has been taken for the given server and
+	 *         user
+	 */
+	public boolean belongsTo(String host, String username) {
+		return this.host.equals(host) && this.username.equals(username);
+	}
+
+	/**
+	 * Write snapshot to stream
+	 *
+	 * @param out
+	 *            Stream to write to
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(VERSION);
+		out.writeUTF(this.host);
+		out.writeUTF(this.username);
+		out.writeLong(this.createdAt);
+		out.writeInt(this.calendarNames.size());
+		for (String name : this.calendarNames) {
+			out.writeUTF(name);
+		}
+	}
+
+	/**
+	 * Read snapshot from stream
+	 *
+	 * @param in
+	 *            Stream to read from
+	 * @return Snapshot or null if the stream has been written in another
+	 *         format version
+	 * @throws IOException
+	 */
+	public static SessionSnapshot readFrom(DataInputStream in)
+			throws IOException {
+		if (in.readInt() != VERSION) {
+			return null;
+		}
+		String host = in.readUTF();
+		String username = in.readUTF();
+		long createdAt = in.readLong();
+		int numCalendars = in.readInt();
+		List<String> calendarNames = new ArrayList<String>(numCalendars);
+		for (int i = 0; i < numCalendars; i++) {
+			calendarNames.add(in.readUTF());
+		}
+		return new SessionSnapshot(host, username, createdAt, calendarNames);
+	}
+}
@@ -0,0 +1,119 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import android.content.Context;
+
+/**
+ * Reads and writes the session snapshot from and to the application's private
+ * storage.
+ *
+ * @see org.rapla.mobile.android.utility.SessionSnapshot
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class SessionSnapshotStore {
+
+	public static final String FILENAME = "session.snapshot";
+	private Context context;
+
+	/**
+	 * @param context
+	 *            The current context
+	 */
+	public SessionSnapshotStore(Context context) {
+		this.context = context.getApplicationContext();
+	}
+
+	/**
+	 * Load the snapshot of the last session if it belongs to the given server
+	 * and user
+	 *
+	 * @param host
+	 *            Rapla server
+	 * @param username
+	 *            Rapla user
+	 * @return Snapshot or null if no valid snapshot is available
+	 */
+	public SessionSnapshot load(String host, String username) {
+		if (host == null || username == null) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					this.context.openFileInput(FILENAME)));
+			SessionSnapshot snapshot = SessionSnapshot.readFrom(in);
+			if (snapshot != null && snapshot.belongsTo(host, username)) {
+				return snapshot;
+			}
+			return null;
+		} catch (FileNotFoundException e) {
+			// No snapshot written yet
+			return null;
+		} catch (IOException e) {
+			// Corrupt snapshot, it will be overwritten with the next save
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Save snapshot and replace the previous one
+	 *
+	 * @param snapshot
+	 *            Snapshot to be saved
+	 */
+	public void save(SessionSnapshot snapshot) {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					this.context.openFileOutput(FILENAME,
+							Context.MODE_PRIVATE)));
+			snapshot.writeTo(out);
+			out.flush();
+		} catch (IOException e) {
+			// A missing snapshot only costs a slower start, so don't bother
+			// the user
+			this.clear();
+		} finally {
+			close(out);
+		}
+	}
+
+	/**
+	 * Delete the snapshot
+	 */
+	public void clear() {
+		this.context.deleteFile(FILENAME);
+	}
+
+	private static void close(Closeable c) {
+		if (c != null) {
+			try {
+				c.close();
+			} catch (IOException e) {
+				// Nothing left to do
+			}
+		}
+	}
+}
@@ -0,0 +1,248 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.rapla.entities.RaplaObject;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.facade.ModificationEvent;
+import org.rapla.facade.ModificationListener;
+import org.rapla.framework.RaplaException;
+import org.rapla.mobile.android.utility.NameSorter;
+
+/**
+ * The allocatable catalog holds all allocatables of a connection grouped by
+ * the element key of their dynamic type. It is filled with a single query and
+ * afterwards kept up to date with the modification events of the facade, so
+ * that the allocation screens don't need to ask the server per type. The
+ * allocatables of a type sorted by name are kept until the type changes.
+ *
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class AllocatableCatalog implements ModificationListener {
+
+	private static final Allocatable[] EMPTY = new Allocatable[0];
+
+	private Map<String, List<Allocatable>> allocatablesByType = new HashMap<String, List<Allocatable>>();
+	private Map<Object, Allocatable> allocatablesById = new HashMap<Object, Allocatable>();
+	private Map<Object, String> typeKeysById = new HashMap<Object, String>();
+	private Map<String, SortedAllocatables> sortedByType = new HashMap<String, SortedAllocatables>();
+
+	/**
+	 * @param allocatables
+	 *            All allocatables visible to the user
+	 */
+	public AllocatableCatalog(Allocatable[] allocatables) {
+		for (Allocatable allocatable : allocatables) {
+			this.add(allocatable);
+		}
+	}
+
+	/**
+	 * @param elementKey
+	 *            Element key of the dynamic type
+	 * @return Allocatables classified by the given dynamic type
+	 */
+	public synchronized Allocatable[] getAllocatables(String elementKey) {
+		List<Allocatable> allocatables = this.allocatablesByType
+				.get(elementKey);
+		if (allocatables == null) {
+			return EMPTY;
+		}
+		return allocatables.toArray(new Allocatable[allocatables.size()]);
+	}
+
+	/**
+	 * @param elementKey
+	 *            Element key of the dynamic type
+	 * @param locale
+	 *            Locale of the names
+	 * @return Allocatables classified by the given dynamic type, sorted by
+	 *         name
+	 */
+	public synchronized SortedAllocatables getSortedAllocatables(
+			String elementKey, Locale locale) {
+		SortedAllocatables sorted = this.sortedByType.get(elementKey);
+		if (sorted == null || !sorted.locale.equals(locale)) {
+			sorted = new SortedAllocatables(this.getAllocatables(elementKey),
+					locale);
+			this.sortedByType.put(elementKey, sorted);
+		}
+		return sorted;
+	}
+
+	/**
+	 * @param elementKey
+	 *            Element key of the dynamic type
+	 * @return Number of allocatables classified by the given dynamic type
+	 */
+	public synchronized int getCount(String elementKey) {
+		List<Allocatable> allocatables = this.allocatablesByType
+				.get(elementKey);
+		return allocatables == null ? 0 : allocatables.size();
+	}
+
+	/**
+	 * @return Total number of allocatables
+	 */
+	public synchronized int size() {
+		return this.allocatablesById.size();
+	}
+
+	/**
+	 * Count the given allocatables per dynamic type in a single pass
+	 *
+	 * @param allocatables
+	 *            Allocatables to be counted, e.g. those of a reservation
+	 * @return Map from element key of the dynamic type to number of
+	 *         allocatables
+	 */
+	public static Map<String, Integer> countByType(Allocatable[] allocatables) {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (Allocatable allocatable : allocatables) {
+			String key = getTypeKey(allocatable);
+			Integer count = counts.get(key);
+			counts.put(key, count == null ? 1 : count + 1);
+		}
+		return counts;
+	}
+
+	/**
+	 * File added, move changed and drop removed allocatables
+	 *
+	 * @param evt
+	 *            Modification event of the facade
+	 */
+	public void dataChanged(ModificationEvent evt) throws RaplaException {
+		this.apply(evt.getAddObjects(), evt.getChanged(), evt.getRemoved());
+	}
+
+	/**
+	 * Apply the objects of a modification. Objects other than allocatables
+	 * are ignored.
+	 *
+	 * @param added
+	 *            Objects created since the catalog has been built
+	 * @param changed
+	 *            Objects changed since, their dynamic type might have
+	 *            changed as well
+	 * @param removed
+	 *            Objects removed since
+	 */
+	public synchronized void apply(Collection<? extends RaplaObject> added,
+			Collection<? extends RaplaObject> changed,
+			Collection<? extends RaplaObject> removed) {
+		for (RaplaObject object : removed) {
+			if (object instanceof Allocatable) {
+				this.remove((Allocatable) object);
+			}
+		}
+		for (RaplaObject object : changed) {
+			if (object instanceof Allocatable) {
+				this.remove((Allocatable) object);
+				this.add((Allocatable) object);
+			}
+		}
+		for (RaplaObject object : added) {
+			if (object instanceof Allocatable) {
+				// An object might be reported as added more than once
+				this.remove((Allocatable) object);
+				this.add((Allocatable) object);
+			}
+		}
+	}
+
+	private synchronized void add(Allocatable allocatable) {
+		String key = getTypeKey(allocatable);
+		List<Allocatable> allocatables = this.allocatablesByType.get(key);
+		if (allocatables == null) {
+			allocatables = new ArrayList<Allocatable>();
+			this.allocatablesByType.put(key, allocatables);
+		}
+		allocatables.add(allocatable);
+		this.allocatablesById.put(allocatable.getId(), allocatable);
+		this.typeKeysById.put(allocatable.getId(), key);
+		this.sortedByType.remove(key);
+	}
+
+	private synchronized void remove(Allocatable allocatable) {
+		// Changed allocatables may be updated in place, so look up the type
+		// they have been filed under
+		Allocatable previous = this.allocatablesById.remove(allocatable
+				.getId());
+		String key = this.typeKeysById.remove(allocatable.getId());
+		if (previous != null) {
+			List<Allocatable> allocatables = this.allocatablesByType.get(key);
+			if (allocatables != null) {
+				allocatables.remove(previous);
+			}
+			this.sortedByType.remove(key);
+		}
+	}
+
+	private static String getTypeKey(Allocatable allocatable) {
+		return allocatable.getClassification().getType().getElementKey();
+	}
+
+	/**
+	 * Allocatables of a type sorted by name, together with their names
+	 *
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	public static class SortedAllocatables {
+
+		private Locale locale;
+		private Allocatable[] allocatables;
+		private String[] names;
+		private AllocatableSearchIndex searchIndex;
+
+		public SortedAllocatables(Allocatable[] allocatables, Locale locale) {
+			this.locale = locale;
+			this.allocatables = allocatables;
+			this.names = NameSorter.sort(allocatables, locale);
+		}
+
+		/**
+		 * @return Copy of the sorted allocatables
+		 */
+		public Allocatable[] getAllocatables() {
+			return this.allocatables.clone();
+		}
+
+		/**
+		 * @return Copy of the names, in the order of the allocatables
+		 */
+		public String[] getNames() {
+			return this.names.clone();
+		}
+
+		/**
+		 * @return Search index over the allocatables, built on first use.
+		 *         Its results are positions within the sorted allocatables.
+		 */
+		public synchronized AllocatableSearchIndex getSearchIndex() {
+			if (this.searchIndex == null) {
+				this.searchIndex = new AllocatableSearchIndex(
+						this.allocatables, this.names);
+			}
+			return this.searchIndex;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.cache;
+
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.dynamictype.Attribute;
+import org.rapla.entities.dynamictype.AttributeType;
+import org.rapla.entities.dynamictype.Classification;
+
+/**
+ * In-memory substring search over the names and string attributes of
+ * allocatables. Results are positions in the indexed array.
+ *
+ * @see org.rapla.mobile.android.utility.cache.TextSearchIndex
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class AllocatableSearchIndex extends TextSearchIndex {
+
+	/**
+	 * @param allocatables
+	 *            Allocatables to be searched
+	 * @param names
+	 *            Names of the allocatables, in the same order
+	 */
+	public AllocatableSearchIndex(Allocatable[] allocatables, String[] names) {
+		super(getTexts(allocatables, names));
+	}
+
+	private static String[] getTexts(Allocatable[] allocatables,
+			String[] names) {
+		String[] texts = new String[allocatables.length];
+		for (int i = 0; i < allocatables.length; i++) {
+			texts[i] = getText(allocatables[i], names[i]);
+		}
+		return texts;
+	}
+
+	/**
+	 * Name followed by all string attribute values, separated by line breaks
+	 * so that no match spans two values
+	 */
+	private static String getText(Allocatable allocatable, String name) {
+		StringBuilder text = new StringBuilder(name);
+		Classification classification = allocatable.getClassification();
+		if (classification != null) {
+			for (Attribute attribute : classification.getAttributes()) {
+				if (attribute.getType() == AttributeType.STRING) {
+					Object value = classification.getValue(attribute);
+					if (value != null) {
+						text.append('\n').append(value);
+					}
+				}
+			}
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,98 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Reservation;
+
+/**
+ * Number of appointments each allocatable of a reservation is assigned to.
+ * The index is built in one pass over the allocations of the reservation,
+ * so that list rows can read the assignments without scanning the
+ * reservation. It has to be updated whenever an allocatable is booked,
+ * unbooked or restricted.
+ *
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class AssignmentIndex {
+
+	private Reservation reservation;
+	private int appointmentCount;
+	private Map<Allocatable, Integer> assigned = new HashMap<Allocatable, Integer>();
+
+	/**
+	 * @param reservation
+	 *            Reservation to index the allocations of
+	 */
+	public AssignmentIndex(Reservation reservation) {
+		this.reservation = reservation;
+		this.rebuild();
+	}
+
+	/**
+	 * Index all allocations of the reservation again
+	 */
+	public void rebuild() {
+		this.appointmentCount = this.reservation.getAppointments().length;
+		this.assigned.clear();
+		for (Allocatable allocatable : this.reservation.getAllocatables()) {
+			this.update(allocatable);
+		}
+	}
+
+	/**
+	 * Index the allocation of a single allocatable again
+	 *
+	 * @param allocatable
+	 *            Allocatable that has been booked, unbooked or restricted
+	 */
+	public void update(Allocatable allocatable) {
+		if (this.reservation.hasAllocated(allocatable)) {
+			this.assigned.put(allocatable, this.reservation
+					.getAppointmentsFor(allocatable).length);
+		} else {
+			this.assigned.remove(allocatable);
+		}
+	}
+
+	/**
+	 * @return Number of appointments of the reservation
+	 */
+	public int getAppointmentCount() {
+		return this.appointmentCount;
+	}
+
+	/**
+	 * @param allocatable
+	 *            Allocatable to be checked
+	 * @return True if the reservation has allocated the allocatable
+	 */
+	public boolean isAllocated(Allocatable allocatable) {
+		return this.assigned.containsKey(allocatable);
+	}
+
+	/**
+	 * @param allocatable
+	 *            Allocatable to be checked
+	 * @return Number of appointments the allocatable is assigned to, 0 if it
+	 *         isn't allocated
+	 */
+	public int getAssignedCount(Allocatable allocatable) {
+		Integer count = this.assigned.get(allocatable);
+		return count != null ? count : 0;
+	}
+}
@@ -0,0 +1,308 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.cache;
+
+import java.util.IdentityHashMap;
+import java.util.Locale;
+
+import org.rapla.entities.Category;
+import org.rapla.mobile.android.RuntimeStorage;
+
+/**
+ * The category index flattens a category tree into arrays, so that the
+ * category dialog can navigate and bind rows without walking the tree.
+ * Categories are numbered level by level, which keeps the children of a
+ * category in a contiguous range. Localized names are cached on first use,
+ * the search index over them is built on the first search.
+ * 
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class CategoryIndex {
+
+	public static final String IDENTIFIER = "CategoryIndex";
+
+	private Category top;
+	private Locale locale;
+	private Category[] categories;
+	private int[] parents;
+	private int[] firstChildren;
+	private int[] childCounts;
+	private int[] depths;
+	private int[] enter;
+	private int[] exit;
+	private String[] names;
+	private IdentityHashMap<Category, Integer> positions;
+	private TextSearchIndex searchIndex;
+
+	/**
+	 * @param category
+	 *            Any category of the tree, the whole tree is indexed
+	 * @param locale
+	 *            Locale of the names
+	 */
+	public CategoryIndex(Category category, Locale locale) {
+		this.top = getTop(category);
+		this.locale = locale;
+		this.build();
+	}
+
+	/**
+	 * Get the index of the tree the given category belongs to. The last index
+	 * is kept in the runtime storage until the tree is replaced, e.g. by a
+	 * refresh, the default locale changes or memory runs low.
+	 * 
+	 * @param category
+	 *            Any category of the tree
+	 * @return Index of the tree
+	 */
+	public static synchronized CategoryIndex getInstance(Category category) {
+		Category top = getTop(category);
+		Locale locale = Locale.getDefault();
+		RuntimeStorage storage = RuntimeStorage.getInstance();
+		CategoryIndex index = storage.retrieve(IDENTIFIER, CategoryIndex.class);
+		if (index == null || index.top != top || !index.locale.equals(locale)) {
+			index = new CategoryIndex(top, locale);
+			storage.storeSoft(IDENTIFIER, index);
+		}
+		return index;
+	}
+
+	private static Category getTop(Category category) {
+		while (category.getParent() != null) {
+			category = category.getParent();
+		}
+		return category;
+	}
+
+	private void build() {
+		// Count categories first, so that the arrays are allocated once
+		int size = count(this.top);
+		this.categories = new Category[size];
+		this.parents = new int[size];
+		this.firstChildren = new int[size];
+		this.childCounts = new int[size];
+		this.depths = new int[size];
+		this.enter = new int[size];
+		this.exit = new int[size];
+		this.names = new String[size];
+		this.positions = new IdentityHashMap<Category, Integer>(size);
+
+		// Number level by level, the array itself serves as queue
+		this.categories[0] = this.top;
+		this.parents[0] = -1;
+		int next = 1;
+		for (int i = 0; i < size; i++) {
+			Category[] children = this.categories[i].getCategories();
+			this.firstChildren[i] = next;
+			this.childCounts[i] = children.length;
+			for (Category child : children) {
+				this.categories[next] = child;
+				this.parents[next] = i;
+				this.depths[next] = this.depths[i] + 1;
+				next++;
+			}
+			this.positions.put(this.categories[i], i);
+		}
+
+		// Depth-first enter and exit numbers for constant time ancestor
+		// checks
+		int[] stack = new int[size];
+		int[] visited = new int[size];
+		int depth = 0;
+		int counter = 0;
+		stack[0] = 0;
+		this.enter[0] = counter++;
+		while (depth >= 0) {
+			int current = stack[depth];
+			if (visited[current] < this.childCounts[current]) {
+				int child = this.firstChildren[current] + visited[current]++;
+				this.enter[child] = counter++;
+				stack[++depth] = child;
+			} else {
+				this.exit[current] = counter++;
+				depth--;
+			}
+		}
+	}
+
+	private static int count(Category category) {
+		int count = 1;
+		for (Category child : category.getCategories()) {
+			count += count(child);
+		}
+		return count;
+	}
+
+	/**
+	 * @return Number of indexed categories
+	 */
+	public int size() {
+		return this.categories.length;
+	}
+
+	/**
+	 * @param category
+	 *            Category to look up
+	 * @return Position of the category, -1 if it is null or not part of the
+	 *         tree
+	 */
+	public int indexOf(Category category) {
+		if (category == null) {
+			return -1;
+		}
+		Integer position = this.positions.get(category);
+		if (position != null) {
+			return position;
+		}
+		// Copies of the same category are not identical objects
+		for (int i = 0; i < this.categories.length; i++) {
+			if (this.categories[i].isIdentical(category)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param position
+	 *            Position of a category
+	 * @return Category at the position
+	 */
+	public Category getCategory(int position) {
+		return this.categories[position];
+	}
+
+	/**
+	 * @param position
+	 *            Position of a category
+	 * @return Position of the parent, -1 for the top category
+	 */
+	public int getParent(int position) {
+		return this.parents[position];
+	}
+
+	/**
+	 * @param position
+	 *            Position of a category
+	 * @return Position of the first child, children follow in a row
+	 */
+	public int getFirstChild(int position) {
+		return this.firstChildren[position];
+	}
+
+	/**
+	 * @param position
+	 *            Position of a category
+	 * @return Number of child categories
+	 */
+	public int getChildCount(int position) {
+		return this.childCounts[position];
+	}
+
+	/**
+	 * @param position
+	 *            Position of a category
+	 * @return Depth of the category, 0 for the top category
+	 */
+	public int getDepth(int position) {
+		return this.depths[position];
+	}
+
+	/**
+	 * @param position
+	 *            Position of a category
+	 * @return Localized name of the category
+	 */
+	public String getName(int position) {
+		String name = this.names[position];
+		if (name == null) {
+			name = this.categories[position].getName(this.locale);
+			this.names[position] = name;
+		}
+		return name;
+	}
+
+	/**
+	 * Breadcrumb path of a category, starting at the given root
+	 * 
+	 * @param root
+	 *            Position of the top most category shown in the path
+	 * @param position
+	 *            Position of the category
+	 * @return Names of the ancestors from the root down to the parent,
+	 *         separated by " > ", empty if the category is the root
+	 */
+	public String getPath(int root, int position) {
+		StringBuilder path = new StringBuilder();
+		int parent = this.parents[position];
+		if (position == root || parent < 0) {
+			return "";
+		}
+		while (parent >= 0) {
+			path.insert(0, this.getName(parent));
+			if (parent == root) {
+				break;
+			}
+			path.insert(0, " > ");
+			parent = this.parents[parent];
+		}
+		return path.toString();
+	}
+
+	/**
+	 * Find all categories of a subtree whose name contains the query
+	 * 
+	 * @param root
+	 *            Position of the root of the subtree, included in the search
+	 * @param query
+	 *            Text entered by the user
+	 * @return Positions of the matching categories, level by level
+	 */
+	public synchronized int[] search(int root, String query) {
+		if (this.searchIndex == null) {
+			String[] names = new String[this.categories.length];
+			for (int i = 0; i < names.length; i++) {
+				String name = this.getName(i);
+				names[i] = name != null ? name : "";
+			}
+			this.searchIndex = new TextSearchIndex(names);
+		}
+		int[] result = this.searchIndex.search(query);
+		int count = 0;
+		int[] filtered = new int[result.length];
+		for (int position : result) {
+			if (this.isAncestorOrSelf(root, position)) {
+				filtered[count++] = position;
+			}
+		}
+		if (count < filtered.length) {
+			int[] shrunk = new int[count];
+			System.arraycopy(filtered, 0, shrunk, 0, count);
+			filtered = shrunk;
+		}
+		return filtered;
+	}
+
+	/**
+	 * @param ancestor
+	 *            Position of the possible ancestor
+	 * @param position
+	 *            Position of the category
+	 * @return True if ancestor is the category itself or one of its ancestors
+	 */
+	public boolean isAncestorOrSelf(int ancestor, int position) {
+		return this.enter[ancestor] <= this.enter[position]
+				&& this.exit[position] <= this.exit[ancestor];
+	}
+}
@@ -0,0 +1,153 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lazily computed values of a long list, kept in pages of a fixed size. Only
+ * a bounded number of pages stays in memory, the least recently used page is
+ * dropped first. So the memory needed for the values of a list doesn't depend
+ * on its length, but on how much of it the user looks at.
+ *
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class PageWindow<T> {
+
+	public static final int DEFAULT_PAGE_SIZE = 50;
+	public static final int DEFAULT_MAX_PAGES = 4;
+
+	private int size;
+	private int pageSize;
+	private Loader<T> loader;
+	private Map<Integer, Object[]> pages;
+
+	/**
+	 * @param size
+	 *            Number of values in the list
+	 * @param loader
+	 *            Computes the values
+	 */
+	public PageWindow(int size, Loader<T> loader) {
+		this(size, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES, loader);
+	}
+
+	/**
+	 * @param size
+	 *            Number of values in the list
+	 * @param pageSize
+	 *            Number of values per page
+	 * @param maxPages
+	 *            Number of pages kept in memory
+	 * @param loader
+	 *            Computes the values
+	 */
+	public PageWindow(int size, int pageSize, final int maxPages,
+			Loader<T> loader) {
+		this.size = size;
+		this.pageSize = pageSize;
+		this.loader = loader;
+		this.pages = new LinkedHashMap<Integer, Object[]>(maxPages + 1, 1,
+				true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> e) {
+				return this.size() > maxPages;
+			}
+		};
+	}
+
+	/**
+	 * @param index
+	 *            Position within the list
+	 * @return Value at the position, its page is loaded if necessary
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		return (T) this.getPage(index / this.pageSize)[index % this.pageSize];
+	}
+
+	/**
+	 * @param index
+	 *            Position within the list
+	 * @return True if the page of the position is in memory
+	 */
+	public boolean isLoaded(int index) {
+		return this.pages.containsKey(index / this.pageSize);
+	}
+
+	/**
+	 * Load the page of a position ahead of time
+	 *
+	 * @param index
+	 *            Position within the list
+	 */
+	public void prefetch(int index) {
+		if (index >= 0 && index < this.size) {
+			this.getPage(index / this.pageSize);
+		}
+	}
+
+	/**
+	 * Drop all pages, e.g. because the values have changed
+	 */
+	public void clear() {
+		this.pages.clear();
+	}
+
+	/**
+	 * @return Number of pages in memory
+	 */
+	public int getLoadedPages() {
+		return this.pages.size();
+	}
+
+	/**
+	 * @return Number of values per page
+	 */
+	public int getPageSize() {
+		return this.pageSize;
+	}
+
+	private Object[] getPage(int number) {
+		Object[] page = this.pages.get(number);
+		if (page == null) {
+			int start = number * this.pageSize;
+			int end = Math.min(this.size, start + this.pageSize);
+			page = new Object[this.pageSize];
+			for (int i = start; i < end; i++) {
+				page[i - start] = this.loader.load(i);
+			}
+			this.pages.put(number, page);
+		}
+		return page;
+	}
+
+	/**
+	 * Computes the values of a page window
+	 *
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	public interface Loader<T> {
+
+		/**
+		 * @param index
+		 *            Position within the list
+		 * @return Value at the position
+		 */
+		public T load(int index);
+	}
+}
@@ -0,0 +1,161 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.cache;
+
+import java.util.Date;
+
+import org.rapla.entities.User;
+import org.rapla.entities.configuration.Preferences;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.facade.ClientFacade;
+import org.rapla.framework.RaplaException;
+
+/**
+ * A query reads a specific set of data from the client facade. Queries with
+ * the same key return the same data, so their results can be shared through
+ * the <code>QueryCache</code>. The kind of a query determines how long its
+ * result stays valid and which changes invalidate it.
+ *
+ * @param <T>
+ *            Type of the query result
+ * @see org.rapla.mobile.android.utility.cache.QueryCache
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public abstract class Query<T> {
+
+	/**
+	 * Kinds of queries
+	 */
+	public enum Kind {
+		PREFERENCES, DYNAMIC_TYPES, ALLOCATABLES, RESERVATIONS
+	}
+
+	private Kind kind;
+	private String key;
+
+	/**
+	 * @param kind
+	 *            Kind of data read by this query
+	 * @param key
+	 *            Key that identifies the result of this query
+	 */
+	protected Query(Kind kind, String key) {
+		this.kind = kind;
+		this.key = key;
+	}
+
+	public Kind getKind() {
+		return this.kind;
+	}
+
+	public String getKey() {
+		return this.key;
+	}
+
+	/**
+	 * Run the query against the facade
+	 *
+	 * @param facade
+	 *            Logged in client facade
+	 * @return Query result
+	 * @throws RaplaException
+	 */
+	public abstract T execute(ClientFacade facade) throws RaplaException;
+
+	/**
+	 * @param classificationType
+	 *            One of the classification types defined in
+	 *            <code>DynamicTypeAnnotations</code>
+	 * @return Query for all dynamic types of the given classification type
+	 */
+	public static Query<DynamicType[]> dynamicTypes(
+			final String classificationType) {
+		return new Query<DynamicType[]>(Kind.DYNAMIC_TYPES, "dynamicTypes:"
+				+ classificationType) {
+			public DynamicType[] execute(ClientFacade facade)
+					throws RaplaException {
+				return facade.getDynamicTypes(classificationType);
+			}
+		};
+	}
+
+	/**
+	 * @return Query for all allocatables visible to the user
+	 */
+	public static Query<Allocatable[]> allocatables() {
+		return new Query<Allocatable[]>(Kind.ALLOCATABLES, "allocatables") {
+			public Allocatable[] execute(ClientFacade facade)
+					throws RaplaException {
+				return facade.getAllocatables();
+			}
+		};
+	}
+
+	/**
+	 * @param user
+	 *            Owner of the reservations
+	 * @param from
+	 *            Start of the open time window, pass the same start for a
+	 *            while to share the result
+	 * @return Query for the reservations of the user from the given start on
+	 */
+	public static Query<Reservation[]> reservations(final User user,
+			final Date from) {
+		return new Query<Reservation[]>(Kind.RESERVATIONS, "reservations:user:"
+				+ user.getUsername() + ":" + from.getTime()) {
+			public Reservation[] execute(ClientFacade facade)
+					throws RaplaException {
+				return facade.getReservations(user, from, null, null);
+			}
+		};
+	}
+
+	/**
+	 * @param elementKey
+	 *            Element key of the dynamic type the allocatables are
+	 *            classified by, identifies them within the cache
+	 * @param allocatables
+	 *            All allocatables of the dynamic type
+	 * @param from
+	 *            Start of the time window
+	 * @param to
+	 *            End of the time window
+	 * @return Query for the reservations of all users booking one of the
+	 *         allocatables within the time window
+	 */
+	public static Query<Reservation[]> reservations(final String elementKey,
+			final Allocatable[] allocatables, final Date from, final Date to) {
+		return new Query<Reservation[]>(Kind.RESERVATIONS, "reservations:"
+				+ elementKey + ":" + from.getTime() + "-" + to.getTime()) {
+			public Reservation[] execute(ClientFacade facade)
+					throws RaplaException {
+				return facade.getReservations(allocatables, from, to);
+			}
+		};
+	}
+
+	/**
+	 * @return Query for the preferences of the user
+	 */
+	public static Query<Preferences> preferences() {
+		return new Query<Preferences>(Kind.PREFERENCES, "preferences") {
+			public Preferences execute(ClientFacade facade)
+					throws RaplaException {
+				return facade.getPreferences();
+			}
+		};
+	}
+}
@@ -0,0 +1,364 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.cache;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.rapla.entities.Entity;
+import org.rapla.entities.RaplaType;
+import org.rapla.entities.configuration.Preferences;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.facade.ClientFacade;
+import org.rapla.facade.ModificationEvent;
+import org.rapla.facade.ModificationListener;
+import org.rapla.framework.RaplaException;
+import org.rapla.mobile.android.os.TaskScheduler;
+
+/**
+ * The query cache shares query results of one connection across activities.
+ * Queries can be prefetched in parallel right after the login, so that the
+ * screens find their data ready or only wait for the query they need.
+ * Prefetching runs on the task scheduler, behind work the user waits for.
+ *
+ * A query is never sent twice at the same time. Callers asking for a query
+ * that is still being read wait for the pending result instead, this is
+ * counted as coalesced.
+ *
+ * Results expire after the time to live configured for their kind of query.
+ * Changes made through <code>store</code> and <code>remove</code> of this
+ * cache invalidate the affected kinds right away, changes pulled from the
+ * server do so as soon as the cache is registered as modification listener.
+ *
+ * @see org.rapla.mobile.android.utility.cache.Query
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class QueryCache implements ModificationListener {
+
+	/**
+	 * Default time to live in milliseconds per kind of query
+	 */
+	public static final long TTL_PREFERENCES = 5 * 60 * 1000;
+	public static final long TTL_DYNAMIC_TYPES = 30 * 60 * 1000;
+	public static final long TTL_ALLOCATABLES = 10 * 60 * 1000;
+	public static final long TTL_RESERVATIONS = 60 * 1000;
+
+	private ClientFacade facade;
+	private ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private Map<Query.Kind, Long> timesToLive = new EnumMap<Query.Kind, Long>(
+			Query.Kind.class);
+	private AtomicInteger hits = new AtomicInteger();
+	private AtomicInteger misses = new AtomicInteger();
+	private AtomicInteger coalesced = new AtomicInteger();
+
+	/**
+	 * @param facade
+	 *            Client facade the queries are run against
+	 */
+	public QueryCache(ClientFacade facade) {
+		this.facade = facade;
+		this.timesToLive.put(Query.Kind.PREFERENCES, TTL_PREFERENCES);
+		this.timesToLive.put(Query.Kind.DYNAMIC_TYPES, TTL_DYNAMIC_TYPES);
+		this.timesToLive.put(Query.Kind.ALLOCATABLES, TTL_ALLOCATABLES);
+		this.timesToLive.put(Query.Kind.RESERVATIONS, TTL_RESERVATIONS);
+	}
+
+	/**
+	 * Set how long results of the given kind stay valid
+	 *
+	 * @param kind
+	 *            Kind of query
+	 * @param millis
+	 *            Time to live in milliseconds
+	 */
+	public synchronized void setTimeToLive(Query.Kind kind, long millis) {
+		this.timesToLive.put(kind, millis);
+	}
+
+	public synchronized long getTimeToLive(Query.Kind kind) {
+		return this.timesToLive.get(kind);
+	}
+
+	/**
+	 * Start the given queries in the background, unless valid results are
+	 * already available
+	 *
+	 * @param queries
+	 *            Independent queries to be run in parallel
+	 */
+	public void prefetch(Query<?>... queries) {
+		for (Query<?> query : queries) {
+			this.expire(query);
+			Entry entry = new Entry(query);
+			Entry pending = this.entries.putIfAbsent(query.getKey(), entry);
+			if (pending == null) {
+				TaskScheduler.getInstance().execute(
+						TaskScheduler.PRIORITY_PREFETCH,
+						"Prefetch " + query.getKey(), entry.task);
+			} else if (!pending.task.isDone()) {
+				this.coalesced.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Get the result of the query. If it is being read at the moment, this
+	 * method waits for it. Otherwise the query is run on the calling thread.
+	 *
+	 * @param query
+	 *            Query to get the result for
+	 * @return Query result
+	 * @throws RaplaException
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(Query<T> query) throws RaplaException {
+		while (true) {
+			this.expire(query);
+			Entry entry = this.entries.get(query.getKey());
+			if (entry == null) {
+				Entry created = new Entry(query);
+				entry = this.entries.putIfAbsent(query.getKey(), created);
+				if (entry == null) {
+					this.misses.incrementAndGet();
+					entry = created;
+				} else {
+					this.hit(entry);
+				}
+			} else {
+				this.hit(entry);
+			}
+
+			// Run the query here unless it has been started already, so that
+			// a prefetch still waiting for a worker thread can't block the
+			// caller
+			entry.task.run();
+
+			try {
+				return (T) entry.task.get();
+			} catch (InterruptedException e) {
+				throw new RaplaException("Query interrupted", e);
+			} catch (ExecutionException e) {
+				// Don't cache failures, the next access tries again
+				this.entries.remove(query.getKey(), entry);
+
+				// The caller running the query has been cancelled, which
+				// must not fail the others waiting for it
+				if (entry.interrupted
+						&& !Thread.currentThread().isInterrupted()) {
+					continue;
+				}
+				if (e.getCause() instanceof RaplaException) {
+					throw (RaplaException) e.getCause();
+				}
+				throw new RaplaException("Query failed", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Store the entity and invalidate the results it affects
+	 *
+	 * @param entity
+	 *            Entity to be stored
+	 * @throws RaplaException
+	 */
+	public void store(Entity entity) throws RaplaException {
+		try {
+			this.facade.store(entity);
+		} finally {
+			this.invalidate(entity);
+		}
+	}
+
+	/**
+	 * Remove the entity and invalidate the results it affects
+	 *
+	 * @param entity
+	 *            Entity to be removed
+	 * @throws RaplaException
+	 */
+	public void remove(Entity entity) throws RaplaException {
+		try {
+			this.facade.remove(entity);
+		} finally {
+			this.invalidate(entity);
+		}
+	}
+
+	/**
+	 * Drop all results that depend on the given entity
+	 *
+	 * @param entity
+	 *            Changed entity
+	 */
+	public void invalidate(Entity entity) {
+		RaplaType type = entity.getRaplaType();
+		if (type == Reservation.TYPE) {
+			this.invalidate(Query.Kind.RESERVATIONS);
+		} else if (type == Allocatable.TYPE) {
+			this.invalidate(Query.Kind.ALLOCATABLES);
+		} else if (type == Preferences.TYPE) {
+			this.invalidate(Query.Kind.PREFERENCES);
+		} else if (type == DynamicType.TYPE) {
+			// Classifications of all other entities depend on dynamic types
+			this.clear();
+		}
+	}
+
+	/**
+	 * Drop all results affected by the modification
+	 *
+	 * @param evt
+	 *            Modification event of the facade
+	 */
+	public void dataChanged(ModificationEvent evt) throws RaplaException {
+		if (evt.isModified(DynamicType.TYPE)) {
+			this.clear();
+			return;
+		}
+		if (evt.isModified(Reservation.TYPE)) {
+			this.invalidate(Query.Kind.RESERVATIONS);
+		}
+		if (evt.isModified(Allocatable.TYPE)) {
+			this.invalidate(Query.Kind.ALLOCATABLES);
+		}
+		if (evt.isModified(Preferences.TYPE)) {
+			this.invalidate(Query.Kind.PREFERENCES);
+		}
+	}
+
+	/**
+	 * Drop all results of the given kind
+	 *
+	 * @param kind
+	 *            Kind of query whose results have become stale
+	 */
+	public void invalidate(Query.Kind kind) {
+		Iterator<Entry> it = this.entries.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().query.getKind() == kind) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Drop the result of the given query, so that it is read again on next
+	 * access
+	 *
+	 * @param query
+	 *            Query whose result has become stale
+	 */
+	public void invalidate(Query<?> query) {
+		this.entries.remove(query.getKey());
+	}
+
+	/**
+	 * Drop all results
+	 */
+	public void clear() {
+		this.entries.clear();
+	}
+
+	/**
+	 * @return Number of results served from the cache
+	 */
+	public int getHitCount() {
+		return this.hits.get();
+	}
+
+	/**
+	 * @return Number of queries that had to be run on access
+	 */
+	public int getMissCount() {
+		return this.misses.get();
+	}
+
+	/**
+	 * @return Number of accesses that waited for a query already being read
+	 *         instead of sending it again
+	 */
+	public int getCoalescedCount() {
+		return this.coalesced.get();
+	}
+
+	/**
+	 * Reset hit, miss and coalesced counts
+	 */
+	public void resetStats() {
+		this.hits.set(0);
+		this.misses.set(0);
+		this.coalesced.set(0);
+	}
+
+	/**
+	 * @return Current time in milliseconds
+	 */
+	protected long now() {
+		return System.currentTimeMillis();
+	}
+
+	private void hit(Entry entry) {
+		this.hits.incrementAndGet();
+		if (!entry.task.isDone()) {
+			this.coalesced.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Drop the result of the query if it has outlived its time to live
+	 */
+	private void expire(Query<?> query) {
+		Entry entry = this.entries.get(query.getKey());
+		if (entry != null && entry.task.isDone()
+				&& this.now() - entry.createdAt > this.getTimeToLive(query.getKind())) {
+			this.entries.remove(query.getKey(), entry);
+		}
+	}
+
+	/**
+	 * Result of a query, possibly still being read
+	 */
+	private class Entry {
+
+		private Query<?> query;
+		private FutureTask<Object> task;
+		private long createdAt;
+		private volatile boolean interrupted = false;
+
+		public Entry(final Query<?> query) {
+			this.query = query;
+			this.createdAt = now();
+			this.task = new FutureTask<Object>(new Callable<Object>() {
+				public Object call() throws Exception {
+					try {
+						return query.execute(facade);
+					} catch (Exception e) {
+						interrupted = Thread.currentThread().isInterrupted();
+						throw e;
+					}
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.cache;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory substring search over a fixed array of texts. Every substring
+ * of up to three characters is mapped to the positions of the texts
+ * containing it. Queries of up to three characters are answered directly
+ * from the index, longer queries by intersecting the lists of their three
+ * character substrings and checking the remaining candidates. Results keep
+ * the order of the indexed array.
+ *
+ * A query that extends the previous one only checks the previous results,
+ * so typing refines the results without looking at the whole index again.
+ * Searching is case insensitive and ignores umlauts and accents commonly
+ * used in German and French.
+ *
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class TextSearchIndex {
+
+	private static final int GRAM_LENGTH = 3;
+	private static final int[] EMPTY = new int[0];
+
+	private String[] texts;
+	private Map<String, int[]> grams = new HashMap<String, int[]>();
+	private int[] all;
+	private String lastQuery;
+	private int[] lastResult;
+
+	/**
+	 * @param texts
+	 *            Texts to be searched
+	 */
+	public TextSearchIndex(String[] texts) {
+		this.texts = new String[texts.length];
+		this.all = new int[texts.length];
+		Map<String, IntList> postings = new HashMap<String, IntList>();
+		for (int i = 0; i < texts.length; i++) {
+			this.all[i] = i;
+			this.texts[i] = normalize(texts[i]);
+			String text = this.texts[i];
+			for (int start = 0; start < text.length(); start++) {
+				int maxEnd = Math.min(text.length(), start + GRAM_LENGTH);
+				for (int end = start + 1; end <= maxEnd; end++) {
+					String gram = text.substring(start, end);
+					IntList list = postings.get(gram);
+					if (list == null) {
+						list = new IntList();
+						postings.put(gram, list);
+					}
+					list.addIfNew(i);
+				}
+			}
+		}
+		for (Map.Entry<String, IntList> entry : postings.entrySet()) {
+			this.grams.put(entry.getKey(), entry.getValue().toArray());
+		}
+	}
+
+	/**
+	 * Find all texts containing the query. Refines the results of the
+	 * previous query if the query extends it.
+	 *
+	 * @param query
+	 *            Text entered by the user
+	 * @return Positions of the matching texts in ascending order
+	 */
+	public synchronized int[] search(String query) {
+		String normalized = normalize(query.trim());
+		int[] result;
+		if (normalized.length() == 0) {
+			result = this.all;
+		} else if (this.lastQuery != null && this.lastQuery.length() > 0
+				&& normalized.contains(this.lastQuery)) {
+			result = this.filter(this.lastResult, normalized);
+		} else if (normalized.length() <= GRAM_LENGTH) {
+			result = this.getPostings(normalized);
+		} else {
+			result = this.filter(this.getCandidates(normalized), normalized);
+		}
+		this.lastQuery = normalized;
+		this.lastResult = result;
+		return result;
+	}
+
+	/**
+	 * @return Number of indexed texts
+	 */
+	public int size() {
+		return this.texts.length;
+	}
+
+	/**
+	 * Intersect the lists of all three character substrings of the query
+	 */
+	private int[] getCandidates(String query) {
+		int[] candidates = null;
+		for (int start = 0; start + GRAM_LENGTH <= query.length(); start++) {
+			int[] postings = this.getPostings(query.substring(start, start
+					+ GRAM_LENGTH));
+			candidates = candidates == null ? postings : intersect(
+					candidates, postings);
+			if (candidates.length == 0) {
+				break;
+			}
+		}
+		return candidates;
+	}
+
+	private int[] getPostings(String gram) {
+		int[] postings = this.grams.get(gram);
+		return postings != null ? postings : EMPTY;
+	}
+
+	private int[] filter(int[] candidates, String query) {
+		IntList result = new IntList();
+		for (int candidate : candidates) {
+			if (this.texts[candidate].contains(query)) {
+				result.add(candidate);
+			}
+		}
+		return result.toArray();
+	}
+
+	private static int[] intersect(int[] a, int[] b) {
+		IntList result = new IntList();
+		int i = 0, j = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				result.add(a[i]);
+				i++;
+				j++;
+			}
+		}
+		return result.toArray();
+	}
+
+	/**
+	 * Lower case and without umlauts or accents
+	 */
+	static String normalize(String text) {
+		String lower = text.toLowerCase(Locale.GERMAN);
+		StringBuilder normalized = null;
+		for (int i = 0; i < lower.length(); i++) {
+			char c = lower.charAt(i);
+			char replacement = fold(c);
+			if (replacement != c && normalized == null) {
+				normalized = new StringBuilder(lower.length());
+				normalized.append(lower, 0, i);
+			}
+			if (normalized != null) {
+				if (c == '\u00df') {
+					normalized.append("ss");
+				} else {
+					normalized.append(replacement);
+				}
+			}
+		}
+		return normalized != null ? normalized.toString() : lower;
+	}
+
+	private static char fold(char c) {
+		switch (c) {
+		case '\u00e0':
+		case '\u00e1':
+		case '\u00e2':
+		case '\u00e4':
+			return 'a';
+		case '\u00e7':
+			return 'c';
+		case '\u00e8':
+		case '\u00e9':
+		case '\u00ea':
+		case '\u00eb':
+			return 'e';
+		case '\u00ee':
+		case '\u00ef':
+			return 'i';
+		case '\u00f4':
+		case '\u00f6':
+			return 'o';
+		case '\u00f9':
+		case '\u00fb':
+		case '\u00fc':
+			return 'u';
+		case '\u00df':
+			return 's';
+		default:
+			return c;
+		}
+	}
+
+	/**
+	 * Growable list of primitive ints
+	 */
+	private static class IntList {
+
+		private int[] values = new int[4];
+		private int size = 0;
+
+		public void add(int value) {
+			if (this.size == this.values.length) {
+				int[] values = new int[this.size * 2];
+				System.arraycopy(this.values, 0, values, 0, this.size);
+				this.values = values;
+			}
+			this.values[this.size++] = value;
+		}
+
+		/**
+		 * Add a value unless it equals the last one
+		 */
+		public void addIfNew(int value) {
+			if (this.size == 0 || this.values[this.size - 1] != value) {
+				this.add(value);
+			}
+		}
+
+		public int[] toArray() {
+			int[] array = new int[this.size];
+			System.arraycopy(this.values, 0, array, 0, this.size);
+			return array;
+		}
+	}
+}
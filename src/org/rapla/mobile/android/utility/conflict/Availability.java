@@ -0,0 +1,219 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.conflict;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.mobile.android.utility.occurrence.OccurrenceEngine;
+import org.rapla.mobile.android.utility.occurrence.OccurrenceIterator;
+import org.rapla.mobile.android.utility.occurrence.Occurrences;
+
+/**
+ * Free and busy times of allocatables for the appointments of a reservation.
+ * The occurrences of the reservation are expanded once. Per allocatable, the
+ * occurrences of the appointments it is booked for are expanded within the
+ * time range of the reservation. Both are merged into busy intervals by a
+ * sweep over their sorted starts and ends and compared in a single pass.
+ *
+ * Intervals are returned as flat arrays of start and end pairs in
+ * milliseconds, ends being exclusive.
+ *
+ * @see org.rapla.mobile.android.utility.conflict.ConflictDetector
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class Availability {
+
+	public static final int FREE = 0;
+	public static final int PARTLY_FREE = 1;
+	public static final int BUSY = 2;
+
+	private static final long[] EMPTY = new long[0];
+
+	private ConflictDetector detector;
+	private Reservation reservation;
+	private long from;
+	private long to;
+	private long[] wanted;
+	private List<Occurrences> booked = new ArrayList<Occurrences>();
+
+	/**
+	 * @param detector
+	 *            Conflict detector holding the bookings
+	 * @param appointments
+	 *            Appointments allocatables should be available for
+	 * @param reservation
+	 *            Reservation being edited, its own allocations are ignored.
+	 *            Null if none.
+	 */
+	Availability(ConflictDetector detector, Appointment[] appointments,
+			Reservation reservation) {
+		this.detector = detector;
+		this.reservation = reservation;
+		long[] span = ConflictDetector.getSpan(appointments);
+		this.from = span[0];
+		this.to = span[1];
+		List<Occurrences> wanted = new ArrayList<Occurrences>();
+		OccurrenceEngine engine = OccurrenceEngine.getInstance();
+		for (Appointment appointment : appointments) {
+			wanted.add(engine.get(appointment));
+		}
+		this.wanted = wanted.isEmpty() ? EMPTY : this.merge(wanted);
+	}
+
+	/**
+	 * @param allocatable
+	 *            Allocatable to be checked
+	 * @return <code>FREE</code> if the allocatable is free for all
+	 *         occurrences, <code>BUSY</code> if it is booked during each of
+	 *         them, <code>PARTLY_FREE</code> otherwise
+	 */
+	public synchronized int getStatus(Allocatable allocatable) {
+		long[] busy = this.getBusy(allocatable);
+		int overlapping = 0;
+		int j = 0;
+		for (int i = 0; i < this.wanted.length; i += 2) {
+			// Skip busy intervals ending before the wanted one
+			while (j < busy.length && busy[j + 1] <= this.wanted[i]) {
+				j += 2;
+			}
+			if (j < busy.length && busy[j] < this.wanted[i + 1]) {
+				overlapping++;
+			}
+		}
+		if (overlapping == 0) {
+			return FREE;
+		}
+		return overlapping == this.wanted.length / 2 ? BUSY : PARTLY_FREE;
+	}
+
+	/**
+	 * @param allocatable
+	 *            Allocatable to be checked
+	 * @return Merged intervals the allocatable is booked during, within the
+	 *         time range of the appointments
+	 */
+	public synchronized long[] getBusy(Allocatable allocatable) {
+		if (this.wanted.length == 0) {
+			return EMPTY;
+		}
+		this.booked.clear();
+		this.detector.collect(allocatable, this.from, this.to,
+				this.reservation, this.booked);
+		return this.booked.isEmpty() ? EMPTY : this.merge(this.booked);
+	}
+
+	/**
+	 * @param allocatable
+	 *            Allocatable to be checked
+	 * @return Intervals the allocatable is free during, within the time range
+	 *         of the appointments
+	 */
+	public long[] getFree(Allocatable allocatable) {
+		if (this.wanted.length == 0) {
+			return EMPTY;
+		}
+		long[] busy = this.getBusy(allocatable);
+		long[] free = new long[busy.length + 2];
+		int size = 0;
+		long start = this.from;
+		for (int i = 0; i < busy.length; i += 2) {
+			if (busy[i] > start) {
+				free[size++] = start;
+				free[size++] = busy[i];
+			}
+			start = Math.max(start, busy[i + 1]);
+		}
+		if (start < this.to) {
+			free[size++] = start;
+			free[size++] = this.to;
+		}
+		long[] result = new long[size];
+		System.arraycopy(free, 0, result, 0, size);
+		return result;
+	}
+
+	/**
+	 * Expand the occurrences of the series within the time range and merge
+	 * overlapping and adjacent ones
+	 */
+	private long[] merge(List<Occurrences> series) {
+		LongList starts = new LongList();
+		LongList ends = new LongList();
+		for (Occurrences occurrences : series) {
+			OccurrenceIterator iterator = occurrences.iterator(this.from,
+					this.to);
+			while (iterator.next()) {
+				starts.add(iterator.getStart());
+				ends.add(iterator.getEnd());
+			}
+		}
+		long[] s = starts.toSortedArray();
+		long[] e = ends.toSortedArray();
+
+		// Sweep over starts and ends, an interval begins when the first
+		// occurrence starts and ends when none is left
+		LongList merged = new LongList();
+		int depth = 0;
+		int i = 0, j = 0;
+		while (j < e.length) {
+			if (i < s.length && s[i] <= e[j]) {
+				if (depth++ == 0) {
+					merged.add(s[i]);
+				}
+				i++;
+			} else {
+				if (--depth == 0) {
+					merged.add(e[j]);
+				}
+				j++;
+			}
+		}
+		return merged.toArray();
+	}
+
+	/**
+	 * Growable list of primitive longs
+	 */
+	private static class LongList {
+
+		private long[] values = new long[16];
+		private int size = 0;
+
+		public void add(long value) {
+			if (this.size == this.values.length) {
+				long[] values = new long[this.size * 2];
+				System.arraycopy(this.values, 0, values, 0, this.size);
+				this.values = values;
+			}
+			this.values[this.size++] = value;
+		}
+
+		public long[] toArray() {
+			long[] array = new long[this.size];
+			System.arraycopy(this.values, 0, array, 0, this.size);
+			return array;
+		}
+
+		public long[] toSortedArray() {
+			long[] array = this.toArray();
+			Arrays.sort(array);
+			return array;
+		}
+	}
+}
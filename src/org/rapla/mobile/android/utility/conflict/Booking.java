@@ -0,0 +1,54 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.conflict;
+
+import org.rapla.mobile.android.utility.occurrence.Occurrences;
+
+/**
+ * An allocatable being booked by a reservation, for the occurrences of one
+ * appointment
+ *
+ * @see org.rapla.mobile.android.utility.conflict.ConflictDetector
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class Booking {
+
+	private String reservationId;
+	private Occurrences occurrences;
+
+	/**
+	 * @param reservationId
+	 *            Id of the booking reservation
+	 * @param occurrences
+	 *            Occurrences of the booked appointment
+	 */
+	public Booking(String reservationId, Occurrences occurrences) {
+		this.reservationId = reservationId;
+		this.occurrences = occurrences;
+	}
+
+	/**
+	 * @return Id of the booking reservation
+	 */
+	public String getReservationId() {
+		return this.reservationId;
+	}
+
+	/**
+	 * @return Occurrences of the booked appointment
+	 */
+	public Occurrences getOccurrences() {
+		return this.occurrences;
+	}
+}
@@ -0,0 +1,260 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.conflict;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.mobile.android.utility.occurrence.OccurrenceEngine;
+import org.rapla.mobile.android.utility.occurrence.OccurrenceIterator;
+import org.rapla.mobile.android.utility.occurrence.Occurrences;
+
+/**
+ * The conflict detector finds double bookings locally before a reservation
+ * is sent to the server. The appointments of the given reservations are
+ * compiled by the occurrence engine and indexed per allocatable in an
+ * interval tree spanning from the start of an appointment to the end of its
+ * last occurrence. A check first looks up the bookings whose span overlaps
+ * the one of the checked appointment, and only these candidates are
+ * compared occurrence by occurrence, with the same occurrences the
+ * availability and the lists show. Two open ended series are compared for
+ * <code>DAYS_AHEAD</code> days after both have started.
+ *
+ * The bookings can be handed out and kept in the local store, so that a
+ * detector can be built from them while the server is unreachable.
+ *
+ * The server remains responsible for the final decision, appointments
+ * outside the indexed reservations are not known to the detector.
+ *
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class ConflictDetector {
+
+	/**
+	 * Days after their start open ended series are checked for
+	 */
+	public static final int DAYS_AHEAD = 365;
+
+	private Reservation[] reservations;
+	private Map<String, List<Booking>> bookings = new HashMap<String, List<Booking>>();
+	private Map<String, IntervalTree<Booking>> index = new HashMap<String, IntervalTree<Booking>>();
+
+	/**
+	 * @param reservations
+	 *            Reservations whose allocations are checked against
+	 */
+	public ConflictDetector(Reservation[] reservations) {
+		this.reservations = reservations;
+		OccurrenceEngine engine = OccurrenceEngine.getInstance();
+		for (Reservation reservation : reservations) {
+			String reservationId = String.valueOf(reservation.getId());
+			for (Allocatable allocatable : reservation.getAllocatables()) {
+				String key = getKey(allocatable);
+				for (Appointment appointment : reservation
+						.getAppointmentsFor(allocatable)) {
+					this.add(key,
+							new Booking(reservationId, engine.get(appointment)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param bookings
+	 *            Bookings to check against per allocatable id, e.g. read
+	 *            from the local store
+	 */
+	public ConflictDetector(Map<String, List<Booking>> bookings) {
+		for (Map.Entry<String, List<Booking>> entry : bookings.entrySet()) {
+			for (Booking booking : entry.getValue()) {
+				this.add(entry.getKey(), booking);
+			}
+		}
+	}
+
+	/**
+	 * @return Indexed bookings per allocatable id
+	 */
+	public Map<String, List<Booking>> getBookings() {
+		return this.bookings;
+	}
+
+	/**
+	 * @param reservations
+	 *            Reservations to compare with
+	 * @return True if the detector has been built from exactly these
+	 *         reservations
+	 */
+	public boolean isBuiltFrom(Reservation[] reservations) {
+		return this.reservations == reservations;
+	}
+
+	/**
+	 * @param appointments
+	 *            Appointments to be checked
+	 * @return Start of the first and end of the last occurrence of the
+	 *         appointments in milliseconds, open ended series end
+	 *         <code>DAYS_AHEAD</code> days after their start
+	 */
+	public static long[] getSpan(Appointment[] appointments) {
+		long from = Long.MAX_VALUE;
+		long to = Long.MIN_VALUE;
+		OccurrenceEngine engine = OccurrenceEngine.getInstance();
+		for (Appointment appointment : appointments) {
+			Occurrences occurrences = engine.get(appointment);
+			long start = occurrences.getStart();
+			long end = occurrences.isFinite() ? occurrences.getEnd() : start
+					+ DAYS_AHEAD * DateTools.MILLISECONDS_PER_DAY;
+			from = Math.min(from, start);
+			to = Math.max(to, end);
+		}
+		return new long[] { from, to };
+	}
+
+	/**
+	 * Find the appointments that can't be booked for the allocatable, because
+	 * the allocatable is already booked by another reservation
+	 *
+	 * @param allocatable
+	 *            Allocatable to be booked
+	 * @param appointments
+	 *            Appointments the allocatable should be booked for
+	 * @param reservation
+	 *            Reservation being edited, its own allocations are ignored.
+	 *            Null if none.
+	 * @return Conflicting appointments out of the given ones
+	 */
+	public List<Appointment> getConflicts(Allocatable allocatable,
+			Appointment[] appointments, Reservation reservation) {
+		List<Appointment> conflicts = new ArrayList<Appointment>();
+		IntervalTree<Booking> tree = this.index.get(getKey(allocatable));
+		if (tree == null) {
+			return conflicts;
+		}
+
+		String ignore = reservation != null ? String.valueOf(reservation
+				.getId()) : null;
+		OccurrenceEngine engine = OccurrenceEngine.getInstance();
+		List<Booking> candidates = new ArrayList<Booking>();
+		for (Appointment appointment : appointments) {
+			Occurrences wanted = engine.get(appointment);
+			candidates.clear();
+			tree.collect(wanted.getStart(), wanted.getEnd(), candidates);
+			for (Booking candidate : candidates) {
+				if (ignore != null
+						&& ignore.equals(candidate.getReservationId())) {
+					continue;
+				}
+				if (overlaps(wanted, candidate.getOccurrences())) {
+					conflicts.add(appointment);
+					break;
+				}
+			}
+		}
+		return conflicts;
+	}
+
+	/**
+	 * Get free and busy times of allocatables for the appointments of a
+	 * reservation
+	 *
+	 * @param appointments
+	 *            Appointments allocatables should be available for
+	 * @param reservation
+	 *            Reservation being edited, its own allocations are ignored.
+	 *            Null if none.
+	 * @return Availability, to be asked for each allocatable
+	 */
+	public Availability getAvailability(Appointment[] appointments,
+			Reservation reservation) {
+		return new Availability(this, appointments, reservation);
+	}
+
+	/**
+	 * Collect the occurrences an allocatable is booked for whose span
+	 * overlaps a time range
+	 */
+	void collect(Allocatable allocatable, long from, long to,
+			Reservation reservation, List<Occurrences> booked) {
+		IntervalTree<Booking> tree = this.index.get(getKey(allocatable));
+		if (tree == null) {
+			return;
+		}
+		List<Booking> bookings = new ArrayList<Booking>();
+		tree.collect(from, to, bookings);
+		String ignore = reservation != null ? String.valueOf(reservation
+				.getId()) : null;
+		for (Booking booking : bookings) {
+			if (ignore == null || !ignore.equals(booking.getReservationId())) {
+				booked.add(booking.getOccurrences());
+			}
+		}
+	}
+
+	/**
+	 * @param allocatable
+	 *            Allocatable to be booked
+	 * @param appointments
+	 *            Appointments the allocatable should be booked for
+	 * @param reservation
+	 *            Reservation being edited, its own allocations are ignored.
+	 *            Null if none.
+	 * @return True if the allocatable is free for all appointments
+	 */
+	public boolean isFree(Allocatable allocatable, Appointment[] appointments,
+			Reservation reservation) {
+		return this.getConflicts(allocatable, appointments, reservation)
+				.isEmpty();
+	}
+
+	private void add(String key, Booking booking) {
+		IntervalTree<Booking> tree = this.index.get(key);
+		if (tree == null) {
+			tree = new IntervalTree<Booking>();
+			this.index.put(key, tree);
+			this.bookings.put(key, new ArrayList<Booking>());
+		}
+		this.bookings.get(key).add(booking);
+		Occurrences occurrences = booking.getOccurrences();
+		tree.add(occurrences.getStart(), occurrences.getEnd(), booking);
+	}
+
+	/**
+	 * Compare the occurrences of two series within the time both are running
+	 */
+	private static boolean overlaps(Occurrences wanted, Occurrences booked) {
+		long from = Math.max(wanted.getStart(), booked.getStart());
+		long to = Math.min(wanted.getEnd(), booked.getEnd());
+		if (to == Long.MAX_VALUE) {
+			to = from + DAYS_AHEAD * DateTools.MILLISECONDS_PER_DAY;
+		}
+		OccurrenceIterator iterator = wanted.iterator(from, to);
+		while (iterator.next()) {
+			if (booked.overlaps(iterator.getStart(), iterator.getEnd())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String getKey(Allocatable allocatable) {
+		return String.valueOf(allocatable.getId());
+	}
+}
@@ -0,0 +1,162 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.conflict;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Static interval tree over half-open time ranges in milliseconds. The
+ * intervals are sorted by start and laid out as an implicit balanced search
+ * tree, where every node knows the largest end within its subtree. Finding
+ * the intervals overlapping a range takes O(log n + k).
+ *
+ * Intervals are added first and the tree is built on the first query. Adding
+ * an interval afterwards rebuilds the tree on the next query.
+ *
+ * @param <T>
+ *            Type of the values attached to the intervals
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class IntervalTree<T> {
+
+	private List<Interval<T>> intervals = new ArrayList<Interval<T>>();
+	private long[] starts;
+	private long[] ends;
+	private long[] maxEnds;
+	private Object[] values;
+
+	/**
+	 * @param start
+	 *            Start in milliseconds, inclusive
+	 * @param end
+	 *            End in milliseconds, exclusive
+	 * @param value
+	 *            Value attached to the interval
+	 */
+	public void add(long start, long end, T value) {
+		this.intervals.add(new Interval<T>(start, end, value));
+		this.starts = null;
+	}
+
+	/**
+	 * @return Number of intervals
+	 */
+	public int size() {
+		return this.intervals.size();
+	}
+
+	/**
+	 * Collect the values of all intervals overlapping the given range
+	 *
+	 * @param start
+	 *            Start in milliseconds, inclusive
+	 * @param end
+	 *            End in milliseconds, exclusive
+	 * @param result
+	 *            Collection the values are added to
+	 */
+	public void collect(long start, long end, Collection<? super T> result) {
+		if (this.starts == null) {
+			this.build();
+		}
+		this.collect(0, this.starts.length, start, end, result);
+	}
+
+	/**
+	 * @param start
+	 *            Start in milliseconds, inclusive
+	 * @param end
+	 *            End in milliseconds, exclusive
+	 * @return True if any interval overlaps the given range
+	 */
+	public boolean overlaps(long start, long end) {
+		List<T> result = new ArrayList<T>(1);
+		this.collect(start, end, result);
+		return !result.isEmpty();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void collect(int lo, int hi, long start, long end,
+			Collection<? super T> result) {
+		if (lo >= hi) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+
+		// Nothing in this subtree ends after the range starts
+		if (this.maxEnds[mid] <= start) {
+			return;
+		}
+		this.collect(lo, mid, start, end, result);
+
+		// This node and its right subtree start after the range ends
+		if (this.starts[mid] >= end) {
+			return;
+		}
+		if (this.ends[mid] > start) {
+			result.add((T) this.values[mid]);
+		}
+		this.collect(mid + 1, hi, start, end, result);
+	}
+
+	private void build() {
+		Collections.sort(this.intervals, new Comparator<Interval<T>>() {
+			public int compare(Interval<T> lhs, Interval<T> rhs) {
+				return lhs.start < rhs.start ? -1
+						: (lhs.start == rhs.start ? 0 : 1);
+			}
+		});
+
+		int size = this.intervals.size();
+		this.starts = new long[size];
+		this.ends = new long[size];
+		this.maxEnds = new long[size];
+		this.values = new Object[size];
+		for (int i = 0; i < size; i++) {
+			Interval<T> interval = this.intervals.get(i);
+			this.starts[i] = interval.start;
+			this.ends[i] = interval.end;
+			this.values[i] = interval.value;
+		}
+		this.buildMaxEnds(0, size);
+	}
+
+	private long buildMaxEnds(int lo, int hi) {
+		if (lo >= hi) {
+			return Long.MIN_VALUE;
+		}
+		int mid = (lo + hi) >>> 1;
+		long maxEnd = Math.max(this.ends[mid], Math.max(
+				this.buildMaxEnds(lo, mid), this.buildMaxEnds(mid + 1, hi)));
+		this.maxEnds[mid] = maxEnd;
+		return maxEnd;
+	}
+
+	private static class Interval<T> {
+
+		private long start;
+		private long end;
+		private T value;
+
+		public Interval(long start, long end, T value) {
+			this.start = start;
+			this.end = end;
+			this.value = value;
+		}
+	}
+}
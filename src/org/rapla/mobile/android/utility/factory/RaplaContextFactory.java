@@ -14,6 +14,11 @@
 package org.rapla.mobile.android.utility.factory;
 
 import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.rapla.RaplaMainContainer;
 import org.rapla.facade.ClientFacade;
@@ -24,17 +29,23 @@ import org.rapla.framework.StartupEnvironment;
 import org.rapla.framework.logger.Logger;
 import org.rapla.framework.logger.NullLogger;
 import org.rapla.mobile.android.RaplaMobileException;
+import org.rapla.mobile.android.os.TaskScheduler;
 import org.rapla.storage.StorageOperator;
 import org.rapla.storage.dbrm.RemoteOperator;
 
 /**
  * Rapla Context Factory (Singleton)
  * 
+ * Initialized contexts are kept per host, so that the container is only set
+ * up once for each server. It can be built in advance by calling
+ * <code>prewarm</code>.
+ * 
  * @author Maximilian Lenkeit <dev@lenki.com>
  */
 public class RaplaContextFactory {
 
 	protected static RaplaContextFactory instance;
+	protected ConcurrentMap<String, FutureTask<RaplaContext>> contexts = new ConcurrentHashMap<String, FutureTask<RaplaContext>>();
 
 	protected RaplaContextFactory() {
 
@@ -52,6 +63,72 @@ public class RaplaContextFactory {
 		return instance;
 	}
 
+	/**
+	 * Get the initialized context for the given host. The context is created
+	 * on first access only. If it is being created by another thread at the
+	 * moment, this method waits for it instead of building a second one.
+	 * 
+	 * @param host
+	 *            Url of the rapla server
+	 * @return Shared context for the host
+	 * @throws RaplaMobileException
+	 */
+	public RaplaContext getContext(final String host)
+			throws RaplaMobileException {
+		FutureTask<RaplaContext> task = this.contexts.get(host);
+		if (task == null) {
+			FutureTask<RaplaContext> created = new FutureTask<RaplaContext>(
+					new Callable<RaplaContext>() {
+						public RaplaContext call() throws Exception {
+							return createInstance(host);
+						}
+					});
+			task = this.contexts.putIfAbsent(host, created);
+			if (task == null) {
+				task = created;
+				task.run();
+			}
+		}
+
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			throw new RaplaMobileException("Initializing context interrupted", e);
+		} catch (ExecutionException e) {
+			// Don't cache failures, the next access tries again
+			this.contexts.remove(host, task);
+			if (e.getCause() instanceof RaplaMobileException) {
+				throw (RaplaMobileException) e.getCause();
+			}
+			throw new RaplaMobileException("Initializing context failed", e);
+		}
+	}
+
+	/**
+	 * Create the context for the given host in the background, so that
+	 * it is available as soon as the first connection is established
+	 * 
+	 * @param host
+	 *            Url of the rapla server, nothing happens if null or empty
+	 */
+	public void prewarm(final String host) {
+		if (host == null || host.length() == 0
+				|| this.contexts.containsKey(host)) {
+			return;
+		}
+		TaskScheduler.getInstance().execute(TaskScheduler.PRIORITY_PREFETCH,
+				"RaplaContextPrewarm", new Runnable() {
+					public void run() {
+						try {
+							getContext(host);
+						} catch (RaplaMobileException e) {
+							// Will be reported as soon as the context is
+							// actually needed
+						}
+					}
+				});
+	}
+
 	/**
 	 * Create RaplaContext instance
 	 * 
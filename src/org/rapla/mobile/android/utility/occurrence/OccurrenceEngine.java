@@ -0,0 +1,77 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.occurrence;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.rapla.entities.domain.Appointment;
+
+/**
+ * OccurrenceEngine (Singleton)
+ *
+ * Keeps the compiled occurrences per appointment, so that list rows and
+ * checks don't expand the same series again. An entry is compiled again as
+ * soon as the start, end or repeating of its appointment has changed.
+ * Appointments that are no longer referenced are dropped automatically.
+ *
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class OccurrenceEngine {
+
+	protected static OccurrenceEngine instance;
+	private Map<Appointment, Occurrences> occurrences = new WeakHashMap<Appointment, Occurrences>();
+
+	protected OccurrenceEngine() {
+
+	}
+
+	public static OccurrenceEngine getInstance() {
+		if (instance == null) {
+			instance = new OccurrenceEngine();
+		}
+		return instance;
+	}
+
+	/**
+	 * @param appointment
+	 *            Appointment to get the occurrences of
+	 * @return Occurrences of the appointment
+	 */
+	public synchronized Occurrences get(Appointment appointment) {
+		Occurrences result = this.occurrences.get(appointment);
+		if (result == null || !result.matches(appointment)) {
+			result = new Occurrences(appointment);
+			this.occurrences.put(appointment, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Drop the occurrences of an appointment after it has been changed
+	 *
+	 * @param appointment
+	 *            Changed appointment
+	 */
+	public synchronized void invalidate(Appointment appointment) {
+		this.occurrences.remove(appointment);
+	}
+
+	/**
+	 * Drop all occurrences
+	 */
+	public synchronized void clear() {
+		this.occurrences.clear();
+	}
+}
@@ -0,0 +1,79 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.occurrence;
+
+/**
+ * Iterates over the occurrences of an appointment overlapping a time range,
+ * in chronological order. The iterator doesn't allocate while iterating, the
+ * current occurrence is read with <code>getStart</code> and
+ * <code>getEnd</code> after each successful call to <code>next</code>.
+ *
+ * @see org.rapla.mobile.android.utility.occurrence.Occurrences
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class OccurrenceIterator {
+
+	private Occurrences occurrences;
+	private long from;
+	private long to;
+	private int index;
+	private long start;
+	private boolean done = false;
+
+	OccurrenceIterator(Occurrences occurrences, long from, long to, int index) {
+		this.occurrences = occurrences;
+		this.from = from;
+		this.to = to;
+		this.index = index;
+	}
+
+	/**
+	 * Move to the next occurrence
+	 *
+	 * @return True if there is another occurrence within the time range
+	 */
+	public boolean next() {
+		long duration = this.occurrences.getDuration();
+		while (!this.done) {
+			long candidate = this.occurrences.getCandidate(this.index);
+			if (candidate == Occurrences.END || candidate >= this.to) {
+				this.done = true;
+				break;
+			}
+			this.index++;
+			if (candidate == Occurrences.SKIP
+					|| candidate + duration <= this.from
+					|| this.occurrences.isException(candidate)) {
+				continue;
+			}
+			this.start = candidate;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return Start of the current occurrence in milliseconds
+	 */
+	public long getStart() {
+		return this.start;
+	}
+
+	/**
+	 * @return End of the current occurrence in milliseconds
+	 */
+	public long getEnd() {
+		return this.start + this.occurrences.getDuration();
+	}
+}
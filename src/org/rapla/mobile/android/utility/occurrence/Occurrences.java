@@ -0,0 +1,413 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.occurrence;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Repeating;
+
+/**
+ * The occurrences of a single appointment, compiled from its start, end and
+ * repeating. Daily and weekly series are computed arithmetically, monthly
+ * and yearly series with a calendar, whose results are kept. A monthly
+ * series repeats on the same weekday of the same week of the month, a
+ * yearly series on the same day of the same month. Months and years
+ * lacking that day are skipped.
+ *
+ * Like the rest of Rapla, times are handled as GMT, so a day always has the
+ * same length.
+ *
+ * @see org.rapla.mobile.android.utility.occurrence.OccurrenceEngine
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class Occurrences {
+
+	static final long END = Long.MIN_VALUE;
+	static final long SKIP = Long.MIN_VALUE + 1;
+	private static final long UNKNOWN = Long.MIN_VALUE + 2;
+
+	public static final int NONE = 0;
+	public static final int DAILY = 1;
+	public static final int WEEKLY = 2;
+	public static final int MONTHLY = 3;
+	public static final int YEARLY = 4;
+
+	private long start;
+	private long duration;
+	private int type;
+	private int interval;
+	private long until;
+	private long[] exceptions;
+	private Calendar calendar;
+	private long[] candidates = new long[0];
+	private int count = -2;
+
+	/**
+	 * @param appointment
+	 *            Appointment to compute the occurrences of
+	 */
+	public Occurrences(Appointment appointment) {
+		this.start = appointment.getStart().getTime();
+		this.duration = appointment.getEnd().getTime() - this.start;
+		this.type = getType(appointment.getRepeating());
+		this.interval = 1;
+		this.until = Long.MAX_VALUE;
+		this.exceptions = new long[0];
+
+		Repeating repeating = appointment.getRepeating();
+		if (repeating != null) {
+			this.interval = Math.max(1, repeating.getInterval());
+			if (repeating.getEnd() != null) {
+				this.until = repeating.getEnd().getTime();
+			}
+			this.exceptions = getExceptions(repeating);
+		}
+	}
+
+	/**
+	 * @param start
+	 *            Start of the first occurrence in milliseconds
+	 * @param duration
+	 *            Length of each occurrence in milliseconds
+	 * @param type
+	 *            One of the repeating constants, <code>NONE</code> for a
+	 *            single occurrence
+	 * @param interval
+	 *            Number of days, weeks, months or years between occurrences
+	 * @param until
+	 *            Time in milliseconds no occurrence starts at or after,
+	 *            <code>Long.MAX_VALUE</code> if the series has no end
+	 * @param exceptions
+	 *            Sorted days excluded from the series in milliseconds
+	 */
+	public Occurrences(long start, long duration, int type, int interval,
+			long until, long[] exceptions) {
+		this.start = start;
+		this.duration = duration;
+		this.type = type;
+		this.interval = Math.max(1, interval);
+		this.until = until;
+		this.exceptions = exceptions;
+	}
+
+	/**
+	 * @param appointment
+	 *            Appointment to compare with
+	 * @return True if the occurrences of the appointment are still the same
+	 */
+	public boolean matches(Appointment appointment) {
+		Repeating repeating = appointment.getRepeating();
+		long start = appointment.getStart().getTime();
+		if (this.start != start
+				|| this.duration != appointment.getEnd().getTime() - start
+				|| this.type != getType(repeating)) {
+			return false;
+		}
+		if (repeating == null) {
+			return true;
+		}
+		long until = repeating.getEnd() != null ? repeating.getEnd()
+				.getTime() : Long.MAX_VALUE;
+		return this.interval == Math.max(1, repeating.getInterval())
+				&& this.until == until
+				&& Arrays.equals(this.exceptions, getExceptions(repeating));
+	}
+
+	/**
+	 * @return Start of the first occurrence in milliseconds
+	 */
+	public long getStart() {
+		return this.start;
+	}
+
+	/**
+	 * @return Time in milliseconds no occurrence ends after,
+	 *         <code>Long.MAX_VALUE</code> if the series has no end
+	 */
+	public long getEnd() {
+		if (this.type == NONE) {
+			return this.start + this.duration;
+		}
+		return this.until != Long.MAX_VALUE ? this.until + this.duration
+				: Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return Length of each occurrence in milliseconds
+	 */
+	public long getDuration() {
+		return this.duration;
+	}
+
+	/**
+	 * @return One of the repeating constants
+	 */
+	public int getType() {
+		return this.type;
+	}
+
+	public int getInterval() {
+		return this.interval;
+	}
+
+	/**
+	 * @return Time in milliseconds no occurrence starts at or after,
+	 *         <code>Long.MAX_VALUE</code> if the series has no end
+	 */
+	public long getUntil() {
+		return this.until;
+	}
+
+	/**
+	 * @return Sorted days excluded from the series in milliseconds
+	 */
+	public long[] getExceptions() {
+		return this.exceptions.clone();
+	}
+
+	/**
+	 * @return True if the series has an end
+	 */
+	public boolean isFinite() {
+		return this.type == NONE || this.until != Long.MAX_VALUE;
+	}
+
+	/**
+	 * @param from
+	 *            Start of the time range in milliseconds, inclusive
+	 * @param to
+	 *            End of the time range in milliseconds, exclusive
+	 * @return Iterator over the occurrences overlapping the time range
+	 */
+	public OccurrenceIterator iterator(long from, long to) {
+		return new OccurrenceIterator(this, from, to, this.getFirstIndex(from));
+	}
+
+	/**
+	 * @param from
+	 *            Time in milliseconds
+	 * @param count
+	 *            Maximum number of occurrences
+	 * @return Starts of the next occurrences that end after the given time
+	 */
+	public long[] next(long from, int count) {
+		long[] starts = new long[count];
+		int found = 0;
+		OccurrenceIterator iterator = this.iterator(from, Long.MAX_VALUE);
+		while (found < count && iterator.next()) {
+			starts[found++] = iterator.getStart();
+		}
+		if (found < count) {
+			long[] result = new long[found];
+			System.arraycopy(starts, 0, result, 0, found);
+			return result;
+		}
+		return starts;
+	}
+
+	/**
+	 * @param date
+	 *            Any time of the day to check
+	 * @return True if an occurrence starts on the given day
+	 */
+	public boolean hits(long date) {
+		long day = getDay(date);
+		OccurrenceIterator iterator = this.iterator(day, day
+				+ DateTools.MILLISECONDS_PER_DAY);
+		while (iterator.next()) {
+			if (getDay(iterator.getStart()) == day) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param from
+	 *            Start of the time range in milliseconds, inclusive
+	 * @param to
+	 *            End of the time range in milliseconds, exclusive
+	 * @return True if any occurrence overlaps the time range
+	 */
+	public boolean overlaps(long from, long to) {
+		return this.iterator(from, to).next();
+	}
+
+	/**
+	 * @return Number of occurrences, -1 if the series has no end
+	 */
+	public synchronized int count() {
+		if (this.count == -2) {
+			this.count = -1;
+			if (this.isFinite()) {
+				this.count = 0;
+				OccurrenceIterator iterator = this.iterator(Long.MIN_VALUE,
+						Long.MAX_VALUE);
+				while (iterator.next()) {
+					this.count++;
+				}
+			}
+		}
+		return this.count;
+	}
+
+	/**
+	 * @param index
+	 *            Index of the occurrence within the series, ignoring
+	 *            exceptions
+	 * @return Start of the occurrence, <code>SKIP</code> if it doesn't exist
+	 *         or <code>END</code> if the series ended before
+	 */
+	synchronized long getCandidate(int index) {
+		long candidate;
+		switch (this.type) {
+		case NONE:
+			return index == 0 ? this.start : END;
+		case DAILY:
+			candidate = this.start + (long) index * this.interval
+					* DateTools.MILLISECONDS_PER_DAY;
+			break;
+		case WEEKLY:
+			candidate = this.start + (long) index * this.interval * 7
+					* DateTools.MILLISECONDS_PER_DAY;
+			break;
+		default:
+			if (index >= this.candidates.length) {
+				int length = Math.max(index + 1, this.candidates.length * 2);
+				long[] candidates = new long[length];
+				System.arraycopy(this.candidates, 0, candidates, 0,
+						this.candidates.length);
+				Arrays.fill(candidates, this.candidates.length, length, UNKNOWN);
+				this.candidates = candidates;
+			}
+			if (this.candidates[index] == UNKNOWN) {
+				this.candidates[index] = this.computeCandidate(index);
+			}
+			candidate = this.candidates[index];
+			if (candidate == SKIP) {
+				return SKIP;
+			}
+		}
+		return candidate < this.until ? candidate : END;
+	}
+
+	/**
+	 * @param start
+	 *            Start of an occurrence
+	 * @return True if the day of the occurrence is excluded from the series
+	 */
+	boolean isException(long start) {
+		return this.exceptions.length > 0
+				&& Arrays.binarySearch(this.exceptions, getDay(start)) >= 0;
+	}
+
+	/**
+	 * Index of the first occurrence that might end after the given time
+	 */
+	private int getFirstIndex(long from) {
+		if (from <= this.start) {
+			return 0;
+		}
+		long distance = from - this.duration - this.start;
+		if (distance <= 0) {
+			return 0;
+		}
+
+		// Longest possible distance between two occurrences
+		long step;
+		switch (this.type) {
+		case DAILY:
+			step = this.interval;
+			break;
+		case WEEKLY:
+			step = this.interval * 7;
+			break;
+		case MONTHLY:
+			step = this.interval * 31;
+			break;
+		case YEARLY:
+			step = this.interval * 366;
+			break;
+		default:
+			return 0;
+		}
+		return (int) Math.min(Integer.MAX_VALUE, distance
+				/ (step * DateTools.MILLISECONDS_PER_DAY));
+	}
+
+	private long computeCandidate(int index) {
+		if (this.calendar == null) {
+			this.calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+		}
+		Calendar cal = this.calendar;
+		cal.setTimeInMillis(this.start);
+		if (this.type == MONTHLY) {
+			int dayOfWeek = cal.get(Calendar.DAY_OF_WEEK);
+			int dayOfWeekInMonth = cal.get(Calendar.DAY_OF_WEEK_IN_MONTH);
+			cal.set(Calendar.DAY_OF_MONTH, 1);
+			cal.add(Calendar.MONTH, index * this.interval);
+			int month = cal.get(Calendar.MONTH);
+			cal.set(Calendar.DAY_OF_WEEK, dayOfWeek);
+			cal.set(Calendar.DAY_OF_WEEK_IN_MONTH, dayOfWeekInMonth);
+			if (cal.get(Calendar.MONTH) != month) {
+				return SKIP;
+			}
+		} else {
+			int dayOfMonth = cal.get(Calendar.DAY_OF_MONTH);
+			cal.set(Calendar.DAY_OF_MONTH, 1);
+			cal.add(Calendar.YEAR, index * this.interval);
+			if (dayOfMonth > cal.getActualMaximum(Calendar.DAY_OF_MONTH)) {
+				return SKIP;
+			}
+			cal.set(Calendar.DAY_OF_MONTH, dayOfMonth);
+		}
+		return cal.getTimeInMillis();
+	}
+
+	private static int getType(Repeating repeating) {
+		if (repeating == null) {
+			return NONE;
+		} else if (repeating.isDaily()) {
+			return DAILY;
+		} else if (repeating.isWeekly()) {
+			return WEEKLY;
+		} else if (repeating.isMonthly()) {
+			return MONTHLY;
+		} else if (repeating.isYearly()) {
+			return YEARLY;
+		}
+		return NONE;
+	}
+
+	private static long[] getExceptions(Repeating repeating) {
+		Date[] dates = repeating.getExceptions();
+		long[] exceptions = new long[dates.length];
+		for (int i = 0; i < dates.length; i++) {
+			exceptions[i] = getDay(dates[i].getTime());
+		}
+		Arrays.sort(exceptions);
+		return exceptions;
+	}
+
+	private static long getDay(long time) {
+		long day = time - time % DateTools.MILLISECONDS_PER_DAY;
+		return time < 0 && day != time ? day - DateTools.MILLISECONDS_PER_DAY
+				: day;
+	}
+}
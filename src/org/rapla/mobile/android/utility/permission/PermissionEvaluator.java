@@ -0,0 +1,188 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.permission;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.rapla.entities.RaplaObject;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.facade.ClientFacade;
+import org.rapla.facade.ModificationEvent;
+import org.rapla.facade.ModificationListener;
+import org.rapla.framework.RaplaException;
+
+/**
+ * Checks whether the logged in user may allocate an allocatable for the time
+ * windows of appointments. The user is resolved on the first check of a
+ * session. Results are kept per allocatable and time window until the
+ * allocatable or the user changes, so showing and applying the dialog for
+ * assigning appointments doesn't evaluate the permissions again. Today is
+ * looked up with every check, and all results are dropped when it has
+ * changed, since permissions may depend on it.
+ *
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class PermissionEvaluator implements ModificationListener {
+
+	private ClientFacade facade;
+	private User user;
+	private Date today;
+	private boolean resolved = false;
+	private Map<Object, Map<String, Boolean>> results = new HashMap<Object, Map<String, Boolean>>();
+
+	/**
+	 * @param facade
+	 *            Logged in client facade
+	 */
+	public PermissionEvaluator(ClientFacade facade) {
+		this.facade = facade;
+	}
+
+	/**
+	 * @param allocatable
+	 *            Allocatable to be allocated
+	 * @param appointment
+	 *            Appointment to allocate it for
+	 * @return True if the user may allocate the allocatable for the whole
+	 *         appointment
+	 * @throws RaplaException
+	 *             If the user can't be resolved
+	 */
+	public synchronized boolean canAllocate(Allocatable allocatable,
+			Appointment appointment) throws RaplaException {
+		this.resolve();
+		Map<String, Boolean> windows = this.results.get(allocatable.getId());
+		if (windows == null) {
+			windows = new HashMap<String, Boolean>();
+			this.results.put(allocatable.getId(), windows);
+		}
+		String window = getWindow(appointment);
+		Boolean result = windows.get(window);
+		if (result == null) {
+			result = this.check(allocatable, appointment, this.user,
+					this.today);
+			windows.put(window, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Check several appointments at once, e.g. to disable the ones the user
+	 * can't pick before they are shown
+	 *
+	 * @param allocatable
+	 *            Allocatable to be allocated
+	 * @param appointments
+	 *            Appointments to allocate it for
+	 * @return Result of each appointment, in the same order
+	 * @throws RaplaException
+	 *             If the user can't be resolved
+	 */
+	public synchronized boolean[] canAllocate(Allocatable allocatable,
+			Appointment[] appointments) throws RaplaException {
+		boolean[] results = new boolean[appointments.length];
+		for (int i = 0; i < appointments.length; i++) {
+			results[i] = this.canAllocate(allocatable, appointments[i]);
+		}
+		return results;
+	}
+
+	/**
+	 * Forget the results of an allocatable, e.g. because its permissions have
+	 * changed
+	 *
+	 * @param allocatable
+	 *            Changed allocatable
+	 */
+	public synchronized void invalidate(Allocatable allocatable) {
+		this.results.remove(allocatable.getId());
+	}
+
+	/**
+	 * Forget all results and resolve the user and today again with the next
+	 * check
+	 */
+	public synchronized void clear() {
+		this.results.clear();
+		this.user = null;
+		this.today = null;
+		this.resolved = false;
+	}
+
+	/**
+	 * Drop the results of changed allocatables, or all of them if a user has
+	 * changed
+	 *
+	 * @param evt
+	 *            Modification event of the facade
+	 */
+	public synchronized void dataChanged(ModificationEvent evt)
+			throws RaplaException {
+		for (RaplaObject object : evt.getRemoved()) {
+			this.invalidate(object);
+		}
+		for (RaplaObject object : evt.getChanged()) {
+			this.invalidate(object);
+		}
+	}
+
+	/**
+	 * Evaluate the permissions of the allocatable
+	 *
+	 * @param allocatable
+	 *            Allocatable to be allocated
+	 * @param appointment
+	 *            Appointment to allocate it for
+	 * @param user
+	 *            Logged in user
+	 * @param today
+	 *            Today
+	 * @return True if the user may allocate the allocatable
+	 */
+	protected boolean check(Allocatable allocatable, Appointment appointment,
+			User user, Date today) {
+		return allocatable.canAllocate(user, appointment.getStart(),
+				appointment.getMaxEnd(), today);
+	}
+
+	private void invalidate(RaplaObject object) {
+		if (object instanceof User) {
+			this.clear();
+		} else if (object instanceof Allocatable) {
+			this.invalidate((Allocatable) object);
+		}
+	}
+
+	private void resolve() throws RaplaException {
+		if (!this.resolved) {
+			this.user = this.facade.getUser();
+			this.resolved = true;
+		}
+		Date today = this.facade.today();
+		if (today == null ? this.today != null : !today.equals(this.today)) {
+			this.results.clear();
+		}
+		this.today = today;
+	}
+
+	private static String getWindow(Appointment appointment) {
+		Date maxEnd = appointment.getMaxEnd();
+		return appointment.getStart().getTime() + "-"
+				+ (maxEnd != null ? maxEnd.getTime() : "");
+	}
+}
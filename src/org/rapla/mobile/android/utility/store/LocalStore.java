@@ -0,0 +1,347 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.rapla.mobile.android.utility.conflict.Booking;
+import org.rapla.mobile.android.utility.occurrence.Occurrences;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * Local store (Singleton)
+ *
+ * This class keeps the outbox journal in a SQLite database, so that queued
+ * operations survive the process. Every journal entry belongs to the server
+ * and user it has been queued for. Switching to another user keeps the
+ * entries of the previous one until that user logs in again. Each entry
+ * carries the payload of its operation, so that it can be replayed once the
+ * user is connected again.
+ *
+ * The store also keeps the bookings last read for the allocatables of each
+ * dynamic type, along with the time range they cover, indexed by owner, type
+ * and start. The conflict detector is built from them while the server is
+ * unreachable. Rapla entities can only be built inside a live connection, so
+ * bookings are kept as compiled occurrences rather than as reservations.
+ *
+ * @see org.rapla.mobile.android.utility.sync.Outbox
+ * @see org.rapla.mobile.android.utility.conflict.ConflictDetector
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class LocalStore extends SQLiteOpenHelper {
+
+	public static final String DATABASE_NAME = "rapla.db";
+	public static final int DATABASE_VERSION = 1;
+
+	private static final String META_OWNER = "owner";
+	private static final String META_BOOKINGS = "bookings";
+
+	protected static LocalStore instance;
+	private String owner;
+
+	protected LocalStore(Context context) {
+		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+	}
+
+	/**
+	 * Get store instance (singleton)
+	 *
+	 * @param context
+	 *            The current context
+	 * @return Singleton
+	 */
+	public static synchronized LocalStore getInstance(Context context) {
+		if (instance == null) {
+			instance = new LocalStore(context.getApplicationContext());
+		}
+		return instance;
+	}
+
+	@Override
+	public void onCreate(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE meta (key TEXT PRIMARY KEY, value TEXT)");
+		db.execSQL("CREATE TABLE outbox (id INTEGER PRIMARY KEY AUTOINCREMENT, owner TEXT, operation TEXT, entity_id TEXT, entity_name TEXT, payload TEXT, created_at INTEGER)");
+		db.execSQL("CREATE INDEX outbox_owner ON outbox (owner)");
+		db.execSQL("CREATE TABLE bookings (owner TEXT, type TEXT, allocatable_id TEXT, reservation_id TEXT, start INTEGER, duration INTEGER, repeating_type INTEGER, repeating_interval INTEGER, repeating_until INTEGER, exceptions TEXT, max_end INTEGER)");
+		db.execSQL("CREATE INDEX bookings_start ON bookings (owner, type, start)");
+	}
+
+	@Override
+	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+		// First version of the schema, nothing to upgrade yet
+	}
+
+	/**
+	 * Make the given server and user the owner of journal entries appended
+	 * from now on
+	 *
+	 * @param host
+	 *            Rapla server
+	 * @param username
+	 *            Rapla user
+	 */
+	public synchronized void open(String host, String username) {
+		this.owner = host + "|" + username;
+		ContentValues values = new ContentValues();
+		values.put("key", META_OWNER);
+		values.put("value", this.owner);
+		this.getWritableDatabase().replace("meta", null, values);
+	}
+
+	/**
+	 * Append an operation to the outbox journal of the current owner
+	 *
+	 * @param operation
+	 *            Name of the operation
+	 * @param entityId
+	 *            Identifier of the entity
+	 * @param entityName
+	 *            Name of the entity to be shown to the user
+	 * @param payload
+	 *            Serialized state of the entity, null if there is none
+	 * @return Row id of the journal entry
+	 */
+	public synchronized long appendOutbox(String operation, String entityId,
+			String entityName, String payload) {
+		ContentValues values = new ContentValues();
+		values.put("owner", this.owner);
+		values.put("operation", operation);
+		values.put("entity_id", entityId);
+		values.put("entity_name", entityName);
+		values.put("payload", payload);
+		values.put("created_at", System.currentTimeMillis());
+		return this.getWritableDatabase().insert("outbox", null, values);
+	}
+
+	/**
+	 * Remove an entry from the outbox journal once it has been submitted
+	 *
+	 * @param rowId
+	 *            Row id of the journal entry
+	 */
+	public synchronized void deleteOutbox(long rowId) {
+		this.getWritableDatabase().delete("outbox", "id = ?",
+				new String[] { String.valueOf(rowId) });
+	}
+
+	/**
+	 * Get the outbox journal of the current owner. The entries stay in the
+	 * journal until they are deleted.
+	 *
+	 * @return Journal entries in journal order
+	 */
+	public synchronized List<OutboxEntry> getOutbox() {
+		Cursor c = this.getReadableDatabase().rawQuery(
+				"SELECT id, operation, entity_id, entity_name, payload FROM outbox WHERE owner = ? ORDER BY id",
+				new String[] { String.valueOf(this.owner) });
+		try {
+			List<OutboxEntry> entries = new ArrayList<OutboxEntry>(
+					c.getCount());
+			while (c.moveToNext()) {
+				entries.add(new OutboxEntry(c.getLong(0), c.getString(1), c
+						.getString(2), c.getString(3), c.getString(4)));
+			}
+			return entries;
+		} finally {
+			c.close();
+		}
+	}
+
+	/**
+	 * Replace the stored bookings of the allocatables of a dynamic type with
+	 * the ones read for a time range
+	 *
+	 * @param type
+	 *            Element key of the dynamic type
+	 * @param from
+	 *            Start of the time range in milliseconds
+	 * @param to
+	 *            End of the time range in milliseconds
+	 * @param bookings
+	 *            Bookings per allocatable id
+	 */
+	public synchronized void putBookings(String type, long from, long to,
+			Map<String, List<Booking>> bookings) {
+		String owner = String.valueOf(this.owner);
+		SQLiteDatabase db = this.getWritableDatabase();
+		db.beginTransaction();
+		try {
+			db.delete("bookings", "owner = ? AND type = ?", new String[] {
+					owner, type });
+			ContentValues values = new ContentValues();
+			for (Map.Entry<String, List<Booking>> entry : bookings.entrySet()) {
+				for (Booking booking : entry.getValue()) {
+					Occurrences occurrences = booking.getOccurrences();
+					values.clear();
+					values.put("owner", owner);
+					values.put("type", type);
+					values.put("allocatable_id", entry.getKey());
+					values.put("reservation_id", booking.getReservationId());
+					values.put("start", occurrences.getStart());
+					values.put("duration", occurrences.getDuration());
+					values.put("repeating_type", occurrences.getType());
+					values.put("repeating_interval", occurrences.getInterval());
+					values.put("repeating_until", occurrences.getUntil());
+					values.put("exceptions",
+							join(occurrences.getExceptions()));
+					values.put("max_end", occurrences.getEnd());
+					db.insert("bookings", null, values);
+				}
+			}
+			values.clear();
+			values.put("key", getBookingsKey(owner, type));
+			values.put("value", join(new long[] { from, to }));
+			db.replace("meta", null, values);
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Get the stored bookings of the allocatables of a dynamic type
+	 *
+	 * @param type
+	 *            Element key of the dynamic type
+	 * @param from
+	 *            Start of the time range in milliseconds
+	 * @param to
+	 *            End of the time range in milliseconds
+	 * @return Bookings overlapping the time range per allocatable id, null if
+	 *         the stored bookings don't cover the time range
+	 */
+	public synchronized Map<String, List<Booking>> getBookings(String type,
+			long from, long to) {
+		String owner = String.valueOf(this.owner);
+		SQLiteDatabase db = this.getReadableDatabase();
+		long[] covered = null;
+		Cursor c = db.rawQuery("SELECT value FROM meta WHERE key = ?",
+				new String[] { getBookingsKey(owner, type) });
+		try {
+			if (c.moveToFirst()) {
+				covered = split(c.getString(0));
+			}
+		} finally {
+			c.close();
+		}
+		if (covered == null || from < covered[0] || to > covered[1]) {
+			return null;
+		}
+
+		c = db.rawQuery(
+				"SELECT allocatable_id, reservation_id, start, duration, repeating_type, repeating_interval, repeating_until, exceptions FROM bookings WHERE owner = ? AND type = ? AND start < ? AND max_end > ?",
+				new String[] { owner, type, String.valueOf(to),
+						String.valueOf(from) });
+		try {
+			Map<String, List<Booking>> bookings = new HashMap<String, List<Booking>>();
+			while (c.moveToNext()) {
+				List<Booking> list = bookings.get(c.getString(0));
+				if (list == null) {
+					list = new ArrayList<Booking>();
+					bookings.put(c.getString(0), list);
+				}
+				list.add(new Booking(c.getString(1), new Occurrences(c
+						.getLong(2), c.getLong(3), c.getInt(4), c.getInt(5), c
+						.getLong(6), split(c.getString(7)))));
+			}
+			return bookings;
+		} finally {
+			c.close();
+		}
+	}
+
+	private static String getBookingsKey(String owner, String type) {
+		return META_BOOKINGS + "|" + owner + "|" + type;
+	}
+
+	private static String join(long[] values) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				builder.append(',');
+			}
+			builder.append(values[i]);
+		}
+		return builder.toString();
+	}
+
+	private static long[] split(String value) {
+		if (value == null || value.length() == 0) {
+			return new long[0];
+		}
+		String[] parts = value.split(",");
+		long[] values = new long[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			values[i] = Long.parseLong(parts[i]);
+		}
+		return values;
+	}
+
+	/**
+	 * Entry of the outbox journal
+	 *
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	public static class OutboxEntry {
+
+		private long id;
+		private String operation;
+		private String entityId;
+		private String entityName;
+		private String payload;
+
+		public OutboxEntry(long id, String operation, String entityId,
+				String entityName, String payload) {
+			this.id = id;
+			this.operation = operation;
+			this.entityId = entityId;
+			this.entityName = entityName;
+			this.payload = payload;
+		}
+
+		/**
+		 * @return Row id of the journal entry
+		 */
+		public long getId() {
+			return this.id;
+		}
+
+		public String getOperation() {
+			return this.operation;
+		}
+
+		public String getEntityId() {
+			return this.entityId;
+		}
+
+		public String getEntityName() {
+			return this.entityName;
+		}
+
+		/**
+		 * @return Serialized state of the entity, null if there is none
+		 */
+		public String getPayload() {
+			return this.payload;
+		}
+	}
+}
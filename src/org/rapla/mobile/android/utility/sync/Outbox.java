@@ -0,0 +1,484 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.sync;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.json.JSONException;
+import org.rapla.entities.Entity;
+import org.rapla.entities.Named;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.facade.ClientFacade;
+import org.rapla.framework.RaplaException;
+import org.rapla.mobile.android.os.TaskScheduler;
+import org.rapla.mobile.android.utility.store.LocalStore;
+
+/**
+ * The outbox queues store and remove operations and submits them to the
+ * server in the background, so that saving never blocks the user. All
+ * operations queued at the time of a submit go out in one
+ * <code>storeAndRemove</code> call. Failed submits are retried with
+ * exponential backoff. If a batch keeps failing, its operations are submitted
+ * one by one. If some of them go through, the others have been rejected by
+ * the server and are reported and dropped. If none goes through, the server
+ * is most likely unreachable, so the operations are kept and retried, again
+ * in batches.
+ *
+ * Every queued operation is recorded in the journal of the local store until
+ * it has been submitted, along with the payload of stored reservations.
+ * Entities can't outlive the connection they belong to, so operations left
+ * in the journal by a previous run are rebuilt from their payload and
+ * replayed. Those that can't be rebuilt are reported as lost.
+ *
+ * Submits hold the facade lock of the task scheduler, so they don't overlap
+ * with a sync refreshing the facade.
+ *
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class Outbox implements Runnable {
+
+	public static final String OPERATION_STORE = "store";
+	public static final String OPERATION_REMOVE = "remove";
+
+	/**
+	 * Delay in milliseconds before queued operations are submitted, so that
+	 * edits made in quick succession go out together
+	 */
+	public static final long BATCH_DELAY = 500;
+
+	/**
+	 * Delay in milliseconds before the first retry, doubled with every
+	 * further retry
+	 */
+	public static final long INITIAL_BACKOFF = 2000;
+	public static final long MAX_BACKOFF = 5 * 60 * 1000;
+
+	/**
+	 * Number of attempts to submit a batch before submitting its operations
+	 * one by one
+	 */
+	public static final int MAX_ATTEMPTS = 5;
+
+	private static ScheduledExecutorService scheduler;
+	private ClientFacade facade;
+	private LocalStore journal;
+	private Listener listener;
+	private Map<String, Operation> pending = new LinkedHashMap<String, Operation>();
+	private List<LocalStore.OutboxEntry> replay;
+	private ScheduledFuture<?> scheduled;
+	private int attempts = 0;
+	private long backoff = INITIAL_BACKOFF;
+
+	/**
+	 * @param facade
+	 *            Logged in client facade
+	 */
+	public Outbox(ClientFacade facade) {
+		this.facade = facade;
+	}
+
+	/**
+	 * Set listener to be notified about the outcome of submits. It is called
+	 * on the background thread.
+	 *
+	 * @param listener
+	 *            Listener, null for none
+	 */
+	public synchronized void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Record queued operations in the journal of the given store. Operations
+	 * left over from a previous run are replayed with the next submit.
+	 *
+	 * @param journal
+	 *            Local store holding the journal
+	 */
+	public synchronized void setJournal(LocalStore journal) {
+		this.journal = journal;
+		this.replay = journal.getOutbox();
+		for (Operation operation : this.pending.values()) {
+			operation.journalId = this.journal.appendOutbox(operation.type,
+					operation.id, operation.name, operation.payload);
+		}
+		if (!this.replay.isEmpty()) {
+			this.schedule(BATCH_DELAY);
+		}
+	}
+
+	/**
+	 * Queue entity to be stored
+	 *
+	 * @param entity
+	 *            Entity to be stored
+	 */
+	public void store(Entity entity) {
+		this.enqueue(new Operation(OPERATION_STORE, entity));
+	}
+
+	/**
+	 * Queue entity to be removed
+	 *
+	 * @param entity
+	 *            Entity to be removed
+	 */
+	public void remove(Entity entity) {
+		this.enqueue(new Operation(OPERATION_REMOVE, entity));
+	}
+
+	/**
+	 * @return Number of operations waiting to be submitted
+	 */
+	public synchronized int size() {
+		return this.pending.size();
+	}
+
+	/**
+	 * Submit all queued operations
+	 */
+	public void run() {
+		Lock lock = TaskScheduler.getInstance().getFacadeLock().readLock();
+		lock.lock();
+		try {
+			this.submitPending();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void submitPending() {
+		this.replay();
+
+		List<Operation> batch;
+		synchronized (this) {
+			this.scheduled = null;
+			batch = new ArrayList<Operation>(this.pending.values());
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		try {
+			this.submit(batch);
+		} catch (RaplaException e) {
+			synchronized (this) {
+				this.attempts++;
+				if (this.attempts < MAX_ATTEMPTS) {
+					this.retry();
+					return;
+				}
+			}
+
+			// Find the operations the server rejects
+			batch = this.submitEach(batch, e);
+			if (batch.isEmpty()) {
+				return;
+			}
+		}
+
+		synchronized (this) {
+			this.attempts = 0;
+			this.backoff = INITIAL_BACKOFF;
+			if (this.listener != null) {
+				this.listener.onSubmitted(batch.size());
+			}
+
+			// Operations queued while submitting
+			if (!this.pending.isEmpty()) {
+				this.schedule(BATCH_DELAY);
+			}
+		}
+	}
+
+	private synchronized void enqueue(Operation operation) {
+		// A later operation on the same entity replaces the earlier one
+		Operation replaced = this.pending.remove(operation.id);
+		if (replaced != null && this.journal != null) {
+			this.journal.deleteOutbox(replaced.journalId);
+		}
+		if (this.journal != null) {
+			operation.journalId = this.journal.appendOutbox(operation.type,
+					operation.id, operation.name, operation.payload);
+		}
+		this.pending.put(operation.id, operation);
+
+		// Retries keep their backoff, new operations join them
+		if (this.attempts == 0) {
+			this.schedule(BATCH_DELAY);
+		}
+	}
+
+	/**
+	 * Queue the operations left in the journal by a previous run. Operations
+	 * queued since then take precedence.
+	 */
+	private void replay() {
+		List<LocalStore.OutboxEntry> entries;
+		synchronized (this) {
+			entries = this.replay;
+			this.replay = null;
+		}
+		if (entries == null) {
+			return;
+		}
+
+		List<String> lost = new ArrayList<String>();
+		for (LocalStore.OutboxEntry entry : entries) {
+			Operation operation = null;
+			try {
+				operation = this.rebuild(entry);
+			} catch (JSONException e) {
+				lost.add(entry.getEntityName());
+			} catch (RaplaException e) {
+				lost.add(entry.getEntityName());
+			}
+			synchronized (this) {
+				if (operation == null
+						|| this.pending.containsKey(operation.id)) {
+					this.journal.deleteOutbox(entry.getId());
+				} else {
+					this.pending.put(operation.id, operation);
+				}
+			}
+		}
+
+		synchronized (this) {
+			if (!lost.isEmpty() && this.listener != null) {
+				this.listener.onLost(lost);
+			}
+		}
+	}
+
+	/**
+	 * Rebuild an operation from its journal entry
+	 *
+	 * @param entry
+	 *            Journal entry
+	 * @return Operation, null if there is nothing left to do
+	 */
+	private Operation rebuild(LocalStore.OutboxEntry entry)
+			throws JSONException, RaplaException {
+		Entity entity;
+		if (OPERATION_REMOVE.equals(entry.getOperation())) {
+			// Unknown entities have already been removed
+			entity = ReservationPayload.lookup(this.facade,
+					entry.getEntityId());
+			if (entity == null) {
+				return null;
+			}
+		} else if (entry.getPayload() != null) {
+			entity = ReservationPayload.decode(this.facade,
+					entry.getEntityId(), entry.getPayload());
+		} else {
+			throw new RaplaException("No payload for " + entry.getEntityId());
+		}
+		Operation operation = new Operation(entry.getOperation(), entity);
+		operation.journalId = entry.getId();
+		return operation;
+	}
+
+	/**
+	 * Submit operations in a single call
+	 */
+	private void submit(List<Operation> batch) throws RaplaException {
+		List<Entity> stored = new ArrayList<Entity>();
+		List<Entity> removed = new ArrayList<Entity>();
+		for (Operation operation : batch) {
+			if (OPERATION_STORE.equals(operation.type)) {
+				stored.add(operation.entity);
+			} else {
+				removed.add(operation.entity);
+			}
+		}
+		this.facade.storeAndRemove(stored.toArray(new Entity[stored.size()]),
+				removed.toArray(new Entity[removed.size()]));
+		this.complete(batch);
+	}
+
+	/**
+	 * Submit operations one by one. Failed ones are reported and dropped if
+	 * others went through, otherwise all of them are retried.
+	 *
+	 * @param batch
+	 *            Operations to be submitted
+	 * @param cause
+	 *            Exception that made the batch fail
+	 * @return Submitted operations
+	 */
+	private List<Operation> submitEach(List<Operation> batch,
+			RaplaException cause) {
+		List<Operation> submitted = new ArrayList<Operation>();
+		Map<Operation, RaplaException> failed = new LinkedHashMap<Operation, RaplaException>();
+		for (Operation operation : batch) {
+			List<Operation> single = new ArrayList<Operation>(1);
+			single.add(operation);
+			try {
+				this.submit(single);
+				submitted.add(operation);
+			} catch (RaplaException e) {
+				failed.put(operation, e);
+			}
+		}
+
+		synchronized (this) {
+			if (submitted.isEmpty()) {
+				if (this.listener != null) {
+					this.listener.onFailed(batch.size(), cause);
+				}
+
+				// Go back to batches, the backoff keeps growing
+				this.attempts = 0;
+				this.retry();
+				return submitted;
+			}
+			for (Map.Entry<Operation, RaplaException> entry : failed
+					.entrySet()) {
+				List<Operation> single = new ArrayList<Operation>(1);
+				single.add(entry.getKey());
+				this.complete(single);
+				if (this.listener != null) {
+					this.listener.onRejected(entry.getKey().name,
+							entry.getValue());
+				}
+			}
+		}
+		return submitted;
+	}
+
+	private synchronized void retry() {
+		this.schedule(this.backoff);
+		this.backoff = Math.min(this.backoff * 2, MAX_BACKOFF);
+	}
+
+	/**
+	 * Drop operations from the queue, unless they have been replaced in the
+	 * meantime
+	 */
+	private synchronized void complete(List<Operation> batch) {
+		for (Operation operation : batch) {
+			if (this.pending.get(operation.id) == operation) {
+				this.pending.remove(operation.id);
+			}
+			if (this.journal != null) {
+				this.journal.deleteOutbox(operation.journalId);
+			}
+		}
+	}
+
+	/**
+	 * Run the outbox on the background thread, unless a run is already
+	 * scheduled
+	 *
+	 * @param delay
+	 *            Delay in milliseconds
+	 */
+	protected synchronized void schedule(long delay) {
+		if (this.scheduled == null) {
+			this.scheduled = getScheduler().schedule(this, delay,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private static synchronized ScheduledExecutorService getScheduler() {
+		if (scheduler == null) {
+			scheduler = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "Outbox");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Queued store or remove operation
+	 */
+	private static class Operation {
+
+		private String type;
+		private Entity entity;
+		private String id;
+		private String name;
+		private String payload;
+		private long journalId;
+
+		public Operation(String type, Entity entity) {
+			this.type = type;
+			this.entity = entity;
+			this.id = String.valueOf(entity.getId());
+			this.name = entity instanceof Named ? ((Named) entity)
+					.getName(Locale.getDefault()) : this.id;
+			if (OPERATION_STORE.equals(type) && entity instanceof Reservation) {
+				try {
+					this.payload = ReservationPayload
+							.encode((Reservation) entity);
+				} catch (JSONException e) {
+					// Can't be replayed, reported as lost after a restart
+				}
+			}
+		}
+	}
+
+	/**
+	 * Callback interface for the outcome of submits
+	 *
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	public interface Listener {
+
+		/**
+		 * @param count
+		 *            Number of operations submitted successfully
+		 */
+		public void onSubmitted(int count);
+
+		/**
+		 * @param name
+		 *            Name of the entity the server rejected
+		 * @param e
+		 *            Reason for the rejection
+		 */
+		public void onRejected(String name, RaplaException e);
+
+		/**
+		 * @param count
+		 *            Number of operations that still couldn't be submitted
+		 *            after all attempts, they are kept and retried
+		 * @param e
+		 *            Reason of the last failure
+		 */
+		public void onFailed(int count, RaplaException e);
+
+		/**
+		 * @param names
+		 *            Names of the entities whose changes were queued in a
+		 *            previous run and can't be replayed
+		 */
+		public void onLost(List<String> names);
+	}
+}
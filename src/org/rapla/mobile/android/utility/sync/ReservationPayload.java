@@ -0,0 +1,288 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.sync;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.rapla.entities.Category;
+import org.rapla.entities.Entity;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Repeating;
+import org.rapla.entities.domain.RepeatingType;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Attribute;
+import org.rapla.entities.dynamictype.AttributeType;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.facade.ClientFacade;
+import org.rapla.framework.RaplaException;
+import org.rapla.mobile.android.utility.cache.Query;
+
+/**
+ * Serialized state of a reservation as kept in the outbox journal
+ *
+ * The payload holds everything the app lets the user edit: the event type,
+ * the attribute values, the appointments and the allocatables along with
+ * their restrictions. Applying it to a reservation replaces these parts as a
+ * whole, so the last edit wins over changes made on the server in the
+ * meantime.
+ *
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class ReservationPayload {
+
+	/**
+	 * @param reservation
+	 *            Reservation to be serialized
+	 * @return Payload of the reservation
+	 * @throws JSONException
+	 */
+	public static String encode(Reservation reservation) throws JSONException {
+		JSONObject json = new JSONObject();
+		Classification classification = reservation.getClassification();
+		json.put("type", classification.getType().getElementKey());
+
+		JSONObject values = new JSONObject();
+		for (Attribute attribute : classification.getAttributes()) {
+			Object value = encodeValue(classification.getValue(attribute));
+			if (value != null) {
+				values.put(attribute.getKey(), value);
+			}
+		}
+		json.put("values", values);
+
+		Appointment[] appointments = reservation.getAppointments();
+		JSONArray appointmentList = new JSONArray();
+		for (Appointment appointment : appointments) {
+			appointmentList.put(encodeAppointment(appointment));
+		}
+		json.put("appointments", appointmentList);
+
+		JSONArray allocatableList = new JSONArray();
+		for (Allocatable allocatable : reservation.getAllocatables()) {
+			JSONObject item = new JSONObject();
+			item.put("id", String.valueOf(allocatable.getId()));
+			JSONArray restriction = new JSONArray();
+			for (Appointment appointment : reservation
+					.getRestriction(allocatable)) {
+				int index = indexOf(appointments, appointment);
+				if (index >= 0) {
+					restriction.put(index);
+				}
+			}
+			item.put("restriction", restriction);
+			allocatableList.put(item);
+		}
+		json.put("allocatables", allocatableList);
+		return json.toString();
+	}
+
+	/**
+	 * Build a working copy of the reservation with the given identifier and
+	 * apply the payload to it. A new reservation is created if the server
+	 * doesn't know the identifier, which is the case for reservations that
+	 * have never been submitted.
+	 *
+	 * @param facade
+	 *            Logged in client facade
+	 * @param id
+	 *            Identifier of the reservation
+	 * @param payload
+	 *            Payload as created by <code>encode</code>
+	 * @return Reservation to be stored
+	 * @throws JSONException
+	 *             Payload is malformed
+	 * @throws RaplaException
+	 */
+	public static Reservation decode(ClientFacade facade, String id,
+			String payload) throws JSONException, RaplaException {
+		JSONObject json = new JSONObject(payload);
+		Entity stored = lookup(facade, id);
+		Reservation reservation = stored instanceof Reservation ? facade
+				.edit((Reservation) stored) : facade.newReservation();
+
+		// Event type and attribute values
+		String type = json.getString("type");
+		if (!type.equals(reservation.getClassification().getType()
+				.getElementKey())) {
+			reservation.setClassification(findType(facade, type)
+					.newClassification());
+		}
+		Classification classification = reservation.getClassification();
+		JSONObject values = json.getJSONObject("values");
+		for (Attribute attribute : classification.getAttributes()) {
+			Object value = values.has(attribute.getKey()) ? decodeValue(
+					facade, attribute, values.get(attribute.getKey())) : null;
+			classification.setValue(attribute, value);
+		}
+
+		// Appointments
+		for (Allocatable allocatable : reservation.getAllocatables()) {
+			reservation.removeAllocatable(allocatable);
+		}
+		for (Appointment appointment : reservation.getAppointments()) {
+			reservation.removeAppointment(appointment);
+		}
+		JSONArray appointmentList = json.getJSONArray("appointments");
+		Appointment[] appointments = new Appointment[appointmentList.length()];
+		for (int i = 0; i < appointments.length; i++) {
+			appointments[i] = decodeAppointment(facade,
+					appointmentList.getJSONObject(i));
+			reservation.addAppointment(appointments[i]);
+		}
+
+		// Allocatables, unknown ones have been removed on the server
+		JSONArray allocatableList = json.getJSONArray("allocatables");
+		for (int i = 0; i < allocatableList.length(); i++) {
+			JSONObject item = allocatableList.getJSONObject(i);
+			Entity allocatable = lookup(facade, item.getString("id"));
+			if (!(allocatable instanceof Allocatable)) {
+				continue;
+			}
+			reservation.addAllocatable((Allocatable) allocatable);
+			JSONArray restriction = item.getJSONArray("restriction");
+			if (restriction.length() > 0) {
+				Appointment[] restricted = new Appointment[restriction
+						.length()];
+				for (int j = 0; j < restricted.length; j++) {
+					restricted[j] = appointments[restriction.getInt(j)];
+				}
+				reservation.setRestriction((Allocatable) allocatable,
+						restricted);
+			}
+		}
+		return reservation;
+	}
+
+	/**
+	 * @param facade
+	 *            Logged in client facade
+	 * @param id
+	 *            Identifier of the entity
+	 * @return Entity, null if the server doesn't know it
+	 * @throws RaplaException
+	 */
+	public static Entity lookup(ClientFacade facade, String id)
+			throws RaplaException {
+		Collection<String> ids = new ArrayList<String>(1);
+		ids.add(id);
+		Map<String, Entity> entities = facade.getOperator().getFromId(ids,
+				false);
+		return entities.get(id);
+	}
+
+	private static JSONObject encodeAppointment(Appointment appointment)
+			throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("start", appointment.getStart().getTime());
+		json.put("end", appointment.getEnd().getTime());
+		json.put("wholeDays", appointment.isWholeDaysSet());
+		Repeating repeating = appointment.getRepeating();
+		if (repeating != null) {
+			JSONObject item = new JSONObject();
+			item.put("type", repeating.getType().toString());
+			item.put("interval", repeating.getInterval());
+			if (repeating.getEnd() != null) {
+				item.put("end", repeating.getEnd().getTime());
+			}
+			JSONArray exceptions = new JSONArray();
+			for (Date exception : repeating.getExceptions()) {
+				exceptions.put(exception.getTime());
+			}
+			item.put("exceptions", exceptions);
+			json.put("repeating", item);
+		}
+		return json;
+	}
+
+	private static Appointment decodeAppointment(ClientFacade facade,
+			JSONObject json) throws JSONException, RaplaException {
+		Appointment appointment = facade.newAppointment(
+				new Date(json.getLong("start")), new Date(json.getLong("end")));
+		appointment.setWholeDays(json.getBoolean("wholeDays"));
+		if (!json.has("repeating")) {
+			appointment.setRepeatingEnabled(false);
+			return appointment;
+		}
+		JSONObject item = json.getJSONObject("repeating");
+		appointment.setRepeatingEnabled(true);
+		Repeating repeating = appointment.getRepeating();
+		repeating.setType(RepeatingType.findForString(item.getString("type")));
+		repeating.setInterval(item.getInt("interval"));
+		repeating.setEnd(item.has("end") ? new Date(item.getLong("end"))
+				: null);
+		JSONArray exceptions = item.getJSONArray("exceptions");
+		for (int i = 0; i < exceptions.length(); i++) {
+			repeating.addException(new Date(exceptions.getLong(i)));
+		}
+		return appointment;
+	}
+
+	private static Object encodeValue(Object value) {
+		if (value instanceof Date) {
+			return Long.valueOf(((Date) value).getTime());
+		} else if (value instanceof Category) {
+			return String.valueOf(((Category) value).getId());
+		} else if (value instanceof String || value instanceof Long
+				|| value instanceof Boolean) {
+			return value;
+		}
+		return null;
+	}
+
+	private static Object decodeValue(ClientFacade facade,
+			Attribute attribute, Object value) throws RaplaException {
+		AttributeType type = attribute.getType();
+		if (type.equals(AttributeType.DATE)) {
+			return new Date(((Number) value).longValue());
+		} else if (type.equals(AttributeType.INT)) {
+			return Long.valueOf(((Number) value).longValue());
+		} else if (type.equals(AttributeType.CATEGORY)) {
+			Entity category = lookup(facade, (String) value);
+			return category instanceof Category ? category : null;
+		}
+		return value;
+	}
+
+	private static DynamicType findType(ClientFacade facade, String elementKey)
+			throws RaplaException {
+		DynamicType[] types = Query.dynamicTypes(
+				DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)
+				.execute(facade);
+		for (DynamicType type : types) {
+			if (elementKey.equals(type.getElementKey())) {
+				return type;
+			}
+		}
+		throw new RaplaException("Unknown event type " + elementKey);
+	}
+
+	private static int indexOf(Appointment[] appointments,
+			Appointment appointment) {
+		for (int i = 0; i < appointments.length; i++) {
+			if (appointments[i] == appointment) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,189 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.utility.sync;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.rapla.facade.ClientFacade;
+import org.rapla.framework.RaplaException;
+import org.rapla.mobile.android.os.TaskScheduler;
+
+/**
+ * The sync engine keeps the entities of a connection up to date while the
+ * app is in the foreground. Each sync asks the storage operator of the
+ * facade for the changes since its last synced time only. The operator
+ * applies them to its entity cache and fires modification events, which in
+ * turn update the query cache and the allocatable catalog.
+ *
+ * The engine's own thread only keeps the time. Syncs run on the task
+ * scheduler with the lowest priority, so they never delay work the user is
+ * waiting for. They are exclusive tasks, so the facade isn't refreshed while
+ * other tasks or the outbox are using it.
+ *
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class SyncEngine implements Runnable {
+
+	/**
+	 * Default time in milliseconds between two syncs
+	 */
+	public static final long DEFAULT_INTERVAL = 5 * 60 * 1000;
+
+	private static ScheduledExecutorService scheduler;
+	private ClientFacade facade;
+	private long interval;
+	private long lastSync;
+	private int failedSyncs = 0;
+	private ScheduledFuture<?> scheduled;
+	private TaskScheduler.Task<Void> queued;
+
+	/**
+	 * @param facade
+	 *            Logged in client facade
+	 */
+	public SyncEngine(ClientFacade facade) {
+		this(facade, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * @param facade
+	 *            Logged in client facade
+	 * @param interval
+	 *            Time in milliseconds between two syncs
+	 */
+	public SyncEngine(ClientFacade facade, long interval) {
+		this.facade = facade;
+		this.interval = interval;
+		this.lastSync = System.currentTimeMillis();
+	}
+
+	/**
+	 * Pull the changes since the last sync from the server
+	 *
+	 * @throws RaplaException
+	 */
+	public void sync() throws RaplaException {
+		try {
+			this.facade.refresh();
+		} catch (RaplaException e) {
+			synchronized (this) {
+				this.failedSyncs++;
+			}
+			throw e;
+		}
+		synchronized (this) {
+			this.lastSync = System.currentTimeMillis();
+			this.failedSyncs = 0;
+		}
+	}
+
+	/**
+	 * Sync in the background, errors are retried with the next run
+	 */
+	public void run() {
+		try {
+			this.sync();
+		} catch (RaplaException e) {
+			// Connection might be temporarily unavailable, try again with
+			// the next interval
+		}
+	}
+
+	/**
+	 * Start syncing periodically. The first sync runs as soon as the interval
+	 * has passed since the last one.
+	 */
+	public synchronized void resume() {
+		if (this.scheduled != null) {
+			return;
+		}
+		long delay = Math.max(0, this.interval
+				- (System.currentTimeMillis() - this.lastSync));
+		this.scheduled = getScheduler().scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				queue();
+			}
+		}, delay, this.interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Queue a sync on the task scheduler, unless the last one is still
+	 * waiting or running
+	 */
+	private synchronized void queue() {
+		if (this.queued == null || this.queued.isFinished()
+				|| this.queued.isCancelled()) {
+			this.queued = TaskScheduler.getInstance().execute(
+					new TaskScheduler.Task<Void>(TaskScheduler.PRIORITY_SYNC,
+							"Sync") {
+						protected boolean isExclusive() {
+							return true;
+						}
+
+						protected Void doInBackground() {
+							SyncEngine.this.run();
+							return null;
+						}
+					});
+		}
+	}
+
+	/**
+	 * Stop syncing periodically, a queued sync is dropped, a running sync is
+	 * completed
+	 */
+	public synchronized void pause() {
+		if (this.scheduled != null) {
+			this.scheduled.cancel(false);
+			this.scheduled = null;
+		}
+		if (this.queued != null && !this.queued.isStarted()) {
+			this.queued.cancel();
+			this.queued = null;
+		}
+	}
+
+	/**
+	 * @return Time in milliseconds of the last successful sync
+	 */
+	public synchronized long getLastSync() {
+		return this.lastSync;
+	}
+
+	/**
+	 * @return Number of syncs failed in a row
+	 */
+	public synchronized int getFailedSyncs() {
+		return this.failedSyncs;
+	}
+
+	private static synchronized ScheduledExecutorService getScheduler() {
+		if (scheduler == null) {
+			scheduler = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "SyncEngine");
+							thread.setDaemon(true);
+							thread.setPriority(Thread.MIN_PRIORITY);
+							return thread;
+						}
+					});
+		}
+		return scheduler;
+	}
+}
@@ -96,9 +96,13 @@ public class DatePickerSpinner extends Spinner {
 	 * Set date and refresh spinner
 	 * 
 	 * @param date
-	 *            Date to be set
+	 *            Date to be set, null for the current date on device
 	 */
 	public void setDate(Date date) {
+		if (date == null) {
+			date = new Date();
+		}
+		this.selectedDate.setTime(date);
 		this.refresh(date);
 	}
 
@@ -28,7 +28,9 @@ import android.widget.RelativeLayout;
 import android.widget.TextView;
 
 /**
- * Base class for all rapla attributes of dynamic types.
+ * Base class for all rapla attributes of dynamic types. The list item view is
+ * created once and kept, so that it can be bound to another attribute of the
+ * same type instead of being built again.
  * 
  * @author Maximilian Lenkeit <dev@lenki.com>
  * 
@@ -43,6 +45,8 @@ public abstract class RaplaAttribute<V> implements RaplaReservationAttribute,
 	private Attribute attribute;
 	protected V value;
 	protected ReservationImpl boundReservation;
+	private View cachedView;
+	private TextView label;
 
 	/**
 	 * @param context
@@ -61,6 +65,35 @@ public abstract class RaplaAttribute<V> implements RaplaReservationAttribute,
 		this.value = (V) this.attribute.defaultValue();
 	}
 
+	/**
+	 * Bind the widget to another attribute of the same type. The list item
+	 * view is kept, its label and value are updated.
+	 * 
+	 * @param attribute
+	 *            Attribute of dynamic type
+	 */
+	public void setAttribute(Attribute attribute) {
+		this.assertAttributeType(attribute, this.attribute.getType());
+
+		this.attribute = attribute;
+		this.value = (V) this.attribute.defaultValue();
+		if (this.label != null) {
+			this.label.setText(this.attribute.getName(Locale.getDefault()));
+		}
+		this.onAttributeChanged();
+
+		// Clear the value of the previous attribute if there is no default
+		this.showValue();
+	}
+
+	/**
+	 * Called after the widget has been bound to another attribute, override
+	 * to update widget settings depending on the attribute
+	 */
+	protected void onAttributeChanged() {
+
+	}
+
 	/**
 	 * Assert that the supplied attribute and the attribute type match
 	 * 
@@ -84,7 +117,7 @@ public abstract class RaplaAttribute<V> implements RaplaReservationAttribute,
 	public void pullValueFromReservation(ReservationImpl reservation) {
 		Classification classification = reservation.getClassification();
 		this.value = (V) classification.getValue(this.attribute);
-		this.setValueToWidget(this.value);
+		this.showValue();
 	}
 
 	/**
@@ -98,14 +131,41 @@ public abstract class RaplaAttribute<V> implements RaplaReservationAttribute,
 		Classification classification = reservation.getClassification();
 		V value = this.getValueFromWidget();
 		classification.setValue(this.attribute, value);
+		this.value = value;
 		return reservation;
 	}
 
+	/**
+	 * A widget whose view has never been shown can't have been changed
+	 */
+	public boolean isModified() {
+		if (this.cachedView == null) {
+			return false;
+		}
+		V current = this.getValueFromWidget();
+		return current != null ? !current.equals(this.value)
+				: this.value != null;
+	}
+
+	/**
+	 * Set the value to the widget. A widget showing no value in its own way,
+	 * like an empty number field, reads it back differently, so the value is
+	 * taken from the widget once it is shown. Otherwise untouched attributes
+	 * would count as modified.
+	 */
+	private void showValue() {
+		this.setValueToWidget(this.value);
+		if (this.cachedView != null) {
+			this.value = this.getValueFromWidget();
+		}
+	}
+
 	/**
 	 * Set widget value depending on widget
 	 * 
 	 * @param value
-	 *            Value of the type described in the attribute metadata
+	 *            Value of the type described in the attribute metadata, null
+	 *            to clear the widget
 	 */
 	abstract protected void setValueToWidget(V value);
 
@@ -139,14 +199,28 @@ public abstract class RaplaAttribute<V> implements RaplaReservationAttribute,
 		label.setId(R.id.text1);
 		label.setText(this.attribute.getName(Locale.getDefault()));
 		label.setLayoutParams(params);
+		this.label = label;
 		return label;
 	}
 
 	/**
 	 * Called by the list view adapter and hence must return composed view for
-	 * each respective list item.
+	 * each respective list item. The view is created on first call.
+	 */
+	public View getListItemView() {
+		if (this.cachedView == null) {
+			this.cachedView = this.createListItemView();
+			this.value = this.getValueFromWidget();
+		}
+		return this.cachedView;
+	}
+
+	/**
+	 * Compose view for the list item
+	 * 
+	 * @return Layout containing label and widget
 	 */
-	abstract public View getListItemView();
+	abstract protected View createListItemView();
 
 	/**
 	 * Read value from widget and transform it to type described in the
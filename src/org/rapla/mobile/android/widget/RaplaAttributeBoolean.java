@@ -44,10 +44,10 @@ public class RaplaAttributeBoolean extends RaplaAttribute<Boolean> {
 	}
 
 	/**
-	 * @see org.rapla.mobile.android.widget.RaplaAttribute#getListItemView()
+	 * @see org.rapla.mobile.android.widget.RaplaAttribute#createListItemView()
 	 */
 	@Override
-	public View getListItemView() {
+	protected View createListItemView() {
 		// Compose relative layout for list item
 		RelativeLayout layout = new RelativeLayout(this.getContext());
 
@@ -73,7 +73,7 @@ public class RaplaAttributeBoolean extends RaplaAttribute<Boolean> {
 	@Override
 	protected void setValueToWidget(Boolean value) {
 		if (this.widget != null) {
-			this.widget.setChecked(value.equals(Boolean.TRUE));
+			this.widget.setChecked(Boolean.TRUE.equals(value));
 		}
 	}
 
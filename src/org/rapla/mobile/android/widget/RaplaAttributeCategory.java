@@ -63,7 +63,16 @@ public class RaplaAttributeCategory extends RaplaAttribute<Category> {
 	}
 
 	@Override
-	public View getListItemView() {
+	protected void onAttributeChanged() {
+		this.root = (Category) this.getAttribute().getConstraint(
+				ConstraintIds.KEY_ROOT_CATEGORY);
+		if (this.widget != null) {
+			this.widget.setRoot(this.root);
+		}
+	}
+
+	@Override
+	protected View createListItemView() {
 		// Compose relative layout for list item
 		RelativeLayout layout = new RelativeLayout(this.getContext());
 
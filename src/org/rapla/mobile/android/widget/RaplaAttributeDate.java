@@ -46,7 +46,7 @@ public class RaplaAttributeDate extends RaplaAttribute<Date> {
 	}
 
 	@Override
-	public View getListItemView() {
+	protected View createListItemView() {
 		// Compose relative layout for list item
 		RelativeLayout layout = new RelativeLayout(this.getContext());
 
@@ -33,7 +33,6 @@ import android.widget.TextView;
 public class RaplaAttributeInt extends RaplaAttribute<Long> {
 
 	private EditText widget;
-	private View cachedView;
 
 	public RaplaAttributeInt(Context context, Attribute attribute) {
 		super(context, attribute, AttributeType.INT);
@@ -41,39 +40,33 @@ public class RaplaAttributeInt extends RaplaAttribute<Long> {
 
 	@Override
 	protected void setValueToWidget(Long value) {
-		if (this.widget != null && value != null) {
-			this.widget.setText(value.toString());
+		if (this.widget != null) {
+			this.widget.setText(value != null ? value.toString() : "");
 		}
 
 	}
 
 	@Override
-	public View getListItemView() {
-		// Check if list view has previously been created
-		if (this.cachedView == null) {
-			// Compose relative layout for list item
-			RelativeLayout layout = new RelativeLayout(this.getContext());
+	protected View createListItemView() {
+		// Compose relative layout for list item
+		RelativeLayout layout = new RelativeLayout(this.getContext());
 
-			// Add label
-			TextView label = this.getLabel();
-			layout.addView(label, 0);
+		// Add label
+		TextView label = this.getLabel();
+		layout.addView(label, 0);
 
-			// Compose attribute specific widget and add to view
-			this.widget = new EditText(this.getContext());
-			this.widget.setInputType(InputType.TYPE_CLASS_NUMBER);
-			this.widget.setSingleLine();
-			this.setValueToWidget(this.value);
-			RelativeLayout.LayoutParams params = new RelativeLayout.LayoutParams(
-					RelativeLayout.LayoutParams.FILL_PARENT,
-					RelativeLayout.LayoutParams.WRAP_CONTENT);
-			params.addRule(RelativeLayout.BELOW, label.getId());
-			layout.addView(this.widget, 1, params);
+		// Compose attribute specific widget and add to view
+		this.widget = new EditText(this.getContext());
+		this.widget.setInputType(InputType.TYPE_CLASS_NUMBER);
+		this.widget.setSingleLine();
+		this.setValueToWidget(this.value);
+		RelativeLayout.LayoutParams params = new RelativeLayout.LayoutParams(
+				RelativeLayout.LayoutParams.FILL_PARENT,
+				RelativeLayout.LayoutParams.WRAP_CONTENT);
+		params.addRule(RelativeLayout.BELOW, label.getId());
+		layout.addView(this.widget, 1, params);
 
-			// Cache view
-			this.cachedView = layout;
-		}
-
-		return this.cachedView;
+		return layout;
 	}
 
 	@Override
@@ -88,4 +81,4 @@ public class RaplaAttributeInt extends RaplaAttribute<Long> {
 			return Long.parseLong(value);
 		}
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -32,7 +32,6 @@ import android.widget.TextView;
 public class RaplaAttributeString extends RaplaAttribute<String> {
 
 	private EditText widget;
-	private View cachedView;
 
 	public RaplaAttributeString(Context context, Attribute attribute) {
 		super(context, attribute, AttributeType.STRING);
@@ -41,39 +40,32 @@ public class RaplaAttributeString extends RaplaAttribute<String> {
 	@Override
 	protected void setValueToWidget(String value) {
 		if (this.widget != null) {
-			this.widget.setText(value);
+			this.widget.setText(value != null ? value : "");
 		}
 
 	}
 
 	@Override
-	public View getListItemView() {
-		// Check if list view has previously been created
-		if (this.cachedView == null) {
-			// Compose relative layout for list item
-			RelativeLayout layout = new RelativeLayout(this.getContext());
+	protected View createListItemView() {
+		// Compose relative layout for list item
+		RelativeLayout layout = new RelativeLayout(this.getContext());
 
-			// Add label
-			TextView label = this.getLabel();
-			layout.addView(label, 0);
+		// Add label
+		TextView label = this.getLabel();
+		layout.addView(label, 0);
 
-			// Compose attribute specific widget and add to view
-			this.widget = new EditText(this.getContext());
-			this.widget.setFocusable(true);
-			this.widget.setSingleLine();
-			this.setValueToWidget(this.value);
-			RelativeLayout.LayoutParams params = new RelativeLayout.LayoutParams(
-					RelativeLayout.LayoutParams.FILL_PARENT,
-					RelativeLayout.LayoutParams.WRAP_CONTENT);
-			params.addRule(RelativeLayout.BELOW, label.getId());
-			layout.addView(this.widget, 1, params);
+		// Compose attribute specific widget and add to view
+		this.widget = new EditText(this.getContext());
+		this.widget.setFocusable(true);
+		this.widget.setSingleLine();
+		this.setValueToWidget(this.value);
+		RelativeLayout.LayoutParams params = new RelativeLayout.LayoutParams(
+				RelativeLayout.LayoutParams.FILL_PARENT,
+				RelativeLayout.LayoutParams.WRAP_CONTENT);
+		params.addRule(RelativeLayout.BELOW, label.getId());
+		layout.addView(this.widget, 1, params);
 
-			// Cache view
-			this.cachedView = layout;
-		}
-
-		// Return cached list view
-		return this.cachedView;
+		return layout;
 	}
 
 	@Override
@@ -0,0 +1,163 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.widget;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.rapla.entities.dynamictype.Attribute;
+import org.rapla.entities.dynamictype.AttributeType;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.mobile.android.utility.factory.RaplaAttributeWidgetFactory;
+
+import android.content.Context;
+
+/**
+ * Keeps the attribute widgets of the dynamic types shown recently, so that
+ * switching back to a type rebinds its widgets instead of building their
+ * views again. Widgets of types that have been dropped are kept per
+ * attribute type and bound to the attributes of the next type shown.
+ * 
+ * Widgets belong to the context they have been created with, so a pool must
+ * not outlive its activity.
+ * 
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ * 
+ */
+public class RaplaAttributeWidgetPool {
+
+	/**
+	 * Number of dynamic types whose widgets are kept
+	 */
+	public static final int MAX_TEMPLATES = 3;
+
+	private Context context;
+	private LinkedHashMap<String, Template> templates = new LinkedHashMap<String, Template>(
+			MAX_TEMPLATES + 1, 1, true);
+	private Map<AttributeType, List<RaplaAttribute<?>>> released = new HashMap<AttributeType, List<RaplaAttribute<?>>>();
+
+	/**
+	 * @param context
+	 *            The current context
+	 */
+	public RaplaAttributeWidgetPool(Context context) {
+		this.context = context;
+	}
+
+	/**
+	 * Get widgets for all attributes of a dynamic type, which are bound to
+	 * the attributes but not yet to a reservation
+	 * 
+	 * @param dt
+	 *            Dynamic type
+	 * @return Widgets in the order of the attributes
+	 */
+	public RaplaAttribute<?>[] obtain(DynamicType dt) {
+		Attribute[] attributes = dt.getAttributes();
+		String key = dt.getElementKey();
+
+		// Reuse widgets of the type unless its attributes have changed
+		Template template = this.templates.get(key);
+		if (template != null) {
+			if (template.matches(attributes)) {
+				return template.widgets;
+			}
+			this.templates.remove(key);
+			this.release(template);
+		}
+
+		template = new Template(attributes);
+		for (int i = 0; i < attributes.length; i++) {
+			template.widgets[i] = this.obtain(attributes[i]);
+		}
+		this.templates.put(key, template);
+
+		// Drop the widgets of the least recently shown type
+		if (this.templates.size() > MAX_TEMPLATES) {
+			Iterator<Template> eldest = this.templates.values().iterator();
+			this.release(eldest.next());
+			eldest.remove();
+		}
+		return template.widgets;
+	}
+
+	/**
+	 * @return Number of widgets waiting to be reused
+	 */
+	public int getReleasedCount() {
+		int count = 0;
+		for (List<RaplaAttribute<?>> widgets : this.released.values()) {
+			count += widgets.size();
+		}
+		return count;
+	}
+
+	private RaplaAttribute<?> obtain(Attribute attribute) {
+		List<RaplaAttribute<?>> widgets = this.released.get(attribute
+				.getType());
+		if (widgets != null && !widgets.isEmpty()) {
+			RaplaAttribute<?> widget = widgets.remove(widgets.size() - 1);
+			widget.setAttribute(attribute);
+			return widget;
+		}
+		return RaplaAttributeWidgetFactory.getInstance().create(this.context,
+				attribute);
+	}
+
+	private void release(Template template) {
+		for (RaplaAttribute<?> widget : template.widgets) {
+			if (widget == null) {
+				continue;
+			}
+			widget.bindReservation(null);
+			AttributeType type = widget.getAttribute().getType();
+			List<RaplaAttribute<?>> widgets = this.released.get(type);
+			if (widgets == null) {
+				widgets = new ArrayList<RaplaAttribute<?>>();
+				this.released.put(type, widgets);
+			}
+			widgets.add(widget);
+		}
+	}
+
+	/**
+	 * Widgets of a dynamic type along with the attributes they were built for
+	 */
+	private static class Template {
+
+		private Attribute[] attributes;
+		private RaplaAttribute<?>[] widgets;
+
+		public Template(Attribute[] attributes) {
+			this.attributes = attributes.clone();
+			this.widgets = new RaplaAttribute<?>[attributes.length];
+		}
+
+		public boolean matches(Attribute[] attributes) {
+			if (this.attributes.length != attributes.length) {
+				return false;
+			}
+			for (int i = 0; i < attributes.length; i++) {
+				if (this.attributes[i] != attributes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -56,11 +56,6 @@ public class RaplaCategorySpinner extends Spinner {
 			Category selected) {
 		super(context);
 
-		// Check whether the supplied combination of root and category is valid
-		if (!root.isAncestorOf(selected) && root.isIdentical(selected)) {
-			throw new RuntimeException("Invalid parent-child combination");
-		}
-
 		// Select instance variables
 		this.root = root;
 		this.selected = selected;
@@ -85,6 +80,20 @@ public class RaplaCategorySpinner extends Spinner {
 		this(context, root, root);
 	}
 
+	/**
+	 * Set the top level category that can be selected, the root itself
+	 * becomes the selected category
+	 * 
+	 * @param root
+	 *            The top level category that can be selected
+	 */
+	public void setRoot(Category root) {
+		this.root = root;
+		this.setOnTouchListener(new SpinnerOnTouchListener(this.getContext(),
+				this, this.root, root));
+		this.refresh(root);
+	}
+
 	/**
 	 * @return The currently selected and displayed category
 	 */
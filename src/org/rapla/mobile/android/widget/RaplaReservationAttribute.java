@@ -40,6 +40,14 @@ public interface RaplaReservationAttribute {
 	 */
 	public ReservationImpl putValueToReservation(ReservationImpl reservation);
 
+	/**
+	 * Check whether the value of the widget differs from the value last
+	 * pulled from or put to the reservation
+	 * 
+	 * @return True if the user has changed the value
+	 */
+	public boolean isModified();
+
 	/**
 	 * Bind reservation to widget
 	 * 
@@ -13,7 +13,7 @@
 
 package org.rapla.mobile.android.widget.adapter;
 
-import java.util.Comparator;
+import java.util.List;
 import java.util.Locale;
 
 import org.rapla.entities.domain.Allocatable;
@@ -21,18 +21,33 @@ import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.internal.ReservationImpl;
 import org.rapla.mobile.android.R;
 import org.rapla.mobile.android.activity.AllocatableDetailsActivity;
+import org.rapla.mobile.android.utility.NameSorter;
+import org.rapla.mobile.android.utility.cache.AssignmentIndex;
+import org.rapla.mobile.android.utility.cache.PageWindow;
+import org.rapla.mobile.android.utility.conflict.Availability;
+import org.rapla.mobile.android.utility.conflict.ConflictDetector;
 import org.rapla.mobile.android.utility.factory.ExceptionDialogFactory;
 
 import android.content.Context;
+import android.os.Handler;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
 import android.widget.CheckBox;
+import android.widget.CompoundButton.OnCheckedChangeListener;
 import android.widget.TextView;
 
 /**
- * This class binds an allocatable array to a list view
+ * This class binds an allocatable array to a list view. The assignments of
+ * the reservation are read from an assignment index, and the texts of each
+ * row are kept until the assignments change, so that binding a row neither
+ * scans the reservation nor allocates. Row descriptions are computed a page
+ * at a time and only a few pages around the visible rows are kept, the next
+ * page is prepared while the user scrolls towards it. Pages follow the rows
+ * as shown, so the results of a search fill pages one after the other.
+ * Allocatables handed out by the allocatable catalog are copies of its
+ * sorted arrays, so the adapter uses them without sorting them again.
  * 
  * @author Maximilian Lenkeit <dev@lenki.com>
  * 
@@ -40,6 +55,26 @@ import android.widget.TextView;
 public class AllocatableAdapter extends ArrayAdapter<Allocatable> {
 
 	protected ReservationImpl selectedReservation;
+	protected ConflictDetector conflictDetector;
+	protected Availability availability;
+	protected AssignmentIndex assignmentIndex;
+	private String[] itemTexts;
+	private PageWindow<String> itemDescriptions;
+	private Handler prefetchHandler = new Handler();
+	private int prefetchPosition = -1;
+	private Runnable prefetchRunnable = new Runnable() {
+		public void run() {
+			itemDescriptions.prefetch(prefetchPosition);
+		}
+	};
+
+	/**
+	 * Number of rows before the end of a page at which the next page is
+	 * prepared
+	 */
+	public static final int PREFETCH_DISTANCE = 10;
+	private OnCheckedChangeListener checkboxListener;
+	private int[] visiblePositions;
 
 	/**
 	 * @param context
@@ -47,43 +82,139 @@ public class AllocatableAdapter extends ArrayAdapter<Allocatable> {
 	 * @param selectedReservation
 	 *            Reservation that is currently edited
 	 * @param objects
-	 *            Set of allocatables to be displayed
+	 *            Set of allocatables to be displayed, sorted by name
+	 *            afterwards
 	 */
 	public AllocatableAdapter(Context context,
 			ReservationImpl selectedReservation, Allocatable[] objects) {
+		this(context, selectedReservation, objects.clone(), null);
+	}
+
+	/**
+	 * @param context
+	 *            The current context
+	 * @param selectedReservation
+	 *            Reservation that is currently edited
+	 * @param sorted
+	 *            Set of allocatables to be displayed
+	 * @param names
+	 *            Names of the allocatables if they are sorted already, null
+	 *            to sort them
+	 */
+	public AllocatableAdapter(Context context,
+			ReservationImpl selectedReservation, Allocatable[] sorted,
+			String[] names) {
 		super(context, R.layout.allocatable_details_list_item,
-				R.id.allocatable_details_list_item_text, objects);
+				R.id.allocatable_details_list_item_text, sorted);
+
+		// The adapter is backed by the array, so sorting the array sorts the
+		// list items
+		if (names == null) {
+			names = NameSorter.sort(sorted, Locale.getDefault());
+		}
 
 		// Set instance variables
-		this.sort(new AllocatableComparator());
 		this.selectedReservation = selectedReservation;
+		this.assignmentIndex = new AssignmentIndex(selectedReservation);
+		this.itemTexts = names;
+		this.itemDescriptions = this.createItemDescriptions(sorted.length);
+	}
+
+	/**
+	 * @param count
+	 *            Number of rows shown
+	 * @return Empty page window for the descriptions of the rows shown
+	 */
+	private PageWindow<String> createItemDescriptions(int count) {
+		return new PageWindow<String>(count, new PageWindow.Loader<String>() {
+			public String load(int position) {
+				return createItemDescriptionForItem(getItem(position));
+			}
+		});
+	}
+
+	/**
+	 * Set conflict detector to flag allocatables that are booked elsewhere
+	 * and to show whether the others are free
+	 * 
+	 * @param conflictDetector
+	 *            Conflict detector, null for none
+	 */
+	public void setConflictDetector(ConflictDetector conflictDetector) {
+		this.conflictDetector = conflictDetector;
+		this.availability = conflictDetector != null ? conflictDetector
+				.getAvailability(this.selectedReservation.getAppointments(),
+						this.selectedReservation) : null;
+		this.itemDescriptions.clear();
+		this.notifyDataSetChanged();
+	}
+
+	/**
+	 * Update the row of an allocatable after it has been booked, unbooked or
+	 * restricted
+	 * 
+	 * @param a
+	 *            Changed allocatable
+	 */
+	public void update(Allocatable a) {
+		this.assignmentIndex.update(a);
+		this.itemDescriptions.clear();
+		this.notifyDataSetChanged();
+	}
+
+	/**
+	 * Only show some of the allocatables, e.g. the results of a search
+	 * 
+	 * @param positions
+	 *            Positions of the allocatables to be shown in ascending order,
+	 *            null to show all
+	 */
+	public void setVisiblePositions(int[] positions) {
+		this.visiblePositions = positions;
+		this.itemDescriptions = this.createItemDescriptions(this.getCount());
+		this.notifyDataSetChanged();
+	}
+
+	@Override
+	public int getCount() {
+		return this.visiblePositions != null ? this.visiblePositions.length
+				: super.getCount();
+	}
+
+	@Override
+	public Allocatable getItem(int position) {
+		return super.getItem(this.getIndex(position));
 	}
 
 	@Override
 	public View getView(int position, View convertView, ViewGroup parent) {
-		// Make sure that convertView is not null
+		// Make sure that convertView is not null and keep references to its
+		// widgets
+		ViewHolder holder;
 		if (convertView == null) {
 			LayoutInflater vi = (LayoutInflater) getContext().getSystemService(
 					Context.LAYOUT_INFLATER_SERVICE);
 			convertView = vi.inflate(R.layout.allocatable_details_list_item,
 					null);
+			holder = new ViewHolder(convertView);
+			convertView.setTag(holder);
+		} else {
+			holder = (ViewHolder) convertView.getTag();
 		}
 
-		// Get references to TextViews on UI
-		TextView itemText = (TextView) convertView
-				.findViewById(R.id.allocatable_details_list_item_text);
-		TextView itemDescription = (TextView) convertView
-				.findViewById(R.id.allocatable_details_list_item_details);
-		CheckBox itemCheckbox = (CheckBox) convertView
-				.findViewById(R.id.allocatable_details_list_item_checkbox);
+		// Detach event handler, so that binding the check box of a recycled
+		// row doesn't book anything
+		holder.checkbox.setOnCheckedChangeListener(null);
 
 		// Fill widgets with values
 		try {
-			Allocatable item = this.getItem(position);
-			itemText.setText(this.createItemTextForItem(item));
-			itemDescription.setText(this.createItemDescriptionForItem(item));
-			itemCheckbox.setChecked(this.getStateForItem(item));
-			itemCheckbox.setEnabled(!itemCheckbox.isChecked());
+			int index = this.getIndex(position);
+			Allocatable item = super.getItem(index);
+			holder.text.setText(this.itemTexts[index]);
+			holder.description.setText(this.itemDescriptions.get(position));
+			this.prefetch(position);
+			holder.checkbox.setChecked(this.getStateForItem(item));
+			holder.checkbox.setEnabled(!holder.checkbox.isChecked());
 		} catch (Exception ex) {
 			// Exception thrown on facade error
 			ExceptionDialogFactory
@@ -92,24 +223,43 @@ public class AllocatableAdapter extends ArrayAdapter<Allocatable> {
 							R.string.exception_rapla_data_retrieval).show();
 		}
 
-		// Register event handler
-		AllocatableDetailsActivity.AllocatableListItemCheckboxListener checkBoxListener = ((AllocatableDetailsActivity) this
-				.getContext())
-				.createAllocatableListItemCheckboxListener(position);
-		itemCheckbox.setOnCheckedChangeListener(checkBoxListener);
+		// Register event handler, shared by all rows
+		if (this.checkboxListener == null) {
+			this.checkboxListener = ((AllocatableDetailsActivity) this
+					.getContext()).getAllocatableListItemCheckboxListener();
+		}
+		holder.checkbox.setOnCheckedChangeListener(this.checkboxListener);
 
 		return convertView;
 	}
 
 	/**
-	 * Create text for first item line based on allocatable name
+	 * Prepare the descriptions of the rows following a row, after the row
+	 * has been drawn
 	 * 
-	 * @param a
-	 *            Allocatable to read name from
-	 * @return Name attribute of allocatable classification
+	 * @param position
+	 *            Position within the visible allocatables
+	 */
+	private void prefetch(int position) {
+		int ahead = position + PREFETCH_DISTANCE;
+		if (ahead >= this.getCount()) {
+			return;
+		}
+		if (!this.itemDescriptions.isLoaded(ahead)) {
+			this.prefetchPosition = ahead;
+			this.prefetchHandler.removeCallbacks(this.prefetchRunnable);
+			this.prefetchHandler.post(this.prefetchRunnable);
+		}
+	}
+
+	/**
+	 * @param position
+	 *            Position within the visible allocatables
+	 * @return Position within all allocatables
 	 */
-	private String createItemTextForItem(Allocatable a) {
-		return a.getName(Locale.getDefault());
+	private int getIndex(int position) {
+		return this.visiblePositions != null ? this.visiblePositions[position]
+				: position;
 	}
 
 	/**
@@ -123,28 +273,69 @@ public class AllocatableAdapter extends ArrayAdapter<Allocatable> {
 	 */
 	private String createItemDescriptionForItem(Allocatable a) {
 		// The reservation has not allocated the allocatable a single time, so
-		// just return an empty string
-		if (!this.selectedReservation.hasAllocated(a)) {
-			return "";
+		// only show whether it is free for the appointments
+		if (!this.assignmentIndex.isAllocated(a)) {
+			if (this.availability == null) {
+				return "";
+			}
+			switch (this.availability.getStatus(a)) {
+			case Availability.BUSY:
+				return this.getContext().getString(R.string.allocatable_busy);
+			case Availability.PARTLY_FREE:
+				return this.getContext().getString(
+						R.string.allocatable_partly_free);
+			default:
+				return this.getContext().getString(R.string.allocatable_free);
+			}
 		}
 
-		// Read all possible appointments and assigned appointments
-		Appointment[] allAppointments = this.selectedReservation
-				.getAppointments();
-		Appointment[] assignedAppointments = this.selectedReservation
-				.getAppointmentsFor(a);
+		// Read number of all possible appointments and assigned appointments
+		int allAppointments = this.assignmentIndex.getAppointmentCount();
+		int assignedAppointments = this.assignmentIndex.getAssignedCount(a);
 
-		if (allAppointments.length == assignedAppointments.length) {
+		String description;
+		if (allAppointments == assignedAppointments) {
 			// Allocatable assigned to all appointments
-			return this.getContext().getString(
+			description = this.getContext().getString(
 					R.string.allocatable_assigned_to_all_appointments);
 		} else {
 			// Allocatable assigned to some appointments
-			return String
+			description = String
 					.format(this.getContext().getString(
 							R.string.allocatable_assigned_to_x_of_y_appointmen),
-							assignedAppointments.length, allAppointments.length);
+							assignedAppointments, allAppointments);
+		}
+		if (this.conflictDetector == null) {
+			return description;
 		}
+		return this.createConflictDescription(a,
+				this.selectedReservation.getAppointmentsFor(a), description);
+	}
+
+	/**
+	 * Append the number of conflicting appointments to a description
+	 * 
+	 * @param a
+	 *            Allocatable to be checked
+	 * @param appointments
+	 *            Appointments the allocatable is or would be booked for
+	 * @param description
+	 *            Description to append to
+	 * @return Description including conflicts, if any
+	 */
+	private String createConflictDescription(Allocatable a,
+			Appointment[] appointments, String description) {
+		List<Appointment> conflicts = this.conflictDetector.getConflicts(a,
+				appointments, this.selectedReservation);
+		if (conflicts.isEmpty()) {
+			return description;
+		}
+		String conflictDescription = String.format(
+				this.getContext().getString(
+						R.string.allocatable_conflicts_x_of_y_appointments),
+				conflicts.size(), appointments.length);
+		return description.length() > 0 ? description + ", "
+				+ conflictDescription : conflictDescription;
 	}
 
 	/**
@@ -156,35 +347,27 @@ public class AllocatableAdapter extends ArrayAdapter<Allocatable> {
 	 *         false otherwise
 	 */
 	private boolean getStateForItem(Allocatable a) {
-		// If the reservation has allocated the appointment at least a single
-		// time and the number of assigned appointments is larger than zero,
-		// return true
-		if (this.selectedReservation.hasAllocated(a)) {
-			Appointment[] assignedAppointments = this.selectedReservation
-					.getAppointmentsFor(a);
-			return assignedAppointments.length > 0;
-		} else {
-			return false;
-		}
+		return this.assignmentIndex.getAssignedCount(a) > 0;
 	}
 
 	/**
-	 * AllocatableComparator
-	 * 
-	 * Comparator class for sorting allocatables by name.
+	 * References to the widgets of a row
 	 * 
 	 * @author Maximilian Lenkeit <dev@lenki.com>
 	 */
-	public static class AllocatableComparator implements Comparator<Allocatable> {
-
-		public int compare(Allocatable lhs, Allocatable rhs) {
-			try {
-				return lhs.getName(Locale.getDefault()).toString()
-						.compareTo(rhs.getName(Locale.getDefault()).toString());
-			} catch (RuntimeException e) {
-				return 0;
-			}
-		}
+	private static class ViewHolder {
 
+		private TextView text;
+		private TextView description;
+		private CheckBox checkbox;
+
+		public ViewHolder(View v) {
+			this.text = (TextView) v
+					.findViewById(R.id.allocatable_details_list_item_text);
+			this.description = (TextView) v
+					.findViewById(R.id.allocatable_details_list_item_details);
+			this.checkbox = (CheckBox) v
+					.findViewById(R.id.allocatable_details_list_item_checkbox);
+		}
 	}
 }
@@ -13,11 +13,11 @@
 
 package org.rapla.mobile.android.widget.adapter;
 
-import java.util.Comparator;
 import java.util.Locale;
 
 import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.mobile.android.R;
+import org.rapla.mobile.android.utility.NameSorter;
 
 import android.content.Context;
 import android.view.LayoutInflater;
@@ -40,7 +40,18 @@ public class AllocatableCategoryAdapter
 	public AllocatableCategoryAdapter(Context context,
 			AllocatableCategoryListItem[] objects) {
 		super(context, R.layout.allocation_list_item, 0, objects);
-		this.sort(new AllocatableCategoryListItemComparator());
+
+		// Read each name once and sort the backing array by it
+		Locale locale = Locale.getDefault();
+		DynamicType[] types = new DynamicType[objects.length];
+		for (int i = 0; i < objects.length; i++) {
+			types[i] = objects[i].getDynamicType();
+		}
+		String[] names = NameSorter.getNames(types, locale);
+		for (int i = 0; i < objects.length; i++) {
+			objects[i].setName(names[i]);
+		}
+		NameSorter.sort(objects, names, locale);
 	}
 
 	@Override
@@ -63,8 +74,7 @@ public class AllocatableCategoryAdapter
 		AllocatableCategoryListItem item = this.getItem(position);
 
 		// Set text views
-		itemText.setText(item.getDynamicType().getName(Locale.getDefault())
-				.toString());
+		itemText.setText(item.getName());
 		itemDescription
 				.setText(String
 						.format(this
@@ -87,6 +97,7 @@ public class AllocatableCategoryAdapter
 	public static class AllocatableCategoryListItem {
 
 		private DynamicType dt;
+		private String name;
 		private int numAllocatables;
 		private int numSelectedAllocatables;
 
@@ -102,6 +113,14 @@ public class AllocatableCategoryAdapter
 			this.dt = dt;
 		}
 
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
 		public int getNumAllocatables() {
 			return numAllocatables;
 		}
@@ -119,29 +138,4 @@ public class AllocatableCategoryAdapter
 		}
 	}
 
-	/**
-	 * Comparator class for sorting allocatable category list item by name.
-	 * 
-	 * @author Maximilian Lenkeit <dev@lenki.com>
-	 */
-	public static class AllocatableCategoryListItemComparator
-			implements
-			Comparator<org.rapla.mobile.android.widget.adapter.AllocatableCategoryAdapter.AllocatableCategoryListItem> {
-
-		public int compare(AllocatableCategoryListItem lhs,
-				AllocatableCategoryListItem rhs) {
-			try {
-				return lhs
-						.getDynamicType()
-						.getName(Locale.getDefault())
-						.compareTo(
-								rhs.getDynamicType().getName(
-										Locale.getDefault()));
-			} catch (RuntimeException e) {
-				return 0;
-			}
-		}
-
-	}
-
 }
@@ -16,6 +16,7 @@ package org.rapla.mobile.android.widget.adapter;
 import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.AppointmentFormater;
 import org.rapla.mobile.android.R;
+import org.rapla.mobile.android.utility.occurrence.OccurrenceEngine;
 
 import android.content.Context;
 import android.view.LayoutInflater;
@@ -66,8 +67,19 @@ public class AppointmentAdapter extends ArrayAdapter<Appointment> {
 		 */
 		itemText.setText(this.formatter.getSummary(currentAppointment));
 		if (currentAppointment.getRepeating() != null) {
-			itemDescription.setText(this.formatter
-					.getSummary(currentAppointment.getRepeating()));
+			String summary = this.formatter.getSummary(currentAppointment
+					.getRepeating());
+
+			// Number of occurrences, only known for series with an end
+			int count = OccurrenceEngine.getInstance().get(currentAppointment)
+					.count();
+			if (count >= 0) {
+				summary = String.format(
+						this.getContext().getString(
+								R.string.appointment_x_occurrences), summary,
+						count);
+			}
+			itemDescription.setText(summary);
 		} else {
 			itemDescription.setText(this.getContext().getString(
 					R.string.appointment_not_repeating));
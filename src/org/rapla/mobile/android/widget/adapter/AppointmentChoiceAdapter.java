@@ -0,0 +1,68 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.widget.adapter;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+
+/**
+ * This class binds appointment summaries to a multiple choice list and
+ * disables the appointments the user may not pick.
+ * 
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ * 
+ */
+public class AppointmentChoiceAdapter extends ArrayAdapter<CharSequence> {
+
+	private boolean[] enabled;
+
+	/**
+	 * @param context
+	 *            The current context
+	 * @param items
+	 *            Summaries of the appointments
+	 * @param enabled
+	 *            Whether each appointment may be picked, in the same order
+	 */
+	public AppointmentChoiceAdapter(Context context, CharSequence[] items,
+			boolean[] enabled) {
+		super(context, android.R.layout.select_dialog_multichoice,
+				android.R.id.text1, items);
+		this.enabled = enabled;
+	}
+
+	@Override
+	public boolean areAllItemsEnabled() {
+		for (boolean e : this.enabled) {
+			if (!e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isEnabled(int position) {
+		return this.enabled[position];
+	}
+
+	@Override
+	public View getView(int position, View convertView, ViewGroup parent) {
+		View view = super.getView(position, convertView, parent);
+		view.setEnabled(this.enabled[position]);
+		return view;
+	}
+}
@@ -13,33 +13,44 @@
 
 package org.rapla.mobile.android.widget.adapter;
 
-import java.util.Locale;
-
 import org.rapla.entities.Category;
 import org.rapla.mobile.android.R;
 import org.rapla.mobile.android.app.RaplaCategoryChoiceDialog;
+import org.rapla.mobile.android.app.RaplaCategoryChoiceDialog.RaplaCategoryOnClickListener;
 import org.rapla.mobile.android.app.RaplaCategoryChoiceDialog.RaplaCategoryOnClickListenerFactory;
 import org.rapla.mobile.android.utility.CompoundButtonGroup;
+import org.rapla.mobile.android.utility.cache.CategoryIndex;
 
 import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
 import android.widget.CheckBox;
 import android.widget.TextView;
 
 /**
  * The adapter binds a set of rapla categories to a list view. A list item
  * consists of the category name and a checkbox which allows for selecting one
- * category at a time.
+ * category at a time. The categories are a range of a category index, so
+ * that one adapter serves all levels of the tree. Search results are shown
+ * with their path instead of the number of subcategories.
  * 
  * @author Maximilian Lenkeit <dev@lenki.com>
  * 
  */
-public class RaplaCategoryAdapter extends ArrayAdapter<Category> {
+public class RaplaCategoryAdapter extends BaseAdapter {
 
-	private Category selected;
+	private Context context;
+	private int resId;
+	private CategoryIndex index;
+	private int first;
+	private int count;
+	private int selected = -1;
+	private int[] positions;
+	private int root;
+	private String[] sublabels;
+	private String[] paths;
 	private CompoundButtonGroup buttonGroup;
 	private RaplaCategoryOnClickListenerFactory onClickListenerFactory;
 	private RaplaCategoryChoiceDialog dialog;
@@ -49,10 +60,8 @@ public class RaplaCategoryAdapter extends ArrayAdapter<Category> {
 	 *            The current context
 	 * @param resId
 	 *            The resource id of the item layout
-	 * @param objects
-	 *            Array of category objects to be displayed
-	 * @param selected
-	 *            Selected category
+	 * @param index
+	 *            Index of the category tree
 	 * @param buttonGroup
 	 *            Reference to button group
 	 * @param onClickListenerFactory
@@ -60,32 +69,101 @@ public class RaplaCategoryAdapter extends ArrayAdapter<Category> {
 	 * @param dialog
 	 *            Reference to the category choice dialog
 	 */
-	public RaplaCategoryAdapter(Context context, int resId, Category[] objects,
-			Category selected, CompoundButtonGroup buttonGroup,
+	public RaplaCategoryAdapter(Context context, int resId,
+			CategoryIndex index, CompoundButtonGroup buttonGroup,
 			RaplaCategoryOnClickListenerFactory onClickListenerFactory,
 			RaplaCategoryChoiceDialog dialog) {
-		super(context, resId, objects);
-
 		// Set instance variables
-		this.selected = selected;
+		this.context = context;
+		this.resId = resId;
+		this.index = index;
+		this.sublabels = new String[index.size()];
+		this.paths = new String[index.size()];
 		this.buttonGroup = buttonGroup;
 		this.onClickListenerFactory = onClickListenerFactory;
 		this.dialog = dialog;
 	}
 
-	@Override
+	/**
+	 * Display a range of categories
+	 * 
+	 * @param first
+	 *            Index position of the first category
+	 * @param count
+	 *            Number of categories
+	 * @param selected
+	 *            Index position of the selected category, -1 for none
+	 */
+	public void setRange(int first, int count, int selected) {
+		this.positions = null;
+		this.first = first;
+		this.count = count;
+		this.selected = selected;
+		this.notifyDataSetChanged();
+	}
+
+	/**
+	 * Display search results
+	 * 
+	 * @param positions
+	 *            Index positions of the categories found
+	 * @param root
+	 *            Index position of the category the paths start with
+	 * @param selected
+	 *            Index position of the selected category, -1 for none
+	 */
+	public void setResults(int[] positions, int root, int selected) {
+		if (this.root != root) {
+			this.paths = new String[this.index.size()];
+		}
+		this.positions = positions;
+		this.root = root;
+		this.first = 0;
+		this.count = positions.length;
+		this.selected = selected;
+		this.notifyDataSetChanged();
+	}
+
+	/**
+	 * @return True if search results are displayed
+	 */
+	public boolean isShowingResults() {
+		return this.positions != null;
+	}
+
+	/**
+	 * @param position
+	 *            List item position
+	 * @return Index position of the category displayed at the list position
+	 */
+	public int getIndexPosition(int position) {
+		if (this.positions != null) {
+			return this.positions[position];
+		}
+		return this.first + position;
+	}
+
+	public int getCount() {
+		return this.count;
+	}
+
+	public Category getItem(int position) {
+		return this.index.getCategory(this.getIndexPosition(position));
+	}
+
+	public long getItemId(int position) {
+		return this.getIndexPosition(position);
+	}
+
 	public View getView(int position, View convertView, ViewGroup parent) {
 		// Make sure that convertView is not null
 		if (convertView == null) {
-			LayoutInflater vi = (LayoutInflater) getContext().getSystemService(
-					Context.LAYOUT_INFLATER_SERVICE);
-			convertView = vi.inflate(
-					R.layout.rapla_category_drill_down_list_item, null);
+			LayoutInflater vi = (LayoutInflater) this.context
+					.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+			convertView = vi.inflate(this.resId, null);
 		}
 
-		// Get category instance
-		Category item = this.getItem(position);
-		int subCategories = item.getCategories().length;
+		int indexPosition = this.getIndexPosition(position);
 
 		// Get ui widget references
 		CheckBox radio = (CheckBox) convertView.findViewById(R.id.radio);
@@ -95,28 +173,59 @@ public class RaplaCategoryAdapter extends ArrayAdapter<Category> {
 				.findViewById(android.R.id.text2);
 
 		// Set category text to first list item line
-		label.setText(item.getName(Locale.getDefault()));
+		label.setText(this.index.getName(indexPosition));
 
-		// Set either the number of sub categories or 'no categories' to second
-		// list item line
-		if (subCategories == 0) {
-			sublabel.setText(R.string.no_subcategories);
+		// Set either the path of a search result or the number of sub
+		// categories or 'no categories' to second list item line
+		if (this.positions != null) {
+			sublabel.setText(this.getPath(indexPosition));
 		} else {
-			sublabel.setText(String.format(
-					this.getContext().getString(R.string.x_subcategories),
-					subCategories));
+			sublabel.setText(this.getSublabel(indexPosition));
 		}
 
 		// Register decorated compound button at button group and pass the
 		// checked-status
-		boolean value = item.isIdentical(this.selected);
-		this.buttonGroup.addCompoundButton(radio,
-				value, item);
-		
-		// Register listener
-		label.setOnClickListener(this.onClickListenerFactory.create(
-				this.dialog, position));
+		boolean value = indexPosition == this.selected;
+		this.buttonGroup.addCompoundButton(radio, value,
+				this.index.getCategory(indexPosition));
+
+		// Register listener, recycled rows keep theirs
+		RaplaCategoryOnClickListener listener = (RaplaCategoryOnClickListener) label
+				.getTag();
+		if (listener == null) {
+			listener = this.onClickListenerFactory.create(this.dialog,
+					position);
+			label.setTag(listener);
+			label.setOnClickListener(listener);
+		} else {
+			listener.setIndex(position);
+		}
 
 		return convertView;
 	}
+
+	private String getPath(int indexPosition) {
+		String path = this.paths[indexPosition];
+		if (path == null) {
+			path = this.index.getPath(this.root, indexPosition);
+			this.paths[indexPosition] = path;
+		}
+		return path;
+	}
+
+	private String getSublabel(int indexPosition) {
+		String sublabel = this.sublabels[indexPosition];
+		if (sublabel == null) {
+			int subCategories = this.index.getChildCount(indexPosition);
+			if (subCategories == 0) {
+				sublabel = this.context.getString(R.string.no_subcategories);
+			} else {
+				sublabel = String.format(
+						this.context.getString(R.string.x_subcategories),
+						subCategories);
+			}
+			this.sublabels[indexPosition] = sublabel;
+		}
+		return sublabel;
+	}
 }
\ No newline at end of file
@@ -32,5 +32,13 @@ public class RaplaMobileLoginExceptionTest extends AndroidTestCase {
 		RaplaMobileLoginException e = new RaplaMobileLoginException(
 				new Exception());
 		assertNotNull(e);
+		assertFalse(e.isCredentialsRejected());
+	}
+
+	public void testConstructorWithReason() {
+		RaplaMobileLoginException e = new RaplaMobileLoginException(
+				"rejected",
+				RaplaMobileLoginException.REASON_CREDENTIALS_REJECTED);
+		assertTrue(e.isCredentialsRejected());
 	}
 }
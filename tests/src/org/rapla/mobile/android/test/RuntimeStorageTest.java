@@ -61,4 +61,56 @@ public class RuntimeStorageTest extends AndroidTestCase {
 		assertEquals(value, retrievedValue);
 	}
 
+	public void testStoreNullShouldRemoveEntry() {
+		String key = "myKey";
+		storage.store(key, "myValue");
+		storage.store(key, null);
+		assertFalse(storage.has(key));
+	}
+
+	public void testTypedRetrieveShouldIgnoreOtherTypes() {
+		String key = "myKey";
+		storage.store(key, "myValue");
+		assertEquals("myValue", storage.retrieve(key, String.class));
+		assertNull(storage.retrieve(key, Integer.class));
+	}
+
+	public void testTrimShouldDropSoftEntries() {
+		storage.storeSoft("softKey", "softValue");
+		storage.store("myKey", "myValue");
+		assertEquals("softValue", storage.retrieve("softKey"));
+
+		storage.trim(false);
+		assertFalse(storage.has("softKey"));
+		assertTrue(storage.has("myKey"));
+	}
+
+	public void testTrimShouldPassCriticalFlagToTrimmableEntries() {
+		TrimCountingEntry entry = new TrimCountingEntry();
+		storage.store("trimmable", entry);
+		storage.trim(false);
+		storage.trim(true);
+		assertEquals(2, entry.trimmed);
+		assertEquals(1, entry.critical);
+		storage.store("trimmable", null);
+	}
+
+	/**
+	 * Stored entry counting trim calls
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class TrimCountingEntry implements RuntimeStorage.Trimmable {
+
+		public int trimmed = 0;
+		public int critical = 0;
+
+		public void trimMemory(boolean critical) {
+			this.trimmed++;
+			if (critical) {
+				this.critical++;
+			}
+		}
+	}
+
 }
@@ -40,14 +40,14 @@ public class AppointmentDetailsActivityTest extends
 		super.setUp();
 	}
 
-	private void initializeNewAppointment() {
+	private void initializeFirstAppointment() {
 		Intent i = new Intent();
-		i.putExtra(AppointmentDetailsActivity.INTENT_INT_APPOINTMENT_ID, -1);
+		i.putExtra(AppointmentDetailsActivity.INTENT_INT_APPOINTMENT_ID, 0);
 		this.setActivityIntent(i);
 	}
 
 	public void testPreConditions() {
-		this.initializeNewAppointment();
+		this.initializeFirstAppointment();
 		
 		// Check activity class
 		AppointmentDetailsActivity activity = this.getActivity();
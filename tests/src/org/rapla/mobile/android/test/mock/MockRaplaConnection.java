@@ -18,6 +18,7 @@ import org.rapla.mobile.android.PreferencesHandler;
 import org.rapla.mobile.android.RaplaMobileException;
 import org.rapla.mobile.android.RaplaMobileLoginException;
 import org.rapla.mobile.android.utility.RaplaConnection;
+import org.rapla.mobile.android.utility.store.LocalStore;
 
 /**
  * MockRaplaConnection
@@ -56,4 +57,8 @@ public class MockRaplaConnection extends RaplaConnection {
 		return this.loginReturn;
 	}
 
+	public void attachLocalStore(LocalStore store) {
+		// No local store for mocked connections
+	}
+
 }
@@ -38,4 +38,11 @@ public class MockRaplaMobileApplication extends RaplaMobileApplication {
 	public boolean storageHas(String key) {
 		return false;
 	}
+
+	public void saveSnapshot() {
+	}
+
+	public boolean restore() {
+		return false;
+	}
 }
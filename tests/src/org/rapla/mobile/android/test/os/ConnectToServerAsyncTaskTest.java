@@ -14,6 +14,7 @@
 package org.rapla.mobile.android.test.os;
 
 import org.rapla.mobile.android.RaplaMobileApplication;
+import org.rapla.mobile.android.RaplaMobileLoginException;
 import org.rapla.mobile.android.os.ConnectToServerAsyncTask;
 import org.rapla.mobile.android.test.mock.MockExceptionDialogFactory;
 import org.rapla.mobile.android.test.mock.MockLoadDataProgressDialogFactory;
@@ -80,14 +81,14 @@ public class ConnectToServerAsyncTaskTest extends AndroidTestCase {
 		assertEquals(this.conn, conn);
 	}
 
-	public void failingtestGetShouldReturnNullIfLoginFails() throws Exception {
+	public void testGetShouldReturnNullIfLoginFails() throws Exception {
 		this.conn.loginReturn = false;
 		this.task.execute();
 		RaplaConnection conn = this.task.get();
 		assertNull(conn);
 	}
 
-	public void failingtestGetShouldReturnNullIfLoginThrowsException()
+	public void testGetShouldReturnNullIfLoginThrowsException()
 			throws Exception {
 		this.conn.loginThrowsException = true;
 		this.task.execute();
@@ -95,7 +96,7 @@ public class ConnectToServerAsyncTaskTest extends AndroidTestCase {
 		assertNull(conn);
 	}
 
-	public void failingtestExecuteShouldShowExceptionDialogIfLoginFails()
+	public void testExecuteShouldShowExceptionDialogIfLoginFails()
 			throws Exception {
 		this.exceptionDialogFactory.lastInstance = null;
 		this.conn.loginReturn = false;
@@ -103,7 +104,7 @@ public class ConnectToServerAsyncTaskTest extends AndroidTestCase {
 		assertNotNull(this.exceptionDialogFactory.lastInstance);
 	}
 
-	public void failingtestExecuteShouldShowExceptionDialogIfLoginThrowsException()
+	public void testExecuteShouldShowExceptionDialogIfLoginThrowsException()
 			throws Exception {
 		this.exceptionDialogFactory.lastInstance = null;
 		this.conn.loginThrowsException = true;
@@ -111,6 +112,69 @@ public class ConnectToServerAsyncTaskTest extends AndroidTestCase {
 		assertNotNull(this.exceptionDialogFactory.lastInstance);
 	}
 
+	public void testOnConnectListenerShouldReceiveConnectionOnSuccess()
+			throws Exception {
+		RecordingOnConnectListener listener = new RecordingOnConnectListener();
+		this.task.setOnConnectListener(listener);
+		this.task.execute();
+		assertSame(this.conn, listener.connection);
+		assertFalse(listener.failed);
+	}
+
+	public void testOnConnectListenerShouldBeNotifiedIfLoginFails()
+			throws Exception {
+		RecordingOnConnectListener listener = new RecordingOnConnectListener();
+		this.task.setOnConnectListener(listener);
+		this.conn.loginReturn = false;
+		this.task.execute();
+		assertNull(listener.connection);
+		assertTrue(listener.failed);
+	}
+
+	public void testOnConnectListenerShouldReceiveRejectedCredentialsIfLoginReturnsFalse()
+			throws Exception {
+		RecordingOnConnectListener listener = new RecordingOnConnectListener();
+		this.task.setOnConnectListener(listener);
+		this.conn.loginReturn = false;
+		this.task.execute();
+		assertTrue(listener.failure.isCredentialsRejected());
+	}
+
+	public void testOnConnectListenerShouldReceiveUnreachableServerIfLoginThrows()
+			throws Exception {
+		RecordingOnConnectListener listener = new RecordingOnConnectListener();
+		this.task.setOnConnectListener(listener);
+		this.conn.loginThrowsException = true;
+		this.task.execute();
+		assertTrue(listener.failed);
+		assertNotNull(listener.failure);
+		assertFalse(listener.failure.isCredentialsRejected());
+		assertEquals(RaplaMobileLoginException.REASON_SERVER_UNREACHABLE,
+				listener.failure.getReason());
+	}
+
+	/**
+	 * Listener that records the login result
+	 *
+	 * @author Patrick Zorn <dev@patrickzorn.de>
+	 */
+	private static class RecordingOnConnectListener implements
+			ConnectToServerAsyncTask.OnConnectListener {
+
+		public RaplaConnection connection;
+		public boolean failed = false;
+		public RaplaMobileLoginException failure;
+
+		public void onConnectSucceeded(RaplaConnection connection) {
+			this.connection = connection;
+		}
+
+		public void onConnectFailed(RaplaMobileLoginException e) {
+			this.failed = true;
+			this.failure = e;
+		}
+	}
+
 	/**
 	 * As <code>onPostExecute</code> is executed in a different thread, this
 	 * class provides a new <code>execute</code> method for executing the task
@@ -0,0 +1,243 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.os;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.rapla.mobile.android.os.TaskScheduler;
+
+import android.test.AndroidTestCase;
+
+/**
+ * TaskSchedulerTest
+ *
+ * Unit test class for org.rapla.mobile.android.os.TaskScheduler
+ *
+ * @see org.rapla.mobile.android.os.TaskScheduler
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class TaskSchedulerTest extends AndroidTestCase {
+
+	protected TaskScheduler scheduler;
+	protected FinishedListener listener;
+	protected List<String> started;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.scheduler = new TestableTaskScheduler();
+		this.listener = new FinishedListener();
+		this.scheduler.addListener(this.listener);
+		this.started = new ArrayList<String>();
+	}
+
+	public void testTasksShouldStartByPriority() throws Exception {
+		CountDownLatch[] blockers = this.blockWorkers();
+		this.scheduler.execute(new RecordingTask(TaskScheduler.PRIORITY_SYNC,
+				"sync"));
+		this.scheduler.execute(new RecordingTask(
+				TaskScheduler.PRIORITY_PREFETCH, "prefetch"));
+		this.scheduler.execute(new RecordingTask(TaskScheduler.PRIORITY_USER,
+				"user1"));
+		this.scheduler.execute(new RecordingTask(TaskScheduler.PRIORITY_USER,
+				"user2"));
+		assertEquals(4, this.scheduler.getQueueLength());
+
+		// A single free worker takes the queued tasks one after the other
+		this.listener.expect(4);
+		blockers[0].countDown();
+		assertTrue(this.listener.await());
+		this.release(blockers);
+
+		assertEquals(4, this.started.size());
+		assertEquals("user1", this.started.get(0));
+		assertEquals("user2", this.started.get(1));
+		assertEquals("prefetch", this.started.get(2));
+		assertEquals("sync", this.started.get(3));
+	}
+
+	public void testCancelledTaskShouldNotRun() throws Exception {
+		CountDownLatch[] blockers = this.blockWorkers();
+		RecordingTask cancelled = new RecordingTask(
+				TaskScheduler.PRIORITY_USER, "cancelled");
+		this.scheduler.execute(cancelled);
+		this.scheduler.execute(new RecordingTask(TaskScheduler.PRIORITY_SYNC,
+				"sync"));
+		cancelled.cancel();
+
+		this.listener.expect(1);
+		blockers[0].countDown();
+		assertTrue(this.listener.await());
+		this.release(blockers);
+
+		assertTrue(cancelled.isCancelled());
+		assertFalse(cancelled.isStarted());
+		assertEquals(1, this.started.size());
+		assertEquals("sync", this.started.get(0));
+	}
+
+	public void testRunnableShouldBeRun() throws Exception {
+		final CountDownLatch ran = new CountDownLatch(1);
+		TaskScheduler.Task<Void> task = this.scheduler.execute(
+				TaskScheduler.PRIORITY_PREFETCH, "runnable", new Runnable() {
+					public void run() {
+						ran.countDown();
+					}
+				});
+		assertTrue(ran.await(5, TimeUnit.SECONDS));
+		assertEquals(TaskScheduler.PRIORITY_PREFETCH, task.getPriority());
+		assertEquals("runnable", task.getName());
+	}
+
+	public void testFinishedTaskShouldKeepTiming() throws Exception {
+		this.listener.expect(1);
+		RecordingTask task = new RecordingTask(TaskScheduler.PRIORITY_USER,
+				"timed");
+		this.scheduler.execute(task);
+		assertTrue(this.listener.await());
+
+		assertTrue(task.isStarted());
+		assertTrue(task.isFinished());
+		assertTrue(task.getWaitTime() >= 0);
+		long runTime = task.getRunTime();
+		Thread.sleep(10);
+		assertEquals(runTime, task.getRunTime());
+	}
+
+	public void testExclusiveTaskShouldWaitForRunningTasks() throws Exception {
+		CountDownLatch[] blockers = this.blockWorkers();
+		RecordingTask exclusive = new RecordingTask(
+				TaskScheduler.PRIORITY_SYNC, "exclusive") {
+			protected boolean isExclusive() {
+				return true;
+			}
+		};
+		this.scheduler.execute(exclusive);
+
+		// The freed worker starts the exclusive task, which waits for the
+		// other workers to finish
+		this.listener.expect(1);
+		blockers[0].countDown();
+		Thread.sleep(100);
+		assertTrue(exclusive.isStarted());
+		assertFalse(exclusive.isFinished());
+		assertTrue(this.started.isEmpty());
+
+		this.release(blockers);
+		assertTrue(this.listener.await());
+		assertEquals(1, this.started.size());
+		assertEquals("exclusive", this.started.get(0));
+	}
+
+	public void testCompareToShouldOrderByPriority() throws Exception {
+		RecordingTask user = new RecordingTask(TaskScheduler.PRIORITY_USER,
+				"user");
+		RecordingTask sync = new RecordingTask(TaskScheduler.PRIORITY_SYNC,
+				"sync");
+		assertTrue(user.compareTo(sync) < 0);
+		assertTrue(sync.compareTo(user) > 0);
+	}
+
+	/**
+	 * Occupy all worker threads until the returned latches are counted down
+	 */
+	private CountDownLatch[] blockWorkers() throws InterruptedException {
+		final CountDownLatch running = new CountDownLatch(
+				TaskScheduler.THREADS);
+		CountDownLatch[] blockers = new CountDownLatch[TaskScheduler.THREADS];
+		for (int i = 0; i < blockers.length; i++) {
+			final CountDownLatch blocker = new CountDownLatch(1);
+			blockers[i] = blocker;
+			this.scheduler.execute(TaskScheduler.PRIORITY_USER, "blocker",
+					new Runnable() {
+						public void run() {
+							running.countDown();
+							try {
+								blocker.await();
+							} catch (InterruptedException e) {
+								// Released
+							}
+						}
+					});
+		}
+		assertTrue(running.await(5, TimeUnit.SECONDS));
+		return blockers;
+	}
+
+	private void release(CountDownLatch[] blockers) {
+		for (CountDownLatch blocker : blockers) {
+			blocker.countDown();
+		}
+	}
+
+	/**
+	 * Scheduler with its own worker threads
+	 *
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class TestableTaskScheduler extends TaskScheduler {
+	}
+
+	/**
+	 * Task recording its name when started
+	 *
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private class RecordingTask extends TaskScheduler.Task<String> {
+
+		public RecordingTask(int priority, String name) {
+			super(priority, name);
+		}
+
+		protected String doInBackground() {
+			synchronized (started) {
+				started.add(this.getName());
+			}
+			return this.getName();
+		}
+	}
+
+	/**
+	 * Listener counting finished tasks other than the blockers
+	 *
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class FinishedListener implements TaskScheduler.Listener {
+
+		private CountDownLatch finished = new CountDownLatch(0);
+
+		public void expect(int count) {
+			this.finished = new CountDownLatch(count);
+		}
+
+		public boolean await() throws InterruptedException {
+			return this.finished.await(5, TimeUnit.SECONDS);
+		}
+
+		public void onQueued(TaskScheduler.Task<?> task) {
+		}
+
+		public void onStarted(TaskScheduler.Task<?> task) {
+		}
+
+		public void onFinished(TaskScheduler.Task<?> task) {
+			if (!"blocker".equals(task.getName())) {
+				this.finished.countDown();
+			}
+		}
+	}
+}
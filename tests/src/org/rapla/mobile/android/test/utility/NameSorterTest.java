@@ -0,0 +1,53 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility;
+
+import java.util.Locale;
+
+import org.rapla.mobile.android.utility.NameSorter;
+
+import android.test.AndroidTestCase;
+
+/**
+ * NameSorterTest
+ * 
+ * Unit test class for org.rapla.mobile.android.utility.NameSorter
+ * 
+ * @see org.rapla.mobile.android.utility.NameSorter
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class NameSorterTest extends AndroidTestCase {
+
+	public void testSortShouldFollowGermanCollation() {
+		String[] names = new String[] { "Zimmer", "Übungsraum", "Aula",
+				"Ulmenweg", "Ärztezimmer" };
+		Object[] items = names.clone();
+		NameSorter.sort(items, names, Locale.GERMAN);
+
+		assertEquals("Ärztezimmer", names[0]);
+		assertEquals("Aula", names[1]);
+		assertEquals("Übungsraum", names[2]);
+		assertEquals("Ulmenweg", names[3]);
+		assertEquals("Zimmer", names[4]);
+	}
+
+	public void testSortShouldKeepItemsAlignedWithNames() {
+		String[] names = new String[] { "b", "a" };
+		Integer[] items = new Integer[] { 2, 1 };
+		NameSorter.sort(items, names, Locale.GERMAN);
+
+		assertEquals(Integer.valueOf(1), items[0]);
+		assertEquals(Integer.valueOf(2), items[1]);
+	}
+}
@@ -0,0 +1,78 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.rapla.mobile.android.utility.RuntimeSnapshot;
+
+import android.test.AndroidTestCase;
+
+/**
+ * RuntimeSnapshotTest
+ *
+ * Unit test class for org.rapla.mobile.android.utility.RuntimeSnapshot
+ *
+ * @see org.rapla.mobile.android.utility.RuntimeSnapshot
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class RuntimeSnapshotTest extends AndroidTestCase {
+
+	private static final String HOST = "http://my.host.com:8051/rapla";
+	private static final String USERNAME = "admin";
+
+	public void testReadFromShouldRestoreWrittenSnapshot() throws Exception {
+		RuntimeSnapshot snapshot = new RuntimeSnapshot(HOST, USERNAME,
+				"reservation_42");
+		RuntimeSnapshot read = this.writeAndRead(snapshot);
+
+		assertEquals(HOST, read.getHost());
+		assertEquals(USERNAME, read.getUsername());
+		assertEquals("reservation_42", read.getReservationId());
+		assertEquals(snapshot, read);
+	}
+
+	public void testReadFromShouldKeepMissingReservation() throws Exception {
+		RuntimeSnapshot read = this.writeAndRead(new RuntimeSnapshot(HOST,
+				USERNAME, null));
+		assertNull(read.getReservationId());
+	}
+
+	public void testSaveShouldBeLoadable() {
+		RuntimeSnapshot snapshot = new RuntimeSnapshot(HOST, USERNAME, null);
+		snapshot.save(this.getContext());
+		assertEquals(snapshot, RuntimeSnapshot.load(this.getContext()));
+
+		RuntimeSnapshot.clear(this.getContext());
+		assertNull(RuntimeSnapshot.load(this.getContext()));
+	}
+
+	public void testEqualsShouldCompareReservation() {
+		assertFalse(new RuntimeSnapshot(HOST, USERNAME, "a")
+				.equals(new RuntimeSnapshot(HOST, USERNAME, "b")));
+		assertFalse(new RuntimeSnapshot(HOST, USERNAME, null)
+				.equals(new RuntimeSnapshot(HOST, USERNAME, "b")));
+	}
+
+	private RuntimeSnapshot writeAndRead(RuntimeSnapshot snapshot)
+			throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		snapshot.writeTo(new DataOutputStream(bytes));
+		return RuntimeSnapshot.readFrom(new DataInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())));
+	}
+}
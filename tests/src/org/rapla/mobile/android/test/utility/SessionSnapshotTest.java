@@ -0,0 +1,88 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+
+import org.rapla.mobile.android.utility.SessionSnapshot;
+import org.rapla.mobile.android.utility.SessionSnapshotStore;
+
+import android.test.AndroidTestCase;
+
+/**
+ * SessionSnapshotTest
+ *
+ * Unit test class for org.rapla.mobile.android.utility.SessionSnapshot and
+ * org.rapla.mobile.android.utility.SessionSnapshotStore
+ *
+ * @see org.rapla.mobile.android.utility.SessionSnapshot
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class SessionSnapshotTest extends AndroidTestCase {
+
+	private static final String HOST = "http://my.host.com:8051/rapla";
+	private static final String USERNAME = "admin";
+
+	protected SessionSnapshot snapshot;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.snapshot = new SessionSnapshot(HOST, USERNAME, Arrays.asList(
+				"Lectures", "Rooms"));
+	}
+
+	public void testReadFromShouldRestoreWrittenSnapshot() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		this.snapshot.writeTo(new DataOutputStream(bytes));
+
+		SessionSnapshot read = SessionSnapshot.readFrom(new DataInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())));
+
+		assertEquals(HOST, read.getHost());
+		assertEquals(USERNAME, read.getUsername());
+		assertEquals(this.snapshot.getCreatedAt(), read.getCreatedAt());
+		assertEquals(this.snapshot.getCalendarNames(), read.getCalendarNames());
+	}
+
+	public void testReadFromShouldReturnNullForUnknownVersion()
+			throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DataOutputStream(bytes).writeInt(SessionSnapshot.VERSION + 1);
+
+		assertNull(SessionSnapshot.readFrom(new DataInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()))));
+	}
+
+	public void testBelongsToShouldRequireSameHostAndUser() {
+		assertTrue(this.snapshot.belongsTo(HOST, USERNAME));
+		assertFalse(this.snapshot.belongsTo(HOST, "guest"));
+		assertFalse(this.snapshot.belongsTo("http://other.host.com", USERNAME));
+	}
+
+	public void testStoreShouldLoadSavedSnapshotForSameUserOnly() {
+		SessionSnapshotStore store = new SessionSnapshotStore(this.getContext());
+		store.save(this.snapshot);
+
+		assertNotNull(store.load(HOST, USERNAME));
+		assertNull(store.load(HOST, "guest"));
+
+		store.clear();
+		assertNull(store.load(HOST, USERNAME));
+	}
+}
@@ -0,0 +1,133 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility.cache;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.rapla.entities.RaplaObject;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.internal.AllocatableImpl;
+import org.rapla.mobile.android.test.test.FixtureHelper;
+import org.rapla.mobile.android.utility.cache.AllocatableCatalog;
+
+import android.test.AndroidTestCase;
+
+/**
+ * AllocatableCatalogTest
+ *
+ * Unit test class for org.rapla.mobile.android.utility.cache.AllocatableCatalog
+ *
+ * @see org.rapla.mobile.android.utility.cache.AllocatableCatalog
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class AllocatableCatalogTest extends AndroidTestCase {
+
+	private static final List<RaplaObject> NONE = Collections.emptyList();
+
+	protected Allocatable[] allocatables;
+	protected AllocatableCatalog catalog;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.allocatables = new Allocatable[] {
+				FixtureHelper.createAllocatable(),
+				FixtureHelper.createAllocatable() };
+		this.catalog = new AllocatableCatalog(this.allocatables);
+	}
+
+	public void testSizeShouldReturnNumberOfAllocatables() {
+		assertEquals(2, this.catalog.size());
+	}
+
+	public void testGetCountShouldReturnNumberOfAllocatablesPerType() {
+		String key = getTypeKey(this.allocatables[0]);
+		assertEquals(this.catalog.getAllocatables(key).length,
+				this.catalog.getCount(key));
+		assertTrue(this.catalog.getCount(key) > 0);
+	}
+
+	public void testGetCountShouldReturnZeroForUnknownType() {
+		assertEquals(0, this.catalog.getCount("unknown-type"));
+		assertEquals(0, this.catalog.getAllocatables("unknown-type").length);
+	}
+
+	public void testCountByTypeShouldCountEveryAllocatable() {
+		Map<String, Integer> counts = AllocatableCatalog
+				.countByType(this.allocatables);
+		int total = 0;
+		for (Integer count : counts.values()) {
+			total += count;
+		}
+		assertEquals(this.allocatables.length, total);
+	}
+
+	public void testGetSortedAllocatablesShouldReturnAllOfType() {
+		String key = getTypeKey(this.allocatables[0]);
+		AllocatableCatalog.SortedAllocatables sorted = this.catalog
+				.getSortedAllocatables(key, Locale.GERMAN);
+		assertEquals(this.catalog.getCount(key),
+				sorted.getAllocatables().length);
+		assertEquals(this.catalog.getCount(key), sorted.getNames().length);
+		assertSame(sorted, this.catalog.getSortedAllocatables(key,
+				Locale.GERMAN));
+	}
+
+	public void testAddedAllocatableShouldBeFiledUnderItsType() {
+		String key = getTypeKey(this.allocatables[0]);
+		AllocatableCatalog.SortedAllocatables sorted = this.catalog
+				.getSortedAllocatables(key, Locale.GERMAN);
+		int count = this.catalog.getCount(key);
+
+		AllocatableImpl added = FixtureHelper.createAllocatable();
+		this.catalog.apply(Collections.singletonList(added), NONE, NONE);
+		assertEquals(3, this.catalog.size());
+		assertEquals(count + 1, this.catalog.getCount(key));
+		assertNotSame(sorted, this.catalog.getSortedAllocatables(key,
+				Locale.GERMAN));
+
+		// Reporting it again doesn't file it twice
+		this.catalog.apply(Collections.singletonList(added), NONE, NONE);
+		assertEquals(3, this.catalog.size());
+	}
+
+	public void testChangedAllocatableShouldMoveToItsNewType() {
+		AllocatableImpl changed = (AllocatableImpl) this.allocatables[0];
+		String previousKey = getTypeKey(changed);
+		int previousCount = this.catalog.getCount(previousKey);
+		changed.setClassification(FixtureHelper
+				.createDynamicTypeAllocatable().newClassification());
+
+		this.catalog.apply(NONE, Collections.singletonList(changed), NONE);
+		assertEquals(2, this.catalog.size());
+		assertEquals(previousCount - 1, this.catalog.getCount(previousKey));
+		assertEquals(1, this.catalog.getCount(getTypeKey(changed)));
+	}
+
+	public void testRemovedAllocatableShouldBeDropped() {
+		String key = getTypeKey(this.allocatables[0]);
+		int count = this.catalog.getCount(key);
+		this.catalog.apply(NONE, NONE,
+				Collections.singletonList(this.allocatables[0]));
+		assertEquals(1, this.catalog.size());
+		assertEquals(count - 1, this.catalog.getCount(key));
+	}
+
+	private static String getTypeKey(Allocatable allocatable) {
+		return allocatable.getClassification().getType().getElementKey();
+	}
+}
@@ -0,0 +1,88 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility.cache;
+
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.mobile.android.test.test.FixtureHelper;
+import org.rapla.mobile.android.utility.cache.AllocatableSearchIndex;
+
+import android.test.AndroidTestCase;
+
+/**
+ * AllocatableSearchIndexTest
+ * 
+ * Unit test class for
+ * org.rapla.mobile.android.utility.cache.AllocatableSearchIndex
+ * 
+ * @see org.rapla.mobile.android.utility.cache.AllocatableSearchIndex
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class AllocatableSearchIndexTest extends AndroidTestCase {
+
+	protected AllocatableSearchIndex index;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		String[] names = new String[] { "Aula", "Besprechungsraum 1",
+				"Besprechungsraum 2", "\u00dcbungsraum", "Gro\u00dfer Saal" };
+		Allocatable[] allocatables = new Allocatable[names.length];
+		for (int i = 0; i < names.length; i++) {
+			allocatables[i] = FixtureHelper.createAllocatable();
+		}
+		this.index = new AllocatableSearchIndex(allocatables, names);
+	}
+
+	public void testEmptyQueryShouldFindAll() {
+		assertEquals(5, this.index.search("").length);
+		assertEquals(5, this.index.search("  ").length);
+	}
+
+	public void testSearchShouldFindSubstrings() {
+		int[] result = this.index.search("raum");
+		assertEquals(3, result.length);
+		assertEquals(1, result[0]);
+		assertEquals(2, result[1]);
+		assertEquals(3, result[2]);
+	}
+
+	public void testSearchShouldFindShortQueries() {
+		int[] result = this.index.search("au");
+		assertEquals(1, result.length);
+		assertEquals(0, result[0]);
+	}
+
+	public void testSearchShouldIgnoreCaseAndUmlauts() {
+		int[] result = this.index.search("UBUNG");
+		assertEquals(1, result.length);
+		assertEquals(3, result[0]);
+
+		result = this.index.search("grosser");
+		assertEquals(1, result.length);
+		assertEquals(4, result[0]);
+	}
+
+	public void testSearchShouldRefinePreviousQuery() {
+		assertEquals(2, this.index.search("besp").length);
+		int[] result = this.index.search("besprechungsraum 2");
+		assertEquals(1, result.length);
+		assertEquals(2, result[0]);
+	}
+
+	public void testSearchShouldFindNothingAfterBroadening() {
+		assertEquals(0, this.index.search("xyz").length);
+		assertEquals(5, this.index.search("").length);
+		assertEquals(1, this.index.search("aula").length);
+	}
+}
@@ -0,0 +1,84 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility.cache;
+
+import java.util.Date;
+
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.internal.AllocatableImpl;
+import org.rapla.entities.domain.internal.AppointmentImpl;
+import org.rapla.entities.domain.internal.ReservationImpl;
+import org.rapla.mobile.android.test.test.FixtureHelper;
+import org.rapla.mobile.android.utility.cache.AssignmentIndex;
+
+import android.test.AndroidTestCase;
+
+/**
+ * AssignmentIndexTest
+ * 
+ * Unit test class for org.rapla.mobile.android.utility.cache.AssignmentIndex
+ * 
+ * @see org.rapla.mobile.android.utility.cache.AssignmentIndex
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class AssignmentIndexTest extends AndroidTestCase {
+
+	protected ReservationImpl reservation;
+	protected AllocatableImpl room;
+	protected AppointmentImpl first;
+	protected AppointmentImpl second;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.reservation = FixtureHelper.createReservation();
+		this.first = new AppointmentImpl(new Date(0), new Date(1000));
+		this.second = new AppointmentImpl(new Date(2000), new Date(3000));
+		this.reservation.addAppointment(this.first);
+		this.reservation.addAppointment(this.second);
+		this.room = FixtureHelper.createAllocatable();
+	}
+
+	public void testIndexShouldCountAssignedAppointments() {
+		this.reservation.addAllocatable(this.room);
+		AssignmentIndex index = new AssignmentIndex(this.reservation);
+
+		assertEquals(2, index.getAppointmentCount());
+		assertTrue(index.isAllocated(this.room));
+		assertEquals(2, index.getAssignedCount(this.room));
+	}
+
+	public void testIndexShouldNotContainUnallocatedAllocatables() {
+		AssignmentIndex index = new AssignmentIndex(this.reservation);
+		assertFalse(index.isAllocated(this.room));
+		assertEquals(0, index.getAssignedCount(this.room));
+	}
+
+	public void testUpdateShouldReflectBookingAndRestriction() {
+		AssignmentIndex index = new AssignmentIndex(this.reservation);
+
+		this.reservation.addAllocatable(this.room);
+		index.update(this.room);
+		assertEquals(2, index.getAssignedCount(this.room));
+
+		this.reservation.setRestriction(this.room,
+				new Appointment[] { this.first });
+		index.update(this.room);
+		assertEquals(1, index.getAssignedCount(this.room));
+
+		this.reservation.removeAllocatable(this.room);
+		index.update(this.room);
+		assertFalse(index.isAllocated(this.room));
+	}
+}
@@ -0,0 +1,129 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility.cache;
+
+import java.util.Locale;
+
+import org.rapla.entities.Category;
+import org.rapla.entities.internal.CategoryImpl;
+import org.rapla.mobile.android.test.test.FixtureHelper;
+import org.rapla.mobile.android.utility.cache.CategoryIndex;
+
+import android.test.AndroidTestCase;
+
+/**
+ * CategoryIndexTest
+ * 
+ * Unit test class for org.rapla.mobile.android.utility.cache.CategoryIndex
+ * 
+ * @see org.rapla.mobile.android.utility.cache.CategoryIndex
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class CategoryIndexTest extends AndroidTestCase {
+
+	protected Category root;
+	protected CategoryIndex index;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.root = FixtureHelper.createCategoryTreeWithThreeLevel();
+		this.index = new CategoryIndex(this.root, Locale.ENGLISH);
+	}
+
+	public void testIndexShouldContainWholeTree() {
+		assertEquals(7, this.index.size());
+		assertEquals(0, this.index.indexOf(this.root));
+		assertEquals(-1, this.index.indexOf(null));
+	}
+
+	public void testChildrenShouldBeContiguous() {
+		Category levelOneB = this.root.getCategories()[1];
+		int position = this.index.indexOf(levelOneB);
+		int first = this.index.getFirstChild(position);
+		assertEquals(2, this.index.getChildCount(position));
+		for (int i = 0; i < 2; i++) {
+			assertSame(levelOneB.getCategories()[i],
+					this.index.getCategory(first + i));
+			assertEquals(position, this.index.getParent(first + i));
+			assertEquals(2, this.index.getDepth(first + i));
+		}
+	}
+
+	public void testTopCategoryShouldHaveNoParent() {
+		assertEquals(-1, this.index.getParent(0));
+		assertEquals(0, this.index.getDepth(0));
+	}
+
+	public void testIndexShouldBeBuiltFromTopCategory() {
+		Category levelTwo = this.root.getCategories()[0].getCategories()[0];
+		CategoryIndex index = new CategoryIndex(levelTwo, Locale.ENGLISH);
+		assertEquals(7, index.size());
+		assertSame(this.root, index.getCategory(0));
+	}
+
+	public void testIsAncestorOrSelf() {
+		Category levelOneA = this.root.getCategories()[0];
+		Category levelOneB = this.root.getCategories()[1];
+		int a = this.index.indexOf(levelOneA);
+		int b = this.index.indexOf(levelOneB);
+		int leafOfA = this.index.indexOf(levelOneA.getCategories()[1]);
+		assertTrue(this.index.isAncestorOrSelf(0, leafOfA));
+		assertTrue(this.index.isAncestorOrSelf(a, leafOfA));
+		assertTrue(this.index.isAncestorOrSelf(a, a));
+		assertFalse(this.index.isAncestorOrSelf(b, leafOfA));
+		assertFalse(this.index.isAncestorOrSelf(leafOfA, a));
+	}
+
+	public void testGetInstanceShouldKeepIndexOfSameTree() {
+		CategoryIndex index = CategoryIndex.getInstance(this.root);
+		assertSame(index,
+				CategoryIndex.getInstance(this.root.getCategories()[0]));
+		assertNotSame(index, CategoryIndex.getInstance(FixtureHelper
+				.createCategoryTreeWithThreeLevel()));
+	}
+
+	public void testSearchShouldOnlyFindCategoriesBelowRoot() {
+		CategoryImpl levelOneA = (CategoryImpl) this.root.getCategories()[0];
+		CategoryImpl levelOneB = (CategoryImpl) this.root.getCategories()[1];
+		setName(levelOneA, "Physics");
+		setName(levelOneB, "Chemistry");
+		setName(levelOneA.getCategories()[0], "Physics Lab");
+		setName(levelOneB.getCategories()[0], "Physical Chemistry");
+		CategoryIndex index = new CategoryIndex(this.root, Locale.ENGLISH);
+
+		assertEquals(3, index.search(0, "PHYS").length);
+		int[] result = index.search(index.indexOf(levelOneA), "phys");
+		assertEquals(2, result.length);
+		assertSame(levelOneA, index.getCategory(result[0]));
+		assertSame(levelOneA.getCategories()[0], index.getCategory(result[1]));
+	}
+
+	public void testPathShouldStartAtRoot() {
+		Category levelOneA = this.root.getCategories()[0];
+		setName(this.root, "Departments");
+		setName(levelOneA, "Physics");
+		CategoryIndex index = new CategoryIndex(this.root, Locale.ENGLISH);
+		int leaf = index.indexOf(levelOneA.getCategories()[0]);
+
+		assertEquals("Departments > Physics", index.getPath(0, leaf));
+		assertEquals("Physics", index.getPath(index.indexOf(levelOneA), leaf));
+		assertEquals("", index.getPath(0, 0));
+	}
+
+	private static void setName(Category category, String name) {
+		((CategoryImpl) category).getName().setName(
+				Locale.ENGLISH.getLanguage(), name);
+	}
+}
@@ -0,0 +1,97 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility.cache;
+
+import org.rapla.mobile.android.utility.cache.PageWindow;
+
+import android.test.AndroidTestCase;
+
+/**
+ * PageWindowTest
+ * 
+ * Unit test class for org.rapla.mobile.android.utility.cache.PageWindow
+ * 
+ * @see org.rapla.mobile.android.utility.cache.PageWindow
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class PageWindowTest extends AndroidTestCase {
+
+	protected CountingLoader loader;
+	protected PageWindow<String> window;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.loader = new CountingLoader();
+		this.window = new PageWindow<String>(25, 10, 2, this.loader);
+	}
+
+	public void testGetShouldLoadWholePage() {
+		assertEquals("3", this.window.get(3));
+		assertEquals(10, this.loader.loaded);
+		assertTrue(this.window.isLoaded(9));
+		assertFalse(this.window.isLoaded(10));
+	}
+
+	public void testGetShouldKeepLoadedPage() {
+		this.window.get(3);
+		this.window.get(4);
+		assertEquals(10, this.loader.loaded);
+	}
+
+	public void testLastPageShouldOnlyLoadExistingValues() {
+		assertEquals("24", this.window.get(24));
+		assertEquals(5, this.loader.loaded);
+	}
+
+	public void testWindowShouldDropLeastRecentlyUsedPage() {
+		this.window.get(0);
+		this.window.get(10);
+		this.window.get(0);
+		this.window.get(20);
+		assertEquals(2, this.window.getLoadedPages());
+		assertTrue(this.window.isLoaded(0));
+		assertFalse(this.window.isLoaded(10));
+		assertTrue(this.window.isLoaded(20));
+	}
+
+	public void testPrefetchShouldIgnorePositionsOutOfRange() {
+		this.window.prefetch(-1);
+		this.window.prefetch(25);
+		assertEquals(0, this.window.getLoadedPages());
+	}
+
+	public void testClearShouldDropAllPages() {
+		this.window.get(0);
+		this.window.clear();
+		assertEquals(0, this.window.getLoadedPages());
+		this.window.get(0);
+		assertEquals(20, this.loader.loaded);
+	}
+
+	/**
+	 * Loader counting the computed values
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class CountingLoader implements PageWindow.Loader<String> {
+
+		public int loaded = 0;
+
+		public String load(int index) {
+			this.loaded++;
+			return String.valueOf(index);
+		}
+	}
+}
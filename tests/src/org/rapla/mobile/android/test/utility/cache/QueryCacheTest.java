@@ -0,0 +1,199 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility.cache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.rapla.facade.ClientFacade;
+import org.rapla.framework.RaplaException;
+import org.rapla.mobile.android.test.mock.MockClientFacade;
+import org.rapla.mobile.android.utility.cache.Query;
+import org.rapla.mobile.android.utility.cache.QueryCache;
+
+import android.test.AndroidTestCase;
+
+/**
+ * QueryCacheTest
+ *
+ * Unit test class for org.rapla.mobile.android.utility.cache.QueryCache
+ *
+ * @see org.rapla.mobile.android.utility.cache.QueryCache
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class QueryCacheTest extends AndroidTestCase {
+
+	protected QueryCache cache;
+	protected CountingQuery query;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.cache = new TestableQueryCache();
+		this.query = new CountingQuery("counting");
+	}
+
+	public void testGetShouldExecuteQueryOnlyOnce() throws Exception {
+		assertEquals("result", this.cache.get(this.query));
+		assertEquals("result", this.cache.get(this.query));
+		assertEquals(1, this.query.executed);
+	}
+
+	public void testGetShouldReturnPrefetchedResult() throws Exception {
+		this.cache.prefetch(this.query);
+		assertEquals("result", this.cache.get(this.query));
+		assertEquals(1, this.query.executed);
+	}
+
+	public void testInvalidateShouldExecuteQueryAgain() throws Exception {
+		this.cache.get(this.query);
+		this.cache.invalidate(this.query);
+		this.cache.get(this.query);
+		assertEquals(2, this.query.executed);
+	}
+
+	public void testInvalidateKindShouldExecuteQueryAgain() throws Exception {
+		this.cache.get(this.query);
+		this.cache.invalidate(Query.Kind.DYNAMIC_TYPES);
+		this.cache.get(this.query);
+		this.cache.invalidate(Query.Kind.PREFERENCES);
+		this.cache.get(this.query);
+		assertEquals(2, this.query.executed);
+	}
+
+	public void testGetShouldExecuteQueryAgainAfterTimeToLive()
+			throws Exception {
+		TestableQueryCache cache = (TestableQueryCache) this.cache;
+		cache.setTimeToLive(Query.Kind.PREFERENCES, 1000);
+		this.cache.get(this.query);
+		cache.time += 1000;
+		this.cache.get(this.query);
+		assertEquals(1, this.query.executed);
+		cache.time += 1;
+		this.cache.get(this.query);
+		assertEquals(2, this.query.executed);
+	}
+
+	public void testGetShouldCountHitsAndMisses() throws Exception {
+		this.cache.get(this.query);
+		this.cache.get(this.query);
+		this.cache.get(this.query);
+		assertEquals(1, this.cache.getMissCount());
+		assertEquals(2, this.cache.getHitCount());
+
+		this.cache.resetStats();
+		assertEquals(0, this.cache.getMissCount());
+		assertEquals(0, this.cache.getHitCount());
+	}
+
+	public void testConcurrentGetShouldShareOnePendingResult()
+			throws Exception {
+		this.query.release = new CountDownLatch(1);
+		this.cache.prefetch(this.query);
+		assertTrue(this.query.started.await(5, TimeUnit.SECONDS));
+
+		final String[] result = new String[1];
+		Thread waiting = new Thread(new Runnable() {
+			public void run() {
+				try {
+					result[0] = (String) cache.get(query);
+				} catch (RaplaException e) {
+					// Result stays null
+				}
+			}
+		});
+		waiting.start();
+		for (int i = 0; i < 50 && this.cache.getCoalescedCount() == 0; i++) {
+			Thread.sleep(100);
+		}
+		this.cache.prefetch(this.query);
+
+		this.query.release.countDown();
+		waiting.join(5000);
+		assertEquals("result", result[0]);
+		assertEquals(1, this.query.executed);
+		assertEquals(2, this.cache.getCoalescedCount());
+
+		// Finished results are hits, not coalesced
+		this.cache.get(this.query);
+		assertEquals(2, this.cache.getCoalescedCount());
+		this.cache.resetStats();
+		assertEquals(0, this.cache.getCoalescedCount());
+	}
+
+	public void testGetShouldNotCacheFailures() throws Exception {
+		this.query.fail = true;
+		try {
+			this.cache.get(this.query);
+			fail("RaplaException expected");
+		} catch (RaplaException e) {
+			// Expected
+		}
+
+		this.query.fail = false;
+		assertEquals("result", this.cache.get(this.query));
+		assertEquals(2, this.query.executed);
+	}
+
+	/**
+	 * Query cache with a clock that is controlled by the test
+	 *
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class TestableQueryCache extends QueryCache {
+
+		public long time = 0;
+
+		public TestableQueryCache() {
+			super(new MockClientFacade());
+		}
+
+		protected long now() {
+			return this.time;
+		}
+	}
+
+	/**
+	 * Query counting its executions
+	 *
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class CountingQuery extends Query<String> {
+
+		public volatile int executed = 0;
+		public volatile boolean fail = false;
+		public volatile CountDownLatch release;
+		public CountDownLatch started = new CountDownLatch(1);
+
+		public CountingQuery(String key) {
+			super(Query.Kind.PREFERENCES, key);
+		}
+
+		public String execute(ClientFacade facade) throws RaplaException {
+			this.executed++;
+			this.started.countDown();
+			if (this.release != null) {
+				try {
+					this.release.await();
+				} catch (InterruptedException e) {
+					throw new RaplaException("Query interrupted", e);
+				}
+			}
+			if (this.fail) {
+				throw new RaplaException("Query failed");
+			}
+			return "result";
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility.conflict;
+
+import java.util.Date;
+
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.domain.internal.AllocatableImpl;
+import org.rapla.entities.domain.internal.AppointmentImpl;
+import org.rapla.entities.domain.internal.ReservationImpl;
+import org.rapla.mobile.android.test.test.FixtureHelper;
+import org.rapla.mobile.android.utility.conflict.Availability;
+import org.rapla.mobile.android.utility.conflict.ConflictDetector;
+
+import android.test.AndroidTestCase;
+
+/**
+ * AvailabilityTest
+ * 
+ * Unit test class for org.rapla.mobile.android.utility.conflict.Availability
+ * 
+ * @see org.rapla.mobile.android.utility.conflict.Availability
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class AvailabilityTest extends AndroidTestCase {
+
+	private static final long HOUR = 60 * 60 * 1000;
+
+	protected AllocatableImpl room;
+	protected ReservationImpl booked;
+	protected ConflictDetector detector;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		// Room is booked from 10 to 12 and from 12 to 13
+		this.room = FixtureHelper.createAllocatable();
+		this.booked = FixtureHelper.createReservation();
+		this.booked.addAppointment(new AppointmentImpl(new Date(10 * HOUR),
+				new Date(12 * HOUR)));
+		this.booked.addAppointment(new AppointmentImpl(new Date(12 * HOUR),
+				new Date(13 * HOUR)));
+		this.booked.addAllocatable(this.room);
+
+		this.detector = new ConflictDetector(
+				new Reservation[] { this.booked });
+	}
+
+	public void testStatusShouldBeFreeWithoutOverlap() {
+		Availability availability = this.getAvailability(8, 10, 13, 14);
+		assertEquals(Availability.FREE, availability.getStatus(this.room));
+	}
+
+	public void testStatusShouldBePartlyFreeIfSomeOverlap() {
+		Availability availability = this.getAvailability(8, 9, 11, 12);
+		assertEquals(Availability.PARTLY_FREE,
+				availability.getStatus(this.room));
+	}
+
+	public void testStatusShouldBeBusyIfAllOverlap() {
+		Availability availability = this.getAvailability(9, 11, 12, 14);
+		assertEquals(Availability.BUSY, availability.getStatus(this.room));
+	}
+
+	public void testBusyShouldMergeAdjacentBookings() {
+		Availability availability = this.getAvailability(8, 9, 14, 15);
+		long[] busy = availability.getBusy(this.room);
+		assertEquals(2, busy.length);
+		assertEquals(10 * HOUR, busy[0]);
+		assertEquals(13 * HOUR, busy[1]);
+	}
+
+	public void testFreeShouldBeComplementOfBusy() {
+		Availability availability = this.getAvailability(8, 9, 14, 15);
+		long[] free = availability.getFree(this.room);
+		assertEquals(4, free.length);
+		assertEquals(8 * HOUR, free[0]);
+		assertEquals(10 * HOUR, free[1]);
+		assertEquals(13 * HOUR, free[2]);
+		assertEquals(15 * HOUR, free[3]);
+	}
+
+	public void testOtherAllocatableShouldBeFree() {
+		Availability availability = this.getAvailability(9, 11, 12, 14);
+		assertEquals(Availability.FREE,
+				availability.getStatus(FixtureHelper.createAllocatable()));
+	}
+
+	public void testReservationBeingEditedShouldBeIgnored() {
+		Availability availability = this.detector.getAvailability(
+				this.booked.getAppointments(), this.booked);
+		assertEquals(Availability.FREE, availability.getStatus(this.room));
+	}
+
+	/**
+	 * Availability for two appointments given by their start and end hours
+	 */
+	private Availability getAvailability(int start1, int end1, int start2,
+			int end2) {
+		Appointment[] appointments = new Appointment[] {
+				new AppointmentImpl(new Date(start1 * HOUR), new Date(end1
+						* HOUR)),
+				new AppointmentImpl(new Date(start2 * HOUR), new Date(end2
+						* HOUR)) };
+		return this.detector.getAvailability(appointments, null);
+	}
+}
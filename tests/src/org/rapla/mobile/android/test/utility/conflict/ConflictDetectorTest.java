@@ -0,0 +1,147 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility.conflict;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.RepeatingType;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.domain.internal.AllocatableImpl;
+import org.rapla.entities.domain.internal.AppointmentImpl;
+import org.rapla.entities.domain.internal.ReservationImpl;
+import org.rapla.mobile.android.test.test.FixtureHelper;
+import org.rapla.mobile.android.utility.conflict.ConflictDetector;
+
+import android.test.AndroidTestCase;
+
+/**
+ * ConflictDetectorTest
+ * 
+ * Unit test class for
+ * org.rapla.mobile.android.utility.conflict.ConflictDetector
+ * 
+ * @see org.rapla.mobile.android.utility.conflict.ConflictDetector
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class ConflictDetectorTest extends AndroidTestCase {
+
+	private static final long HOUR = 60 * 60 * 1000;
+
+	protected AllocatableImpl room;
+	protected ReservationImpl booked;
+	protected ConflictDetector detector;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		// Room is booked from 10 to 12
+		this.room = FixtureHelper.createAllocatable();
+		this.booked = FixtureHelper.createReservation();
+		this.booked.addAppointment(new AppointmentImpl(new Date(10 * HOUR),
+				new Date(12 * HOUR)));
+		this.booked.addAllocatable(this.room);
+
+		this.detector = new ConflictDetector(
+				new Reservation[] { this.booked });
+	}
+
+	public void testOverlappingAppointmentShouldConflict() {
+		Appointment[] appointments = new Appointment[] {
+				new AppointmentImpl(new Date(11 * HOUR), new Date(13 * HOUR)),
+				new AppointmentImpl(new Date(12 * HOUR), new Date(14 * HOUR)) };
+		assertEquals(1,
+				this.detector.getConflicts(this.room, appointments, null)
+						.size());
+		assertFalse(this.detector.isFree(this.room, appointments, null));
+	}
+
+	public void testAdjacentAppointmentShouldNotConflict() {
+		Appointment[] appointments = new Appointment[] { new AppointmentImpl(
+				new Date(12 * HOUR), new Date(14 * HOUR)) };
+		assertTrue(this.detector.isFree(this.room, appointments, null));
+	}
+
+	public void testOtherAllocatableShouldBeFree() {
+		Appointment[] appointments = new Appointment[] { new AppointmentImpl(
+				new Date(11 * HOUR), new Date(13 * HOUR)) };
+		assertTrue(this.detector.isFree(FixtureHelper.createAllocatable(),
+				appointments, null));
+	}
+
+	public void testReservationBeingEditedShouldBeIgnored() {
+		Appointment[] appointments = new Appointment[] { new AppointmentImpl(
+				new Date(11 * HOUR), new Date(13 * HOUR)) };
+		assertTrue(this.detector.isFree(this.room, appointments, this.booked));
+	}
+
+	public void testMonthlySeriesShouldNotConflictInSkippedMonth() {
+		// Room is booked on the fifth Tuesday of each month from January
+		// 2013, February has none
+		Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+		cal.clear();
+		cal.set(2013, Calendar.JANUARY, 29, 10, 0);
+		AppointmentImpl monthly = new AppointmentImpl(cal.getTime(), new Date(
+				cal.getTimeInMillis() + HOUR));
+		monthly.setRepeatingEnabled(true);
+		monthly.getRepeating().setType(RepeatingType.MONTHLY);
+		monthly.getRepeating().setInterval(1);
+		ReservationImpl series = FixtureHelper.createReservation();
+		series.addAppointment(monthly);
+		series.addAllocatable(this.room);
+		ConflictDetector detector = new ConflictDetector(
+				new Reservation[] { series });
+
+		// Last Tuesday of February
+		cal.set(2013, Calendar.FEBRUARY, 26, 10, 0);
+		assertTrue(detector.isFree(this.room,
+				new Appointment[] { new AppointmentImpl(cal.getTime(),
+						new Date(cal.getTimeInMillis() + HOUR)) }, null));
+
+		// Fifth Tuesday of April
+		cal.set(2013, Calendar.APRIL, 30, 10, 0);
+		assertFalse(detector.isFree(this.room,
+				new Appointment[] { new AppointmentImpl(cal.getTime(),
+						new Date(cal.getTimeInMillis() + HOUR)) }, null));
+	}
+
+	public void testDetectorShouldBeRebuiltFromItsBookings() {
+		ConflictDetector rebuilt = new ConflictDetector(
+				this.detector.getBookings());
+		Appointment[] appointments = new Appointment[] {
+				new AppointmentImpl(new Date(11 * HOUR), new Date(13 * HOUR)),
+				new AppointmentImpl(new Date(12 * HOUR), new Date(14 * HOUR)) };
+		assertEquals(1, rebuilt.getConflicts(this.room, appointments, null)
+				.size());
+		assertTrue(rebuilt.isFree(this.room, appointments, this.booked));
+	}
+
+	public void testGetSpanShouldCoverAllAppointments() {
+		Appointment[] appointments = new Appointment[] {
+				new AppointmentImpl(new Date(14 * HOUR), new Date(15 * HOUR)),
+				new AppointmentImpl(new Date(11 * HOUR), new Date(12 * HOUR)) };
+		long[] span = ConflictDetector.getSpan(appointments);
+		assertEquals(11 * HOUR, span[0]);
+		assertEquals(15 * HOUR, span[1]);
+	}
+
+	public void testIsBuiltFromShouldCompareSourceArray() {
+		Reservation[] reservations = new Reservation[0];
+		ConflictDetector empty = new ConflictDetector(reservations);
+		assertTrue(empty.isBuiltFrom(reservations));
+		assertFalse(empty.isBuiltFrom(new Reservation[0]));
+	}
+}
@@ -0,0 +1,102 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility.conflict;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.rapla.mobile.android.utility.conflict.IntervalTree;
+
+import android.test.AndroidTestCase;
+
+/**
+ * IntervalTreeTest
+ * 
+ * Unit test class for org.rapla.mobile.android.utility.conflict.IntervalTree
+ * 
+ * @see org.rapla.mobile.android.utility.conflict.IntervalTree
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class IntervalTreeTest extends AndroidTestCase {
+
+	protected IntervalTree<String> tree;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.tree = new IntervalTree<String>();
+		this.tree.add(30, 40, "c");
+		this.tree.add(0, 100, "long");
+		this.tree.add(10, 20, "a");
+		this.tree.add(20, 30, "b");
+	}
+
+	public void testCollectShouldReturnAllOverlappingIntervals() {
+		List<String> result = new ArrayList<String>();
+		this.tree.collect(15, 35, result);
+		assertEquals(4, result.size());
+		assertTrue(result.contains("a"));
+		assertTrue(result.contains("b"));
+		assertTrue(result.contains("c"));
+		assertTrue(result.contains("long"));
+	}
+
+	public void testCollectShouldTreatIntervalsAsHalfOpen() {
+		List<String> result = new ArrayList<String>();
+		this.tree.collect(20, 30, result);
+		assertEquals(2, result.size());
+		assertTrue(result.contains("b"));
+		assertTrue(result.contains("long"));
+	}
+
+	public void testOverlapsShouldBeFalseOutsideAllIntervals() {
+		assertTrue(this.tree.overlaps(99, 200));
+		assertFalse(this.tree.overlaps(100, 200));
+		assertFalse(this.tree.overlaps(-10, 0));
+	}
+
+	public void testAddAfterQueryShouldRebuildTree() {
+		assertFalse(this.tree.overlaps(200, 300));
+		this.tree.add(250, 260, "late");
+		assertTrue(this.tree.overlaps(200, 300));
+		assertEquals(5, this.tree.size());
+	}
+
+	public void testCollectShouldMatchLinearScan() {
+		IntervalTree<Integer> random = new IntervalTree<Integer>();
+		long[][] intervals = new long[500][];
+		Random generator = new Random(42);
+		for (int i = 0; i < intervals.length; i++) {
+			long start = generator.nextInt(10000);
+			long end = start + 1 + generator.nextInt(200);
+			intervals[i] = new long[] { start, end };
+			random.add(start, end, i);
+		}
+
+		for (int q = 0; q < 100; q++) {
+			long start = generator.nextInt(10000);
+			long end = start + 1 + generator.nextInt(500);
+			int expected = 0;
+			for (long[] interval : intervals) {
+				if (interval[0] < end && interval[1] > start) {
+					expected++;
+				}
+			}
+			List<Integer> result = new ArrayList<Integer>();
+			random.collect(start, end, result);
+			assertEquals(expected, result.size());
+		}
+	}
+}
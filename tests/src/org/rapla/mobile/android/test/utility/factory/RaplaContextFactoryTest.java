@@ -13,6 +13,9 @@
 
 package org.rapla.mobile.android.test.utility.factory;
 
+import org.rapla.framework.RaplaContext;
+import org.rapla.mobile.android.RaplaMobileException;
+import org.rapla.mobile.android.test.mock.MockRaplaContext;
 import org.rapla.mobile.android.utility.factory.RaplaContextFactory;
 
 import android.test.AndroidTestCase;
@@ -32,4 +35,51 @@ public class RaplaContextFactoryTest extends AndroidTestCase {
 		RaplaContextFactory second = RaplaContextFactory.getInstance();
 		assertEquals(first, second);
 	}
+
+	public void testGetContextShouldCreateContextOncePerHost()
+			throws Exception {
+		CountingRaplaContextFactory factory = new CountingRaplaContextFactory();
+		RaplaContext first = factory.getContext("http://first.host");
+		RaplaContext second = factory.getContext("http://first.host");
+		factory.getContext("http://second.host");
+
+		assertSame(first, second);
+		assertEquals(2, factory.created);
+	}
+
+	public void testGetContextShouldNotCacheFailures() throws Exception {
+		CountingRaplaContextFactory factory = new CountingRaplaContextFactory();
+		factory.fail = true;
+		try {
+			factory.getContext("http://first.host");
+			fail("RaplaMobileException expected");
+		} catch (RaplaMobileException e) {
+			// Expected
+		}
+
+		factory.fail = false;
+		assertNotNull(factory.getContext("http://first.host"));
+		assertEquals(2, factory.created);
+	}
+
+	/**
+	 * Factory creating mocked contexts and counting how many have been created
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class CountingRaplaContextFactory extends
+			RaplaContextFactory {
+
+		public int created = 0;
+		public boolean fail = false;
+
+		public RaplaContext createInstance(String host)
+				throws RaplaMobileException {
+			this.created++;
+			if (this.fail) {
+				throw new RaplaMobileException("Initializing context failed");
+			}
+			return new MockRaplaContext();
+		}
+	}
 }
@@ -0,0 +1,125 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility.occurrence;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.domain.RepeatingType;
+import org.rapla.entities.domain.internal.AppointmentImpl;
+import org.rapla.mobile.android.utility.occurrence.OccurrenceEngine;
+import org.rapla.mobile.android.utility.occurrence.OccurrenceIterator;
+import org.rapla.mobile.android.utility.occurrence.Occurrences;
+
+import android.test.AndroidTestCase;
+
+/**
+ * OccurrencesTest
+ * 
+ * Unit test class for
+ * org.rapla.mobile.android.utility.occurrence.Occurrences
+ * 
+ * @see org.rapla.mobile.android.utility.occurrence.Occurrences
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class OccurrencesTest extends AndroidTestCase {
+
+	private static final long DAY = DateTools.MILLISECONDS_PER_DAY;
+	private static final long HOUR = DateTools.MILLISECONDS_PER_HOUR;
+
+	protected AppointmentImpl weekly;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		// Every week from day 0 for 30 weeks, 10 to 12 o'clock
+		this.weekly = new AppointmentImpl(new Date(10 * HOUR), new Date(
+				12 * HOUR));
+		this.weekly.setRepeatingEnabled(true);
+		this.weekly.getRepeating().setType(RepeatingType.WEEKLY);
+		this.weekly.getRepeating().setInterval(1);
+		this.weekly.getRepeating().setEnd(new Date(30 * 7 * DAY));
+	}
+
+	public void testNotRepeatingShouldHaveSingleOccurrence() {
+		AppointmentImpl single = new AppointmentImpl(new Date(10 * HOUR),
+				new Date(12 * HOUR));
+		Occurrences occurrences = new Occurrences(single);
+		assertEquals(1, occurrences.count());
+		assertTrue(occurrences.overlaps(11 * HOUR, 13 * HOUR));
+		assertFalse(occurrences.overlaps(12 * HOUR, 13 * HOUR));
+	}
+
+	public void testWeeklyShouldCountOccurrencesUntilEnd() {
+		assertEquals(30, new Occurrences(this.weekly).count());
+	}
+
+	public void testIteratorShouldOnlyReturnOccurrencesInRange() {
+		OccurrenceIterator iterator = new Occurrences(this.weekly).iterator(
+				7 * DAY, 21 * DAY);
+		assertTrue(iterator.next());
+		assertEquals(7 * DAY + 10 * HOUR, iterator.getStart());
+		assertEquals(7 * DAY + 12 * HOUR, iterator.getEnd());
+		assertTrue(iterator.next());
+		assertEquals(14 * DAY + 10 * HOUR, iterator.getStart());
+		assertFalse(iterator.next());
+	}
+
+	public void testNextShouldSkipExceptions() {
+		this.weekly.getRepeating().addException(new Date(7 * DAY));
+		long[] next = new Occurrences(this.weekly).next(1, 2);
+		assertEquals(2, next.length);
+		assertEquals(10 * HOUR, next[0]);
+		assertEquals(14 * DAY + 10 * HOUR, next[1]);
+	}
+
+	public void testHitsShouldCheckDayOfOccurrence() {
+		Occurrences occurrences = new Occurrences(this.weekly);
+		assertTrue(occurrences.hits(21 * DAY + 15 * HOUR));
+		assertFalse(occurrences.hits(22 * DAY));
+		assertFalse(occurrences.hits(30 * 7 * DAY));
+	}
+
+	public void testMonthlyShouldRepeatOnSameWeekdayOfMonth() {
+		// Second Tuesday of January 2013
+		Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+		cal.clear();
+		cal.set(2013, Calendar.JANUARY, 8, 10, 0);
+		AppointmentImpl monthly = new AppointmentImpl(cal.getTime(), new Date(
+				cal.getTimeInMillis() + HOUR));
+		monthly.setRepeatingEnabled(true);
+		monthly.getRepeating().setType(RepeatingType.MONTHLY);
+		monthly.getRepeating().setInterval(1);
+
+		long[] next = new Occurrences(monthly).next(cal.getTimeInMillis(), 2);
+		cal.setTimeInMillis(next[1]);
+		assertEquals(Calendar.FEBRUARY, cal.get(Calendar.MONTH));
+		assertEquals(Calendar.TUESDAY, cal.get(Calendar.DAY_OF_WEEK));
+		assertEquals(2, cal.get(Calendar.DAY_OF_WEEK_IN_MONTH));
+		assertEquals(10, cal.get(Calendar.HOUR_OF_DAY));
+	}
+
+	public void testEngineShouldRecompileChangedSeries() {
+		OccurrenceEngine engine = OccurrenceEngine.getInstance();
+		Occurrences before = engine.get(this.weekly);
+		assertSame(before, engine.get(this.weekly));
+
+		this.weekly.getRepeating().setEnd(new Date(10 * 7 * DAY));
+		Occurrences after = engine.get(this.weekly);
+		assertNotSame(before, after);
+		assertEquals(10, after.count());
+	}
+}
@@ -0,0 +1,148 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility.permission;
+
+import java.util.Date;
+
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.framework.RaplaException;
+import org.rapla.mobile.android.test.mock.MockClientFacade;
+import org.rapla.mobile.android.test.test.FixtureHelper;
+import org.rapla.mobile.android.utility.permission.PermissionEvaluator;
+
+import android.test.AndroidTestCase;
+
+/**
+ * PermissionEvaluatorTest
+ * 
+ * Unit test class for
+ * org.rapla.mobile.android.utility.permission.PermissionEvaluator
+ * 
+ * @see org.rapla.mobile.android.utility.permission.PermissionEvaluator
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class PermissionEvaluatorTest extends AndroidTestCase {
+
+	protected UserCountingClientFacade facade;
+	protected CountingPermissionEvaluator evaluator;
+	protected Allocatable allocatable;
+	protected Appointment[] appointments;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.facade = new UserCountingClientFacade();
+		this.evaluator = new CountingPermissionEvaluator(this.facade);
+		this.allocatable = FixtureHelper.createAllocatable();
+		this.appointments = new Appointment[] {
+				FixtureHelper.createAppointment(new Date(0), new Date(1000)),
+				FixtureHelper.createAppointment(new Date(5000),
+						new Date(6000)),
+				FixtureHelper.createAppointment(new Date(0), new Date(1000)) };
+	}
+
+	public void testBatchShouldReturnResultPerAppointment() throws Exception {
+		this.evaluator.forbiddenStart = 5000;
+		boolean[] allowed = this.evaluator.canAllocate(this.allocatable,
+				this.appointments);
+		assertEquals(3, allowed.length);
+		assertTrue(allowed[0]);
+		assertFalse(allowed[1]);
+		assertTrue(allowed[2]);
+	}
+
+	public void testSameTimeWindowShouldBeCheckedOnce() throws Exception {
+		this.evaluator.canAllocate(this.allocatable, this.appointments);
+		this.evaluator.canAllocate(this.allocatable, this.appointments);
+		assertEquals(2, this.evaluator.checked);
+	}
+
+	public void testUserShouldBeResolvedOnce() throws Exception {
+		this.evaluator.canAllocate(this.allocatable, this.appointments);
+		this.evaluator.canAllocate(FixtureHelper.createAllocatable(),
+				this.appointments);
+		assertEquals(1, this.facade.userRequests);
+	}
+
+	public void testInvalidateShouldCheckAgain() throws Exception {
+		this.evaluator.canAllocate(this.allocatable, this.appointments[0]);
+		this.evaluator.invalidate(this.allocatable);
+		this.evaluator.canAllocate(this.allocatable, this.appointments[0]);
+		assertEquals(2, this.evaluator.checked);
+	}
+
+	public void testClearShouldResolveUserAgain() throws Exception {
+		this.evaluator.canAllocate(this.allocatable, this.appointments[0]);
+		this.evaluator.clear();
+		this.evaluator.canAllocate(this.allocatable, this.appointments[0]);
+		assertEquals(2, this.facade.userRequests);
+	}
+
+	public void testNewDayShouldCheckAgain() throws Exception {
+		this.facade.today = new Date(0);
+		this.evaluator.canAllocate(this.allocatable, this.appointments[0]);
+		this.evaluator.canAllocate(this.allocatable, this.appointments[0]);
+		assertEquals(1, this.evaluator.checked);
+
+		this.facade.today = new Date(24 * 60 * 60 * 1000);
+		this.evaluator.canAllocate(this.allocatable, this.appointments[0]);
+		assertEquals(2, this.evaluator.checked);
+		assertEquals(1, this.facade.userRequests);
+	}
+
+	/**
+	 * Permission evaluator counting checks and rejecting one start time
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class CountingPermissionEvaluator extends
+			PermissionEvaluator {
+
+		public int checked = 0;
+		public long forbiddenStart = -1;
+
+		public CountingPermissionEvaluator(UserCountingClientFacade facade) {
+			super(facade);
+		}
+
+		@Override
+		protected boolean check(Allocatable allocatable,
+				Appointment appointment, User user, Date today) {
+			this.checked++;
+			return appointment.getStart().getTime() != this.forbiddenStart;
+		}
+	}
+
+	/**
+	 * Client facade counting user requests, today can be set
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class UserCountingClientFacade extends MockClientFacade {
+
+		public int userRequests = 0;
+		public Date today;
+
+		public Date today() {
+			return this.today;
+		}
+
+		public User getUser() throws RaplaException {
+			this.userRequests++;
+			return null;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility.store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.rapla.components.util.DateTools;
+import org.rapla.mobile.android.utility.conflict.Booking;
+import org.rapla.mobile.android.utility.occurrence.Occurrences;
+import org.rapla.mobile.android.utility.store.LocalStore;
+
+import android.test.AndroidTestCase;
+
+/**
+ * LocalStoreTest
+ *
+ * Unit test class for org.rapla.mobile.android.utility.store.LocalStore
+ *
+ * @see org.rapla.mobile.android.utility.store.LocalStore
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class LocalStoreTest extends AndroidTestCase {
+
+	private static final long DAY = DateTools.MILLISECONDS_PER_DAY;
+	private static final long HOUR = DateTools.MILLISECONDS_PER_HOUR;
+
+	protected LocalStore store;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.getContext().deleteDatabase(LocalStore.DATABASE_NAME);
+		this.store = LocalStore.getInstance(this.getContext());
+		this.store.open("http://my.host.com:8051/rapla", "admin");
+	}
+
+	protected void tearDown() throws Exception {
+		this.store.close();
+		super.tearDown();
+	}
+
+	public void testGetInstanceShouldAlwaysReturnTheSameInstance() {
+		assertSame(this.store, LocalStore.getInstance(this.getContext()));
+	}
+
+	public void testGetOutboxShouldReturnEntriesInJournalOrder() {
+		long id = this.store.appendOutbox("store", "1", "Lecture", "{}");
+		this.store.appendOutbox("remove", "2", "Exam", null);
+		List<LocalStore.OutboxEntry> entries = this.store.getOutbox();
+		assertEquals(2, entries.size());
+		assertEquals(id, entries.get(0).getId());
+		assertEquals("store", entries.get(0).getOperation());
+		assertEquals("1", entries.get(0).getEntityId());
+		assertEquals("Lecture", entries.get(0).getEntityName());
+		assertEquals("{}", entries.get(0).getPayload());
+		assertEquals("Exam", entries.get(1).getEntityName());
+		assertNull(entries.get(1).getPayload());
+	}
+
+	public void testDeleteOutboxShouldRemoveSubmittedEntry() {
+		long id = this.store.appendOutbox("store", "1", "Lecture", null);
+		this.store.appendOutbox("store", "2", "Exam", null);
+		this.store.deleteOutbox(id);
+		List<LocalStore.OutboxEntry> entries = this.store.getOutbox();
+		assertEquals(1, entries.size());
+		assertEquals("Exam", entries.get(0).getEntityName());
+	}
+
+	public void testOpenShouldKeepOutboxOfPreviousUser() {
+		this.store.appendOutbox("store", "1", "Lecture", null);
+		this.store.open("http://my.host.com:8051/rapla", "guest");
+		assertTrue(this.store.getOutbox().isEmpty());
+
+		this.store.open("http://my.host.com:8051/rapla", "admin");
+		List<LocalStore.OutboxEntry> entries = this.store.getOutbox();
+		assertEquals(1, entries.size());
+		assertEquals("Lecture", entries.get(0).getEntityName());
+	}
+
+	public void testGetBookingsShouldReturnStoredSeries() {
+		Map<String, List<Booking>> bookings = new HashMap<String, List<Booking>>();
+		bookings.put("room1", new ArrayList<Booking>());
+		bookings.get("room1").add(
+				new Booking("7", new Occurrences(10 * HOUR, 2 * HOUR,
+						Occurrences.WEEKLY, 1, 10 * 7 * DAY,
+						new long[] { 7 * DAY })));
+		this.store.putBookings("room", 0, 30 * DAY, bookings);
+
+		Map<String, List<Booking>> stored = this.store.getBookings("room",
+				DAY, 20 * DAY);
+		assertEquals(1, stored.size());
+		Booking booking = stored.get("room1").get(0);
+		assertEquals("7", booking.getReservationId());
+		Occurrences occurrences = booking.getOccurrences();
+		assertEquals(10 * HOUR, occurrences.getStart());
+		assertEquals(2 * HOUR, occurrences.getDuration());
+		assertEquals(Occurrences.WEEKLY, occurrences.getType());
+		assertEquals(10 * 7 * DAY, occurrences.getUntil());
+		assertFalse(occurrences.overlaps(7 * DAY, 8 * DAY));
+		assertTrue(occurrences.overlaps(14 * DAY, 15 * DAY));
+	}
+
+	public void testGetBookingsShouldReturnNullOutsideStoredRange() {
+		this.store.putBookings("room", 0, 30 * DAY,
+				new HashMap<String, List<Booking>>());
+		assertNotNull(this.store.getBookings("room", 0, 30 * DAY));
+		assertNull(this.store.getBookings("room", 0, 31 * DAY));
+		assertNull(this.store.getBookings("person", 0, 30 * DAY));
+
+		this.store.open("http://my.host.com:8051/rapla", "guest");
+		assertNull(this.store.getBookings("room", 0, 30 * DAY));
+	}
+}
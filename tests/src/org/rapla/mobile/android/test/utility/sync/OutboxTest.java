@@ -0,0 +1,219 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility.sync;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.rapla.entities.Entity;
+import org.rapla.entities.domain.internal.ReservationImpl;
+import org.rapla.framework.RaplaException;
+import org.rapla.mobile.android.test.mock.MockClientFacade;
+import org.rapla.mobile.android.test.test.FixtureHelper;
+import org.rapla.mobile.android.utility.store.LocalStore;
+import org.rapla.mobile.android.utility.sync.Outbox;
+
+import android.test.AndroidTestCase;
+
+/**
+ * OutboxTest
+ * 
+ * Unit test class for org.rapla.mobile.android.utility.sync.Outbox
+ * 
+ * @see org.rapla.mobile.android.utility.sync.Outbox
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class OutboxTest extends AndroidTestCase {
+
+	protected SubmitRecordingClientFacade facade;
+	protected TestableOutbox outbox;
+	protected RecordingListener listener;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.facade = new SubmitRecordingClientFacade();
+		this.outbox = new TestableOutbox(this.facade);
+		this.listener = new RecordingListener();
+		this.outbox.setListener(this.listener);
+	}
+
+	public void testRunShouldSubmitQueuedOperationsInOneCall() {
+		this.outbox.store(FixtureHelper.createReservation());
+		this.outbox.remove(FixtureHelper.createReservation());
+		this.outbox.run();
+
+		assertEquals(1, this.facade.calls);
+		assertEquals(1, this.facade.stored.size());
+		assertEquals(1, this.facade.removed.size());
+		assertEquals(0, this.outbox.size());
+		assertEquals(2, this.listener.submitted);
+	}
+
+	public void testLaterOperationShouldReplaceEarlierOneOfSameEntity() {
+		ReservationImpl reservation = FixtureHelper.createReservation();
+		this.outbox.store(reservation);
+		this.outbox.remove(reservation);
+		assertEquals(1, this.outbox.size());
+
+		this.outbox.run();
+		assertEquals(0, this.facade.stored.size());
+		assertEquals(1, this.facade.removed.size());
+	}
+
+	public void testFailedSubmitShouldBeRetriedWithBackoff() {
+		this.facade.failAll = true;
+		this.outbox.store(FixtureHelper.createReservation());
+		this.outbox.run();
+		this.outbox.run();
+
+		assertEquals(1, this.outbox.size());
+		assertEquals(Outbox.INITIAL_BACKOFF * 2, this.outbox.lastDelay);
+	}
+
+	public void testOperationsShouldBeKeptIfNoneCanBeSubmitted() {
+		this.facade.failAll = true;
+		this.outbox.store(FixtureHelper.createReservation());
+		this.outbox.store(FixtureHelper.createReservation());
+		for (int i = 0; i < Outbox.MAX_ATTEMPTS; i++) {
+			this.outbox.run();
+		}
+
+		assertEquals(2, this.outbox.size());
+		assertEquals(2, this.listener.failed);
+		assertTrue(this.listener.rejected.isEmpty());
+	}
+
+	public void testSubmitShouldGoBackToBatchesIfNoneCanBeSubmitted() {
+		this.facade.failAll = true;
+		this.outbox.store(FixtureHelper.createReservation());
+		this.outbox.store(FixtureHelper.createReservation());
+		for (int i = 0; i < Outbox.MAX_ATTEMPTS + 1; i++) {
+			this.outbox.run();
+		}
+
+		// The extra run submits the batch again instead of each operation
+		assertEquals(2, this.listener.failed);
+		assertEquals(2, this.outbox.size());
+	}
+
+	public void testJournalEntryWithoutPayloadShouldBeReportedAsLost() {
+		this.getContext().deleteDatabase(LocalStore.DATABASE_NAME);
+		LocalStore store = LocalStore.getInstance(this.getContext());
+		store.open("http://my.host.com:8051/rapla", "admin");
+		store.appendOutbox(Outbox.OPERATION_STORE, "1", "Lecture", null);
+
+		this.outbox.setJournal(store);
+		this.outbox.run();
+
+		assertEquals(1, this.listener.lost.size());
+		assertEquals("Lecture", this.listener.lost.get(0));
+		assertTrue(store.getOutbox().isEmpty());
+		store.close();
+	}
+
+	public void testRejectedOperationShouldBeReportedAndDropped() {
+		ReservationImpl rejected = FixtureHelper.createReservation();
+		this.facade.rejected = rejected;
+		this.outbox.store(rejected);
+		this.outbox.store(FixtureHelper.createReservation());
+		for (int i = 0; i < Outbox.MAX_ATTEMPTS; i++) {
+			this.outbox.run();
+		}
+
+		assertEquals(0, this.outbox.size());
+		assertEquals(1, this.listener.rejected.size());
+		assertEquals(1, this.listener.submitted);
+	}
+
+	/**
+	 * Outbox recording its schedule instead of running in the background
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class TestableOutbox extends Outbox {
+
+		public long lastDelay = 0;
+
+		public TestableOutbox(SubmitRecordingClientFacade facade) {
+			super(facade);
+		}
+
+		protected synchronized void schedule(long delay) {
+			this.lastDelay = delay;
+		}
+	}
+
+	/**
+	 * Client facade recording submitted entities
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class SubmitRecordingClientFacade extends MockClientFacade {
+
+		public int calls = 0;
+		public List<Entity> stored = new ArrayList<Entity>();
+		public List<Entity> removed = new ArrayList<Entity>();
+		public boolean failAll = false;
+		public Entity rejected;
+
+		public void storeAndRemove(Entity[] storedObjects,
+				Entity[] removedObjects) throws RaplaException {
+			if (this.failAll) {
+				throw new RaplaException("Mocked exception");
+			}
+			for (Entity entity : storedObjects) {
+				if (entity == this.rejected) {
+					throw new RaplaException("Mocked exception");
+				}
+			}
+			this.calls++;
+			for (Entity entity : storedObjects) {
+				this.stored.add(entity);
+			}
+			for (Entity entity : removedObjects) {
+				this.removed.add(entity);
+			}
+		}
+	}
+
+	/**
+	 * Listener recording the outcome of submits
+	 * 
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class RecordingListener implements Outbox.Listener {
+
+		public int submitted = 0;
+		public int failed = 0;
+		public List<String> rejected = new ArrayList<String>();
+		public List<String> lost = new ArrayList<String>();
+
+		public void onSubmitted(int count) {
+			this.submitted += count;
+		}
+
+		public void onRejected(String name, RaplaException e) {
+			this.rejected.add(name);
+		}
+
+		public void onFailed(int count, RaplaException e) {
+			this.failed += count;
+		}
+
+		public void onLost(List<String> names) {
+			this.lost.addAll(names);
+		}
+	}
+}
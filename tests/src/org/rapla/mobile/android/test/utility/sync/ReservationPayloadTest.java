@@ -0,0 +1,89 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility.sync;
+
+import java.util.Date;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.RepeatingType;
+import org.rapla.entities.domain.internal.AllocatableImpl;
+import org.rapla.entities.domain.internal.AppointmentImpl;
+import org.rapla.entities.domain.internal.ReservationImpl;
+import org.rapla.mobile.android.test.test.FixtureHelper;
+import org.rapla.mobile.android.utility.sync.ReservationPayload;
+
+import android.test.AndroidTestCase;
+
+/**
+ * ReservationPayloadTest
+ * 
+ * Unit test class for org.rapla.mobile.android.utility.sync.ReservationPayload
+ * 
+ * @see org.rapla.mobile.android.utility.sync.ReservationPayload
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class ReservationPayloadTest extends AndroidTestCase {
+
+	protected ReservationImpl reservation;
+	protected AppointmentImpl appointment;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.reservation = FixtureHelper.createReservation();
+		this.appointment = new AppointmentImpl(new Date(1000), new Date(2000));
+		this.reservation.addAppointment(this.appointment);
+	}
+
+	public void testEncodeShouldKeepTypeAndAppointments() throws JSONException {
+		JSONObject json = new JSONObject(
+				ReservationPayload.encode(this.reservation));
+		assertEquals("tempReservation", json.getString("type"));
+		JSONObject appointment = json.getJSONArray("appointments")
+				.getJSONObject(0);
+		assertEquals(1000, appointment.getLong("start"));
+		assertEquals(2000, appointment.getLong("end"));
+		assertFalse(appointment.has("repeating"));
+	}
+
+	public void testEncodeShouldKeepRepeating() throws JSONException {
+		this.appointment.setRepeatingEnabled(true);
+		this.appointment.getRepeating().setType(RepeatingType.WEEKLY);
+		this.appointment.getRepeating().setInterval(2);
+
+		JSONObject json = new JSONObject(
+				ReservationPayload.encode(this.reservation));
+		JSONObject repeating = json.getJSONArray("appointments")
+				.getJSONObject(0).getJSONObject("repeating");
+		assertEquals(RepeatingType.WEEKLY.toString(),
+				repeating.getString("type"));
+		assertEquals(2, repeating.getInt("interval"));
+	}
+
+	public void testEncodeShouldKeepRestrictionsAsAppointmentIndexes()
+			throws JSONException {
+		AllocatableImpl allocatable = FixtureHelper.createAllocatable();
+		this.reservation.addAllocatable(allocatable);
+		this.reservation.setRestriction(allocatable,
+				new Appointment[] { this.appointment });
+
+		JSONObject json = new JSONObject(
+				ReservationPayload.encode(this.reservation));
+		JSONObject item = json.getJSONArray("allocatables").getJSONObject(0);
+		assertEquals(String.valueOf(allocatable.getId()), item.getString("id"));
+		assertEquals(0, item.getJSONArray("restriction").getInt(0));
+	}
+}
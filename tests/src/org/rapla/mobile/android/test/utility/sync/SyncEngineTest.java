@@ -0,0 +1,82 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.utility.sync;
+
+import org.rapla.framework.RaplaException;
+import org.rapla.mobile.android.test.mock.MockClientFacade;
+import org.rapla.mobile.android.utility.sync.SyncEngine;
+
+import android.test.AndroidTestCase;
+
+/**
+ * SyncEngineTest
+ *
+ * Unit test class for org.rapla.mobile.android.utility.sync.SyncEngine
+ *
+ * @see org.rapla.mobile.android.utility.sync.SyncEngine
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class SyncEngineTest extends AndroidTestCase {
+
+	protected RefreshCountingClientFacade facade;
+	protected SyncEngine engine;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.facade = new RefreshCountingClientFacade();
+		this.engine = new SyncEngine(this.facade);
+	}
+
+	public void testSyncShouldRefreshFacade() throws Exception {
+		this.engine.sync();
+		assertEquals(1, this.facade.refreshed);
+	}
+
+	public void testSyncShouldCountFailuresInARow() throws Exception {
+		this.facade.fail = true;
+		this.engine.run();
+		this.engine.run();
+		assertEquals(2, this.engine.getFailedSyncs());
+
+		this.facade.fail = false;
+		this.engine.run();
+		assertEquals(0, this.engine.getFailedSyncs());
+	}
+
+	public void testSyncShouldKeepLastSyncIfFailed() throws Exception {
+		long lastSync = this.engine.getLastSync();
+		this.facade.fail = true;
+		this.engine.run();
+		assertEquals(lastSync, this.engine.getLastSync());
+	}
+
+	/**
+	 * Client facade counting refresh calls
+	 *
+	 * @author Maximilian Lenkeit <dev@lenki.com>
+	 */
+	private static class RefreshCountingClientFacade extends MockClientFacade {
+
+		public int refreshed = 0;
+		public boolean fail = false;
+
+		public void refresh() throws RaplaException {
+			if (this.fail) {
+				throw new RaplaException("Mocked exception");
+			}
+			this.refreshed++;
+		}
+	}
+}
@@ -15,6 +15,10 @@ package org.rapla.mobile.android.test.widget;
 
 import java.security.InvalidParameterException;
 
+import org.rapla.entities.domain.internal.ReservationImpl;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.internal.AttributeImpl;
+import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
 import org.rapla.mobile.android.test.test.FixtureHelper;
 import org.rapla.mobile.android.widget.RaplaAttributeInt;
 
@@ -53,4 +57,22 @@ public class RaplaAttributeIntTest extends AndroidTestCase {
 		View v = this.attribute.getListItemView();
 		assertNotNull(v);
 	}
+
+	public void testPullingNullValueShouldNotCountAsModified() throws Exception {
+		AttributeImpl attribute = FixtureHelper.createAttributeInteger();
+		DynamicTypeImpl dt = new DynamicTypeImpl();
+		dt.setElementKey("lecture");
+		dt.addAttribute(attribute);
+		dt.setReadOnly(true);
+		Classification classification = dt.newClassification();
+		classification.setValue(attribute, null);
+		ReservationImpl reservation = FixtureHelper.createReservation();
+		reservation.setClassification(classification);
+
+		RaplaAttributeInt widget = new RaplaAttributeInt(this.getContext(),
+				attribute);
+		widget.getListItemView();
+		widget.pullValueFromReservation(reservation);
+		assertFalse(widget.isModified());
+	}
 }
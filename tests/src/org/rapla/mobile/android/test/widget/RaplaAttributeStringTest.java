@@ -20,6 +20,8 @@ import org.rapla.mobile.android.widget.RaplaAttributeString;
 
 import android.test.AndroidTestCase;
 import android.view.View;
+import android.view.ViewGroup;
+import android.widget.EditText;
 
 /**
  * Unit test class for org.rapla.mobile.android.widget.RaplaAttributeString
@@ -53,4 +55,17 @@ public class RaplaAttributeStringTest extends AndroidTestCase {
 		View v = this.attribute.getListItemView();
 		assertNotNull(v);
 	}
+
+	public void testIsModifiedShouldBeFalseWithoutView() {
+		assertFalse(this.attribute.isModified());
+	}
+
+	public void testIsModifiedShouldTrackWidgetChanges() {
+		ViewGroup v = (ViewGroup) this.attribute.getListItemView();
+		assertFalse(this.attribute.isModified());
+
+		EditText widget = (EditText) v.getChildAt(1);
+		widget.setText("Changed");
+		assertTrue(this.attribute.isModified());
+	}
 }
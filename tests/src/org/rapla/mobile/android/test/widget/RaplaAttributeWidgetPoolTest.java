@@ -0,0 +1,105 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2012 Maximilian Lenkeit                                    |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+
+package org.rapla.mobile.android.test.widget;
+
+import org.rapla.entities.dynamictype.AttributeType;
+import org.rapla.entities.dynamictype.internal.AttributeImpl;
+import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
+import org.rapla.mobile.android.test.test.FixtureHelper;
+import org.rapla.mobile.android.widget.RaplaAttribute;
+import org.rapla.mobile.android.widget.RaplaAttributeWidgetPool;
+
+import android.test.AndroidTestCase;
+import android.view.ViewGroup;
+import android.widget.EditText;
+
+/**
+ * Unit test class for
+ * org.rapla.mobile.android.widget.RaplaAttributeWidgetPool
+ * 
+ * @see org.rapla.mobile.android.widget.RaplaAttributeWidgetPool
+ * @author Maximilian Lenkeit <dev@lenki.com>
+ */
+public class RaplaAttributeWidgetPoolTest extends AndroidTestCase {
+
+	protected RaplaAttributeWidgetPool pool;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.pool = new RaplaAttributeWidgetPool(this.getContext());
+	}
+
+	public void testObtainShouldReuseWidgetsOfSameType() throws Exception {
+		DynamicTypeImpl dt = this.createDynamicType("lecture");
+		RaplaAttribute<?>[] widgets = this.pool.obtain(dt);
+		assertEquals(2, widgets.length);
+		assertSame(widgets, this.pool.obtain(dt));
+	}
+
+	public void testObtainShouldRebuildChangedType() throws Exception {
+		DynamicTypeImpl dt = this.createDynamicType("lecture");
+		RaplaAttribute<?>[] widgets = this.pool.obtain(dt);
+		dt.removeAttribute(dt.getAttributes()[1]);
+		RaplaAttribute<?>[] changed = this.pool.obtain(dt);
+		assertEquals(1, changed.length);
+		assertSame(widgets[0], changed[0]);
+	}
+
+	public void testDroppedTypeShouldPassWidgetsOn() throws Exception {
+		RaplaAttribute<?>[] first = this.pool.obtain(this
+				.createDynamicType("type0"));
+		for (int i = 1; i <= RaplaAttributeWidgetPool.MAX_TEMPLATES; i++) {
+			this.pool.obtain(this.createDynamicType("type" + i));
+		}
+		assertEquals(2, this.pool.getReleasedCount());
+
+		DynamicTypeImpl dt = this.createDynamicType("next");
+		RaplaAttribute<?>[] widgets = this.pool.obtain(dt);
+		assertSame(first[0], widgets[0]);
+		assertSame(first[1], widgets[1]);
+		assertSame(dt.getAttributes()[0], widgets[0].getAttribute());
+	}
+
+	public void testRebindingWithoutDefaultShouldClearIntWidget()
+			throws Exception {
+		DynamicTypeImpl first = new DynamicTypeImpl();
+		first.setElementKey("first");
+		first.addAttribute(FixtureHelper.createAttributeInteger());
+		RaplaAttribute<?> widget = this.pool.obtain(first)[0];
+		ViewGroup view = (ViewGroup) widget.getListItemView();
+		EditText text = (EditText) view.getChildAt(1);
+		assertEquals("2", text.getText().toString());
+
+		for (int i = 1; i <= RaplaAttributeWidgetPool.MAX_TEMPLATES; i++) {
+			this.pool.obtain(this.createDynamicType("type" + i));
+		}
+		DynamicTypeImpl next = new DynamicTypeImpl();
+		next.setElementKey("next");
+		next.addAttribute(new AttributeImpl(AttributeType.INT));
+		assertSame(widget, this.pool.obtain(next)[0]);
+		assertSame(view, widget.getListItemView());
+		assertEquals("", text.getText().toString());
+	}
+
+	/**
+	 * Dynamic type with a string and a boolean attribute
+	 */
+	private DynamicTypeImpl createDynamicType(String key) throws Exception {
+		DynamicTypeImpl dt = new DynamicTypeImpl();
+		dt.setElementKey(key);
+		dt.addAttribute(FixtureHelper.createAttributeString());
+		dt.addAttribute(FixtureHelper.createAttributeBoolean());
+		return dt;
+	}
+}
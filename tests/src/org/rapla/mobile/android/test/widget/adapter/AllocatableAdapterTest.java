@@ -75,6 +75,18 @@ public class AllocatableAdapterTest extends AndroidTestCase {
 		assertEquals(this.allocatables.length, this.adapter.getCount());
 	}
 
+	public void testVisiblePositionsShouldBeCountedInOrder() {
+		this.adapter = new AllocatableAdapter(this.getContext(),
+				this.selectedReservation, this.allocatables);
+		Allocatable second = this.adapter.getItem(1);
+		this.adapter.setVisiblePositions(new int[] { 1 });
+		assertEquals(1, this.adapter.getCount());
+		assertEquals(second, this.adapter.getItem(0));
+
+		this.adapter.setVisiblePositions(null);
+		assertEquals(this.allocatables.length, this.adapter.getCount());
+	}
+
 	/**
 	 * This test only fails because the dynamic type fixtures are not set up
 	 * correctly resulting in a NullPointerException.